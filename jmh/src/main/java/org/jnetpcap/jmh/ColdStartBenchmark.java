@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start cost of the library, measured once per freshly forked JVM. Each
+ * measurement includes loading the native library, initializing the versioned
+ * {@code Pcap} classes and binding the native symbols used, which is what a
+ * short lived command line tool or offline job pays on every run.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 20, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class ColdStartBenchmark {
+
+	/** The capture file, located without touching any jNetPcap class. */
+	private String file;
+
+	/**
+	 * Setup.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		file = PcapFiles.sample(PcapFiles.HTTP_CAP);
+	}
+
+	/**
+	 * Initialize the library and query its version.
+	 *
+	 * @return the version string
+	 */
+	@Benchmark
+	public String libVersion() {
+		return Pcap.libVersion();
+	}
+
+	/**
+	 * Initialize the library, open a capture file and read its first packet.
+	 *
+	 * @return the first packet's capture length
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public int openOfflineFirstPacket() throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(file)) {
+			return pcap.next().captureLength();
+		}
+	}
+}
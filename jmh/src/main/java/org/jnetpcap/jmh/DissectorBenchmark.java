@@ -0,0 +1,556 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.dissect.PacketDissector;
+import org.jnetpcap.util.PcapCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dissection throughput of {@link PacketDissector} compared to an equivalent,
+ * hand-rolled {@link ByteBuffer} parser, over the same packets held in off-heap
+ * memory. Each operation dissects every packet once, and the
+ * {@link PacketCounter} secondary result reports packets per second.
+ * <p>
+ * Packets are either those of the {@code HTTP.cap} sample, or synthetic QinQ
+ * double tagged IPv4/TCP frames, or IPv6 frames with a hop-by-hop options
+ * extension header in front of UDP. Both parsers walk Ethernet, VLAN, MPLS,
+ * IPv4, IPv6 extension headers and the transport header, and produce the same
+ * offsets, ports and flags.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class DissectorBenchmark {
+
+	/** Packets source, the sample file name or a synthetic frame kind. */
+	@Param({ PcapFiles.HTTP_CAP, "vlan", "ipv6" })
+	public String file;
+
+	/** Number of synthetic frames, each with different ports. */
+	private static final int SYNTHETIC_COUNT = 1024;
+
+	/** The arena holding the packets. */
+	private Arena arena;
+
+	/** All packets, back to back. */
+	private MemorySegment packets;
+
+	/** A big endian view of the same memory. */
+	private ByteBuffer buffer;
+
+	/** Offset of each packet. */
+	private int[] offsets;
+
+	/** Captured length of each packet. */
+	private int[] lengths;
+
+	/** The dissector under test. */
+	private final PacketDissector dissector = new PacketDissector(PcapDlt.EN10MB);
+
+	/** The hand-rolled reference parser. */
+	private final ByteBufferParser parser = new ByteBufferParser();
+
+	/**
+	 * Loads or builds the packets.
+	 *
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 */
+	@Setup
+	public void setup() throws IOException, PcapException, TimeoutException {
+		List<byte[]> frames = switch (file) {
+		case "vlan" -> synthetic(DissectorBenchmark::vlanTcpFrame);
+		case "ipv6" -> synthetic(DissectorBenchmark::ipv6UdpFrame);
+		default -> read(PcapFiles.sample(file));
+		};
+
+		int total = frames.stream().mapToInt(f -> f.length).sum();
+
+		this.arena = Arena.ofShared();
+		this.packets = arena.allocate(total);
+		this.buffer = packets.asByteBuffer();
+		this.offsets = new int[frames.size()];
+		this.lengths = new int[frames.size()];
+
+		int offset = 0;
+		for (int i = 0; i < frames.size(); i++) {
+			byte[] frame = frames.get(i);
+			MemorySegment.copy(frame, 0, packets, ValueLayout.JAVA_BYTE, offset, frame.length);
+
+			offsets[i] = offset;
+			lengths[i] = frame.length;
+			offset += frame.length;
+		}
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		arena.close();
+	}
+
+	/**
+	 * PacketDissector over the off-heap segment.
+	 *
+	 * @param counter the counter
+	 * @return a checksum of the dissected fields
+	 */
+	@Benchmark
+	public long packetDissector(PacketCounter counter) {
+		long sum = 0;
+
+		for (int i = 0; i < offsets.length; i++) {
+			if (dissector.dissect(packets, offsets[i], lengths[i]))
+				sum += dissector.l4Offset() + dissector.srcPort() + dissector.dstPort() + dissector.tcpFlags();
+		}
+
+		counter.packets += offsets.length;
+
+		return sum;
+	}
+
+	/**
+	 * Hand-rolled ByteBuffer parser over the same memory.
+	 *
+	 * @param counter the counter
+	 * @return a checksum of the parsed fields
+	 */
+	@Benchmark
+	public long byteBuffer(PacketCounter counter) {
+		long sum = 0;
+
+		for (int i = 0; i < offsets.length; i++) {
+			if (parser.parse(buffer, offsets[i], lengths[i]))
+				sum += parser.l4Offset + parser.srcPort + parser.dstPort + parser.tcpFlags;
+		}
+
+		counter.packets += offsets.length;
+
+		return sum;
+	}
+
+	/**
+	 * Reads all packets of a capture file.
+	 *
+	 * @param fname the file name
+	 * @return the packets
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 */
+	private static List<byte[]> read(String fname) throws PcapException, TimeoutException {
+		List<byte[]> frames = new ArrayList<>();
+		PcapCursor cursor = new PcapCursor();
+
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			while (pcap.nextEx(cursor))
+				frames.add(cursor.toArray());
+		}
+
+		return frames;
+	}
+
+	/**
+	 * A frame builder for a given source port.
+	 */
+	private interface FrameBuilder {
+
+		/**
+		 * Builds a frame.
+		 *
+		 * @param srcPort the source port
+		 * @return the frame
+		 */
+		byte[] build(int srcPort);
+	}
+
+	/**
+	 * Builds synthetic frames with different source ports.
+	 *
+	 * @param builder the builder
+	 * @return the frames
+	 */
+	private static List<byte[]> synthetic(FrameBuilder builder) {
+		List<byte[]> frames = new ArrayList<>(SYNTHETIC_COUNT);
+		for (int i = 0; i < SYNTHETIC_COUNT; i++)
+			frames.add(builder.build(1024 + i));
+
+		return frames;
+	}
+
+	/**
+	 * Builds a QinQ double tagged Ethernet/IPv4/TCP frame with 64 bytes of
+	 * payload.
+	 *
+	 * @param srcPort the source port
+	 * @return the frame
+	 */
+	static byte[] vlanTcpFrame(int srcPort) {
+		ByteBuffer b = ByteBuffer.allocate(14 + 8 + 20 + 20 + 64);
+
+		b.put(new byte[] { 0x02, 0, 0, 0, 0, 0x01, 0x02, 0, 0, 0, 0, 0x02 });
+		b.putShort((short) PacketDissector.ETHERTYPE_QINQ).putShort((short) 100);
+		b.putShort((short) PacketDissector.ETHERTYPE_VLAN).putShort((short) 200);
+		b.putShort((short) PacketDissector.ETHERTYPE_IPV4);
+
+		b.put((byte) 0x45).put((byte) 0).putShort((short) (20 + 20 + 64));
+		b.putInt(0).put((byte) 64).put((byte) PacketDissector.IPPROTO_TCP).putShort((short) 0);
+		b.putInt(0x0A000001).putInt(0x0A000002);
+
+		b.putShort((short) srcPort).putShort((short) 80);
+		b.putInt(1).putInt(0);
+		b.put((byte) 0x50).put((byte) 0x18).putShort((short) 0xFFFF).putInt(0);
+
+		return b.array();
+	}
+
+	/**
+	 * Builds an Ethernet/IPv6 frame with a hop-by-hop options extension header
+	 * in front of UDP, with 64 bytes of payload.
+	 *
+	 * @param srcPort the source port
+	 * @return the frame
+	 */
+	static byte[] ipv6UdpFrame(int srcPort) {
+		ByteBuffer b = ByteBuffer.allocate(14 + 40 + 8 + 8 + 64);
+
+		b.put(new byte[] { 0x02, 0, 0, 0, 0, 0x01, 0x02, 0, 0, 0, 0, 0x02 });
+		b.putShort((short) PacketDissector.ETHERTYPE_IPV6);
+
+		b.putInt(0x60000000).putShort((short) (8 + 8 + 64)).put((byte) 0).put((byte) 64);
+		b.putLong(0x20010DB800000000L).putLong(1);
+		b.putLong(0x20010DB800000000L).putLong(2);
+
+		b.put((byte) PacketDissector.IPPROTO_UDP).put((byte) 0).put(new byte[] { 1, 4, 0, 0, 0, 0 });
+
+		b.putShort((short) srcPort).putShort((short) 53).putShort((short) (8 + 64)).putShort((short) 0);
+
+		return b.array();
+	}
+
+	/**
+	 * The kind of parser the dissector replaces: absolute, big endian
+	 * {@link ByteBuffer} reads, with the same layers, bounds checks and results
+	 * as {@link PacketDissector} for Ethernet.
+	 */
+	private static final class ByteBufferParser {
+
+		/** The packet offset within the buffer. */
+		private int base;
+
+		/** The captured length. */
+		private int length;
+
+		/** The l4 offset. */
+		int l4Offset;
+
+		/** The payload offset. */
+		int payloadOffset;
+
+		/** The ip protocol. */
+		int ipProtocol;
+
+		/** The src port. */
+		int srcPort;
+
+		/** The dst port. */
+		int dstPort;
+
+		/** The tcp flags. */
+		int tcpFlags;
+
+		/** The vlan count. */
+		int vlanCount;
+
+		/** The mpls count. */
+		int mplsCount;
+
+		/**
+		 * Parses an Ethernet frame.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the packet offset
+		 * @param length the captured length
+		 * @return true if at least the network layer was found
+		 */
+		boolean parse(ByteBuffer buf, int offset, int length) {
+			this.base = offset;
+			this.length = length;
+			this.l4Offset = -1;
+			this.payloadOffset = -1;
+			this.ipProtocol = -1;
+			this.srcPort = -1;
+			this.dstPort = -1;
+			this.tcpFlags = 0;
+			this.vlanCount = 0;
+			this.mplsCount = 0;
+
+			if (length < 14)
+				return false;
+
+			int type = u16(buf, 12);
+			int next = 14;
+
+			for (int i = 0; i < 8 && (type == PacketDissector.ETHERTYPE_VLAN
+					|| type == PacketDissector.ETHERTYPE_QINQ
+					|| type == PacketDissector.ETHERTYPE_QINQ_LEGACY); i++) {
+				if (next + 4 > length)
+					return false;
+
+				vlanCount++;
+				type = u16(buf, next + 2);
+				next += 4;
+			}
+
+			if (type == PacketDissector.ETHERTYPE_MPLS || type == PacketDissector.ETHERTYPE_MPLS_MULTICAST) {
+				for (int i = 0;; i++) {
+					if (i == 8 || next + 4 > length)
+						return false;
+
+					int label = buf.getInt(base + next);
+					mplsCount++;
+					next += 4;
+
+					if ((label & 0x100) != 0)
+						break;
+				}
+
+				if (next + 1 > length)
+					return false;
+
+				int version = u8(buf, next) >>> 4;
+				type = (version == 4) ? PacketDissector.ETHERTYPE_IPV4
+						: (version == 6) ? PacketDissector.ETHERTYPE_IPV6
+								: -1;
+			}
+
+			if (type == PacketDissector.ETHERTYPE_IPV4)
+				return ipv4(buf, next);
+
+			if (type == PacketDissector.ETHERTYPE_IPV6)
+				return ipv6(buf, next);
+
+			return false;
+		}
+
+		/**
+		 * Parses IPv4.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the offset
+		 * @return true if the header is present
+		 */
+		private boolean ipv4(ByteBuffer buf, int offset) {
+			if (offset + 20 > length)
+				return false;
+
+			int ihl = (u8(buf, offset) & 0x0F) * 4;
+			if (ihl < 20 || offset + ihl > length)
+				return false;
+
+			ipProtocol = u8(buf, offset + 9);
+
+			if ((u16(buf, offset + 6) & 0x1FFF) == 0)
+				transport(buf, offset + ihl);
+
+			return true;
+		}
+
+		/**
+		 * Parses IPv6 and its extension headers.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the offset
+		 * @return true if the header is present
+		 */
+		private boolean ipv6(ByteBuffer buf, int offset) {
+			if (offset + 40 > length)
+				return false;
+
+			int nextHeader = u8(buf, offset + 6);
+			int next = offset + 40;
+
+			for (int i = 0; i < 8; i++) {
+				switch (nextHeader) {
+				case 0, 43, 60, 135: // hop-by-hop, routing, destination, mobility
+					if (next + 8 > length) {
+						ipProtocol = nextHeader;
+						return true;
+					}
+
+					int len = (u8(buf, next + 1) + 1) * 8;
+					nextHeader = u8(buf, next);
+					next += len;
+					continue;
+
+				case 51: // authentication
+					if (next + 8 > length) {
+						ipProtocol = nextHeader;
+						return true;
+					}
+
+					int ahLen = (u8(buf, next + 1) + 2) * 4;
+					nextHeader = u8(buf, next);
+					next += ahLen;
+					continue;
+
+				case 44: // fragment
+					if (next + 8 > length) {
+						ipProtocol = nextHeader;
+						return true;
+					}
+
+					boolean first = (u16(buf, next + 2) & 0xFFF8) == 0;
+					nextHeader = u8(buf, next);
+					next += 8;
+
+					if (!first) {
+						ipProtocol = nextHeader;
+						return true;
+					}
+					continue;
+
+				default:
+					ipProtocol = nextHeader;
+					transport(buf, next);
+					return true;
+				}
+			}
+
+			ipProtocol = nextHeader;
+			return true;
+		}
+
+		/**
+		 * Parses the transport header.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the offset
+		 */
+		private void transport(ByteBuffer buf, int offset) {
+			switch (ipProtocol) {
+			case PacketDissector.IPPROTO_TCP:
+				if (offset + 20 > length)
+					return;
+
+				l4Offset = offset;
+				srcPort = u16(buf, offset);
+				dstPort = u16(buf, offset + 2);
+				tcpFlags = u16(buf, offset + 12) & 0x01FF;
+				payload(offset + (u8(buf, offset + 12) >>> 4) * 4);
+				break;
+
+			case PacketDissector.IPPROTO_UDP:
+				if (offset + 8 > length)
+					return;
+
+				l4Offset = offset;
+				srcPort = u16(buf, offset);
+				dstPort = u16(buf, offset + 2);
+				payload(offset + 8);
+				break;
+
+			case PacketDissector.IPPROTO_SCTP:
+				if (offset + 12 > length)
+					return;
+
+				l4Offset = offset;
+				srcPort = u16(buf, offset);
+				dstPort = u16(buf, offset + 2);
+				payload(offset + 12);
+				break;
+
+			case PacketDissector.IPPROTO_ICMP, PacketDissector.IPPROTO_ICMPV6:
+				if (offset + 8 > length)
+					return;
+
+				l4Offset = offset;
+				payload(offset + 8);
+				break;
+
+			default:
+				if (offset <= length)
+					payloadOffset = offset;
+			}
+		}
+
+		/**
+		 * Sets the payload offset, if within captured data.
+		 *
+		 * @param offset the offset
+		 */
+		private void payload(int offset) {
+			if (offset <= length)
+				payloadOffset = offset;
+		}
+
+		/**
+		 * Reads an unsigned byte.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the offset within the packet
+		 * @return the value
+		 */
+		private int u8(ByteBuffer buf, int offset) {
+			return Byte.toUnsignedInt(buf.get(base + offset));
+		}
+
+		/**
+		 * Reads an unsigned short in network byte order.
+		 *
+		 * @param buf    the buffer
+		 * @param offset the offset within the packet
+		 * @return the value
+		 */
+		private int u16(ByteBuffer buf, int offset) {
+			return Short.toUnsignedInt(buf.getShort(base + offset));
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.constant.PcapDlt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of writing single packets to a savefile with
+ * {@link PcapDumper#dump(MemorySegment, MemorySegment)}, from a dead handle.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class DumpBenchmark {
+
+	/** The frame size. */
+	@Param({ "64", "1500" })
+	public int frameSize;
+
+	/** The arena. */
+	private Arena arena;
+
+	/** The pcap. */
+	private Pcap pcap;
+
+	/** The dumper. */
+	private PcapDumper dumper;
+
+	/** The file. */
+	private File file;
+
+	/** The header. */
+	private MemorySegment header;
+
+	/** The packet. */
+	private MemorySegment packet;
+
+	/**
+	 * Setup.
+	 *
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 * @throws PcapException the pcap exception
+	 */
+	@Setup
+	public void setup() throws IOException, PcapException {
+		file = File.createTempFile("jnetpcap-jmh-dump-", ".pcap");
+		file.deleteOnExit();
+
+		arena = Arena.ofShared();
+		pcap = Pcap.openDead(PcapDlt.EN10MB, PcapFiles.SNAPLEN);
+		dumper = pcap.dumpOpen(file.getPath());
+
+		header = new PcapHeader(0, 0, frameSize, frameSize).asMemorySegment();
+		packet = arena.allocate(frameSize);
+		packet.copyFrom(MemorySegment.ofArray(PcapFiles.udpFrame(frameSize)));
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		dumper.close();
+		pcap.close();
+		arena.close();
+		file.delete();
+	}
+
+	/**
+	 * Dump one packet.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Benchmark
+	public void dump() throws IOException {
+		dumper.dump(header, packet);
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.PcapHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Offline capture throughput of every {@code PcapHandler} flavor, through both
+ * {@code loop} and {@code dispatch}. Each operation opens the capture file,
+ * reads all of its packets and closes it, and the {@link PacketCounter}
+ * secondary result reports packets per second. Run with {@code -prof gc} to
+ * see per packet allocation rates.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class HandlerBenchmark {
+
+	/** Count value to process all packets in the file. */
+	private static final int ALL_PACKETS = -1;
+
+	/** The capture file, a sample file name or a synthetic frame size. */
+	@Param({ PcapFiles.HTTP_CAP, "synthetic-64", "synthetic-1500" })
+	public String file;
+
+	/** The resolved file name. */
+	private String fname;
+
+	/** Output file for the dumper handler. */
+	private File dumpFile;
+
+	/**
+	 * Setup.
+	 *
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 * @throws PcapException the pcap exception
+	 */
+	@Setup
+	public void setup() throws IOException, PcapException {
+		fname = PcapFiles.resolve(file);
+		dumpFile = File.createTempFile("jnetpcap-jmh-dump-", ".pcap");
+		dumpFile.deleteOnExit();
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		dumpFile.delete();
+	}
+
+	/**
+	 * Loop with a byte array handler, which copies every packet to the heap.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void loopOfArray(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.loop(ALL_PACKETS, (Blackhole u, PcapHeader h, byte[] p) -> u.consume(p), bh);
+		}
+	}
+
+	/**
+	 * Loop with a memory segment handler.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void loopOfMemorySegment(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.loop(ALL_PACKETS, (Blackhole u, MemorySegment h, MemorySegment p) -> u.consume(p), bh);
+		}
+	}
+
+	/**
+	 * Loop with a raw native callback, the lowest overhead handler.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void loopNativeCallback(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.loop(ALL_PACKETS, (PcapHandler.NativeCallback) (u, h, p) -> bh.consume(p.address()),
+					MemorySegment.NULL);
+		}
+	}
+
+	/**
+	 * Loop straight into a savefile, with no Java callback at all.
+	 *
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void loopPcapDumper(PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname);
+				PcapDumper dumper = pcap.dumpOpen(dumpFile.getPath())) {
+			counter.packets += pcap.loop(ALL_PACKETS, dumper);
+		}
+	}
+
+	/**
+	 * Dispatch with a byte array handler.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void dispatchOfArray(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.dispatch(ALL_PACKETS, (Blackhole u, PcapHeader h, byte[] p) -> u.consume(p), bh);
+		}
+	}
+
+	/**
+	 * Dispatch with a memory segment handler.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void dispatchOfMemorySegment(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.dispatch(ALL_PACKETS,
+					(Blackhole u, MemorySegment h, MemorySegment p) -> u.consume(p), bh);
+		}
+	}
+
+	/**
+	 * Dispatch with a raw native callback.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void dispatchNativeCallback(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			counter.packets += pcap.dispatch(ALL_PACKETS, (PcapHandler.NativeCallback) (u, h, p) -> bh.consume(p.address()),
+					MemorySegment.NULL);
+		}
+	}
+
+	/**
+	 * Dispatch straight into a savefile.
+	 *
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void dispatchPcapDumper(PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname);
+				PcapDumper dumper = pcap.dumpOpen(dumpFile.getPath())) {
+			counter.packets += pcap.dispatch(ALL_PACKETS, dumper);
+		}
+	}
+}
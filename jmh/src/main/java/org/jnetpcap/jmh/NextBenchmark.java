@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapPacketRef;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Offline capture throughput of the pull style {@code next}, {@code nextEx}
+ * and cursor based {@code nextEx} calls, reading all packets of a file per
+ * operation.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class NextBenchmark {
+
+	/** The capture file, a sample file name or a synthetic frame size. */
+	@Param({ PcapFiles.HTTP_CAP, "synthetic-64", "synthetic-1500" })
+	public String file;
+
+	/** The resolved file name. */
+	private String fname;
+
+	/** The reusable cursor. */
+	private final PcapCursor cursor = new PcapCursor();
+
+	/**
+	 * Setup.
+	 *
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 * @throws PcapException the pcap exception
+	 */
+	@Setup
+	public void setup() throws IOException, PcapException {
+		fname = PcapFiles.resolve(file);
+	}
+
+	/**
+	 * pcap_next, which copies the header into a buffer and can not report
+	 * errors.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public void next(Blackhole bh, PacketCounter counter) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			PcapPacketRef ref;
+			while ((ref = pcap.next()) != null) {
+				bh.consume(ref.data());
+				counter.packets++;
+			}
+		}
+	}
+
+	/**
+	 * pcap_next_ex, returning a new packet reference per packet.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 */
+	@Benchmark
+	public void nextEx(Blackhole bh, PacketCounter counter) throws PcapException, TimeoutException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			PcapPacketRef ref;
+			while ((ref = pcap.nextEx()) != null) {
+				bh.consume(ref.data());
+				counter.packets++;
+			}
+		}
+	}
+
+	/**
+	 * pcap_next_ex, rebinding a single cursor in place.
+	 *
+	 * @param bh      the blackhole
+	 * @param counter the counter
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 */
+	@Benchmark
+	public void nextExCursor(Blackhole bh, PacketCounter counter) throws PcapException, TimeoutException {
+		try (Pcap pcap = Pcap.openOffline(fname)) {
+			while (pcap.nextEx(cursor)) {
+				bh.consume(cursor.dataAddress());
+				counter.packets++;
+			}
+		}
+	}
+}
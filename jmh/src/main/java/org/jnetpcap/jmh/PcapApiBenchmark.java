@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.BpFilter;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.PcapIf;
+import org.jnetpcap.constant.PcapDlt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of per packet {@code offlineFilter} evaluation and of the less
+ * frequent, but allocation heavy, {@code compile} and {@code findAllDevs}
+ * calls.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class PcapApiBenchmark {
+
+	/** The filter expression, matching the synthetic UDP frames. */
+	private static final String FILTER = "udp dst port 80 and src host 10.0.0.1";
+
+	/** The arena. */
+	private Arena arena;
+
+	/** The pcap. */
+	private Pcap pcap;
+
+	/** The filter. */
+	private BpFilter filter;
+
+	/** The header. */
+	private MemorySegment header;
+
+	/** The packet. */
+	private MemorySegment packet;
+
+	/**
+	 * Setup.
+	 *
+	 * @throws PcapException the pcap exception
+	 */
+	@Setup
+	public void setup() throws PcapException {
+		int frameSize = 64;
+
+		arena = Arena.ofShared();
+		pcap = Pcap.openDead(PcapDlt.EN10MB, PcapFiles.SNAPLEN);
+		filter = pcap.compile(FILTER, true);
+
+		header = new PcapHeader(0, 0, frameSize, frameSize).asMemorySegment();
+		packet = arena.allocate(frameSize);
+		packet.copyFrom(MemorySegment.ofArray(PcapFiles.udpFrame(frameSize)));
+	}
+
+	/**
+	 * Tear down.
+	 */
+	@TearDown
+	public void tearDown() {
+		filter.close();
+		pcap.close();
+		arena.close();
+	}
+
+	/**
+	 * Evaluate a compiled filter against one packet.
+	 *
+	 * @return true if matched
+	 */
+	@Benchmark
+	public boolean offlineFilter() {
+		return Pcap.offlineFilter(filter, header, packet);
+	}
+
+	/**
+	 * Compile and free a filter.
+	 *
+	 * @return the instruction count
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public int compile() throws PcapException {
+		try (BpFilter bpf = pcap.compile(FILTER, true)) {
+			return bpf.length();
+		}
+	}
+
+	/**
+	 * List all capture devices.
+	 *
+	 * @return the devices
+	 * @throws PcapException the pcap exception
+	 */
+	@Benchmark
+	public List<PcapIf> findAllDevs() throws PcapException {
+		return Pcap.findAllDevs();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.jmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.constant.PcapDlt;
+
+/**
+ * Capture files used as benchmark input. Either the {@code HTTP.cap} sample
+ * shipped with the main project's tests, or synthetic files of fixed size
+ * Ethernet/IPv4/UDP frames generated with {@code openDead} and
+ * {@link PcapDumper}.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class PcapFiles {
+
+	/** System property to override the location of the sample capture files. */
+	public static final String SYSTEM_PROPERTY_PCAP_DIR = "org.jnetpcap.jmh.pcaps";
+
+	/** Name of the HTTP sample capture. */
+	public static final String HTTP_CAP = "HTTP.cap";
+
+	/** Prefix of synthetic file names, followed by the frame size. */
+	public static final String SYNTHETIC_PREFIX = "synthetic-";
+
+	/** Number of packets in each synthetic file. */
+	public static final int SYNTHETIC_PACKET_COUNT = 100_000;
+
+	/** Snaplen used for dead handles. */
+	public static final int SNAPLEN = 65535;
+
+	/**
+	 * Resolves a benchmark file parameter to a readable capture file, generating
+	 * synthetic files as needed. Generated files are deleted on exit.
+	 *
+	 * @param name either {@value #HTTP_CAP} or {@value #SYNTHETIC_PREFIX}
+	 *             followed by a frame size
+	 * @return the file name
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 * @throws PcapException the pcap exception
+	 */
+	public static String resolve(String name) throws IOException, PcapException {
+		if (name.startsWith(SYNTHETIC_PREFIX))
+			return generate(Integer.parseInt(name.substring(SYNTHETIC_PREFIX.length())),
+					SYNTHETIC_PACKET_COUNT);
+
+		return sample(name);
+	}
+
+	/**
+	 * Locates a sample capture file from the main project's test resources.
+	 *
+	 * @param name the file name
+	 * @return the file name
+	 * @throws IOException if the file can not be found
+	 */
+	public static String sample(String name) throws IOException {
+		String dir = System.getProperty(SYSTEM_PROPERTY_PCAP_DIR);
+		Path[] candidates = (dir != null)
+				? new Path[] { Path.of(dir, name) }
+				: new Path[] { Path.of("src/test/pcaps", name), Path.of("../src/test/pcaps", name) };
+
+		for (Path p : candidates)
+			if (Files.isReadable(p))
+				return p.toString();
+
+		throw new IOException("sample capture %s not found, set -D%s=<dir>"
+				.formatted(name, SYSTEM_PROPERTY_PCAP_DIR));
+	}
+
+	/**
+	 * Generates a capture file of identical Ethernet/IPv4/UDP frames.
+	 *
+	 * @param frameSize   the frame size, at least 42 bytes
+	 * @param packetCount the packet count
+	 * @return the file name
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 * @throws PcapException the pcap exception
+	 */
+	public static String generate(int frameSize, int packetCount) throws IOException, PcapException {
+		File file = File.createTempFile("jnetpcap-jmh-" + frameSize + "-", ".pcap");
+		file.deleteOnExit();
+
+		try (Arena arena = Arena.ofConfined();
+				Pcap pcap = Pcap.openDead(PcapDlt.EN10MB, SNAPLEN);
+				PcapDumper dumper = pcap.dumpOpen(file.getPath())) {
+
+			MemorySegment packet = arena.allocate(frameSize);
+			packet.copyFrom(MemorySegment.ofArray(udpFrame(frameSize)));
+
+			for (int i = 0; i < packetCount; i++) {
+				var header = new PcapHeader(i / 1000, (i % 1000) * 1000, frameSize, frameSize);
+				dumper.dump(header.asMemorySegment(), packet);
+			}
+		}
+
+		return file.getPath();
+	}
+
+	/**
+	 * Builds an Ethernet/IPv4/UDP frame padded with zeros to the given size.
+	 *
+	 * @param frameSize the frame size
+	 * @return the frame
+	 */
+	public static byte[] udpFrame(int frameSize) {
+		if (frameSize < 42)
+			throw new IllegalArgumentException("frame too small for Ethernet/IPv4/UDP: " + frameSize);
+
+		byte[] frame = new byte[frameSize];
+		int ipLength = frameSize - 14;
+
+		/* Ethernet: locally administered MACs, type IPv4 */
+		frame[0] = 0x02;
+		frame[5] = 0x01;
+		frame[6] = 0x02;
+		frame[11] = 0x02;
+		frame[12] = 0x08;
+
+		/* IPv4: 10.0.0.1 to 10.0.0.2, UDP */
+		frame[14] = 0x45;
+		frame[16] = (byte) (ipLength >> 8);
+		frame[17] = (byte) ipLength;
+		frame[22] = 64;
+		frame[23] = 17;
+		frame[26] = 10;
+		frame[29] = 1;
+		frame[30] = 10;
+		frame[33] = 2;
+
+		/* UDP: port 5000 to 80 */
+		int udpLength = ipLength - 20;
+		frame[34] = (byte) (5000 >> 8);
+		frame[35] = (byte) 5000;
+		frame[37] = 80;
+		frame[38] = (byte) (udpLength >> 8);
+		frame[39] = (byte) udpLength;
+
+		return frame;
+	}
+
+	/**
+	 * Instantiates a new pcap files.
+	 */
+	private PcapFiles() {
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.cds;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeoutException;
+
+import org.jnetpcap.BpFilter;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.io.PcapFileWriter;
+import org.jnetpcap.io.TrafficGenerator;
+
+/**
+ * A training workload for class data sharing (AppCDS) and ahead of time cache
+ * archives.
+ * <p>
+ * Runs the common offline path once, from {@code Pcap.openOffline} through
+ * filtering, {@code loop}, {@code dispatch}, {@code next}, {@code nextEx} and
+ * dumping, so that every class, lambda form and hidden class needed to get to
+ * the first packet is loaded. Running it with
+ * {@code -XX:ArchiveClassesAtExit=jnetpcap.jsa} produces an archive which later
+ * runs map with {@code -XX:SharedArchiveFile=jnetpcap.jsa}. The {@code cds}
+ * maven profile does this as part of the build.
+ * </p>
+ * <p>
+ * It is not part of the library and is not packaged in its jar. The source
+ * launcher compiles and runs it in memory against the packaged jar, which
+ * keeps the archived class path identical to the jar's.
+ * </p>
+ *
+ * <pre>
+ * java --enable-native-access=ALL-UNNAMED \
+ *      -XX:ArchiveClassesAtExit=jnetpcap.jsa \
+ *      -cp jnetpcap-wrapper.jar src/cds/java/org/jnetpcap/cds/CdsTraining.java [file.pcap]
+ * </pre>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class CdsTraining {
+
+	/** Packets generated when no capture file is given. */
+	private static final int TRAINING_PACKETS = 1000;
+
+	/** The training filter. */
+	private static final String FILTER = "ip and (tcp or udp)";
+
+	/**
+	 * Runs the training workload on the given capture file, or on a generated one
+	 * if none is given.
+	 *
+	 * @param args an optional capture file
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	public static void main(String[] args) throws PcapException, IOException {
+		boolean generated = (args.length == 0) || args[0].isBlank();
+		Path file = generated ? generate() : Path.of(args[0]);
+
+		try {
+			long count = train(file.toString());
+
+			System.out.printf("CDS training read %d packets from %s%n", count, file);
+		} finally {
+			if (generated)
+				Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Exercises the offline capture path.
+	 *
+	 * @param file the capture file
+	 * @return number of packets seen
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	private static long train(String file) throws PcapException, IOException {
+		long[] count = new long[1];
+
+		try (Pcap pcap = Pcap.openOffline(file);
+				BpFilter filter = pcap.compile(FILTER, true)) {
+
+			pcap.setFilter(filter);
+			pcap.loop(10, (PcapHandler.OfArray<long[]>) (c, header, packet) -> c[0]++, count);
+			pcap.dispatch(10, (PcapHandler.OfMemorySegment<long[]>) (c, header, packet) -> c[0]++, count);
+			pcap.dispatch(10, (PcapHandler.NativeCallback) (user, header, packet) -> count[0]++,
+					MemorySegment.NULL);
+
+			if (pcap.next() != null)
+				count[0]++;
+
+			try {
+				if (pcap.nextEx() != null)
+					count[0]++;
+			} catch (TimeoutException e) {}
+		}
+
+		Path dump = Files.createTempFile("jnetpcap-cds-", ".pcap");
+		try (Pcap pcap = Pcap.openOffline(file);
+				PcapDumper dumper = pcap.dumpOpen(dump.toString())) {
+
+			pcap.dispatch(10, dumper);
+			dumper.flush();
+		} finally {
+			Files.deleteIfExists(dump);
+		}
+
+		return count[0];
+	}
+
+	/**
+	 * Generates a small synthetic capture file, without the use of libpcap.
+	 *
+	 * @return the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static Path generate() throws IOException {
+		Path file = Files.createTempFile("jnetpcap-cds-", ".pcap");
+
+		try (var generator = new TrafficGenerator(1);
+				var writer = new PcapFileWriter(file, TrafficGenerator.DLT, TrafficGenerator.MAX_FRAME_SIZE)) {
+			generator.dispatch(TRAINING_PACKETS, writer);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Instantiates a new cds training.
+	 */
+	private CdsTraining() {
+	}
+}
@@ -238,12 +238,18 @@
  */
 module org.jnetpcap {
 
+	requires jdk.jfr;
+
 	/* Public API */
 	exports org.jnetpcap;
 	exports org.jnetpcap.windows;
 	exports org.jnetpcap.constant;
 	exports org.jnetpcap.util;
 	exports org.jnetpcap.spi;
+	exports org.jnetpcap.dissect;
+	exports org.jnetpcap.flow;
+	exports org.jnetpcap.io;
+	exports org.jnetpcap.transmit;
 	
 	uses org.jnetpcap.spi.PcapMessagesProvider;
 
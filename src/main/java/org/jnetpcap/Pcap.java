@@ -18,31 +18,40 @@ package org.jnetpcap;
 import static java.util.Objects.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.jnetpcap.Pcap0_4.PcapSupplier;
 import org.jnetpcap.constant.PcapCode;
 import org.jnetpcap.constant.PcapConstants;
 import org.jnetpcap.constant.PcapDirection;
 import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapHeaderValidation;
 import org.jnetpcap.constant.PcapOption;
 import org.jnetpcap.constant.PcapSrc;
 import org.jnetpcap.constant.PcapTStampPrecision;
 import org.jnetpcap.constant.PcapTstampType;
 import org.jnetpcap.internal.PcapForeignInitializer;
 import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.internal.StagingBuffer;
 import org.jnetpcap.util.NetIp4Address;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapMetrics;
 import org.jnetpcap.util.PcapPacketRef;
 import org.jnetpcap.util.PcapVersionException;
 
@@ -235,6 +244,25 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		 */
 		String SYSTEM_PROPERTY_ABI = "org.jnetpcap.abi";
 
+		/**
+		 * System property used to select the default pcap header validation policy
+		 * for new pcap handles. The applicable values are the constant names of
+		 * {@link org.jnetpcap.constant.PcapHeaderValidation}, that is "STRICT",
+		 * "SNAPLEN" or "TRUSTED". The default is "STRICT".
+		 * 
+		 * @see org.jnetpcap.constant.PcapHeaderValidation
+		 */
+		String SYSTEM_PROPERTY_HEADER_VALIDATION = "org.jnetpcap.abi.validation";
+
+		/**
+		 * System property which, when set to "true", enables hot path metrics for
+		 * all new pcap handles and timing of native downcalls. The default is
+		 * "false".
+		 * 
+		 * @see org.jnetpcap.util.PcapMetrics
+		 */
+		String SYSTEM_PROPERTY_METRICS = "org.jnetpcap.metrics";
+
 		/**
 		 * Default value ("true") for {@link #SYSTEM_PROPERTY_SO_IGNORE_LOAD_ERRORS}
 		 * property if not specified in system properties.
@@ -1627,6 +1655,84 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		return Pcap0_4.openOffline(latest(), fname);
 	}
 
+	/**
+	 * Open a saved capture held in memory for reading.
+	 * 
+	 * <p>
+	 * The capture is read straight from memory, without a round trip through the
+	 * file system, using a C {@code FILE} stream created with {@code fmemopen} and
+	 * pcap_fopen_offline(). The returned handle supports the same offline API as
+	 * one opened from a file. A native segment, such as a memory mapped file, is
+	 * read in place and must remain valid until the handle is closed, while a heap
+	 * segment is first copied into native memory released when the handle is
+	 * closed.
+	 * </p>
+	 * <p>
+	 * Not available on Microsoft Windows, where the C library does not provide
+	 * {@code fmemopen}.
+	 * </p>
+	 *
+	 * @param savefile the contents of a pcap or pcapng savefile
+	 * @return the pcap handle
+	 * @throws PcapException                 any errors
+	 * @throws UnsupportedOperationException if fmemopen is not available on this
+	 *                                       platform
+	 * @since libpcap 0.9
+	 */
+	public static Pcap openOffline(MemorySegment savefile) throws PcapException {
+		return Pcap0_9.openOffline(latest(), savefile);
+	}
+
+	/**
+	 * Open a saved capture read from a channel.
+	 * 
+	 * <p>
+	 * The channel is read to its end into native memory, which is released when
+	 * the handle is closed, and the capture is then opened as with
+	 * {@link #openOffline(MemorySegment)}. The channel is not closed.
+	 * </p>
+	 * <p>
+	 * The whole input is buffered in memory before the first packet is read, so
+	 * memory use grows with the size of the capture. Captures larger than the
+	 * available memory should be opened by file name with
+	 * {@link #openOffline(String)}.
+	 * </p>
+	 *
+	 * @param channel the channel to read a pcap or pcapng savefile from
+	 * @return the pcap handle
+	 * @throws PcapException any errors
+	 * @throws IOException   if reading the channel fails
+	 * @since libpcap 0.9
+	 */
+	public static Pcap openOffline(ReadableByteChannel channel) throws PcapException, IOException {
+		return Pcap0_9.openOffline(latest(), channel);
+	}
+
+	/**
+	 * Open a saved capture read from an input stream.
+	 * 
+	 * <p>
+	 * The stream is read to its end into native memory, which is released when
+	 * the handle is closed, and the capture is then opened as with
+	 * {@link #openOffline(MemorySegment)}. The stream is not closed.
+	 * </p>
+	 * <p>
+	 * The whole input is buffered in memory before the first packet is read, so
+	 * memory use grows with the size of the capture. Captures larger than the
+	 * available memory should be opened by file name with
+	 * {@link #openOffline(String)}.
+	 * </p>
+	 *
+	 * @param in the stream to read a pcap or pcapng savefile from
+	 * @return the pcap handle
+	 * @throws PcapException any errors
+	 * @throws IOException   if reading the stream fails
+	 * @since libpcap 0.9
+	 */
+	public static Pcap openOffline(InputStream in) throws PcapException, IOException {
+		return Pcap0_9.openOffline(latest(), Channels.newChannel(in));
+	}
+
 	/**
 	 * Convert an error full value to a string.
 	 *
@@ -1686,6 +1792,9 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 	/** The pcap header ABI. */
 	protected final PcapHeaderABI pcapHeaderABI;
 
+	/** Native staging buffer for packets sent from heap memory. */
+	protected final StagingBuffer stagingBuffer = new StagingBuffer();
+
 	/**
 	 * Instantiates a new pcap.
 	 *
@@ -2458,6 +2567,27 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		throw new UnsupportedOperationException(minApi("Pcap0_9", "0.9"));
 	}
 
+	/**
+	 * Transmit a packet stored at an offset within a larger native buffer.
+	 * <p>
+	 * Same as {@link #inject(MemorySegment, int)}, but the native function is
+	 * invoked with an exact method handle invocation and the packet address is
+	 * passed as a raw address, so no objects are allocated per call. This is
+	 * intended for bulk transmission from a single off-heap buffer, such as a send
+	 * queue. The buffer must not be closed while the call is in progress.
+	 * </p>
+	 *
+	 * @param buffer a native memory segment containing the packet
+	 * @param offset byte offset of the packet within the buffer
+	 * @param length the packet length
+	 * @return number of bytes written
+	 * @throws PcapException the pcap exception
+	 * @since libpcap 0.9
+	 */
+	public int inject(MemorySegment buffer, long offset, int length) throws PcapException {
+		throw new UnsupportedOperationException(minApi("Pcap0_9", "0.9")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Transmit a packet.
 	 * <p>
@@ -2535,12 +2665,12 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 	 * @throws PcapException the pcap exception
 	 */
 	public final int inject(byte[] array, int offset, int length) throws PcapException {
-		try (var scope = newArena()) {
-			MemorySegment mseg = scope.allocate(length);
+		synchronized (stagingBuffer) {
+			MemorySegment mseg = stagingBuffer.ensureCapacity(length);
 
 			MemorySegment.copy(array, offset, mseg, ValueLayout.JAVA_BYTE, 0, length);
 
-			return inject(mseg, length);
+			return inject(mseg, 0, length);
 		}
 	}
 
@@ -2591,6 +2721,170 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		}
 	}
 
+	/**
+	 * Transmit a batch of packets.
+	 * <p>
+	 * All packets are first staged into a reusable native buffer owned by this
+	 * handle, then transmitted back to back with {@code pcap_inject}. Once the
+	 * staging buffer has grown to the size of the largest batch, no memory is
+	 * allocated per call. A failure to transmit one packet does not stop the
+	 * batch, the negative libpcap error code is stored in its result slot
+	 * instead.
+	 * </p>
+	 *
+	 * @param packets the packets, each including the datalink layer
+	 * @param results receives, for each packet, the number of bytes written or a
+	 *                negative error code; must be at least as long as packets
+	 * @return number of packets transmitted successfully
+	 * @throws PcapException the pcap exception
+	 * @see #inject(MemorySegment, long, int)
+	 * @since libpcap 0.9
+	 */
+	public final int injectBatch(byte[][] packets, int[] results) throws PcapException {
+		checkFromIndexSize(0, packets.length, results.length);
+
+		long total = 0;
+		for (byte[] packet : packets)
+			total += packet.length;
+
+		synchronized (stagingBuffer) {
+			MemorySegment mseg = stagingBuffer.ensureCapacity(total);
+
+			long offset = 0;
+			for (byte[] packet : packets) {
+				MemorySegment.copy(packet, 0, mseg, ValueLayout.JAVA_BYTE, offset, packet.length);
+				offset += packet.length;
+			}
+
+			offset = 0;
+			int sent = 0;
+			for (int i = 0; i < packets.length; i++) {
+				results[i] = injectOrError(mseg, offset, packets[i].length);
+				offset += packets[i].length;
+
+				if (results[i] >= 0)
+					sent++;
+			}
+
+			return sent;
+		}
+	}
+
+	/**
+	 * Transmit a batch of packets.
+	 * <p>
+	 * Same as {@link #injectBatch(byte[][], int[])}, where each packet starts at
+	 * the buffer's position (inclusive) and ends at the buffer's limit
+	 * (exclusive). Buffer positions are not modified.
+	 * </p>
+	 *
+	 * @param packets the packet buffers, heap or direct
+	 * @param results receives, for each packet, the number of bytes written or a
+	 *                negative error code; must be at least as long as packets
+	 * @return number of packets transmitted successfully
+	 * @throws PcapException the pcap exception
+	 * @since libpcap 0.9
+	 */
+	public final int injectBatch(ByteBuffer[] packets, int[] results) throws PcapException {
+		checkFromIndexSize(0, packets.length, results.length);
+
+		long total = 0;
+		for (ByteBuffer packet : packets)
+			total += packet.remaining();
+
+		synchronized (stagingBuffer) {
+			MemorySegment mseg = stagingBuffer.ensureCapacity(total);
+
+			long offset = 0;
+			for (ByteBuffer packet : packets) {
+				int len = packet.remaining();
+				MemorySegment.copy(MemorySegment.ofBuffer(packet), 0, mseg, offset, len);
+				offset += len;
+			}
+
+			offset = 0;
+			int sent = 0;
+			for (int i = 0; i < packets.length; i++) {
+				int len = packets[i].remaining();
+				results[i] = injectOrError(mseg, offset, len);
+				offset += len;
+
+				if (results[i] >= 0)
+					sent++;
+			}
+
+			return sent;
+		}
+	}
+
+	/**
+	 * Transmit a batch of packets stored within a single array.
+	 * <p>
+	 * Same as {@link #injectBatch(byte[][], int[])}, but the region of the array
+	 * spanned by the packets is staged with a single bulk copy. Packets may be
+	 * stored in any order and may overlap.
+	 * </p>
+	 *
+	 * @param buffer  the array containing all packets
+	 * @param offsets the offset of each packet within the array
+	 * @param lengths the length of each packet
+	 * @param count   number of packets to transmit
+	 * @param results receives, for each packet, the number of bytes written or a
+	 *                negative error code
+	 * @return number of packets transmitted successfully
+	 * @throws PcapException the pcap exception
+	 * @since libpcap 0.9
+	 */
+	public final int injectBatch(byte[] buffer, int[] offsets, int[] lengths, int count, int[] results)
+			throws PcapException {
+		checkFromIndexSize(0, count, offsets.length);
+		checkFromIndexSize(0, count, lengths.length);
+		checkFromIndexSize(0, count, results.length);
+
+		if (count == 0)
+			return 0;
+
+		int start = Integer.MAX_VALUE;
+		int end = 0;
+		for (int i = 0; i < count; i++) {
+			checkFromIndexSize(offsets[i], lengths[i], buffer.length);
+
+			start = Math.min(start, offsets[i]);
+			end = Math.max(end, offsets[i] + lengths[i]);
+		}
+
+		synchronized (stagingBuffer) {
+			MemorySegment mseg = stagingBuffer.ensureCapacity(end - start);
+			MemorySegment.copy(buffer, start, mseg, ValueLayout.JAVA_BYTE, 0, end - start);
+
+			int sent = 0;
+			for (int i = 0; i < count; i++) {
+				results[i] = injectOrError(mseg, offsets[i] - start, lengths[i]);
+
+				if (results[i] >= 0)
+					sent++;
+			}
+
+			return sent;
+		}
+	}
+
+	/**
+	 * Inject a staged packet, returning the error code instead of throwing.
+	 *
+	 * @param mseg   the staging buffer
+	 * @param offset the packet offset
+	 * @param length the packet length
+	 * @return number of bytes written or a negative error code
+	 */
+	private int injectOrError(MemorySegment mseg, long offset, int length) {
+		try {
+			return inject(mseg, offset, length);
+		} catch (PcapException e) {
+			return (e.getCode() < 0) ? e.getCode() : PcapCode.PCAP_ERROR;
+		}
+	}
+
 	/**
 	 * Find out whether a savefile has the native byte order.
 	 * 
@@ -3042,6 +3336,70 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		throw new UnsupportedOperationException(minApi("Pcap0_8", "0.8")); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * Read the next packet from a pcap handle into a reusable cursor.
+	 * <p>
+	 * Works the same as {@link #nextEx()}, except that instead of allocating a
+	 * new {@link PcapPacketRef} for every packet, the supplied cursor is rebound
+	 * in place to the native pcap header and packet data. The capture length,
+	 * wire length and timestamp are cached in the cursor as primitives and
+	 * correctly sized header and data segments are created only on demand. A
+	 * pull-style reader can reuse a single cursor for the entire capture without
+	 * allocating any objects per packet.
+	 * </p>
+	 * <p>
+	 * The native memory the cursor is bound to is not guaranteed to be valid
+	 * after the next call to {@link #nextEx}, {@link #next}, {@link #loop}, or
+	 * {@link #dispatch}.
+	 * </p>
+	 *
+	 * @param cursor the cursor to rebind to the next packet
+	 * @return true if the cursor was bound to the next packet, or false if packets
+	 *         are being read from a ``savefile'' and there are no more packets to
+	 *         read from the savefile
+	 * @throws PcapException    any pcap errors such as not activated, etc.
+	 * @throws TimeoutException if packets are being read from a live capture and
+	 *                          the packet buffer timeout expired
+	 * @since Pcap 0.8
+	 */
+	public boolean nextEx(PcapCursor cursor) throws PcapException, TimeoutException {
+		throw new UnsupportedOperationException(minApi("Pcap0_8", "0.8")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Returns a sequential stream of packets read from this pcap handle.
+	 * <p>
+	 * A sequential stream reads packets using {@link #nextEx(PcapCursor)} with a
+	 * single reusable cursor. Each element references libpcap's packet buffer
+	 * directly and is only valid until the next element is produced, therefore
+	 * elements must be copied, for example using {@link PcapPacketRef#toArray()},
+	 * if they need to be retained. Timeouts on live captures are retried and the
+	 * stream ends when a ``savefile'' is exhausted or {@link #breakloop()} is
+	 * called. Each element is a small {@link PcapPacketRef} record over the
+	 * cursor's memory; consumers which must not allocate per packet should call
+	 * {@link #nextEx(PcapCursor)} directly.
+	 * </p>
+	 * <p>
+	 * If the stream is made parallel and this handle was opened with
+	 * {@link #openOffline(String)} on a classic pcap ``savefile'', the file is
+	 * instead memory mapped and split into record aligned regions, one per worker,
+	 * bypassing libpcap entirely. In this mode elements reference the mapped file
+	 * and remain valid for as long as they are reachable, so
+	 * {@code pcap.stream().parallel().filter(...).toList()} is safe. The parallel
+	 * reader is only used when it returns the same packets and timestamps as
+	 * libpcap would. A handle with a filter set by {@link #setFilter(BpFilter)},
+	 * a file whose timestamp precision differs from the handle's, the pcapng
+	 * format, and a ``savefile'' from which packets were already read before the
+	 * stream was created are all read sequentially through libpcap.
+	 * </p>
+	 *
+	 * @return the packet stream
+	 * @since Pcap 0.8
+	 */
+	public Stream<PcapPacketRef> stream() {
+		throw new UnsupportedOperationException(minApi("Pcap0_8", "0.8")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Returns the {@link ByteOrder} of the current capture based on results from
 	 * {@link #isSwapped()} method call. Calculates the actual byte order of the
@@ -3174,8 +3532,8 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 	 * @since libpcap 0.8
 	 */
 	public final void sendPacket(final byte[] buf, int offset, int length) throws PcapException {
-		try (var scope = newArena()) {
-			MemorySegment mseg = scope.allocate(length);
+		synchronized (stagingBuffer) {
+			MemorySegment mseg = stagingBuffer.ensureCapacity(length);
 
 			MemorySegment.copy(buf, offset, mseg, ValueLayout.JAVA_BYTE, 0, length);
 
@@ -3628,6 +3986,25 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * Get capture statistics into a caller supplied native pcap_stat structure.
+	 * <p>
+	 * Same as {@link #stats()}, but nothing is allocated per call, which makes it
+	 * suitable for polling statistics at a high rate or from a busy handle. The
+	 * structure can be decoded with {@code PcapStatRecord} or read directly. All
+	 * counters are unsigned 32-bit values, which may wrap around.
+	 * </p>
+	 *
+	 * @param pcapStat the native pcap_stat structure to fill in, at least
+	 *                 {@link PcapConstants#PCAP_STAT_SIZE} bytes long
+	 * @throws PcapException the pcap exception
+	 * @see #stats()
+	 * @since libpcap 0.4
+	 */
+	public void stats(MemorySegment pcapStat) throws PcapException {
+		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Debug info about this pcap handle.
 	 *
@@ -3676,4 +4053,58 @@ public abstract sealed class Pcap implements AutoCloseable permits Pcap0_4 {
 	public Pcap setUncaughtExceptionHandler(UncaughtExceptionHandler exceptionHandler) {
 		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
 	}
+
+	/**
+	 * Sets the pcap header validation policy for this handle. The policy is
+	 * resolved immediately into precomputed length bounds, for example the
+	 * {@link PcapHeaderValidation#SNAPLEN} policy reads the snaplen of this handle
+	 * at the time of the call, so that per packet validation in {@link #loop},
+	 * {@link #dispatch} and {@link #nextEx(PcapCursor)} is at most a single range
+	 * check. The default policy is defined by the
+	 * {@value LibraryPolicy#SYSTEM_PROPERTY_HEADER_VALIDATION} system property.
+	 *
+	 * @param policy the header validation policy
+	 * @return this pcap
+	 * @see PcapHeaderValidation
+	 */
+	public Pcap setHeaderValidation(PcapHeaderValidation policy) {
+		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Gets the pcap header validation policy of this handle.
+	 *
+	 * @return the header validation policy
+	 * @see #setHeaderValidation(PcapHeaderValidation)
+	 */
+	public PcapHeaderValidation getHeaderValidation() {
+		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Enables or disables hot path metrics for this handle. While enabled, packets,
+	 * bytes, callbacks, callback exceptions and interrupts are counted and the
+	 * duration of every user callback is recorded in a latency histogram. While
+	 * disabled, which is the default unless the
+	 * {@value LibraryPolicy#SYSTEM_PROPERTY_METRICS} system property is set, the
+	 * capture path is not affected. Disabling discards all recorded metrics.
+	 *
+	 * @param enabled true to enable metrics
+	 * @return this pcap
+	 * @see #metrics()
+	 */
+	public Pcap setMetricsEnabled(boolean enabled) {
+		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Takes a snapshot of this handle's hot path metrics.
+	 *
+	 * @return the metrics snapshot, {@link PcapMetrics#DISABLED} if metrics are
+	 *         not enabled
+	 * @see #setMetricsEnabled(boolean)
+	 */
+	public PcapMetrics metrics() {
+		throw new UnsupportedOperationException(minApi("Pcap0_4", "0.4")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
 }
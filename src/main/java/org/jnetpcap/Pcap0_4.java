@@ -23,12 +23,15 @@ import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import org.jnetpcap.PcapHandler.OfMemorySegment;
 import org.jnetpcap.constant.PcapCode;
 import org.jnetpcap.constant.PcapConstants;
+import org.jnetpcap.constant.PcapHeaderValidation;
 import org.jnetpcap.constant.PcapDlt;
 import org.jnetpcap.internal.ForeignUtils;
 import org.jnetpcap.internal.PcapDispatcher;
@@ -36,8 +39,10 @@ import org.jnetpcap.internal.PcapForeignDowncall;
 import org.jnetpcap.internal.PcapForeignInitializer;
 import org.jnetpcap.internal.PcapHeaderABI;
 import org.jnetpcap.internal.PcapStatRecord;
+import org.jnetpcap.internal.PcapStatsEvent;
 import org.jnetpcap.internal.StandardPcapDispatcher;
 import org.jnetpcap.util.NetIp4Address;
+import org.jnetpcap.util.PcapMetrics;
 import org.jnetpcap.util.PcapPacketRef;
 
 import static java.lang.foreign.MemorySegment.*;
@@ -458,15 +463,41 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 			if (ForeignUtils.isNullAddress(pcapPointer))
 				throw new PcapException(PcapCode.PCAP_ERROR, errbuf.getString(0, java.nio.charset.StandardCharsets.UTF_8));
 
-			boolean isSwapped = pcap_is_swapped
-					.invokeInt(pcapPointer) == 1;
+			T pcap = newOfflinePcap(pcapSupplier, pcapPointer, makeOfflineHandleName(fname));
 
-			var abi = PcapHeaderABI.selectOfflineAbi(isSwapped);
+			/* "-" reads from stdin, not from a file by that name */
+			if (!fname.equals("-")) {
+				try {
+					((Pcap0_4) pcap).attachOfflineFile(Path.of(fname));
+				} catch (InvalidPathException e) {
+					// Only read through libpcap
+				}
+			}
 
-			return pcapSupplier.newPcap(pcapPointer, makeOfflineHandleName(fname), abi);
+			return pcap;
 		}
 	}
 
+	/**
+	 * Wraps a newly opened offline pcap_t pointer, selecting the header ABI based
+	 * on the savefile's byte order.
+	 *
+	 * @param <T>          the generic type
+	 * @param pcapSupplier the pcap supplier
+	 * @param pcapPointer  the pcap_t pointer
+	 * @param name         the handle name
+	 * @return the pcap handle
+	 */
+	static <T extends Pcap> T newOfflinePcap(PcapSupplier<T> pcapSupplier, MemorySegment pcapPointer,
+			String name) {
+		boolean isSwapped = pcap_is_swapped
+				.invokeInt(pcapPointer) == 1;
+
+		var abi = PcapHeaderABI.selectOfflineAbi(isSwapped);
+
+		return pcapSupplier.newPcap(pcapPointer, name, abi);
+	}
+
 	/**
 	 * Open a saved capture file for reading.
 	 * 
@@ -514,6 +545,15 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 	 */
 	protected PcapDispatcher dispatcher;
 
+	/** Memory backing a savefile opened from memory, released on close. */
+	private Arena offlineSource;
+
+	/** The savefile, only for handles opened on a file by name. */
+	private Path offlineFile;
+
+	/** Set once a filter was applied to this handle. */
+	private boolean filtered;
+
 	/**
 	 * Instantiates a new pcap 0 4.
 	 *
@@ -526,6 +566,36 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 		this.dispatcher = new StandardPcapDispatcher(getPcapHandle(), abi, this::breakloop);
 	}
 
+	/**
+	 * Attaches the memory backing a savefile opened from memory, which must stay
+	 * valid until the handle is closed.
+	 *
+	 * @param source the arena owning the savefile's memory
+	 */
+	void attachOfflineSource(Arena source) {
+		this.offlineSource = source;
+	}
+
+	/**
+	 * Attaches the savefile this handle was opened on by name.
+	 *
+	 * @param file the savefile
+	 */
+	void attachOfflineFile(Path file) {
+		this.offlineFile = file;
+	}
+
+	/**
+	 * The savefile which can be read directly instead of through libpcap, with
+	 * the same packets as a result. Only handles opened on a file by name, which
+	 * have no filter set, qualify.
+	 *
+	 * @return the savefile or null
+	 */
+	Path directlyReadableFile() {
+		return filtered ? null : offlineFile;
+	}
+
 	/**
 	 * Sets the packet dispatcher implementation.
 	 *
@@ -555,6 +625,15 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 		pcap_close.invokeVoid(getPcapHandle());
 		dispatcher.close();
 
+		if (offlineSource != null) {
+			offlineSource.close();
+			offlineSource = null;
+		}
+
+		synchronized (stagingBuffer) {
+			stagingBuffer.close();
+		}
+
 		closed = true;
 	}
 
@@ -707,13 +786,12 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 	@Override
 	public final <U> int dispatch(int count, PcapHandler.OfArray<U> handler, U user) {
 		MemorySegment aUser = (user instanceof MemorySegment addr) ? addr : NULL;
+		boolean validateHeaderLength = (dispatcher.headerValidation() == PcapHeaderValidation.STRICT);
 
 		return dispatcher.dispatchNative(count, (u, header, bytes) -> {
 			try (var arena = newArena()) {
-				PcapHeader hdr = new PcapHeader(super.pcapHeaderABI, header, arena);
-
-				int caplen = hdr.captureLength();
-				assert caplen < PcapConstants.MAX_SNAPLEN : "caplen/wirelen out of range " + caplen;
+				int caplen = dispatcher.captureLength(header);
+				PcapHeader hdr = new PcapHeader(super.pcapHeaderABI, header, arena, validateHeaderLength);
 
 				byte[] packet = bytes.reinterpret(caplen)
 						.toArray(ValueLayout.JAVA_BYTE);
@@ -851,13 +929,12 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 	@Override
 	public <U> int loop(int count, PcapHandler.OfArray<U> handler, U user) {
 		MemorySegment aUser = (user instanceof MemorySegment addr) ? addr : NULL;
+		boolean validateHeaderLength = (dispatcher.headerValidation() == PcapHeaderValidation.STRICT);
 
 		return dispatcher.loopNative(count, (u, header, bytes) -> {
 			try (var arena = newArena()) {
-				PcapHeader hdr = new PcapHeader(super.pcapHeaderABI, header, arena);
-
-				int caplen = hdr.captureLength();
-				assert caplen < PcapConstants.MAX_SNAPLEN : "caplen/wirelen out of range " + caplen;
+				int caplen = dispatcher.captureLength(header);
+				PcapHeader hdr = new PcapHeader(super.pcapHeaderABI, header, arena, validateHeaderLength);
 
 				byte[] packet = bytes.reinterpret(caplen)
 						.toArray(ValueLayout.JAVA_BYTE);
@@ -962,6 +1039,7 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 	@Override
 	public final Pcap0_4 setFilter(BpFilter bpfProgram) throws PcapException {
 		pcap_setfilter.invokeInt(this::getErrorString, getPcapHandle(), bpfProgram.address());
+		this.filtered = true;
 
 		return this;
 	}
@@ -991,11 +1069,25 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 			MemorySegment mseg = arena.allocate(PcapConstants.PCAP_STAT_SIZE);
 
 			pcap_stats.invokeInt(this::getErrorString, getPcapHandle(), mseg);
+			PcapStatsEvent.emit(mseg);
 
 			return PcapStatRecord.ofMemoryPlatformDependent(mseg);
 		}
 	}
 
+	/**
+	 * Stats.
+	 *
+	 * @param pcapStat the pcap stat
+	 * @throws PcapException the pcap exception
+	 * @see org.jnetpcap.Pcap#stats(java.lang.foreign.MemorySegment)
+	 */
+	@Override
+	public final void stats(MemorySegment pcapStat) throws PcapException {
+		pcap_stats.invokeInt(this::getErrorString, getPcapHandle(), pcapStat);
+		PcapStatsEvent.emit(pcapStat);
+	}
+
 	/**
 	 * Sets the uncaught exception handler for {@link #loop} and {@link #dispatch}
 	 * methods. Any exception thrown within the user callback methods, will be
@@ -1010,4 +1102,54 @@ public sealed class Pcap0_4 extends Pcap permits Pcap0_5 {
 
 		return this;
 	}
+
+	/**
+	 * Sets the header validation policy.
+	 *
+	 * @param policy the policy
+	 * @return this pcap
+	 * @see org.jnetpcap.Pcap#setHeaderValidation(org.jnetpcap.constant.PcapHeaderValidation)
+	 */
+	@Override
+	public Pcap setHeaderValidation(PcapHeaderValidation policy) {
+		dispatcher.setHeaderValidation(policy);
+
+		return this;
+	}
+
+	/**
+	 * Gets the header validation policy.
+	 *
+	 * @return the header validation policy
+	 * @see org.jnetpcap.Pcap#getHeaderValidation()
+	 */
+	@Override
+	public PcapHeaderValidation getHeaderValidation() {
+		return dispatcher.headerValidation();
+	}
+
+	/**
+	 * Sets the metrics enabled.
+	 *
+	 * @param enabled the enabled
+	 * @return this pcap
+	 * @see org.jnetpcap.Pcap#setMetricsEnabled(boolean)
+	 */
+	@Override
+	public Pcap setMetricsEnabled(boolean enabled) {
+		dispatcher.setMetricsEnabled(enabled);
+
+		return this;
+	}
+
+	/**
+	 * Metrics.
+	 *
+	 * @return the pcap metrics
+	 * @see org.jnetpcap.Pcap#metrics()
+	 */
+	@Override
+	public PcapMetrics metrics() {
+		return dispatcher.metrics();
+	}
 }
@@ -16,16 +16,22 @@
 package org.jnetpcap;
 
 import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapTStampPrecision;
 import org.jnetpcap.internal.PcapForeignDowncall;
 import org.jnetpcap.internal.PcapForeignInitializer;
 import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.internal.PcapPacketSpliterator;
+import org.jnetpcap.util.PcapCursor;
 import org.jnetpcap.util.PcapPacketRef;
 
 import static java.lang.foreign.ValueLayout.*;
@@ -511,6 +517,47 @@ public sealed class Pcap0_8 extends Pcap0_7 permits Pcap0_9 {
 		return dispatcher.nextEx();
 	}
 
+	/**
+	 * Next ex.
+	 *
+	 * @param cursor the cursor
+	 * @return true, if successful
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 * @see org.jnetpcap.Pcap#nextEx(org.jnetpcap.util.PcapCursor)
+	 */
+	@Override
+	public boolean nextEx(PcapCursor cursor) throws PcapException, TimeoutException {
+		return dispatcher.nextEx(cursor);
+	}
+
+	/**
+	 * Stream.
+	 *
+	 * @return the stream
+	 * @see org.jnetpcap.Pcap#stream()
+	 */
+	@Override
+	public Stream<PcapPacketRef> stream() {
+		Path file = dispatcher.hasRead() ? null : directlyReadableFile();
+
+		return StreamSupport.stream(new PcapPacketSpliterator(this, file, isNanoTime()), false);
+	}
+
+	/**
+	 * Checks if headers delivered by this handle carry nanosecond timestamps.
+	 * Handles without timestamp precision support always deliver micros.
+	 *
+	 * @return true, if in nanos
+	 */
+	private boolean isNanoTime() {
+		try {
+			return getTstampPrecision() == PcapTStampPrecision.TSTAMP_PRECISION_NANO;
+		} catch (UnsupportedOperationException | PcapException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * Send packet.
 	 *
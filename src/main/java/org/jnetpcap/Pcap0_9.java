@@ -15,10 +15,18 @@
  */
 package org.jnetpcap;
 
+import static org.jnetpcap.constant.PcapConstants.*;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
+import org.jnetpcap.constant.PcapCode;
 import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.internal.ForeignUtils;
 import org.jnetpcap.internal.PcapForeignDowncall;
 import org.jnetpcap.internal.PcapForeignInitializer;
 import org.jnetpcap.internal.PcapHeaderABI;
@@ -97,6 +105,15 @@ public sealed class Pcap0_9 extends Pcap0_8 permits Pcap1_0 {
 	 */
 	private static final PcapForeignDowncall pcap_inject;
 
+	/**
+	 * The Constant pcap_inject, with the buffer passed as a raw address for exact
+	 * invocation.
+	 *
+	 * @see {@code int pcap_inject(pcap_t *p, const void *buf, size_t size)}
+	 * @since libpcap 0.9
+	 */
+	private static final PcapForeignDowncall pcap_inject_address;
+
 	/**
 	 * The Constant pcap_setdirection.
 	 *
@@ -105,17 +122,174 @@ public sealed class Pcap0_9 extends Pcap0_8 permits Pcap1_0 {
 	 */
 	private static final PcapForeignDowncall pcap_setdirection;
 
+	/**
+	 * The Constant pcap_fopen_offline.
+	 *
+	 * @see {@code pcap_t *pcap_fopen_offline(FILE *fp, char *errbuf)}
+	 * @since libpcap 0.9
+	 */
+	private static final PcapForeignDowncall pcap_fopen_offline;
+
+	/**
+	 * The Constant fmemopen, from the C library, used to read savefiles from
+	 * memory. Not available on Microsoft Windows.
+	 *
+	 * @see {@code FILE *fmemopen(void *buf, size_t size, const char *mode)}
+	 */
+	private static final PcapForeignDowncall fmemopen;
+
+	/**
+	 * The Constant fclose, from the C library.
+	 *
+	 * @see {@code int fclose(FILE *stream)}
+	 */
+	private static final PcapForeignDowncall fclose;
+
+	/** Initial buffer size when reading a savefile from a channel. */
+	private static final int CHANNEL_BUFFER_SIZE = 1024 * 1024;
+
 	static {
 		try (var foreign = new PcapForeignInitializer(Pcap0_9.class)) {
 
 			// @formatter:off
-			pcap_inject       = foreign.downcall("pcap_inject(AAJ)I");
-			pcap_setdirection = foreign.downcall("pcap_setdirection(AI)I");
+			pcap_inject         = foreign.downcall("pcap_inject(AAJ)I");
+			pcap_inject_address = foreign.downcall("pcap_inject(AJJ)I");
+			pcap_setdirection   = foreign.downcall("pcap_setdirection(AI)I");
+			pcap_fopen_offline  = foreign.downcall("pcap_fopen_offline(AA)A");
+			fmemopen            = foreign.downcall("fmemopen(AJA)A");
+			fclose              = foreign.downcall("fclose(A)I");
 			// @formatter:on
 
 		}
 	}
 
+	/**
+	 * Open a savefile held in memory for reading.
+	 * <p>
+	 * The memory is wrapped in a C {@code FILE} stream using {@code fmemopen} and
+	 * opened with {@code pcap_fopen_offline}, so the returned handle supports the
+	 * full offline API, exactly as if opened from a file. A native segment is read
+	 * in place and must remain valid until the handle is closed, while a heap
+	 * segment is first copied into native memory owned by the handle.
+	 * </p>
+	 *
+	 * @param <T>          the generic type
+	 * @param pcapSupplier the pcap supplier
+	 * @param savefile     the savefile contents
+	 * @return the pcap handle
+	 * @throws PcapException any errors
+	 * @since libpcap 0.9
+	 */
+	protected static <T extends Pcap> T openOffline(PcapSupplier<T> pcapSupplier, MemorySegment savefile)
+			throws PcapException {
+
+		if (savefile.isNative())
+			return openOffline(pcapSupplier, savefile, null);
+
+		Arena source = Arena.ofShared();
+		try {
+			MemorySegment copy = source.allocate(savefile.byteSize());
+			copy.copyFrom(savefile);
+
+			return openOffline(pcapSupplier, copy, source);
+		} catch (Throwable e) {
+			source.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a savefile read from a channel. The channel is read to its end into
+	 * native memory owned by the returned handle, and is not closed. The whole
+	 * savefile is buffered in memory before it is opened.
+	 *
+	 * @param <T>          the generic type
+	 * @param pcapSupplier the pcap supplier
+	 * @param channel      the channel to read the savefile from
+	 * @return the pcap handle
+	 * @throws PcapException any errors
+	 * @throws IOException   if reading the channel fails
+	 * @since libpcap 0.9
+	 */
+	protected static <T extends Pcap> T openOffline(PcapSupplier<T> pcapSupplier, ReadableByteChannel channel)
+			throws PcapException, IOException {
+
+		Arena source = Arena.ofShared();
+		try {
+			MemorySegment buffer = source.allocate(CHANNEL_BUFFER_SIZE);
+			long length = 0;
+
+			while (true) {
+				if (length == buffer.byteSize()) {
+					Arena larger = Arena.ofShared();
+					MemorySegment grown = larger.allocate(buffer.byteSize() * 2);
+					grown.copyFrom(buffer);
+
+					source.close();
+					source = larger;
+					buffer = grown;
+				}
+
+				long free = Math.min(buffer.byteSize() - length, Integer.MAX_VALUE);
+				int n = channel.read(buffer.asSlice(length, free).asByteBuffer());
+				if (n < 0)
+					break;
+
+				length += n;
+			}
+
+			return openOffline(pcapSupplier, buffer.asSlice(0, length), source);
+		} catch (Throwable e) {
+			source.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens a native savefile image with fmemopen and pcap_fopen_offline.
+	 *
+	 * @param <T>          the generic type
+	 * @param pcapSupplier the pcap supplier
+	 * @param savefile     the savefile contents, in native memory
+	 * @param source       the arena owning the savefile memory, handed to the
+	 *                     new handle, or null if owned by the caller
+	 * @return the pcap handle
+	 * @throws PcapException any errors
+	 */
+	private static <T extends Pcap> T openOffline(PcapSupplier<T> pcapSupplier, MemorySegment savefile,
+			Arena source) throws PcapException {
+
+		if (!fmemopen.isNativeSymbolResolved())
+			throw new UnsupportedOperationException("fmemopen is not available on this platform");
+
+		if (savefile.byteSize() == 0)
+			throw new PcapException(PcapCode.PCAP_ERROR, "empty savefile");
+
+		try (var arena = newArena()) {
+			MemorySegment c_mode = arena.allocateFrom("rb", java.nio.charset.StandardCharsets.UTF_8);
+			MemorySegment errbuf = arena.allocate(PCAP_ERRBUF_SIZE);
+
+			MemorySegment fp = fmemopen.invokeObj(savefile, savefile.byteSize(), c_mode);
+			if (ForeignUtils.isNullAddress(fp))
+				throw new PcapException(PcapCode.PCAP_ERROR, "fmemopen failed");
+
+			MemorySegment pcapPointer = pcap_fopen_offline.invokeObj(fp, errbuf);
+			if (ForeignUtils.isNullAddress(pcapPointer)) {
+				fclose.invokeInt(fp);
+
+				throw new PcapException(PcapCode.PCAP_ERROR, errbuf.getString(0, java.nio.charset.StandardCharsets.UTF_8));
+			}
+
+			T pcap = Pcap0_4.newOfflinePcap(pcapSupplier, pcapPointer,
+					"memory-%d".formatted(savefile.byteSize()));
+
+			if (source != null)
+				((Pcap0_4) pcap).attachOfflineSource(source);
+
+			return pcap;
+		}
+	}
+
 	/**
 	 * Sets the direction.
 	 *
@@ -254,6 +428,41 @@ public sealed class Pcap0_9 extends Pcap0_8 permits Pcap1_0 {
 		return pcap_inject.invokeInt(this::getErrorString, getPcapHandle(), packet, (long) length);
 	}
 
+	/**
+	 * Inject from an offset within a native buffer, without allocation.
+	 *
+	 * @param buffer the buffer
+	 * @param offset the offset
+	 * @param length the length
+	 * @return the int
+	 * @throws PcapException the pcap exception
+	 * @see org.jnetpcap.Pcap#inject(java.lang.foreign.MemorySegment, long, int)
+	 */
+	@Override
+	public int inject(MemorySegment buffer, long offset, int length) throws PcapException {
+		if (!buffer.isNative())
+			throw new IllegalArgumentException("buffer must be a native memory segment");
+
+		Objects.checkFromIndexSize(offset, length, buffer.byteSize());
+
+		int result;
+		try {
+			result = (int) pcap_inject_address.handle().invokeExact(
+					getPcapHandle(),
+					buffer.address() + offset,
+					(long) length);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+
+		if (result < 0)
+			throw new PcapException(result, getErrorString(result));
+
+		return result;
+	}
+
 	/**
 	 * set capture protocol for a not-yet-activated capture handle.
 	 * 
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 
+import org.jnetpcap.internal.PcapDumpFlushEvent;
 import org.jnetpcap.internal.PcapForeignDowncall;
 import org.jnetpcap.internal.PcapForeignInitializer;
 
@@ -163,7 +164,7 @@ public class PcapDumper implements AutoCloseable, Flushable {
 	 * @since libpcap 0.4
 	 */
 	public void dump(MemorySegment header, MemorySegment packet) throws IOException {
-		pcap_dump.invokeVoid(header, packet, pcap_dumper_ptr);
+		pcap_dump.invokeVoid(pcap_dumper_ptr, header, packet);
 	}
 
 	/**
@@ -193,8 +194,19 @@ public class PcapDumper implements AutoCloseable, Flushable {
 	 */
 	@Override
 	public void flush() throws IOException {
+		var event = new PcapDumpFlushEvent();
+		event.begin();
+
 		try {
 			int code = pcap_dump_flush.invokeInt(pcap_dumper_ptr);
+
+			if (event.shouldCommit()) {
+				event.end();
+				event.file = fname;
+				event.result = code;
+				event.commit();
+			}
+
 			PcapException.throwIfNotOk(code);
 
 		} catch (PcapException e) {
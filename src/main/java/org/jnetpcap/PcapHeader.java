@@ -287,6 +287,12 @@ public final class PcapHeader {
 	/** The is nano time. */
 	private boolean isNanoTime = false;
 
+	/**
+	 * If false, lengths were already validated by the dispatcher, according to the
+	 * handle's header validation policy, and are read without range checks.
+	 */
+	private boolean validateLength = true;
+
 	/**
 	 * Instantiates a new pcap header.
 	 *
@@ -390,7 +396,20 @@ public final class PcapHeader {
 	 * @param arena         the session
 	 */
 	PcapHeader(PcapHeaderABI abi, MemorySegment headerAddress, Arena arena) {
+		this(abi, headerAddress, arena, true);
+	}
+
+	/**
+	 * Instantiates a new pcap header.
+	 *
+	 * @param abi            the abi
+	 * @param headerAddress  the header address
+	 * @param arena          the session
+	 * @param validateLength if false, length fields are read without range checks
+	 */
+	PcapHeader(PcapHeaderABI abi, MemorySegment headerAddress, Arena arena, boolean validateLength) {
 		this.abi = abi;
+		this.validateLength = validateLength;
 		this.buffer = headerAddress.reinterpret(HEADER_LEN_MAX, arena, __ -> {})
 				.asByteBuffer()
 				.order(abi.order());
@@ -434,6 +453,9 @@ public final class PcapHeader {
 	 * @throws OutOfRangeException the out of range exception
 	 */
 	public int captureLength() throws OutOfRangeException {
+		if (!validateLength)
+			return abi.captureLengthUnchecked(buffer);
+
 		try {
 			try {
 				return abi.captureLength(buffer);
@@ -568,6 +590,9 @@ public final class PcapHeader {
 	 * @throws PcapHeaderException the pcap header exception
 	 */
 	public int wireLength() throws PcapHeaderException {
+		if (!validateLength)
+			return abi.wireLengthUnchecked(buffer);
+
 		try {
 			try {
 				return abi.wireLength(buffer);
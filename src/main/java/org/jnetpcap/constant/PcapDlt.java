@@ -351,6 +351,15 @@ public enum PcapDlt implements IntSupplier {
 	/** The LINU x_ lapd. */
 	LINUX_LAPD(177),
 
+	/** Raw IPv4; the packet begins with an IPv4 header. */
+	IPV4(228),
+
+	/** Raw IPv6; the packet begins with an IPv6 header. */
+	IPV6(229),
+
+	/** Linux "cooked" capture encapsulation v2. */
+	LINUX_SLL2(276),
+
 	/** Event Tracing for Windows messages. */
 	ETW(290),
 
@@ -687,6 +696,15 @@ public enum PcapDlt implements IntSupplier {
 	/** The Constant DLT_LINUX_LAPD. */
 	public final static int DLT_LINUX_LAPD = 177;
 
+	/** Raw IPv4; the packet begins with an IPv4 header. */
+	public final static int DLT_IPV4 = 228;
+
+	/** Raw IPv6; the packet begins with an IPv6 header. */
+	public final static int DLT_IPV6 = 229;
+
+	/** Linux "cooked" capture encapsulation v2. */
+	public final static int DLT_LINUX_SLL2 = 276;
+
 	/** Event Tracing for Windows messages. */
 	public final static int DLT_ETW = 290;
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.constant;
+
+import org.jnetpcap.Pcap.LibraryPolicy;
+
+/**
+ * Policy which controls how pcap header length fields are validated as packets
+ * are delivered from a pcap handle. The policy is resolved once, when the pcap
+ * handle is created or when the policy is changed, so that the per packet cost
+ * is either a plain int load or a single range check against precomputed
+ * bounds.
+ *
+ * <p>
+ * The default policy is {@link #STRICT} and can be changed globally using the
+ * {@value LibraryPolicy#SYSTEM_PROPERTY_HEADER_VALIDATION} system property or
+ * per pcap handle using {@code Pcap.setHeaderValidation}.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ * @see LibraryPolicy#SYSTEM_PROPERTY_HEADER_VALIDATION
+ */
+public enum PcapHeaderValidation {
+
+	/**
+	 * Capture and wire lengths must be within minimum Ethernet frame size (14
+	 * bytes) and 64KB. This is useful for detecting a wrong header ABI, but
+	 * rejects legitimate short frames such as small DLT_RAW packets.
+	 */
+	STRICT,
+
+	/**
+	 * Capture length must be no larger than the handle's snaplen. Short frames are
+	 * accepted. If snaplen is not known at the time the policy is resolved,
+	 * because the handle has not been activated yet, {@link PcapConstants#MAX_SNAPLEN}
+	 * is used instead.
+	 */
+	SNAPLEN,
+
+	/**
+	 * No validation is performed. Lengths are read directly from the header as
+	 * supplied by libpcap.
+	 */
+	TRUSTED;
+
+	/**
+	 * The default policy as defined by the
+	 * {@value LibraryPolicy#SYSTEM_PROPERTY_HEADER_VALIDATION} system property, or
+	 * {@link #STRICT} if the property is not set or has an invalid value.
+	 *
+	 * @return the default header validation policy
+	 */
+	public static PcapHeaderValidation defaultValidation() {
+		String value = System.getProperty(LibraryPolicy.SYSTEM_PROPERTY_HEADER_VALIDATION);
+		if (value == null)
+			return STRICT;
+
+		for (PcapHeaderValidation v : values()) {
+			if (v.name().equalsIgnoreCase(value.trim()))
+				return v;
+		}
+
+		return STRICT;
+	}
+}
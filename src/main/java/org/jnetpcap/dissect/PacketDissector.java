@@ -0,0 +1,935 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.dissect;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.util.PcapCursor;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A zero allocation, flyweight, L2 to L4 header dissector.
+ * <p>
+ * A dissector is created once for a given link type and then reused for every
+ * packet. Each call to one of the {@code dissect} methods walks the link-layer,
+ * VLAN (802.1Q and QinQ), MPLS, IPv4, IPv6 including extension headers, and
+ * TCP, UDP, SCTP, ICMP or ICMPv6 headers directly in the packet's memory, and
+ * records the results in a table of primitive fields which can be read back
+ * using the accessor methods. No objects are allocated per packet, which makes
+ * it suitable for use directly within a native packet callback.
+ * </p>
+ * <p>
+ * All offsets are relative to the start of the packet data. An offset of
+ * {@code -1} indicates that the corresponding layer is not present or could not
+ * be dissected, for example because the packet was truncated by the snaplen or
+ * is a non-first IP fragment. Values read from the packet are in host order
+ * after conversion from network byte order.
+ * </p>
+ * <p>
+ * A dissector is not thread safe. The dissected values remain valid until the
+ * next call to {@code dissect} or {@link #reset()}.
+ * </p>
+ *
+ * <pre>{@code
+ * var dissector = new PacketDissector(pcap.datalink());
+ *
+ * pcap.loop(-1, (String user, MemorySegment header, MemorySegment packet) -> {
+ * 	if (dissector.dissect(packet) && dissector.ipProtocol() == PacketDissector.IPPROTO_TCP)
+ * 		count(dissector.srcPort(), dissector.dstPort());
+ * }, "");
+ * }</pre>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PacketDissector {
+
+	/** Ethertype for IPv4. */
+	public static final int ETHERTYPE_IPV4 = 0x0800;
+
+	/** Ethertype for ARP. */
+	public static final int ETHERTYPE_ARP = 0x0806;
+
+	/** Ethertype for 802.1Q VLAN tag. */
+	public static final int ETHERTYPE_VLAN = 0x8100;
+
+	/** Ethertype for 802.1ad, QinQ, service VLAN tag. */
+	public static final int ETHERTYPE_QINQ = 0x88A8;
+
+	/** Legacy, pre-standard QinQ ethertype. */
+	public static final int ETHERTYPE_QINQ_LEGACY = 0x9100;
+
+	/** Ethertype for IPv6. */
+	public static final int ETHERTYPE_IPV6 = 0x86DD;
+
+	/** Ethertype for MPLS unicast. */
+	public static final int ETHERTYPE_MPLS = 0x8847;
+
+	/** Ethertype for MPLS multicast. */
+	public static final int ETHERTYPE_MPLS_MULTICAST = 0x8848;
+
+	/** IP protocol number for ICMP. */
+	public static final int IPPROTO_ICMP = 1;
+
+	/** IP protocol number for TCP. */
+	public static final int IPPROTO_TCP = 6;
+
+	/** IP protocol number for UDP. */
+	public static final int IPPROTO_UDP = 17;
+
+	/** IP protocol number for ICMPv6. */
+	public static final int IPPROTO_ICMPV6 = 58;
+
+	/** IP protocol number for SCTP. */
+	public static final int IPPROTO_SCTP = 132;
+
+	/** IPv6 hop-by-hop options extension header. */
+	private static final int IPV6_HOPOPTS = 0;
+
+	/** IPv6 routing extension header. */
+	private static final int IPV6_ROUTING = 43;
+
+	/** IPv6 fragment extension header. */
+	private static final int IPV6_FRAGMENT = 44;
+
+	/** IPv6 authentication header. */
+	private static final int IPV6_AH = 51;
+
+	/** IPv6 destination options extension header. */
+	private static final int IPV6_DSTOPTS = 60;
+
+	/** IPv6 mobility extension header. */
+	private static final int IPV6_MOBILITY = 135;
+
+	/** Maximum number of VLAN tags or MPLS labels walked. */
+	private static final int MAX_STACKED_HEADERS = 8;
+
+	/** Maximum number of IPv6 extension headers walked. */
+	private static final int MAX_IPV6_EXTENSIONS = 8;
+
+	/** Unbounded segment used to dissect packets at raw addresses. */
+	private static final MemorySegment EVERYTHING = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+	/** Network byte order unsigned short layout. */
+	private static final ValueLayout.OfShort NETWORK_SHORT = JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Network byte order int layout. */
+	private static final ValueLayout.OfInt NETWORK_INT = JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The link type. */
+	private final int dlt;
+
+	/** The segment being dissected, only valid during dissect call. */
+	private MemorySegment mseg;
+
+	/** The base offset of packet within the segment. */
+	private long base;
+
+	/** The captured length of the packet. */
+	private int length;
+
+	/** The l 2 offset. */
+	private int l2Offset;
+
+	/** The l 3 offset. */
+	private int l3Offset;
+
+	/** The l 4 offset. */
+	private int l4Offset;
+
+	/** The payload offset. */
+	private int payloadOffset;
+
+	/** The ether type. */
+	private int etherType;
+
+	/** The vlan count. */
+	private int vlanCount;
+
+	/** The outer vlan id. */
+	private int outerVlanId;
+
+	/** The inner vlan id. */
+	private int innerVlanId;
+
+	/** The mpls label count. */
+	private int mplsCount;
+
+	/** The ip version. */
+	private int ipVersion;
+
+	/** The ip protocol. */
+	private int ipProtocol;
+
+	/** The src address offset. */
+	private int srcAddressOffset;
+
+	/** The dst address offset. */
+	private int dstAddressOffset;
+
+	/** The ip fragment flag. */
+	private boolean fragment;
+
+	/** The src port. */
+	private int srcPort;
+
+	/** The dst port. */
+	private int dstPort;
+
+	/** The tcp flags. */
+	private int tcpFlags;
+
+	/** The icmp type. */
+	private int icmpType;
+
+	/** The icmp code. */
+	private int icmpCode;
+
+	/**
+	 * Instantiates a new dissector for the link type.
+	 *
+	 * @param dlt the data link type of the packets
+	 * @throws IllegalArgumentException if the link type is not supported
+	 */
+	public PacketDissector(PcapDlt dlt) {
+		this(Objects.requireNonNull(dlt, "dlt").getAsInt());
+	}
+
+	/**
+	 * Instantiates a new dissector for the link type.
+	 *
+	 * @param dlt the data link type of the packets
+	 * @throws IllegalArgumentException if the link type is not supported
+	 */
+	public PacketDissector(int dlt) {
+		if (!isSupported(dlt))
+			throw new IllegalArgumentException("unsupported data link type " + dlt);
+
+		this.dlt = dlt;
+		reset();
+	}
+
+	/**
+	 * Checks if the data link type is supported by the dissector.
+	 *
+	 * @param dlt the data link type
+	 * @return true, if supported
+	 */
+	public static boolean isSupported(int dlt) {
+		return switch (dlt) {
+		case PcapDlt.DLT_EN10MB,
+				PcapDlt.DLT_RAW,
+				PcapDlt.DLT_IPV4,
+				PcapDlt.DLT_IPV6,
+				PcapDlt.DLT_LINUX_SLL,
+				PcapDlt.DLT_LINUX_SLL2,
+				PcapDlt.DLT_NULL,
+				PcapDlt.DLT_LOOP -> true;
+		default -> false;
+		};
+	}
+
+	/**
+	 * Dissects a packet. The segment size is used as the captured length.
+	 *
+	 * @param packet the packet data
+	 * @return true if at least the network layer was found
+	 */
+	public boolean dissect(MemorySegment packet) {
+		return dissect(packet, 0, (int) Math.min(packet.byteSize(), Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Dissects a packet at an offset within a segment.
+	 *
+	 * @param mseg   the segment containing the packet
+	 * @param offset the offset of the packet within the segment
+	 * @param length the captured length of the packet
+	 * @return true if at least the network layer was found
+	 */
+	public boolean dissect(MemorySegment mseg, long offset, int length) {
+		reset();
+
+		this.mseg = mseg;
+		this.base = offset;
+		this.length = length;
+
+		try {
+			return dissectLink();
+		} finally {
+			this.mseg = null;
+		}
+	}
+
+	/**
+	 * Dissects the packet currently bound to the cursor, without creating a
+	 * packet segment.
+	 *
+	 * @param cursor the cursor bound to a packet
+	 * @return true if at least the network layer was found
+	 */
+	public boolean dissect(PcapCursor cursor) {
+		if (!cursor.isBound())
+			throw new IllegalStateException("cursor not bound to a packet");
+
+		return dissect(EVERYTHING, cursor.dataAddress(), cursor.captureLength());
+	}
+
+	/**
+	 * Resets all dissected values.
+	 */
+	public void reset() {
+		this.length = 0;
+		this.l2Offset = -1;
+		this.l3Offset = -1;
+		this.l4Offset = -1;
+		this.payloadOffset = -1;
+		this.etherType = -1;
+		this.vlanCount = 0;
+		this.outerVlanId = -1;
+		this.innerVlanId = -1;
+		this.mplsCount = 0;
+		this.ipVersion = 0;
+		this.ipProtocol = -1;
+		this.srcAddressOffset = -1;
+		this.dstAddressOffset = -1;
+		this.fragment = false;
+		this.srcPort = -1;
+		this.dstPort = -1;
+		this.tcpFlags = 0;
+		this.icmpType = -1;
+		this.icmpCode = -1;
+	}
+
+	/**
+	 * Checks if the given number of bytes are available at offset.
+	 *
+	 * @param offset the offset
+	 * @param len    the len
+	 * @return true, if available
+	 */
+	private boolean has(int offset, int len) {
+		return offset >= 0 && offset + len <= length;
+	}
+
+	/**
+	 * Reads an unsigned byte.
+	 *
+	 * @param offset the offset
+	 * @return the unsigned value
+	 */
+	private int u8(int offset) {
+		return Byte.toUnsignedInt(mseg.get(JAVA_BYTE, base + offset));
+	}
+
+	/**
+	 * Reads an unsigned short in network byte order.
+	 *
+	 * @param offset the offset
+	 * @return the unsigned value
+	 */
+	private int u16(int offset) {
+		return Short.toUnsignedInt(mseg.get(NETWORK_SHORT, base + offset));
+	}
+
+	/**
+	 * Reads an int in network byte order.
+	 *
+	 * @param offset the offset
+	 * @return the value
+	 */
+	private int u32(int offset) {
+		return mseg.get(NETWORK_INT, base + offset);
+	}
+
+	/**
+	 * Dissect the link-layer header.
+	 *
+	 * @return true, if network layer found
+	 */
+	private boolean dissectLink() {
+		switch (dlt) {
+		case PcapDlt.DLT_EN10MB:
+			if (!has(0, 14))
+				return false;
+
+			l2Offset = 0;
+			return dissectEtherType(12, u16(12), 14);
+
+		case PcapDlt.DLT_LINUX_SLL:
+			if (!has(0, 16))
+				return false;
+
+			l2Offset = 0;
+			return dissectEtherType(14, u16(14), 16);
+
+		case PcapDlt.DLT_LINUX_SLL2:
+			if (!has(0, 20))
+				return false;
+
+			l2Offset = 0;
+			return dissectEtherType(0, u16(0), 20);
+
+		case PcapDlt.DLT_NULL:
+		case PcapDlt.DLT_LOOP:
+			if (!has(0, 4))
+				return false;
+
+			l2Offset = 0;
+			return dissectNullFamily(u32(0));
+
+		case PcapDlt.DLT_IPV4:
+			etherType = ETHERTYPE_IPV4;
+			return dissectIpv4(0);
+
+		case PcapDlt.DLT_IPV6:
+			etherType = ETHERTYPE_IPV6;
+			return dissectIpv6(0);
+
+		case PcapDlt.DLT_RAW:
+		default:
+			return dissectIpByVersion(0);
+		}
+	}
+
+	/**
+	 * Dissect the BSD loopback address family header. DLT_NULL family is in the
+	 * byte order of the capturing host, DLT_LOOP is in network byte order.
+	 *
+	 * @param family the family, read in network byte order
+	 * @return true, if network layer found
+	 */
+	private boolean dissectNullFamily(int family) {
+		if ((family & 0xFFFF0000) != 0)
+			family = Integer.reverseBytes(family);
+
+		return switch (family) {
+		case 2 -> { // AF_INET
+			etherType = ETHERTYPE_IPV4;
+			yield dissectIpv4(4);
+		}
+		case 10, 24, 28, 30 -> { // AF_INET6 on Linux, BSD, FreeBSD, Darwin
+			etherType = ETHERTYPE_IPV6;
+			yield dissectIpv6(4);
+		}
+		default -> false;
+		};
+	}
+
+	/**
+	 * Dissect the ethertype, unwrapping any VLAN tags and MPLS labels.
+	 *
+	 * @param typeOffset the offset of the ethertype field
+	 * @param type       the ethertype
+	 * @param next       the offset of the next header
+	 * @return true, if network layer found
+	 */
+	private boolean dissectEtherType(int typeOffset, int type, int next) {
+		for (int i = 0; i < MAX_STACKED_HEADERS; i++) {
+			if (type != ETHERTYPE_VLAN && type != ETHERTYPE_QINQ && type != ETHERTYPE_QINQ_LEGACY)
+				break;
+
+			if (!has(next, 4))
+				return false;
+
+			int vid = u16(next) & 0x0FFF;
+			if (vlanCount == 0)
+				outerVlanId = vid;
+			else
+				innerVlanId = vid;
+
+			vlanCount++;
+			type = u16(next + 2);
+			next += 4;
+		}
+
+		etherType = type;
+
+		return switch (type) {
+		case ETHERTYPE_IPV4 -> dissectIpv4(next);
+		case ETHERTYPE_IPV6 -> dissectIpv6(next);
+		case ETHERTYPE_MPLS, ETHERTYPE_MPLS_MULTICAST -> dissectMpls(next);
+		default -> {
+			if (has(next, 0))
+				l3Offset = next;
+
+			yield false;
+		}
+		};
+	}
+
+	/**
+	 * Dissect the MPLS label stack. The payload protocol is not encoded in MPLS and
+	 * is guessed from the IP version nibble after the bottom of stack label.
+	 *
+	 * @param next the offset of first label
+	 * @return true, if network layer found
+	 */
+	private boolean dissectMpls(int next) {
+		for (int i = 0; i < MAX_STACKED_HEADERS; i++) {
+			if (!has(next, 4))
+				return false;
+
+			int label = u32(next);
+			mplsCount++;
+			next += 4;
+
+			if ((label & 0x100) != 0) // Bottom of stack
+				return dissectIpByVersion(next);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Dissect an IP header based on its version nibble.
+	 *
+	 * @param offset the offset
+	 * @return true, if network layer found
+	 */
+	private boolean dissectIpByVersion(int offset) {
+		if (!has(offset, 1))
+			return false;
+
+		return switch (u8(offset) >>> 4) {
+		case 4 -> {
+			etherType = ETHERTYPE_IPV4;
+			yield dissectIpv4(offset);
+		}
+		case 6 -> {
+			etherType = ETHERTYPE_IPV6;
+			yield dissectIpv6(offset);
+		}
+		default -> false;
+		};
+	}
+
+	/**
+	 * Dissect IPv4.
+	 *
+	 * @param offset the offset
+	 * @return true, if network layer found
+	 */
+	private boolean dissectIpv4(int offset) {
+		if (!has(offset, 20))
+			return false;
+
+		int ihl = (u8(offset) & 0x0F) * 4;
+		if (ihl < 20 || !has(offset, ihl))
+			return false;
+
+		l3Offset = offset;
+		ipVersion = 4;
+		ipProtocol = u8(offset + 9);
+		srcAddressOffset = offset + 12;
+		dstAddressOffset = offset + 16;
+
+		int frag = u16(offset + 6);
+		fragment = (frag & 0x3FFF) != 0; // MF flag or non-zero fragment offset
+
+		if ((frag & 0x1FFF) != 0) // Non-first fragments carry no L4 header
+			return true;
+
+		dissectTransport(offset + ihl);
+
+		return true;
+	}
+
+	/**
+	 * Dissect IPv6 and its extension headers.
+	 *
+	 * @param offset the offset
+	 * @return true, if network layer found
+	 */
+	private boolean dissectIpv6(int offset) {
+		if (!has(offset, 40))
+			return false;
+
+		l3Offset = offset;
+		ipVersion = 6;
+		srcAddressOffset = offset + 8;
+		dstAddressOffset = offset + 24;
+
+		int nextHeader = u8(offset + 6);
+		int next = offset + 40;
+
+		for (int i = 0; i < MAX_IPV6_EXTENSIONS; i++) {
+			switch (nextHeader) {
+			case IPV6_HOPOPTS, IPV6_ROUTING, IPV6_DSTOPTS, IPV6_MOBILITY: {
+				if (!has(next, 8))
+					return finishIpv6(nextHeader, -1);
+
+				int len = (u8(next + 1) + 1) * 8;
+				nextHeader = u8(next);
+				next += len;
+				continue;
+			}
+
+			case IPV6_AH: {
+				if (!has(next, 8))
+					return finishIpv6(nextHeader, -1);
+
+				int len = (u8(next + 1) + 2) * 4;
+				nextHeader = u8(next);
+				next += len;
+				continue;
+			}
+
+			case IPV6_FRAGMENT: {
+				if (!has(next, 8))
+					return finishIpv6(nextHeader, -1);
+
+				fragment = true;
+				boolean first = (u16(next + 2) & 0xFFF8) == 0;
+				nextHeader = u8(next);
+				next += 8;
+
+				if (!first)
+					return finishIpv6(nextHeader, -1);
+
+				continue;
+			}
+
+			default:
+				return finishIpv6(nextHeader, next);
+			}
+		}
+
+		return finishIpv6(nextHeader, -1);
+	}
+
+	/**
+	 * Records the upper layer protocol of an IPv6 packet.
+	 *
+	 * @param protocol the upper layer protocol
+	 * @param l4       the offset of upper layer header or -1
+	 * @return always true
+	 */
+	private boolean finishIpv6(int protocol, int l4) {
+		ipProtocol = protocol;
+
+		if (l4 >= 0)
+			dissectTransport(l4);
+
+		return true;
+	}
+
+	/**
+	 * Dissect the transport layer header.
+	 *
+	 * @param offset the offset
+	 */
+	private void dissectTransport(int offset) {
+		switch (ipProtocol) {
+		case IPPROTO_TCP:
+			if (!has(offset, 20))
+				return;
+
+			l4Offset = offset;
+			srcPort = u16(offset);
+			dstPort = u16(offset + 2);
+			tcpFlags = u16(offset + 12) & 0x01FF;
+			setPayload(offset + ((u8(offset + 12) >>> 4) * 4));
+			break;
+
+		case IPPROTO_UDP:
+			if (!has(offset, 8))
+				return;
+
+			l4Offset = offset;
+			srcPort = u16(offset);
+			dstPort = u16(offset + 2);
+			setPayload(offset + 8);
+			break;
+
+		case IPPROTO_SCTP:
+			if (!has(offset, 12))
+				return;
+
+			l4Offset = offset;
+			srcPort = u16(offset);
+			dstPort = u16(offset + 2);
+			setPayload(offset + 12);
+			break;
+
+		case IPPROTO_ICMP:
+		case IPPROTO_ICMPV6:
+			if (!has(offset, 8))
+				return;
+
+			l4Offset = offset;
+			icmpType = u8(offset);
+			icmpCode = u8(offset + 1);
+			setPayload(offset + 8);
+			break;
+
+		default:
+			if (has(offset, 0))
+				payloadOffset = offset;
+		}
+	}
+
+	/**
+	 * Sets the payload offset, if within captured data.
+	 *
+	 * @param offset the offset
+	 */
+	private void setPayload(int offset) {
+		if (offset <= length)
+			payloadOffset = offset;
+	}
+
+	/**
+	 * The data link type this dissector was created for.
+	 *
+	 * @return the dlt
+	 */
+	public int dlt() {
+		return dlt;
+	}
+
+	/**
+	 * Captured length of the last dissected packet.
+	 *
+	 * @return the captured length
+	 */
+	public int captureLength() {
+		return length;
+	}
+
+	/**
+	 * Offset of the link-layer header.
+	 *
+	 * @return the offset or -1
+	 */
+	public int l2Offset() {
+		return l2Offset;
+	}
+
+	/**
+	 * Offset of the network layer header.
+	 *
+	 * @return the offset or -1
+	 */
+	public int l3Offset() {
+		return l3Offset;
+	}
+
+	/**
+	 * Offset of the transport layer header.
+	 *
+	 * @return the offset or -1
+	 */
+	public int l4Offset() {
+		return l4Offset;
+	}
+
+	/**
+	 * Offset of the transport layer payload.
+	 *
+	 * @return the offset or -1
+	 */
+	public int payloadOffset() {
+		return payloadOffset;
+	}
+
+	/**
+	 * Length of the captured transport layer payload.
+	 *
+	 * @return the length or 0 if there is no payload
+	 */
+	public int payloadLength() {
+		return (payloadOffset < 0) ? 0 : length - payloadOffset;
+	}
+
+	/**
+	 * The innermost ethertype, after VLAN tags, or the implied ethertype for raw
+	 * and loopback link types.
+	 *
+	 * @return the ethertype or -1
+	 */
+	public int etherType() {
+		return etherType;
+	}
+
+	/**
+	 * Number of VLAN tags found.
+	 *
+	 * @return the vlan count
+	 */
+	public int vlanCount() {
+		return vlanCount;
+	}
+
+	/**
+	 * The outer VLAN id.
+	 *
+	 * @return the vlan id or -1
+	 */
+	public int outerVlanId() {
+		return outerVlanId;
+	}
+
+	/**
+	 * The innermost VLAN id, if more than one tag is present.
+	 *
+	 * @return the vlan id or -1
+	 */
+	public int innerVlanId() {
+		return innerVlanId;
+	}
+
+	/**
+	 * Number of MPLS labels found.
+	 *
+	 * @return the mpls label count
+	 */
+	public int mplsCount() {
+		return mplsCount;
+	}
+
+	/**
+	 * The IP version.
+	 *
+	 * @return 4, 6 or 0 if no IP header was found
+	 */
+	public int ipVersion() {
+		return ipVersion;
+	}
+
+	/**
+	 * The upper layer IP protocol, after any IPv6 extension headers.
+	 *
+	 * @return the protocol number or -1
+	 */
+	public int ipProtocol() {
+		return ipProtocol;
+	}
+
+	/**
+	 * Checks if the packet is an IP fragment.
+	 *
+	 * @return true, if fragment
+	 */
+	public boolean isFragment() {
+		return fragment;
+	}
+
+	/**
+	 * Offset of the source IP address.
+	 *
+	 * @return the offset or -1
+	 */
+	public int srcAddressOffset() {
+		return srcAddressOffset;
+	}
+
+	/**
+	 * Offset of the destination IP address.
+	 *
+	 * @return the offset or -1
+	 */
+	public int dstAddressOffset() {
+		return dstAddressOffset;
+	}
+
+	/**
+	 * Length of the IP addresses.
+	 *
+	 * @return 4, 16 or 0 if no IP header was found
+	 */
+	public int addressLength() {
+		return switch (ipVersion) {
+		case 4 -> 4;
+		case 6 -> 16;
+		default -> 0;
+		};
+	}
+
+	/**
+	 * The transport source port.
+	 *
+	 * @return the port or -1
+	 */
+	public int srcPort() {
+		return srcPort;
+	}
+
+	/**
+	 * The transport destination port.
+	 *
+	 * @return the port or -1
+	 */
+	public int dstPort() {
+		return dstPort;
+	}
+
+	/**
+	 * The TCP flags, including the NS bit.
+	 *
+	 * @return the flags or 0
+	 */
+	public int tcpFlags() {
+		return tcpFlags;
+	}
+
+	/**
+	 * The ICMP or ICMPv6 type.
+	 *
+	 * @return the type or -1
+	 */
+	public int icmpType() {
+		return icmpType;
+	}
+
+	/**
+	 * The ICMP or ICMPv6 code.
+	 *
+	 * @return the code or -1
+	 */
+	public int icmpCode() {
+		return icmpCode;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PacketDissector"
+				+ " [dlt=" + dlt
+				+ ", l2=" + l2Offset
+				+ ", l3=" + l3Offset
+				+ ", l4=" + l4Offset
+				+ ", payload=" + payloadOffset
+				+ ", etherType=0x" + Integer.toHexString(etherType)
+				+ ", vlans=" + vlanCount
+				+ ", mpls=" + mplsCount
+				+ ", ipVersion=" + ipVersion
+				+ ", ipProtocol=" + ipProtocol
+				+ ", srcPort=" + srcPort
+				+ ", dstPort=" + dstPort
+				+ "]";
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Zero allocation packet header dissectors operating directly on native packet
+ * memory.
+ */
+package org.jnetpcap.dissect;
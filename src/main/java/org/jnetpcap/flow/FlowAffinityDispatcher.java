@@ -0,0 +1,358 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.flow;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHandler.NativeCallback;
+import org.jnetpcap.dissect.PacketDissector;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+/**
+ * Fans packets out from a single pcap capture loop to a fixed number of worker
+ * threads, keeping all packets of a flow on the same worker.
+ * <p>
+ * The dispatcher is a {@link NativeCallback} and is passed directly to
+ * {@link Pcap#loop(int, NativeCallback, MemorySegment)} or
+ * {@link Pcap#dispatch(int, NativeCallback, MemorySegment)}. For every packet,
+ * on the capture thread, it dissects the L2-L4 headers in native memory,
+ * computes a symmetric 5-tuple {@link FlowHash} and copies the packet into the
+ * selected worker's single producer, single consumer off-heap ring. There are
+ * no locks or per packet allocations on the capture thread, and since every
+ * flow maps to exactly one ring, packets of a flow are processed in capture
+ * order, in both directions. Packets without an IP header are all delivered to
+ * worker 0.
+ * </p>
+ *
+ * <pre>{@code
+ * try (var fanout = FlowAffinityDispatcher.of(pcap, 4, (worker, hash, tvSec, tvUsec, wireLength, packet) -> {
+ * 	// per flow processing, called on worker thread
+ * 	})) {
+ *
+ * 	fanout.start();
+ * 	pcap.loop(-1, fanout, MemorySegment.NULL);
+ * }
+ * }</pre>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class FlowAffinityDispatcher implements NativeCallback, AutoCloseable {
+
+	/**
+	 * A packet handler invoked on a worker thread.
+	 */
+	@FunctionalInterface
+	public interface WorkerHandler {
+
+		/**
+		 * Handle a packet. The packet segment references the worker's ring and is
+		 * only valid for the duration of the call.
+		 *
+		 * @param worker     the worker index, 0 to workerCount - 1
+		 * @param hash       the flow hash
+		 * @param tvSec      the timestamp seconds
+		 * @param tvUsec     the timestamp fraction, micro or nano seconds depending
+		 *                   on the pcap handle's timestamp precision
+		 * @param wireLength the original length of the packet
+		 * @param packet     the captured packet data
+		 */
+		void handlePacket(int worker, int hash, long tvSec, long tvUsec, int wireLength, MemorySegment packet);
+	}
+
+	/** Default ring size per worker. */
+	public static final long DEFAULT_RING_SIZE = 8 * 1024 * 1024;
+
+	/** Max records delivered to the handler before the ring position is published. */
+	private static final int DRAIN_BATCH = 64;
+
+	/** Number of empty polls a worker spins before parking. */
+	private static final int SPIN_LIMIT = 1000;
+
+	/** Worker park time when idle. */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/**
+	 * Creates a dispatcher for a pcap handle using the {@link FlowHash#SYMMETRIC}
+	 * hash and default ring size. Packets are never dropped; when a worker's ring
+	 * is full the capture thread waits for space.
+	 *
+	 * @param pcap        the pcap handle supplying the packets
+	 * @param workerCount the number of workers
+	 * @param handler     the worker handler
+	 * @return the dispatcher
+	 * @throws PcapException the pcap exception
+	 */
+	public static FlowAffinityDispatcher of(Pcap pcap, int workerCount, WorkerHandler handler)
+			throws PcapException {
+		return new FlowAffinityDispatcher(pcap.getPcapHeaderABI(), pcap.datalink().getAsInt(), workerCount,
+				DEFAULT_RING_SIZE, FlowHash.SYMMETRIC, false, handler);
+	}
+
+	/** The header ABI. */
+	private final PcapHeaderABI abi;
+
+	/** The dissector, used on the capture thread only. */
+	private final PacketDissector dissector;
+
+	/** The hash function. */
+	private final FlowHash flowHash;
+
+	/** Drop packets when ring is full instead of waiting. */
+	private final boolean dropWhenFull;
+
+	/** The handler. */
+	private final WorkerHandler handler;
+
+	/** The rings. */
+	private final PacketRing[] rings;
+
+	/** The threads. */
+	private final Thread[] threads;
+
+	/** The running. */
+	private volatile boolean running;
+
+	/** The closed. */
+	private boolean closed;
+
+	/** The first exception thrown by the worker handler. */
+	private final AtomicReference<RuntimeException> uncaughtException = new AtomicReference<>();
+
+	/**
+	 * Instantiates a new flow affinity dispatcher.
+	 *
+	 * @param abi          the pcap header ABI of the pcap handle
+	 * @param dlt          the data link type of the pcap handle
+	 * @param workerCount  the number of workers
+	 * @param ringSize     the ring size in bytes per worker
+	 * @param flowHash     the flow hash function
+	 * @param dropWhenFull if true packets are dropped when a worker's ring is
+	 *                     full, otherwise the capture thread waits for space
+	 * @param handler      the worker handler
+	 */
+	public FlowAffinityDispatcher(
+			PcapHeaderABI abi,
+			int dlt,
+			int workerCount,
+			long ringSize,
+			FlowHash flowHash,
+			boolean dropWhenFull,
+			WorkerHandler handler) {
+
+		if (workerCount < 1)
+			throw new IllegalArgumentException("workerCount must be at least 1");
+
+		this.abi = Objects.requireNonNull(abi, "abi");
+		this.dissector = new PacketDissector(dlt);
+		this.flowHash = Objects.requireNonNull(flowHash, "flowHash");
+		this.dropWhenFull = dropWhenFull;
+		this.handler = Objects.requireNonNull(handler, "handler");
+		this.rings = new PacketRing[workerCount];
+		this.threads = new Thread[workerCount];
+
+		for (int i = 0; i < workerCount; i++)
+			rings[i] = new PacketRing(ringSize);
+	}
+
+	/**
+	 * Starts the worker threads.
+	 *
+	 * @return this dispatcher
+	 */
+	public synchronized FlowAffinityDispatcher start() {
+		if (closed)
+			throw new IllegalStateException("dispatcher closed");
+
+		if (running)
+			return this;
+
+		running = true;
+
+		for (int i = 0; i < threads.length; i++) {
+			final int worker = i;
+
+			threads[i] = Thread.ofPlatform()
+					.name("flow-worker-" + i)
+					.daemon(true)
+					.start(() -> workerLoop(worker));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Number of workers.
+	 *
+	 * @return the worker count
+	 */
+	public int workerCount() {
+		return rings.length;
+	}
+
+	/**
+	 * Selects the worker for a flow hash.
+	 *
+	 * @param hash the hash
+	 * @return the worker index
+	 */
+	public int workerOf(int hash) {
+		return Integer.remainderUnsigned(hash, rings.length);
+	}
+
+	/**
+	 * Number of packets dropped so far, because the worker's ring was full.
+	 *
+	 * @param worker the worker index
+	 * @return the drop count
+	 */
+	public long drops(int worker) {
+		return rings[worker].drops();
+	}
+
+	/**
+	 * Total number of packets dropped so far, by all workers.
+	 *
+	 * @return the total drop count
+	 */
+	public long drops() {
+		long total = 0;
+		for (PacketRing ring : rings)
+			total += ring.drops();
+
+		return total;
+	}
+
+	/**
+	 * The first exception thrown by the worker handler, if any. Worker threads
+	 * continue processing packets after a handler exception.
+	 *
+	 * @return the exception or null
+	 */
+	public RuntimeException getUncaughtException() {
+		return uncaughtException.get();
+	}
+
+	/**
+	 * Called on the capture thread by libpcap for every packet.
+	 *
+	 * @param user   the user
+	 * @param header the header
+	 * @param packet the packet
+	 * @see org.jnetpcap.PcapHandler.NativeCallback#nativeCallback(java.lang.foreign.MemorySegment,
+	 *      java.lang.foreign.MemorySegment, java.lang.foreign.MemorySegment)
+	 */
+	@Override
+	public void nativeCallback(MemorySegment user, MemorySegment header, MemorySegment packet) {
+		int hash = dissector.dissect(packet)
+				? flowHash.hash(packet, dissector)
+				: 0;
+
+		PacketRing ring = rings[workerOf(hash)];
+
+		long tvSec = abi.tvSec(header);
+		long tvUsec = abi.tvUsec(header);
+		int wireLength = abi.wireLengthUnchecked(header);
+
+		if (packet.byteSize() > ring.maxPacketLength())
+			packet = packet.asSlice(0, ring.maxPacketLength());
+
+		int spins = 0;
+		while (!ring.offer(packet, hash, tvSec, tvUsec, wireLength)) {
+			if (dropWhenFull || !running) {
+				ring.drop();
+				return;
+			}
+
+			if (++spins < SPIN_LIMIT)
+				Thread.onSpinWait();
+			else
+				LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Worker loop, drains the worker's ring until stopped and the ring is empty.
+	 *
+	 * @param worker the worker
+	 */
+	private void workerLoop(int worker) {
+		final PacketRing ring = rings[worker];
+		final PacketRing.RecordHandler sink = (hash, tvSec, tvUsec, wireLength, packet) -> {
+			try {
+				handler.handlePacket(worker, hash, tvSec, tvUsec, wireLength, packet);
+			} catch (RuntimeException e) {
+				uncaughtException.compareAndSet(null, e);
+			}
+		};
+
+		int idle = 0;
+		while (running || !ring.isEmpty()) {
+			if (ring.drain(sink, DRAIN_BATCH) > 0) {
+				idle = 0;
+				continue;
+			}
+
+			if (++idle < SPIN_LIMIT)
+				Thread.onSpinWait();
+			else
+				LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Stops the workers after all packets already queued have been processed,
+	 * waits for them to exit and releases the rings. Must not be called while a
+	 * capture loop is still delivering packets to this dispatcher.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public synchronized void close() {
+		if (closed)
+			return;
+
+		closed = true;
+		running = false;
+
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			if (thread == null)
+				continue;
+
+			while (true) {
+				try {
+					thread.join();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+
+		for (PacketRing ring : rings)
+			ring.close();
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.flow;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import org.jnetpcap.dissect.PacketDissector;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A 5-tuple flow hash function, computed directly on packet memory using the
+ * offsets recorded by a {@link PacketDissector}.
+ * <p>
+ * Both provided implementations are symmetric, that is both directions of a
+ * flow, with source and destination addresses and ports swapped, produce the
+ * same hash value. This makes them suitable for distributing packets to worker
+ * threads while keeping both directions of a TCP connection on the same
+ * worker.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@FunctionalInterface
+public interface FlowHash {
+
+	/**
+	 * Fast symmetric hash. Addresses and ports are combined using commutative
+	 * operations before a final avalanche mix.
+	 */
+	FlowHash SYMMETRIC = FlowHash::symmetricHash;
+
+	/**
+	 * Toeplitz hash, as used by NIC receive side scaling (RSS), with the symmetric
+	 * {@code 0x6d5a} repeating key. Produces the same value as a NIC configured
+	 * with that key, for the IPv4 and IPv6 4-tuple hash types.
+	 */
+	FlowHash TOEPLITZ_SYMMETRIC = new Toeplitz(Toeplitz.repeatingKey(0x6d, 0x5a));
+
+	/**
+	 * Computes a flow hash for a dissected packet.
+	 *
+	 * @param mseg      the segment containing the packet
+	 * @param base      the offset of the packet within the segment
+	 * @param dissector the dissector holding the results for the packet
+	 * @return the hash value, or 0 if the packet is not an IP packet
+	 */
+	int hash(MemorySegment mseg, long base, PacketDissector dissector);
+
+	/**
+	 * Computes a flow hash for a dissected packet segment.
+	 *
+	 * @param packet    the packet
+	 * @param dissector the dissector holding the results for the packet
+	 * @return the hash value, or 0 if the packet is not an IP packet
+	 */
+	default int hash(MemorySegment packet, PacketDissector dissector) {
+		return hash(packet, 0, dissector);
+	}
+
+	/**
+	 * Fast symmetric 5-tuple hash.
+	 *
+	 * @param mseg      the segment containing the packet
+	 * @param base      the offset of the packet within the segment
+	 * @param dissector the dissector holding the results for the packet
+	 * @return the hash value, or 0 if the packet is not an IP packet
+	 */
+	static int symmetricHash(MemorySegment mseg, long base, PacketDissector dissector) {
+		final int addrLen = dissector.addressLength();
+		if (addrLen == 0)
+			return 0;
+
+		final long src = base + dissector.srcAddressOffset();
+		final long dst = base + dissector.dstAddressOffset();
+
+		int a = 0;
+		int b = 0;
+		for (int i = 0; i < addrLen; i += 4) {
+			a = a * 0x9E3779B1 + mseg.get(Toeplitz.NETWORK_INT, src + i);
+			b = b * 0x9E3779B1 + mseg.get(Toeplitz.NETWORK_INT, dst + i);
+		}
+
+		int sp = Math.max(dissector.srcPort(), 0);
+		int dp = Math.max(dissector.dstPort(), 0);
+
+		int h = (a ^ b) * 0x85EBCA6B + (a + b);
+		h += ((sp ^ dp) | ((sp + dp) << 16)) * 0xC2B2AE35;
+		h += dissector.ipProtocol();
+
+		return mix(h);
+	}
+
+	/**
+	 * Murmur3 32-bit finalizer.
+	 *
+	 * @param h the value to mix
+	 * @return the mixed value
+	 */
+	static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+
+		return h;
+	}
+
+	/**
+	 * Table driven Toeplitz hash with a configurable key. The input is the source
+	 * address, destination address, source port and destination port, in network
+	 * byte order, as defined by the RSS specification. Ports are omitted for
+	 * packets without a transport header.
+	 */
+	final class Toeplitz implements FlowHash {
+
+		/** Network byte order int layout. */
+		static final ValueLayout.OfInt NETWORK_INT = JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+		/** Maximum input length, IPv6 addresses plus ports. */
+		private static final int MAX_INPUT = 36;
+
+		/**
+		 * Builds a 40 byte RSS key by repeating a 2 byte pattern. A key with a 16 bit
+		 * period, such as {@code 0x6d5a}, makes the Toeplitz hash symmetric.
+		 *
+		 * @param b0 the first byte of the pattern
+		 * @param b1 the second byte of the pattern
+		 * @return the key
+		 */
+		public static byte[] repeatingKey(int b0, int b1) {
+			byte[] key = new byte[MAX_INPUT + 4];
+			for (int i = 0; i < key.length; i += 2) {
+				key[i] = (byte) b0;
+				key[i + 1] = (byte) b1;
+			}
+
+			return key;
+		}
+
+		/** Precomputed partial hashes, indexed by input byte position and value. */
+		private final int[] table;
+
+		/**
+		 * Instantiates a new Toeplitz hash with the given key.
+		 *
+		 * @param key the RSS key, at least 40 bytes long
+		 */
+		public Toeplitz(byte[] key) {
+			if (key.length < MAX_INPUT + 4)
+				throw new IllegalArgumentException("key must be at least %d bytes long"
+						.formatted(MAX_INPUT + 4));
+
+			this.table = new int[MAX_INPUT * 256];
+
+			for (int pos = 0; pos < MAX_INPUT; pos++) {
+				for (int bit = 0; bit < 8; bit++) {
+					int window = keyWindow(key, pos * 8 + bit);
+
+					for (int value = 0; value < 256; value++) {
+						if ((value & (0x80 >>> bit)) != 0)
+							table[pos * 256 + value] ^= window;
+					}
+				}
+			}
+		}
+
+		/**
+		 * The 32 bit window of the key starting at bit offset.
+		 *
+		 * @param key       the key
+		 * @param bitOffset the bit offset
+		 * @return the window
+		 */
+		private static int keyWindow(byte[] key, int bitOffset) {
+			int window = 0;
+			for (int i = 0; i < 32; i++) {
+				int b = bitOffset + i;
+				int bit = (key[b >>> 3] >>> (7 - (b & 7))) & 1;
+				window = (window << 1) | bit;
+			}
+
+			return window;
+		}
+
+		/**
+		 * Hash.
+		 *
+		 * @param mseg      the mseg
+		 * @param base      the base
+		 * @param dissector the dissector
+		 * @return the int
+		 * @see org.jnetpcap.flow.FlowHash#hash(java.lang.foreign.MemorySegment, long,
+		 *      org.jnetpcap.dissect.PacketDissector)
+		 */
+		@Override
+		public int hash(MemorySegment mseg, long base, PacketDissector dissector) {
+			final int addrLen = dissector.addressLength();
+			if (addrLen == 0)
+				return 0;
+
+			int h = 0;
+			int pos = 0;
+
+			final long src = base + dissector.srcAddressOffset();
+			for (int i = 0; i < addrLen; i++)
+				h = hashByte(h, pos++, mseg.get(JAVA_BYTE, src + i));
+
+			final long dst = base + dissector.dstAddressOffset();
+			for (int i = 0; i < addrLen; i++)
+				h = hashByte(h, pos++, mseg.get(JAVA_BYTE, dst + i));
+
+			if (dissector.srcPort() >= 0) {
+				h = hashByte(h, pos++, dissector.srcPort() >>> 8);
+				h = hashByte(h, pos++, dissector.srcPort());
+				h = hashByte(h, pos++, dissector.dstPort() >>> 8);
+				h = hashByte(h, pos++, dissector.dstPort());
+			}
+
+			return h;
+		}
+
+		/**
+		 * Hash byte.
+		 *
+		 * @param h     the h
+		 * @param pos   the pos
+		 * @param value the value
+		 * @return the int
+		 */
+		private int hashByte(int h, int pos, int value) {
+			return h ^ table[(pos << 8) | (value & 0xFF)];
+		}
+	}
+}
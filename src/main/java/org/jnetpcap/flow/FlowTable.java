@@ -0,0 +1,759 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.flow;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+
+import org.jnetpcap.PcapHandler.NativeCallback;
+import org.jnetpcap.dissect.PacketDissector;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A NetFlow/IPFIX style flow cache keyed by the unidirectional 5-tuple (source
+ * and destination address, source and destination port and IP protocol).
+ * <p>
+ * All flow keys and counters live in a single off-heap {@link MemorySegment}
+ * organized as an open addressing hash table with linear probing. Removal uses
+ * backward shift deletion, so there are no tombstones and lookup cost does not
+ * degrade over time. No Java objects are created per flow or per packet, which
+ * keeps the table invisible to the garbage collector regardless of how many
+ * flows it tracks.
+ * </p>
+ * <p>
+ * Flows expire when no packets have been seen for the idle timeout, or when
+ * they have been active for longer than the active timeout. Expiry is driven
+ * by packet timestamps, not by the wall clock, so savefiles are accounted for
+ * exactly as a live capture would be. Deadlines are kept on a hashed timer wheel
+ * with one second ticks, linked intrusively through the table slots. Flows are
+ * rescheduled lazily when their bucket comes due, so updating a flow never
+ * touches the wheel.
+ * </p>
+ * <p>
+ * A flow is identified by its slot index, which is only valid until the next
+ * call which may insert or remove flows. The table is not thread safe. To
+ * scale across cores, use one table per {@link FlowAffinityDispatcher} worker.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class FlowTable implements AutoCloseable {
+
+	/**
+	 * The reason a flow was removed from the table.
+	 */
+	public enum Expiry {
+
+		/** No packets were seen for the idle timeout. */
+		IDLE,
+
+		/** The flow was active for longer than the active timeout. */
+		ACTIVE,
+
+		/** The flow was removed by {@link FlowTable#flush()}. */
+		FLUSH,
+	}
+
+	/**
+	 * Receives flows as they are removed from the table.
+	 */
+	@FunctionalInterface
+	public interface ExpiryHandler {
+
+		/**
+		 * Called once for every flow removed from the table, before it is removed.
+		 * The slot may be read using the table's accessor methods, but the table
+		 * must not be modified from within the handler.
+		 *
+		 * @param table  the table
+		 * @param slot   the flow's slot
+		 * @param reason the reason for removal
+		 */
+		void onExpired(FlowTable table, int slot, Expiry reason);
+	}
+
+	/* Slot layout */
+	private static final int HASH = 0;
+	private static final int USED = 4;
+	private static final int IP_VERSION = 5;
+	private static final int PROTOCOL = 6;
+	private static final int SRC_PORT = 8;
+	private static final int DST_PORT = 10;
+	private static final int TCP_FLAGS = 12;
+	private static final int SRC_ADDR = 16;
+	private static final int DST_ADDR = 32;
+	private static final int PACKETS = 48;
+	private static final int BYTES = 56;
+	private static final int FIRST_SEC = 64;
+	private static final int FIRST_USEC = 68;
+	private static final int LAST_SEC = 72;
+	private static final int LAST_USEC = 76;
+	private static final int TIMER_PREV = 80;
+	private static final int TIMER_NEXT = 84;
+	private static final int TIMER_DEADLINE = 88;
+
+	/** Size of a slot in bytes. */
+	public static final int SLOT_SIZE = 96;
+
+	/** No slot, end of timer list. */
+	private static final int NIL = -1;
+
+	/** Addresses as they appear on the wire. */
+	private static final ValueLayout.OfLong NETWORK_LONG = JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The arena. */
+	private final Arena arena;
+
+	/** The table. */
+	private final MemorySegment table;
+
+	/** The mask. */
+	private final int mask;
+
+	/** The max flows. */
+	private final int maxFlows;
+
+	/** The idle timeout in seconds. */
+	private final int idleTimeout;
+
+	/** The active timeout in seconds. */
+	private final int activeTimeout;
+
+	/** The expiry handler. */
+	private final ExpiryHandler expiryHandler;
+
+	/** Timer wheel bucket heads, slot indexes. */
+	private final int[] wheel;
+
+	/** The wheel mask. */
+	private final int wheelMask;
+
+	/** The current time in seconds, or -1 before the first packet. */
+	private long now = -1;
+
+	/** The size. */
+	private int size;
+
+	/** Packets not accounted for because the table was full. */
+	private long overflows;
+
+	/**
+	 * Instantiates a new flow table.
+	 *
+	 * @param maxFlows      the maximum number of concurrent flows
+	 * @param idleTimeout   the idle timeout, at least 1 second
+	 * @param activeTimeout the active timeout, at least 1 second
+	 * @param expiryHandler the handler receiving expired flows
+	 */
+	public FlowTable(int maxFlows, Duration idleTimeout, Duration activeTimeout, ExpiryHandler expiryHandler) {
+		if (maxFlows < 1 || maxFlows > (1 << 29))
+			throw new IllegalArgumentException("maxFlows out of range [%d]".formatted(maxFlows));
+
+		this.maxFlows = maxFlows;
+		this.idleTimeout = (int) Math.max(1, idleTimeout.toSeconds());
+		this.activeTimeout = (int) Math.max(1, activeTimeout.toSeconds());
+		this.expiryHandler = Objects.requireNonNull(expiryHandler, "expiryHandler");
+
+		/* Keep load factor at or below 75% */
+		long slots = Long.highestOneBit(((long) maxFlows * 4 / 3) | 15) << 1;
+		this.mask = (int) (slots - 1);
+		this.arena = Arena.ofShared();
+		this.table = arena.allocate(slots * SLOT_SIZE, 64);
+
+		/* Wheel must span the longest timeout so deadlines never alias */
+		int span = Math.max(this.idleTimeout, this.activeTimeout) + 2;
+		this.wheel = new int[Integer.highestOneBit(span - 1) << 1];
+		this.wheelMask = wheel.length - 1;
+		Arrays.fill(wheel, NIL);
+	}
+
+	/**
+	 * Creates a native callback which accounts every packet delivered by
+	 * {@code Pcap.loop} or {@code Pcap.dispatch} in this table.
+	 *
+	 * @param abi the pcap header ABI of the pcap handle
+	 * @param dlt the data link type of the pcap handle
+	 * @return the native callback
+	 */
+	public NativeCallback asNativeCallback(PcapHeaderABI abi, int dlt) {
+		final PacketDissector dissector = new PacketDissector(dlt);
+
+		return (user, header, packet) -> {
+			long tvSec = abi.tvSec(header);
+
+			if (dissector.dissect(packet))
+				update(packet, dissector, tvSec, abi.tvUsec(header), abi.wireLengthUnchecked(header));
+			else
+				advanceTime(tvSec);
+		};
+	}
+
+	/**
+	 * Accounts a dissected packet to its flow, creating the flow if needed. Time
+	 * is first advanced to the packet's timestamp, which may expire other flows.
+	 *
+	 * @param packet     the packet
+	 * @param dissector  the dissector holding the results for the packet
+	 * @param tvSec      the packet timestamp seconds
+	 * @param tvUsec     the packet timestamp fraction
+	 * @param wireLength the packet's length on the wire
+	 * @return the flow's slot, or -1 if packet is not IP or the table is full
+	 */
+	public int update(MemorySegment packet, PacketDissector dissector, long tvSec, long tvUsec, int wireLength) {
+		advanceTime(tvSec);
+
+		final int addrLen = dissector.addressLength();
+		if (addrLen == 0)
+			return NIL;
+
+		final int version = dissector.ipVersion();
+		final int protocol = dissector.ipProtocol();
+		final int srcPort = Math.max(dissector.srcPort(), 0);
+		final int dstPort = Math.max(dissector.dstPort(), 0);
+
+		final long src = dissector.srcAddressOffset();
+		final long dst = dissector.dstAddressOffset();
+		final long s0, s1, d0, d1;
+		if (addrLen == 4) {
+			s0 = Integer.toUnsignedLong(packet.get(FlowHash.Toeplitz.NETWORK_INT, src));
+			d0 = Integer.toUnsignedLong(packet.get(FlowHash.Toeplitz.NETWORK_INT, dst));
+			s1 = d1 = 0;
+		} else {
+			s0 = packet.get(NETWORK_LONG, src);
+			s1 = packet.get(NETWORK_LONG, src + 8);
+			d0 = packet.get(NETWORK_LONG, dst);
+			d1 = packet.get(NETWORK_LONG, dst + 8);
+		}
+
+		final int portsAndProto = (srcPort << 16) | dstPort;
+		final int hash = hashKey(s0, s1, d0, d1, portsAndProto, protocol);
+
+		int slot = hash & mask;
+		while (true) {
+			long base = offset(slot);
+
+			if (table.get(JAVA_BYTE, base + USED) == 0)
+				break;
+
+			if (table.get(JAVA_INT, base + HASH) == hash
+					&& table.get(JAVA_SHORT, base + SRC_PORT) == (short) srcPort
+					&& table.get(JAVA_SHORT, base + DST_PORT) == (short) dstPort
+					&& table.get(JAVA_BYTE, base + PROTOCOL) == (byte) protocol
+					&& table.get(JAVA_LONG, base + SRC_ADDR) == s0
+					&& table.get(JAVA_LONG, base + SRC_ADDR + 8) == s1
+					&& table.get(JAVA_LONG, base + DST_ADDR) == d0
+					&& table.get(JAVA_LONG, base + DST_ADDR + 8) == d1
+					&& table.get(JAVA_BYTE, base + IP_VERSION) == (byte) version) {
+
+				account(base, dissector, tvSec, tvUsec, wireLength);
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		if (size >= maxFlows) {
+			overflows++;
+			return NIL;
+		}
+
+		long base = offset(slot);
+		table.set(JAVA_INT, base + HASH, hash);
+		table.set(JAVA_BYTE, base + USED, (byte) 1);
+		table.set(JAVA_BYTE, base + IP_VERSION, (byte) version);
+		table.set(JAVA_BYTE, base + PROTOCOL, (byte) protocol);
+		table.set(JAVA_SHORT, base + SRC_PORT, (short) srcPort);
+		table.set(JAVA_SHORT, base + DST_PORT, (short) dstPort);
+		table.set(JAVA_SHORT, base + TCP_FLAGS, (short) 0);
+		table.set(JAVA_LONG, base + SRC_ADDR, s0);
+		table.set(JAVA_LONG, base + SRC_ADDR + 8, s1);
+		table.set(JAVA_LONG, base + DST_ADDR, d0);
+		table.set(JAVA_LONG, base + DST_ADDR + 8, d1);
+		table.set(JAVA_LONG, base + PACKETS, 0);
+		table.set(JAVA_LONG, base + BYTES, 0);
+		table.set(JAVA_INT, base + FIRST_SEC, (int) tvSec);
+		table.set(JAVA_INT, base + FIRST_USEC, (int) tvUsec);
+		size++;
+
+		account(base, dissector, tvSec, tvUsec, wireLength);
+		schedule(slot, now + Math.min(idleTimeout, activeTimeout));
+
+		return slot;
+	}
+
+	/**
+	 * Updates a flow's counters.
+	 *
+	 * @param base       the slot offset
+	 * @param dissector  the dissector
+	 * @param tvSec      the tv sec
+	 * @param tvUsec     the tv usec
+	 * @param wireLength the wire length
+	 */
+	private void account(long base, PacketDissector dissector, long tvSec, long tvUsec, int wireLength) {
+		table.set(JAVA_LONG, base + PACKETS, table.get(JAVA_LONG, base + PACKETS) + 1);
+		table.set(JAVA_LONG, base + BYTES, table.get(JAVA_LONG, base + BYTES) + wireLength);
+		table.set(JAVA_INT, base + LAST_SEC, (int) tvSec);
+		table.set(JAVA_INT, base + LAST_USEC, (int) tvUsec);
+
+		int flags = dissector.tcpFlags();
+		if (flags != 0)
+			table.set(JAVA_SHORT, base + TCP_FLAGS, (short) (table.get(JAVA_SHORT, base + TCP_FLAGS) | flags));
+	}
+
+	/**
+	 * Hashes a flow key.
+	 *
+	 * @param s0            the source address, high bits
+	 * @param s1            the source address, low bits
+	 * @param d0            the destination address, high bits
+	 * @param d1            the destination address, low bits
+	 * @param portsAndProto the source and destination ports
+	 * @param protocol      the protocol
+	 * @return the hash
+	 */
+	private static int hashKey(long s0, long s1, long d0, long d1, int portsAndProto, int protocol) {
+		long h = s0 * 0x9E3779B97F4A7C15L;
+		h = (h ^ s1) * 0x9E3779B97F4A7C15L;
+		h = (h ^ d0) * 0x9E3779B97F4A7C15L;
+		h = (h ^ d1) * 0x9E3779B97F4A7C15L;
+		h ^= ((long) portsAndProto << 8) | protocol;
+
+		return FlowHash.mix((int) (h ^ (h >>> 32)));
+	}
+
+	/**
+	 * Advances the table's clock, expiring any flows which have timed out. Called
+	 * automatically for every packet, but should also be called periodically
+	 * during a live capture so that flows expire while no packets arrive.
+	 * Timestamps earlier than the current time are ignored.
+	 *
+	 * @param tvSec the current time in seconds
+	 */
+	public void advanceTime(long tvSec) {
+		if (now < 0) {
+			now = tvSec;
+			return;
+		}
+
+		if (tvSec <= now)
+			return;
+
+		/* After a long gap, a single pass over the wheel visits every deadline */
+		if (tvSec - now > wheel.length)
+			now = tvSec - wheel.length;
+
+		while (now < tvSec) {
+			now++;
+			expireBucket((int) (now & wheelMask), now);
+		}
+	}
+
+	/**
+	 * Processes all flows in a wheel bucket. Every entry is either expired and
+	 * removed, or rescheduled to its actual deadline, so the bucket is empty when
+	 * done.
+	 *
+	 * @param bucket the bucket
+	 * @param time   the current time
+	 */
+	private void expireBucket(int bucket, long time) {
+		int slot;
+		while ((slot = wheel[bucket]) != NIL) {
+			long base = offset(slot);
+			long first = Integer.toUnsignedLong(table.get(JAVA_INT, base + FIRST_SEC));
+			long last = Integer.toUnsignedLong(table.get(JAVA_INT, base + LAST_SEC));
+
+			long idleDeadline = last + idleTimeout;
+			long activeDeadline = first + activeTimeout;
+
+			if (activeDeadline <= time && activeDeadline <= idleDeadline) {
+				expire(slot, Expiry.ACTIVE);
+
+			} else if (idleDeadline <= time) {
+				expire(slot, Expiry.IDLE);
+
+			} else {
+				unlink(slot);
+				schedule(slot, Math.min(idleDeadline, activeDeadline));
+			}
+		}
+	}
+
+	/**
+	 * Removes all flows from the table, reporting each with
+	 * {@link Expiry#FLUSH}.
+	 */
+	public void flush() {
+		for (int bucket = 0; bucket < wheel.length; bucket++) {
+			int slot;
+			while ((slot = wheel[bucket]) != NIL)
+				expire(slot, Expiry.FLUSH);
+		}
+	}
+
+	/**
+	 * Reports a flow to the expiry handler and removes it.
+	 *
+	 * @param slot   the slot
+	 * @param reason the reason
+	 */
+	private void expire(int slot, Expiry reason) {
+		try {
+			expiryHandler.onExpired(this, slot, reason);
+		} finally {
+			remove(slot);
+		}
+	}
+
+	/**
+	 * Removes a flow using backward shift deletion. Entries following the removed
+	 * slot in its probe sequence are moved back, and their timer links updated.
+	 *
+	 * @param slot the slot
+	 */
+	private void remove(int slot) {
+		unlink(slot);
+
+		int hole = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			long base = offset(next);
+
+			if (table.get(JAVA_BYTE, base + USED) == 0)
+				break;
+
+			int home = table.get(JAVA_INT, base + HASH) & mask;
+
+			/* Entry may move into hole only if its home slot is not in (hole, next] */
+			boolean stays = (hole <= next)
+					? (home > hole && home <= next)
+					: (home > hole || home <= next);
+
+			if (!stays) {
+				move(next, hole);
+				hole = next;
+			}
+		}
+
+		table.set(JAVA_BYTE, offset(hole) + USED, (byte) 0);
+		size--;
+	}
+
+	/**
+	 * Moves a slot, updating the timer list links that point to it.
+	 *
+	 * @param from the source slot
+	 * @param to   the destination slot
+	 */
+	private void move(int from, int to) {
+		MemorySegment.copy(table, offset(from), table, offset(to), SLOT_SIZE);
+
+		long base = offset(to);
+		int prev = table.get(JAVA_INT, base + TIMER_PREV);
+		int next = table.get(JAVA_INT, base + TIMER_NEXT);
+
+		if (prev == NIL)
+			wheel[table.get(JAVA_INT, base + TIMER_DEADLINE) & wheelMask] = to;
+		else
+			table.set(JAVA_INT, offset(prev) + TIMER_NEXT, to);
+
+		if (next != NIL)
+			table.set(JAVA_INT, offset(next) + TIMER_PREV, to);
+	}
+
+	/**
+	 * Links a slot at the head of the wheel bucket for its deadline.
+	 *
+	 * @param slot     the slot
+	 * @param deadline the deadline in seconds
+	 */
+	private void schedule(int slot, long deadline) {
+		long base = offset(slot);
+		int bucket = (int) (deadline & wheelMask);
+		int head = wheel[bucket];
+
+		table.set(JAVA_INT, base + TIMER_DEADLINE, (int) deadline);
+		table.set(JAVA_INT, base + TIMER_PREV, NIL);
+		table.set(JAVA_INT, base + TIMER_NEXT, head);
+
+		if (head != NIL)
+			table.set(JAVA_INT, offset(head) + TIMER_PREV, slot);
+
+		wheel[bucket] = slot;
+	}
+
+	/**
+	 * Unlinks a slot from its wheel bucket.
+	 *
+	 * @param slot the slot
+	 */
+	private void unlink(int slot) {
+		long base = offset(slot);
+		int prev = table.get(JAVA_INT, base + TIMER_PREV);
+		int next = table.get(JAVA_INT, base + TIMER_NEXT);
+
+		if (prev == NIL)
+			wheel[table.get(JAVA_INT, base + TIMER_DEADLINE) & wheelMask] = next;
+		else
+			table.set(JAVA_INT, offset(prev) + TIMER_NEXT, next);
+
+		if (next != NIL)
+			table.set(JAVA_INT, offset(next) + TIMER_PREV, prev);
+	}
+
+	/**
+	 * Offset of a slot in the table.
+	 *
+	 * @param slot the slot
+	 * @return the offset
+	 */
+	private static long offset(int slot) {
+		return (long) slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Calls the action for the slot of every flow in the table. The table must not
+	 * be modified by the action.
+	 *
+	 * @param action the action
+	 */
+	public void forEach(IntConsumer action) {
+		for (int slot = 0; slot <= mask; slot++) {
+			if (table.get(JAVA_BYTE, offset(slot) + USED) != 0)
+				action.accept(slot);
+		}
+	}
+
+	/**
+	 * Number of flows currently in the table.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Maximum number of concurrent flows.
+	 *
+	 * @return the max flows
+	 */
+	public int maxFlows() {
+		return maxFlows;
+	}
+
+	/**
+	 * Number of packets which were not accounted for because the table was full.
+	 *
+	 * @return the overflow count
+	 */
+	public long overflows() {
+		return overflows;
+	}
+
+	/**
+	 * The table's current time, the latest packet timestamp seen, in seconds.
+	 *
+	 * @return the current time or -1 if no packets have been seen
+	 */
+	public long currentTime() {
+		return now;
+	}
+
+	/**
+	 * Off-heap memory used by the table, in bytes.
+	 *
+	 * @return the byte size
+	 */
+	public long byteSize() {
+		return table.byteSize();
+	}
+
+	/**
+	 * The IP version of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return 4 or 6
+	 */
+	public int ipVersion(int slot) {
+		return table.get(JAVA_BYTE, offset(slot) + IP_VERSION);
+	}
+
+	/**
+	 * The IP protocol of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the protocol
+	 */
+	public int protocol(int slot) {
+		return Byte.toUnsignedInt(table.get(JAVA_BYTE, offset(slot) + PROTOCOL));
+	}
+
+	/**
+	 * The source port of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the port, 0 if protocol has no ports
+	 */
+	public int srcPort(int slot) {
+		return Short.toUnsignedInt(table.get(JAVA_SHORT, offset(slot) + SRC_PORT));
+	}
+
+	/**
+	 * The destination port of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the port, 0 if protocol has no ports
+	 */
+	public int dstPort(int slot) {
+		return Short.toUnsignedInt(table.get(JAVA_SHORT, offset(slot) + DST_PORT));
+	}
+
+	/**
+	 * The source address of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return 4 or 16 address bytes in network byte order
+	 */
+	public byte[] srcAddress(int slot) {
+		return address(slot, SRC_ADDR);
+	}
+
+	/**
+	 * The destination address of a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return 4 or 16 address bytes in network byte order
+	 */
+	public byte[] dstAddress(int slot) {
+		return address(slot, DST_ADDR);
+	}
+
+	/**
+	 * Reads an address from a slot.
+	 *
+	 * @param slot  the slot
+	 * @param field the field offset
+	 * @return the address bytes
+	 */
+	private byte[] address(int slot, int field) {
+		long base = offset(slot) + field;
+		byte[] addr = new byte[16];
+		MemorySegment dst = MemorySegment.ofArray(addr);
+
+		if (ipVersion(slot) == 4) {
+			dst.set(FlowHash.Toeplitz.NETWORK_INT, 0, (int) table.get(JAVA_LONG, base));
+			return Arrays.copyOf(addr, 4);
+		}
+
+		dst.set(NETWORK_LONG, 0, table.get(JAVA_LONG, base));
+		dst.set(NETWORK_LONG, 8, table.get(JAVA_LONG, base + 8));
+
+		return addr;
+	}
+
+	/**
+	 * Number of packets in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the packet count
+	 */
+	public long packets(int slot) {
+		return table.get(JAVA_LONG, offset(slot) + PACKETS);
+	}
+
+	/**
+	 * Number of bytes in a flow, using packet wire lengths.
+	 *
+	 * @param slot the flow's slot
+	 * @return the byte count
+	 */
+	public long bytes(int slot) {
+		return table.get(JAVA_LONG, offset(slot) + BYTES);
+	}
+
+	/**
+	 * The cumulative OR of TCP flags seen in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the TCP flags
+	 */
+	public int tcpFlags(int slot) {
+		return Short.toUnsignedInt(table.get(JAVA_SHORT, offset(slot) + TCP_FLAGS));
+	}
+
+	/**
+	 * Timestamp seconds of the first packet in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the tv sec
+	 */
+	public long firstTvSec(int slot) {
+		return Integer.toUnsignedLong(table.get(JAVA_INT, offset(slot) + FIRST_SEC));
+	}
+
+	/**
+	 * Timestamp fraction of the first packet in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the tv usec
+	 */
+	public long firstTvUsec(int slot) {
+		return Integer.toUnsignedLong(table.get(JAVA_INT, offset(slot) + FIRST_USEC));
+	}
+
+	/**
+	 * Timestamp seconds of the last packet in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the tv sec
+	 */
+	public long lastTvSec(int slot) {
+		return Integer.toUnsignedLong(table.get(JAVA_INT, offset(slot) + LAST_SEC));
+	}
+
+	/**
+	 * Timestamp fraction of the last packet in a flow.
+	 *
+	 * @param slot the flow's slot
+	 * @return the tv usec
+	 */
+	public long lastTvUsec(int slot) {
+		return Integer.toUnsignedLong(table.get(JAVA_INT, offset(slot) + LAST_USEC));
+	}
+
+	/**
+	 * Releases the table's memory without reporting remaining flows. Call
+	 * {@link #flush()} first to receive them.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		arena.close();
+	}
+}
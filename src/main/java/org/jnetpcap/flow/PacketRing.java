@@ -0,0 +1,293 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.flow;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Single producer, single consumer ring of packet records in off-heap memory.
+ * <p>
+ * Records are variable length, 8 byte aligned and never wrap around the end of
+ * the ring. When a record does not fit in the space left before the end, a wrap
+ * marker is written and the record is stored at the start of the ring. The
+ * producer and consumer positions are free running counters published with
+ * release/acquire semantics, so no locks are needed.
+ * </p>
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  record length, including this header and padding, or WRAP
+ *      4     4  capture length
+ *      8     4  wire length
+ *     12     4  flow hash
+ *     16     8  tv_sec
+ *     24     8  tv_usec
+ *     32     n  packet data, padded to 8 bytes
+ * </pre>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class PacketRing implements AutoCloseable {
+
+	/**
+	 * Receives records polled from the ring.
+	 */
+	interface RecordHandler {
+
+		/**
+		 * Handle a record.
+		 *
+		 * @param hash       the flow hash
+		 * @param tvSec      the timestamp seconds
+		 * @param tvUsec     the timestamp fraction
+		 * @param wireLength the wire length
+		 * @param packet     the packet data, valid only for the duration of the call
+		 */
+		void handleRecord(int hash, long tvSec, long tvUsec, int wireLength, MemorySegment packet);
+	}
+
+	/** Record header length. */
+	static final int RECORD_HEADER_LENGTH = 32;
+
+	/** Marks the remainder of the ring as unused, continue at offset 0. */
+	private static final int WRAP = -1;
+
+	/** The Constant HEAD. */
+	private static final VarHandle HEAD;
+
+	/** The Constant TAIL. */
+	private static final VarHandle TAIL;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			HEAD = lookup.findVarHandle(PacketRing.class, "head", long.class);
+			TAIL = lookup.findVarHandle(PacketRing.class, "tail", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/**
+	 * Rounds up to a multiple of 8.
+	 *
+	 * @param length the length
+	 * @return the aligned length
+	 */
+	private static long align8(long length) {
+		return (length + 7) & ~7L;
+	}
+
+	/** The arena owning the ring memory. */
+	private final Arena arena;
+
+	/** The ring memory. */
+	private final MemorySegment ring;
+
+	/** The ring capacity, a power of 2. */
+	private final long capacity;
+
+	/** The mask. */
+	private final long mask;
+
+	/* Producer fields, padded away from consumer fields to avoid false sharing */
+	long p00, p01, p02, p03, p04, p05, p06;
+
+	/** The producer position, written by producer only. */
+	private volatile long head;
+
+	/** Producer's last seen consumer position. */
+	private long tailCache;
+
+	/** Number of records dropped because the ring was full. */
+	private volatile long drops;
+
+	long p10, p11, p12, p13, p14, p15, p16;
+
+	/** The consumer position, written by consumer only. */
+	private volatile long tail;
+
+	/** Consumer's last seen producer position. */
+	private long headCache;
+
+	long p20, p21, p22, p23, p24, p25, p26;
+
+	/**
+	 * Instantiates a new packet ring.
+	 *
+	 * @param capacity the capacity in bytes, rounded up to a power of 2
+	 */
+	PacketRing(long capacity) {
+		if (capacity < 4096)
+			capacity = 4096;
+
+		this.capacity = Long.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.arena = Arena.ofShared();
+		this.ring = arena.allocate(this.capacity, 64);
+	}
+
+	/**
+	 * Largest packet which can be stored in this ring.
+	 *
+	 * @return the max packet length
+	 */
+	long maxPacketLength() {
+		return capacity / 2 - RECORD_HEADER_LENGTH;
+	}
+
+	/**
+	 * Appends a packet record. Called only by the producer thread.
+	 *
+	 * @param packet     the packet data
+	 * @param hash       the flow hash
+	 * @param tvSec      the timestamp seconds
+	 * @param tvUsec     the timestamp fraction
+	 * @param wireLength the wire length
+	 * @return true, if the record was stored, false if ring is full
+	 */
+	boolean offer(MemorySegment packet, int hash, long tvSec, long tvUsec, int wireLength) {
+		final long caplen = packet.byteSize();
+		if (caplen > maxPacketLength())
+			throw new IllegalArgumentException("packet too large for ring [%d]".formatted(caplen));
+
+		final long recordLength = align8(RECORD_HEADER_LENGTH + caplen);
+		final long h = (long) HEAD.getOpaque(this);
+		long index = h & mask;
+		final long pad = (capacity - index < recordLength) ? capacity - index : 0;
+
+		if (h + pad + recordLength - tailCache > capacity) {
+			tailCache = (long) TAIL.getAcquire(this);
+
+			if (h + pad + recordLength - tailCache > capacity)
+				return false;
+		}
+
+		if (pad != 0) {
+			ring.set(JAVA_INT, index, WRAP);
+			index = 0;
+		}
+
+		ring.set(JAVA_INT, index, (int) recordLength);
+		ring.set(JAVA_INT, index + 4, (int) caplen);
+		ring.set(JAVA_INT, index + 8, wireLength);
+		ring.set(JAVA_INT, index + 12, hash);
+		ring.set(JAVA_LONG, index + 16, tvSec);
+		ring.set(JAVA_LONG, index + 24, tvUsec);
+		MemorySegment.copy(packet, 0, ring, index + RECORD_HEADER_LENGTH, caplen);
+
+		HEAD.setRelease(this, h + pad + recordLength);
+
+		return true;
+	}
+
+	/**
+	 * Counts a dropped record. Called only by the producer thread.
+	 */
+	void drop() {
+		drops = drops + 1;
+	}
+
+	/**
+	 * Number of records dropped because the ring was full.
+	 *
+	 * @return the drop count
+	 */
+	long drops() {
+		return drops;
+	}
+
+	/**
+	 * Checks if the ring has no records available to the consumer.
+	 *
+	 * @return true, if is empty
+	 */
+	boolean isEmpty() {
+		return (long) TAIL.getOpaque(this) == (long) HEAD.getAcquire(this);
+	}
+
+	/**
+	 * Delivers up to {@code limit} records to the handler. Called only by the
+	 * consumer thread. The consumer position is published once per batch.
+	 *
+	 * @param handler the handler
+	 * @param limit   the max number of records to deliver
+	 * @return the number of records delivered
+	 */
+	int drain(RecordHandler handler, int limit) {
+		long t = (long) TAIL.getOpaque(this);
+		if (t == headCache) {
+			headCache = (long) HEAD.getAcquire(this);
+			if (t == headCache)
+				return 0;
+		}
+
+		int count = 0;
+		try {
+			while (count < limit && t != headCache) {
+				long index = t & mask;
+				int recordLength = ring.get(JAVA_INT, index);
+
+				if (recordLength == WRAP) {
+					t += capacity - index;
+					continue;
+				}
+
+				int caplen = ring.get(JAVA_INT, index + 4);
+				int wireLength = ring.get(JAVA_INT, index + 8);
+				int hash = ring.get(JAVA_INT, index + 12);
+				long tvSec = ring.get(JAVA_LONG, index + 16);
+				long tvUsec = ring.get(JAVA_LONG, index + 24);
+				MemorySegment packet = ring.asSlice(index + RECORD_HEADER_LENGTH, caplen);
+
+				t += recordLength;
+				count++;
+
+				handler.handleRecord(hash, tvSec, tvUsec, wireLength, packet);
+			}
+		} finally {
+			TAIL.setRelease(this, t);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Capacity in bytes.
+	 *
+	 * @return the capacity
+	 */
+	long capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Releases the ring memory. Neither producer nor consumer may access the ring
+	 * after this call.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		arena.close();
+	}
+}
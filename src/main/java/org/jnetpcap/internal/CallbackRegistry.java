@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An id to callback target table, used to route a single shared upcall stub to
+ * many targets.
+ * <p>
+ * Ids are small integers, passed through native code as the {@code user}
+ * pointer of an upcall. Lookups are lock free and allocation free, while
+ * registering and releasing ids, which only happens when handles are opened or
+ * closed, is synchronized. Released ids are reused. Id 0 is never assigned, so
+ * that a {@code NULL} user pointer never routes to a target.
+ * </p>
+ *
+ * @param <T> the callback target type
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class CallbackRegistry<T> {
+
+	/** The initial table size. */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** The targets, indexed by id. Replaced by a larger copy when full. */
+	private volatile AtomicReferenceArray<T> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+	/** Stack of released ids, available for reuse. */
+	private int[] free = new int[16];
+
+	/** Number of ids on the free stack. */
+	private int freeCount;
+
+	/** The next never used id. */
+	private int next = 1;
+
+	/**
+	 * Registers a target.
+	 *
+	 * @param target the target
+	 * @return the id assigned to the target
+	 */
+	synchronized int register(T target) {
+		int id = (freeCount > 0) ? free[--freeCount] : next++;
+
+		AtomicReferenceArray<T> t = table;
+		if (id >= t.length()) {
+			var larger = new AtomicReferenceArray<T>(t.length() * 2);
+			for (int i = 0; i < t.length(); i++)
+				larger.setPlain(i, t.getPlain(i));
+
+			table = t = larger;
+		}
+
+		t.setRelease(id, target);
+
+		return id;
+	}
+
+	/**
+	 * Releases an id. The id is no longer routed and may be reassigned.
+	 *
+	 * @param id the id
+	 */
+	synchronized void release(int id) {
+		if (id <= 0 || id >= next || table.get(id) == null)
+			return;
+
+		table.setRelease(id, null);
+
+		if (freeCount == free.length)
+			free = Arrays.copyOf(free, free.length * 2);
+
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * Looks up a target.
+	 *
+	 * @param id the id
+	 * @return the target or null if the id is not registered
+	 */
+	T get(long id) {
+		AtomicReferenceArray<T> t = table;
+
+		return (id > 0 && id < t.length()) ? t.getAcquire((int) id) : null;
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jnetpcap.util.LatencyHistogram;
+import org.jnetpcap.util.PcapMetrics;
+
+/**
+ * Hot path counters of a pcap dispatcher. Only allocated while metrics are
+ * enabled on the dispatcher.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class DispatcherMetrics {
+
+	/** The packets. */
+	final LongAdder packets = new LongAdder();
+
+	/** The bytes. */
+	final LongAdder bytes = new LongAdder();
+
+	/** The callbacks. */
+	final LongAdder callbacks = new LongAdder();
+
+	/** The exceptions. */
+	final LongAdder exceptions = new LongAdder();
+
+	/** The interrupts. */
+	final LongAdder interrupts = new LongAdder();
+
+	/** The callback latency. */
+	final LatencyHistogram callbackLatency = new LatencyHistogram();
+
+	/**
+	 * Counts a packet delivered to the application.
+	 *
+	 * @param caplen the capture length
+	 */
+	void packet(int caplen) {
+		packets.increment();
+		bytes.add(caplen);
+	}
+
+	/**
+	 * Snapshot.
+	 *
+	 * @return the pcap metrics
+	 */
+	PcapMetrics snapshot() {
+		return new PcapMetrics(
+				true,
+				packets.sum(),
+				bytes.sum(),
+				callbacks.sum(),
+				exceptions.sum(),
+				interrupts.sum(),
+				callbackLatency.snapshot());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jnetpcap.Pcap.LibraryPolicy;
+import org.jnetpcap.util.LatencyHistogram;
+
+/**
+ * Global per symbol latency histograms for {@link ForeignDowncall} invocations.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class DowncallMetrics {
+
+	/** The enabled flag, checked on every downcall. */
+	private static volatile boolean enabled = Boolean.getBoolean(LibraryPolicy.SYSTEM_PROPERTY_METRICS);
+
+	/** Start time returned while disabled. */
+	private static final long NOT_STARTED = Long.MIN_VALUE;
+
+	/** Histograms by symbol name. */
+	private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * Checks if is enabled.
+	 *
+	 * @return true, if is enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Sets the enabled.
+	 *
+	 * @param enabled the new enabled
+	 */
+	public static void setEnabled(boolean enabled) {
+		DowncallMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Start time for a downcall, or a marker value if metrics are disabled.
+	 *
+	 * @return the start time in nanos
+	 */
+	static long start() {
+		return enabled ? System.nanoTime() : NOT_STARTED;
+	}
+
+	/**
+	 * Records a downcall's duration if it was started with metrics enabled.
+	 *
+	 * @param symbolName the symbol name
+	 * @param startNanos the start time returned by {@link #start()}
+	 */
+	static void stop(String symbolName, long startNanos) {
+		if (startNanos == NOT_STARTED)
+			return;
+
+		histograms.computeIfAbsent(symbolName, k -> new LatencyHistogram())
+				.recordSince(startNanos);
+	}
+
+	/**
+	 * Snapshot of all histograms, sorted by symbol name.
+	 *
+	 * @return the map
+	 */
+	public static Map<String, LatencyHistogram.Snapshot> snapshot() {
+		var map = new TreeMap<String, LatencyHistogram.Snapshot>();
+		histograms.forEach((name, histogram) -> map.put(name, histogram.snapshot()));
+
+		return map;
+	}
+
+	/**
+	 * Instantiates a new downcall metrics.
+	 */
+	private DowncallMetrics() {
+	}
+}
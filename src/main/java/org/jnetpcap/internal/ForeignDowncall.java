@@ -15,6 +15,8 @@
  */
 package org.jnetpcap.internal;
 
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
 import java.lang.invoke.MethodHandle;
 import java.util.Objects;
@@ -25,13 +27,27 @@ import java.util.function.Supplier;
 
 /**
  * The Class ForeignDowncall.
+ * <p>
+ * Downcalls created from a function descriptor are linked lazily. The native
+ * symbol is resolved up front, which is cheap and allows missing symbols to be
+ * reported during initialization, but the downcall method handle is only
+ * linked on first use. Linking is by far the most expensive part of
+ * initialization, and a typical application only ever calls a small fraction
+ * of the libpcap API.
+ * </p>
  *
  * @param <E> the element type
  */
 public class ForeignDowncall<E extends Throwable> {
 
-	/** The handle. */
-	private final MethodHandle handle;
+	/** The native linker. */
+	private static final Linker C_LINKER = Linker.nativeLinker();
+
+	/** The handle, null until linked. Written once. */
+	private volatile MethodHandle handle;
+
+	/** The descriptor used to link the handle on first use. */
+	private final FunctionDescriptor descriptor;
 	
 	/** The cause. */
 	private final Throwable cause;
@@ -45,6 +61,9 @@ public class ForeignDowncall<E extends Throwable> {
 	/** The symbol address. */
 	private final MemorySegment symbolAddress;
 
+	/** Calls since the last JFR sample, racy by design. */
+	private int sampleCounter;
+
 	/**
 	 * Instantiates a new foreign downcall.
 	 *
@@ -52,6 +71,7 @@ public class ForeignDowncall<E extends Throwable> {
 	 */
 	public ForeignDowncall(String symbolName) {
 		this.handle = null;
+		this.descriptor = null;
 		this.cause = null;
 		this.exceptionFactory = null;
 		this.symbolName = symbolName;
@@ -71,7 +91,26 @@ public class ForeignDowncall<E extends Throwable> {
 		this.symbolName = symbolName;
 		this.symbolAddress = symbolAddress;
 		this.handle = Objects.requireNonNull(handle, "handle");
+		this.descriptor = null;
+		this.exceptionFactory = exceptionFactory;
+		this.cause = null;
+	}
+
+	/**
+	 * Instantiates a new foreign downcall, which is linked on first use.
+	 *
+	 * @param symbolName       the symbol name
+	 * @param symbolAddress    the symbol address
+	 * @param descriptor       the function descriptor
+	 * @param exceptionFactory the exception factory
+	 */
+	public ForeignDowncall(String symbolName, MemorySegment symbolAddress, FunctionDescriptor descriptor,
+			Function<String, E> exceptionFactory) {
+		this.symbolName = symbolName;
+		this.symbolAddress = Objects.requireNonNull(symbolAddress, "symbolAddress");
+		this.descriptor = Objects.requireNonNull(descriptor, "descriptor");
 		this.exceptionFactory = exceptionFactory;
+		this.handle = null;
 		this.cause = null;
 	}
 
@@ -84,6 +123,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public ForeignDowncall(String symbolName, Throwable cause) {
 		this.cause = Objects.requireNonNull(cause, "cause");
 		this.handle = null;
+		this.descriptor = null;
 		this.exceptionFactory = null;
 		this.symbolName = symbolName;
 		this.symbolAddress = null;
@@ -95,14 +135,71 @@ public class ForeignDowncall<E extends Throwable> {
 	 * @return the method handle
 	 */
 	public MethodHandle handle() {
-		if (handle == null)
+		MethodHandle h = handle;
+		if (h != null)
+			return h;
+
+		if (descriptor == null)
 			throw new IllegalStateException(
 					"can not invoke native C function '" + symbolName + "'",
 					cause);
 
+		return link();
+	}
+
+	/**
+	 * Links the downcall handle, once.
+	 *
+	 * @return the method handle
+	 */
+	private synchronized MethodHandle link() {
+		if (handle == null)
+			handle = C_LINKER.downcallHandle(symbolAddress, descriptor);
+
 		return handle;
 	}
 
+	/**
+	 * Checks if the downcall handle has been linked, either up front or by a
+	 * first call.
+	 *
+	 * @return true, if linked
+	 */
+	public boolean isLinked() {
+		return handle != null;
+	}
+
+	/**
+	 * Invokes the native function, timing it when downcall metrics are enabled
+	 * and recording a sampled JFR event.
+	 *
+	 * @param args the args
+	 * @return the result
+	 * @throws Throwable the throwable
+	 */
+	private Object call(Object... args) throws Throwable {
+		long start = DowncallMetrics.start();
+
+		ForeignDowncallEvent event = null;
+		if ((++sampleCounter & (ForeignDowncallEvent.SAMPLE_INTERVAL - 1)) == 0) {
+			event = new ForeignDowncallEvent();
+			event.begin();
+		}
+
+		try {
+			return handle().invokeWithArguments(args);
+		} finally {
+			DowncallMetrics.stop(symbolName, start);
+
+			if (event != null && event.shouldCommit()) {
+				event.end();
+				event.symbol = symbolName;
+				event.sampleInterval = ForeignDowncallEvent.SAMPLE_INTERVAL;
+				event.commit();
+			}
+		}
+	}
+
 	/**
 	 * Invoke int.
 	 *
@@ -115,7 +212,7 @@ public class ForeignDowncall<E extends Throwable> {
 		int result;
 
 		try {
-			result = (int) handle().invokeWithArguments(args);
+			result = (int) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -137,7 +234,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public int invokeInt(Object... args) {
 
 		try {
-			return (int) handle().invokeWithArguments(args);
+			return (int) call(args);
 		} catch (Throwable e) { // VarHandle could throw this
 			throw new RuntimeException(e);
 		}
@@ -156,7 +253,7 @@ public class ForeignDowncall<E extends Throwable> {
 		int result;
 
 		try {
-			result = (int) handle().invokeWithArguments(args);
+			result = (int) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -182,7 +279,7 @@ public class ForeignDowncall<E extends Throwable> {
 		long result;
 
 		try {
-			result = (long) handle().invokeWithArguments(args);
+			result = (long) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -204,7 +301,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public long invokeLong(Object... args) {
 
 		try {
-			return (long) handle().invokeWithArguments(args);
+			return (long) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -226,7 +323,7 @@ public class ForeignDowncall<E extends Throwable> {
 		long result;
 
 		try {
-			result = (long) handle().invokeWithArguments(args);
+			result = (long) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -249,7 +346,7 @@ public class ForeignDowncall<E extends Throwable> {
 	@SuppressWarnings("unchecked")
 	public <U> U invokeObj(Object... args) {
 		try {
-			return (U) handle().invokeWithArguments(args);
+			return (U) call(args);
 		} catch (Throwable e) { // VarHandle could throw this
 			throw new RuntimeException(e);
 		}
@@ -269,7 +366,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public <U> U invokeObj(Supplier<String> messageFactory, Object... args) throws E {
 		U result;
 		try {
-			result = (U) handle().invokeWithArguments(args);
+			result = (U) call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -291,7 +388,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public String invokeString(Object... args) {
 
 		try {
-			MemorySegment address = (MemorySegment) handle().invokeWithArguments(args);
+			MemorySegment address = (MemorySegment) call(args);
 
 			return ForeignUtils.toJavaString(address);
 		} catch (RuntimeException e) { // VarHandle could throw this
@@ -314,7 +411,7 @@ public class ForeignDowncall<E extends Throwable> {
 
 		MemorySegment address;
 		try {
-			address = (MemorySegment) handle().invokeWithArguments(args);
+			address = (MemorySegment) call(args);
 
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
@@ -337,7 +434,7 @@ public class ForeignDowncall<E extends Throwable> {
 	public void invokeVoid(Object... args) {
 
 		try {
-			handle().invokeWithArguments(args);
+			call(args);
 		} catch (RuntimeException e) { // VarHandle could throw this
 			throw e;
 
@@ -352,7 +449,7 @@ public class ForeignDowncall<E extends Throwable> {
 	 * @return true, if is native symbol resolved
 	 */
 	public boolean isNativeSymbolResolved() {
-		return handle != null;
+		return handle != null || descriptor != null;
 	}
 
 	/**
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recorded for a sample of native downcalls. Only one in every
+ * {@value #SAMPLE_INTERVAL} calls of each native function is recorded, which
+ * keeps the overhead low for functions called per packet, such as
+ * pcap_next_ex.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@Name("org.jnetpcap.ForeignDowncall")
+@Label("Native Downcall")
+@Category({ "jNetPcap", "Native" })
+@Description("A sampled call into a native libpcap function")
+@StackTrace(false)
+final class ForeignDowncallEvent extends Event {
+
+	/** Record one in this many calls, per native function. Must be a power of 2. */
+	static final int SAMPLE_INTERVAL = 64;
+
+	/** The symbol. */
+	@Label("Symbol")
+	@Description("Native function name")
+	String symbol;
+
+	/** The sample interval. */
+	@Label("Sample Interval")
+	@Description("Number of calls represented by this event")
+	int sampleInterval;
+}
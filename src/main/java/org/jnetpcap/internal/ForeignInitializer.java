@@ -16,7 +16,6 @@
 package org.jnetpcap.internal;
 
 import java.lang.foreign.FunctionDescriptor;
-import java.lang.foreign.Linker;
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.SymbolLookup;
@@ -29,13 +28,13 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * The Class ForeignInitializer.
@@ -130,10 +129,10 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 		 *
 		 * @param symbolName    the symbol name
 		 * @param symbolAddress the symbol address
-		 * @param handle        the handle
+		 * @param descriptor    the function descriptor, linked on first use
 		 * @return the t
 		 */
-		T newDowncall(String symbolName, MemorySegment symbolAddress, MethodHandle handle);
+		T newDowncall(String symbolName, MemorySegment symbolAddress, FunctionDescriptor descriptor);
 	}
 
 	/**
@@ -174,49 +173,102 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	}
 
 	/**
-	 * The Class SignatureParser.
+	 * An immutable, parsed foreign function signature.
+	 * <p>
+	 * Signatures are written as a symbol or method name followed by argument and
+	 * return type characters, for example:
+	 * </p>
+	 * 
+	 * <pre>
+	 *  pcap_setfilter(AA)I    int pcap_setfilter(pcap_t *p, struct bpf_program *fp)
+	 * </pre>
+	 * <p>
+	 * Parsing is done in a single pass without regular expressions, and parsed
+	 * signatures are cached by their string, so that classes initializing
+	 * concurrently on different threads can parse signatures safely.
+	 * </p>
+	 *
+	 * @param symbol     the symbol or method name
+	 * @param descriptor the native function descriptor
+	 * @param methodType the equivalent java method type
 	 */
-	private static class SignatureParser {
+	record Signature(String symbol, FunctionDescriptor descriptor, MethodType methodType) {
 
-		/**
-		 * For example:
-		 * 
-		 * <pre>
-		 *  (AA)I int pcap_setfilter(pcap_t *p, struct bpf_program *fp)
-		 * </pre>
-		 * 
-		 * .
-		 */
-		private static final Pattern SIG = Pattern.compile(
-				"^(\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*)\\(([BCDFIJSAV]*)\\)([BCDFIJSAV]);?");
+		/** Parsed signatures by signature string. */
+		private static final Map<String, Signature> CACHE = new ConcurrentHashMap<>();
 
 		/**
-		 * Map java primitive types.
+		 * Parses a signature, or returns the cached copy of a previously parsed one.
 		 *
-		 * @param sig the sig
-		 * @return the class[]
+		 * @param signature the signature string
+		 * @return the signature or null if not a valid signature
 		 */
-		private static Class<?>[] mapJavaPrimitiveTypes(String sig) {
-			return sig.chars().mapToObj(SignatureParser::mapToJavaPrimitiveType).toArray(Class[]::new);
+		static Signature parse(String signature) {
+			Signature sig = CACHE.get(signature);
+			if (sig == null) {
+				sig = parseUncached(signature);
+
+				if (sig != null)
+					CACHE.putIfAbsent(signature, sig);
+			}
+
+			return sig;
 		}
 
 		/**
-		 * Map layouts.
+		 * Parses a signature.
 		 *
-		 * @param sig the sig
-		 * @return the memory layout[]
+		 * @param signature the signature string
+		 * @return the signature or null if not a valid signature
 		 */
-		private static MemoryLayout[] mapLayouts(String sig) {
-			return sig.chars().mapToObj(SignatureParser::mapToLayout).toArray(MemoryLayout[]::new);
+		private static Signature parseUncached(String signature) {
+			String str = signature.trim();
+			int len = str.length();
+
+			if (len == 0 || !Character.isJavaIdentifierStart(str.charAt(0)))
+				return null;
+
+			int open = 1;
+			while (open < len && Character.isJavaIdentifierPart(str.charAt(open)))
+				open++;
+
+			int close = str.indexOf(')', open);
+			if (open == len || str.charAt(open) != '(' || close < 0 || close + 1 == len)
+				return null;
+
+			int argCount = close - open - 1;
+			MemoryLayout[] argLayouts = new MemoryLayout[argCount];
+			Class<?>[] argTypes = new Class<?>[argCount];
+
+			for (int i = 0; i < argCount; i++) {
+				CType type = toCType(str.charAt(open + 1 + i));
+				if (type == null || type == CType.C_VOID)
+					return null;
+
+				argLayouts[i] = type.getLayout();
+				argTypes[i] = type.getJavaType();
+			}
+
+			CType ret = toCType(str.charAt(close + 1));
+			if (ret == null)
+				return null;
+
+			FunctionDescriptor descriptor = (ret == CType.C_VOID)
+					? FunctionDescriptor.ofVoid(argLayouts)
+					: FunctionDescriptor.of(ret.getLayout(), argLayouts);
+
+			Class<?> retType = (ret == CType.C_VOID) ? void.class : ret.getJavaType();
+
+			return new Signature(str.substring(0, open), descriptor, MethodType.methodType(retType, argTypes));
 		}
 
 		/**
-		 * Map to C type.
+		 * Maps a signature character to its C type.
 		 *
-		 * @param ch the ch
-		 * @return the c type
+		 * @param ch the signature character
+		 * @return the C type or null if not a valid character
 		 */
-		private static CType mapToCType(int ch) {
+		private static CType toCType(char ch) {
 			return switch (ch) {
 			case 'A' -> CType.C_POINTER;
 			case 'B' -> CType.C_CHAR;
@@ -227,120 +279,31 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 			case 'D' -> CType.C_DOUBLE;
 			case 'V' -> CType.C_VOID;
 
-			default -> throw new IllegalStateException("illegal char in signature " + ch);
+			default -> null;
 			};
 		}
 
 		/**
-		 * Map to java primitive type.
-		 *
-		 * @param ch the ch
-		 * @return the class
-		 */
-		private static Class<?> mapToJavaPrimitiveType(int ch) {
-			return switch (ch) {
-			case 'A' -> MemorySegment.class;
-			case 'B' -> byte.class;
-			case 'I' -> int.class;
-			case 'J' -> long.class;
-			case 'S' -> short.class;
-			case 'F' -> float.class;
-			case 'D' -> double.class;
-			case 'V' -> void.class;
-
-			default -> throw new IllegalStateException("illegal char in signature " + ch);
-			};
-		}
-
-		/**
-		 * Map to layout.
-		 *
-		 * @param ch the ch
-		 * @return the memory layout
-		 */
-		private static MemoryLayout mapToLayout(int ch) {
-			return mapToCType(ch).getLayout();
-		}
-
-		/** The matcher. */
-		private Matcher matcher;
-
-		/**
-		 * Args.
-		 *
-		 * @return the memory layout[]
-		 */
-		public MemoryLayout[] args() {
-			return mapLayouts(group(2));
-		}
-
-		/**
-		 * Group.
-		 *
-		 * @param index the index
-		 * @return the string
-		 */
-		public String group(int index) {
-			return matcher.group(index);
-		}
-
-		/**
-		 * Java args.
+		 * The return layout.
 		 *
-		 * @return the class[]
+		 * @return the layout or null for void
 		 */
-		public Class<?>[] javaArgs() {
-			return mapJavaPrimitiveTypes(group(2));
+		MemoryLayout ret() {
+			return descriptor.returnLayout().orElse(null);
 		}
 
 		/**
-		 * Java ret.
+		 * The argument layouts.
 		 *
-		 * @return the class
+		 * @return the layouts
 		 */
-		public Class<?> javaRet() {
-			return mapToJavaPrimitiveType(matcher.group(3).charAt(0));
-		}
-
-		/**
-		 * Match.
-		 *
-		 * @param str the str
-		 * @return true, if successful
-		 */
-		private boolean match(String str) {
-			matcher = SIG.matcher(str.trim());
-
-			return matcher.find() && matcher.groupCount() >= 2;
-		}
-
-		/**
-		 * Ret.
-		 *
-		 * @return the memory layout
-		 */
-		public MemoryLayout ret() {
-			return mapToLayout(matcher.group(3).charAt(0));
-		}
-
-		/**
-		 * Symbol.
-		 *
-		 * @return the string
-		 */
-		public String symbol() {
-			return group(1);
+		MemoryLayout[] args() {
+			return descriptor.argumentLayouts().toArray(MemoryLayout[]::new);
 		}
 	}
-
-	/** The Constant PARSER. */
-	private static final SignatureParser PARSER = new SignatureParser();
 	
 	/** The Constant C_SYMBOLS. */
 	private static final SymbolLookup C_SYMBOLS = SymbolLookup.loaderLookup();
-	
-	/** The Constant C_LINKER. */
-	private static final Linker C_LINKER = Linker.nativeLinker();
 
 	/**
 	 * Default instance.
@@ -349,16 +312,16 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	 * @param <E>           the element type
 	 * @param symbolName    the symbol name
 	 * @param symbolAddress the symbol address
-	 * @param handle        the handle
+	 * @param descriptor    the function descriptor
 	 * @return the t
 	 */
 	@SuppressWarnings({ "unchecked",
 			"rawtypes" })
 	private static <T extends ForeignDowncall<E>, E extends Throwable> T defaultInstance(String symbolName,
-			MemorySegment symbolAddress, MethodHandle handle) {
+			MemorySegment symbolAddress, FunctionDescriptor descriptor) {
 		Function<String, E> exceptionFactory = msg -> (E) new IllegalStateException(msg);
 
-		return (T) new ForeignDowncall(symbolName, symbolAddress, handle, exceptionFactory);
+		return (T) new ForeignDowncall(symbolName, symbolAddress, descriptor, exceptionFactory);
 	}
 
 	/**
@@ -514,18 +477,16 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	 * @return the foreign function
 	 */
 	public T downcall(String signature) {
-		if (!PARSER.match(signature))
+		Signature sig = Signature.parse(signature);
+		if (sig == null)
 			throw new IllegalArgumentException("invalid foreign signature for C function (downcall) " + signature);
 
-		String symbolName = PARSER.symbol();
-		MemoryLayout ret = PARSER.ret();
-		MemoryLayout[] args = PARSER.args();
+		String symbolName = sig.symbol();
 
 		try {
 			MemorySegment symbol = resolveSymbol(symbolName);
-			var handle = downcallHandle(symbol, ret, args);
 
-			return newFunctionSupplier.newDowncall(symbolName, symbol, handle);
+			return newFunctionSupplier.newDowncall(symbolName, symbol, sig.descriptor());
 		} catch (NoSuchElementException e) {
 			missingDowncalls.add(symbolName);
 
@@ -550,9 +511,8 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 
 		try {
 			MemorySegment symbol = resolveSymbol(symbolName);
-			var handle = downcallHandle(symbol, ret, args);
 
-			return newFunctionSupplier.newDowncall(symbolName, symbol, handle);
+			return newFunctionSupplier.newDowncall(symbolName, symbol, descriptor(ret, args));
 		} catch (NoSuchElementException e) {
 			missingDowncalls.add(symbolName);
 
@@ -561,24 +521,17 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	}
 
 	/**
-	 * Downcall handle.
+	 * Function descriptor of a downcall. The downcall handle itself is linked by
+	 * the {@link ForeignDowncall} on first use.
 	 *
-	 * @param symbol     the symbol
 	 * @param retLayout  the ret layout
 	 * @param argLayouts the arg layouts
-	 * @return the method handle
-	 * @throws NoSuchElementException the no such element exception
+	 * @return the function descriptor
 	 */
-	private MethodHandle downcallHandle(MemorySegment symbol, MemoryLayout retLayout, MemoryLayout[] argLayouts)
-			throws NoSuchElementException {
-
-		FunctionDescriptor descriptor = (retLayout == null)
+	private static FunctionDescriptor descriptor(MemoryLayout retLayout, MemoryLayout[] argLayouts) {
+		return (retLayout == null)
 				? FunctionDescriptor.ofVoid(argLayouts)
 				: FunctionDescriptor.of(retLayout, argLayouts);
-
-		MethodHandle handle = C_LINKER.downcallHandle(symbol, descriptor);
-
-		return handle;
 	}
 
 	/**
@@ -599,15 +552,6 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 		this.makeAccessible = b;
 	}
 
-	/**
-	 * Method type.
-	 *
-	 * @return the method type
-	 */
-	private MethodType methodType() {
-		return MethodType.methodType(PARSER.javaRet(), PARSER.javaArgs());
-	}
-
 	/**
 	 * Resolve symbol.
 	 *
@@ -706,23 +650,18 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	 * @return the foreign upcall
 	 */
 	public <U> ForeignUpcall<U> upcallStatic(Class<?> clazz, String signature) {
-		if (!PARSER.match(signature))
+		Signature sig = Signature.parse(signature);
+		if (sig == null)
 			throw new IllegalArgumentException("invalid signature for java method (upcall) " + signature + "in class "
 					+ clazz.getName());
 
-		String methodName = PARSER.symbol();
-		MemoryLayout retLayout = PARSER.ret();
-		MemoryLayout[] argLayouts = PARSER.args();
+		String methodName = sig.symbol();
 
 		try {
-			FunctionDescriptor descriptor = (retLayout == null)
-					? FunctionDescriptor.ofVoid(argLayouts)
-					: FunctionDescriptor.of(retLayout, argLayouts);
-
 			Method method = findMethodInClass(clazz, methodName);
 
-			MethodHandle handle = toStaticMethodHandle(method, retLayout, argLayouts);
-			return new ForeignUpcall<>(handle, descriptor);
+			MethodHandle handle = toStaticMethodHandle(method, sig.ret(), sig.args());
+			return new ForeignUpcall<>(handle, sig.descriptor());
 		} catch (IllegalAccessException | SecurityException e) {
 			throw new RuntimeException(methodName, e);
 
@@ -793,25 +732,18 @@ public class ForeignInitializer<T extends ForeignDowncall<E>, E extends Throwabl
 	public <U> ForeignUpcall<U> upcallVirtual(
 			String signature, Class<?> clazz, Consumer<Method> methodSetup) {
 
-		if (!PARSER.match(signature))
+		Signature sig = Signature.parse(signature);
+		if (sig == null)
 			throw new IllegalArgumentException("invalid signature for java method (upcall) " + signature + "in class "
 					+ clazz.getName());
 
-		String methodName = PARSER.symbol();
-		MemoryLayout retLayout = PARSER.ret();
-		MemoryLayout[] argLayouts = PARSER.args();
+		String methodName = sig.symbol();
 
 		try {
-			FunctionDescriptor descriptor = (retLayout == null)
-					? FunctionDescriptor.ofVoid(argLayouts)
-					: FunctionDescriptor.of(retLayout, argLayouts);
-
-			MethodType type = methodType();
-
 			MethodHandle virtualHandle = toVirtualMethodHandle(
-					type, clazz, methodName, methodSetup);
+					sig.methodType(), clazz, methodName, methodSetup);
 
-			return new ForeignUpcall<>(virtualHandle, descriptor);
+			return new ForeignUpcall<>(virtualHandle, sig.descriptor());
 		} catch (IllegalAccessException | SecurityException e) {
 			throw new RuntimeException("[%s] %s".formatted(methodName, e.getMessage()), e);
 
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recorded for every pcap_dispatch and pcap_loop call, spanning the
+ * native call and all user callbacks made from it.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@Name("org.jnetpcap.Dispatch")
+@Label("Pcap Dispatch")
+@Category({ "jNetPcap", "Capture" })
+@Description("A pcap_dispatch or pcap_loop call, including user callbacks")
+@StackTrace(false)
+final class PcapDispatchEvent extends Event {
+
+	/** The operation. */
+	@Label("Operation")
+	@Description("Native function, pcap_dispatch or pcap_loop")
+	String operation;
+
+	/** The count requested. */
+	@Label("Count Requested")
+	@Description("Maximum number of packets to process, -1 or 0 for all")
+	int countRequested;
+
+	/** The count returned. */
+	@Label("Count Returned")
+	@Description("Native function return value, number of packets or error code")
+	int countReturned;
+}
@@ -21,6 +21,9 @@ import java.util.concurrent.TimeoutException;
 
 import org.jnetpcap.PcapException;
 import org.jnetpcap.PcapHandler.NativeCallback;
+import org.jnetpcap.constant.PcapHeaderValidation;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapMetrics;
 import org.jnetpcap.util.PcapPacketRef;
 
 /**
@@ -29,13 +32,41 @@ import org.jnetpcap.util.PcapPacketRef;
 public interface PcapDispatcher extends NativeCallback, AutoCloseable {
 
 	/**
-	 * Capture length.
+	 * Capture length, validated according to the header validation policy.
 	 *
 	 * @param address the address
 	 * @return the int
 	 */
 	int captureLength(MemorySegment address);
 
+	/**
+	 * Sets and resolves the header validation policy.
+	 *
+	 * @param policy the header validation policy
+	 */
+	void setHeaderValidation(PcapHeaderValidation policy);
+
+	/**
+	 * The header validation policy.
+	 *
+	 * @return the header validation policy
+	 */
+	PcapHeaderValidation headerValidation();
+
+	/**
+	 * Enables or disables hot path metrics.
+	 *
+	 * @param enabled true to enable
+	 */
+	void setMetricsEnabled(boolean enabled);
+
+	/**
+	 * Snapshot of hot path metrics.
+	 *
+	 * @return the metrics, {@link PcapMetrics#DISABLED} while disabled
+	 */
+	PcapMetrics metrics();
+
 	/**
 	 * Dispatch native.
 	 *
@@ -132,6 +163,16 @@ public interface PcapDispatcher extends NativeCallback, AutoCloseable {
 	 */
 	PcapPacketRef nextEx() throws PcapException, TimeoutException;
 
+	/**
+	 * Next ex, rebinding the supplied cursor in place.
+	 *
+	 * @param cursor the cursor to bind to the next packet
+	 * @return true if cursor was bound to a packet, or false if no more packets
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 */
+	boolean nextEx(PcapCursor cursor) throws PcapException, TimeoutException;
+
 	/**
 	 * Next.
 	 *
@@ -139,4 +180,12 @@ public interface PcapDispatcher extends NativeCallback, AutoCloseable {
 	 * @throws PcapException the pcap exception
 	 */
 	PcapPacketRef next() throws PcapException;
+
+	/**
+	 * Checks if packets have been requested from the handle, by any of the
+	 * dispatch, loop or next calls.
+	 *
+	 * @return true, if the handle is no longer at its first packet
+	 */
+	boolean hasRead();
 }
\ No newline at end of file
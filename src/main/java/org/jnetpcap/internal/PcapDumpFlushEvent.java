@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event recorded for every pcap_dump_flush call.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@Name("org.jnetpcap.DumpFlush")
+@Label("Pcap Dump Flush")
+@Category({ "jNetPcap", "Dump" })
+@Description("Flush of buffered packets to a savefile")
+public final class PcapDumpFlushEvent extends Event {
+
+	/** The file. */
+	@Label("File")
+	public String file;
+
+	/** The result. */
+	@Label("Result")
+	@Description("Native function return value")
+	public int result;
+}
@@ -15,8 +15,8 @@
  */
 package org.jnetpcap.internal;
 
+import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.MemorySegment;
-import java.lang.invoke.MethodHandle;
 
 import org.jnetpcap.PcapException;
 
@@ -34,10 +34,10 @@ public class PcapForeignDowncall extends ForeignDowncall<PcapException> {
 	 *
 	 * @param symbolName    the symbol name
 	 * @param symbolAddress the symbol address
-	 * @param handle        the handle
+	 * @param descriptor    the function descriptor, linked on first use
 	 */
-	public PcapForeignDowncall(String symbolName, MemorySegment symbolAddress, MethodHandle handle) {
-		super(symbolName, symbolAddress, handle, PcapException::new);
+	public PcapForeignDowncall(String symbolName, MemorySegment symbolAddress, FunctionDescriptor descriptor) {
+		super(symbolName, symbolAddress, descriptor, PcapException::new);
 	}
 
 	/**
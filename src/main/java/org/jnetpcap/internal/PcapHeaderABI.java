@@ -20,6 +20,7 @@ import static java.nio.ByteOrder.*;
 import java.io.IOException;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout.OfInt;
+import java.lang.foreign.ValueLayout.OfLong;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
@@ -74,10 +75,10 @@ public enum PcapHeaderABI {
 	private static final int BITMASK16 = 0xFFFFFFFF;
 	
 	/** The Constant MIN_FRAME_SIZE. */
-	private static final int MIN_FRAME_SIZE = 14;
+	public static final int MIN_FRAME_SIZE = 14;
 	
 	/** The Constant MAX_FRAME_SIZE. */
-	private static final int MAX_FRAME_SIZE = 64 * 1024;
+	public static final int MAX_FRAME_SIZE = 64 * 1024;
 	
 	/** The Constant CAREFUL_LOCK. */
 	private static final Lock CAREFUL_LOCK = new ReentrantLock();
@@ -357,6 +358,9 @@ public enum PcapHeaderABI {
 
 	/** The layout. */
 	private final OfInt layout;
+
+	/** The layout of the 8 byte tv_sec and tv_usec fields of padded headers. */
+	private final OfLong longLayout;
 	
 	/** The header lenth. */
 	private final int headerLenth;
@@ -383,7 +387,8 @@ public enum PcapHeaderABI {
 		this.tvUsecOffset = usecOff;
 		this.captureLengthOffset = capOff;
 		this.wireLengthOffset = wireOff;
-		this.layout = JAVA_INT.withOrder(bo);
+		this.layout = JAVA_INT_UNALIGNED.withOrder(bo); // Savefile records are not 4 byte aligned
+		this.longLayout = JAVA_LONG_UNALIGNED.withOrder(bo);
 		this.headerLenth = (wireOff == 12) ? 16 : 24;
 		this.order = bo;
 	}
@@ -408,6 +413,26 @@ public enum PcapHeaderABI {
 		return validateLength(mseg.get(layout, captureLengthOffset) & BITMASK16);
 	}
 
+	/**
+	 * Capture length read without any validation. This is a plain int load.
+	 *
+	 * @param mseg the mseg
+	 * @return the int
+	 */
+	public int captureLengthUnchecked(MemorySegment mseg) {
+		return mseg.get(layout, captureLengthOffset);
+	}
+
+	/**
+	 * Capture length read without any validation.
+	 *
+	 * @param buffer the buffer
+	 * @return the int
+	 */
+	public int captureLengthUnchecked(ByteBuffer buffer) {
+		return buffer.order(order).getInt(captureLengthOffset);
+	}
+
 	/**
 	 * Capture length.
 	 *
@@ -446,23 +471,31 @@ public enum PcapHeaderABI {
 	}
 
 	/**
-	 * Tv sec.
+	 * Tv sec. Padded headers hold a 64-bit {@code time_t}, compact headers a 32
+	 * bit unsigned value.
 	 *
 	 * @param mseg the mseg
 	 * @return the long
 	 */
 	public long tvSec(MemorySegment mseg) {
+		if (headerLenth == 24)
+			return mseg.get(longLayout, tvSecOffset);
+
 		return Integer.toUnsignedLong(mseg.get(layout, tvSecOffset));
 	}
 
 	/**
-	 * Tv sec.
+	 * Tv sec. Padded headers hold a 64-bit {@code time_t}, compact headers a 32
+	 * bit unsigned value.
 	 *
 	 * @param mseg     the mseg
 	 * @param newTvSec the new tv sec
 	 */
 	public void tvSec(MemorySegment mseg, long newTvSec) {
-		mseg.set(layout, tvSecOffset, (int) newTvSec);
+		if (headerLenth == 24)
+			mseg.set(longLayout, tvSecOffset, newTvSec);
+		else
+			mseg.set(layout, tvSecOffset, (int) newTvSec);
 	}
 
 	/**
@@ -475,23 +508,31 @@ public enum PcapHeaderABI {
 	}
 
 	/**
-	 * Tv usec.
+	 * Tv usec. Padded headers hold a 64-bit {@code suseconds_t}, compact headers
+	 * a 32 bit unsigned value.
 	 *
 	 * @param mseg the mseg
 	 * @return the long
 	 */
 	public long tvUsec(MemorySegment mseg) {
+		if (headerLenth == 24)
+			return mseg.get(longLayout, tvUsecOffset);
+
 		return Integer.toUnsignedLong(mseg.get(layout, tvUsecOffset));
 	}
 
 	/**
-	 * Tv usec.
+	 * Tv usec. Padded headers hold a 64-bit {@code suseconds_t}, compact headers
+	 * a 32 bit unsigned value.
 	 *
 	 * @param mseg      the mseg
 	 * @param newTvUsec the new tv usec
 	 */
 	public void tvUsec(MemorySegment mseg, long newTvUsec) {
-		mseg.set(layout, tvUsecOffset, (int) newTvUsec);
+		if (headerLenth == 24)
+			mseg.set(longLayout, tvUsecOffset, newTvUsec);
+		else
+			mseg.set(layout, tvUsecOffset, (int) newTvUsec);
 	}
 
 	/**
@@ -540,6 +581,26 @@ public enum PcapHeaderABI {
 		return validateLength(mseg.get(layout, wireLengthOffset) & BITMASK16);
 	}
 
+	/**
+	 * Wire length read without any validation. This is a plain int load.
+	 *
+	 * @param mseg the mseg
+	 * @return the int
+	 */
+	public int wireLengthUnchecked(MemorySegment mseg) {
+		return mseg.get(layout, wireLengthOffset);
+	}
+
+	/**
+	 * Wire length read without any validation.
+	 *
+	 * @param buffer the buffer
+	 * @return the int
+	 */
+	public int wireLengthUnchecked(ByteBuffer buffer) {
+		return buffer.order(order).getInt(wireLengthOffset);
+	}
+
 	/**
 	 * Wire length.
 	 *
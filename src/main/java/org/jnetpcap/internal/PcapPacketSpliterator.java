@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapPacketRef;
+
+/**
+ * A spliterator over packets of a pcap handle.
+ * <p>
+ * When traversed sequentially, packets are read with
+ * {@link Pcap#nextEx(PcapCursor)} using a single reusable cursor. Elements
+ * reference libpcap's packet buffer directly and are only valid until the next
+ * element is requested. Each element is still a new {@link PcapPacketRef},
+ * since the same element type must be safe to collect in savefile mode, where
+ * a shared flyweight would silently alias every collected element.
+ * </p>
+ * <p>
+ * When the first call is to {@link #trySplit()}, which only happens with
+ * parallel streams, and the handle was opened on a classic pcap ``savefile'',
+ * the file is memory mapped and read directly instead of through libpcap. The
+ * mapped region is split in half at record aligned boundaries, so every core
+ * can work on its own part of the file. Elements then reference the mapped
+ * file, remain valid as long as they are reachable and can safely be collected.
+ * </p>
+ * <p>
+ * The mapped reader must produce exactly what libpcap would. The file is only
+ * handed to this spliterator by {@code Pcap.stream()} for handles opened on a
+ * file by name, with no filter set and no packets read yet, and the file is
+ * only mapped if its timestamp precision is the handle's.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapPacketSpliterator implements Spliterator<PcapPacketRef> {
+
+	/** Do not split regions smaller than this. */
+	private static final long MIN_SPLIT_SIZE = 1024 * 1024;
+
+	/** The pcap handle, null once in savefile mode. */
+	private Pcap pcap;
+
+	/** The reusable cursor used in nextEx mode. */
+	private PcapCursor cursor;
+
+	/** The savefile path, null if handle is not a savefile. */
+	private final Path file;
+
+	/** The timestamp precision of the handle's headers. */
+	private final boolean nanoTime;
+
+	/** The mapped savefile, null in nextEx mode. */
+	private PcapSavefile savefile;
+
+	/** The next record offset in savefile mode. */
+	private long position;
+
+	/** The end of region offset, exclusive, in savefile mode. */
+	private long end;
+
+	/** The average record length, used for size estimates. */
+	private int averageRecordLength;
+
+	/** Set once an element has been returned in nextEx mode. */
+	private boolean started;
+
+	/**
+	 * Instantiates a new spliterator reading through the pcap handle.
+	 *
+	 * @param pcap     the pcap handle
+	 * @param file     the savefile which may be read directly instead of through
+	 *                 the handle, or null
+	 * @param nanoTime if true, the handle delivers timestamps in nanos, otherwise
+	 *                 in micros
+	 */
+	public PcapPacketSpliterator(Pcap pcap, Path file, boolean nanoTime) {
+		this.pcap = pcap;
+		this.file = file;
+		this.nanoTime = nanoTime;
+		this.cursor = new PcapCursor();
+	}
+
+	/**
+	 * Instantiates a new spliterator over a region of a mapped savefile.
+	 *
+	 * @param savefile            the savefile
+	 * @param position            the first record offset
+	 * @param end                 the end of region offset, exclusive
+	 * @param averageRecordLength the average record length
+	 */
+	private PcapPacketSpliterator(PcapSavefile savefile, long position, long end, int averageRecordLength) {
+		this.file = null;
+		this.nanoTime = savefile.isNanoTime();
+		this.savefile = savefile;
+		this.position = position;
+		this.end = end;
+		this.averageRecordLength = averageRecordLength;
+	}
+
+	/**
+	 * Switches from reading through libpcap to reading the mapped savefile, if
+	 * possible.
+	 *
+	 * @return true, if in savefile mode
+	 */
+	private boolean switchToSavefile() {
+		if (savefile != null)
+			return true;
+
+		if (started || file == null)
+			return false;
+
+		/* libpcap scales timestamps to the handle's precision, the mapped reader can not */
+		var mapped = PcapSavefile.tryMap(file);
+		if (mapped.isEmpty() || mapped.get().isNanoTime() != nanoTime)
+			return false;
+
+		this.savefile = mapped.get();
+		this.position = savefile.firstRecord();
+		this.end = savefile.byteSize();
+		this.averageRecordLength = savefile.averageRecordLength();
+		this.pcap = null;
+		this.cursor = null;
+
+		return true;
+	}
+
+	/**
+	 * @see java.util.Spliterator#tryAdvance(java.util.function.Consumer)
+	 */
+	@Override
+	public boolean tryAdvance(Consumer<? super PcapPacketRef> action) {
+		if (savefile != null) {
+			if (position >= end || !savefile.hasRecord(position))
+				return false;
+
+			long record = position;
+			position = savefile.nextRecord(record);
+
+			action.accept(new PcapPacketRef(savefile.abi(), savefile.header(record), savefile.data(record)));
+
+			return true;
+		}
+
+		started = true;
+
+		if (!nextCursor())
+			return false;
+
+		action.accept(cursor.toPacketRef());
+
+		return true;
+	}
+
+	/**
+	 * Advances the cursor to the next packet, retrying on live capture timeouts.
+	 *
+	 * @return true, if cursor is bound to the next packet
+	 */
+	private boolean nextCursor() {
+		try {
+			while (true) {
+				try {
+					return pcap.nextEx(cursor);
+				} catch (TimeoutException e) {
+					continue;
+				}
+			}
+		} catch (PcapException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @see java.util.Spliterator#forEachRemaining(java.util.function.Consumer)
+	 */
+	@Override
+	public void forEachRemaining(Consumer<? super PcapPacketRef> action) {
+		if (savefile != null) {
+			while (tryAdvance(action))
+				;
+
+			return;
+		}
+
+		started = true;
+
+		while (nextCursor())
+			action.accept(cursor.toPacketRef());
+	}
+
+	/**
+	 * Splits off the first half of the remaining region at a record boundary.
+	 *
+	 * @return the prefix spliterator or null
+	 * @see java.util.Spliterator#trySplit()
+	 */
+	@Override
+	public Spliterator<PcapPacketRef> trySplit() {
+		if (!switchToSavefile())
+			return null;
+
+		if ((end - position) < MIN_SPLIT_SIZE)
+			return null;
+
+		long middle = position + (end - position) / 2;
+		long boundary = savefile.findRecord(middle, end);
+		if (boundary <= position || boundary >= end)
+			return null;
+
+		var prefix = new PcapPacketSpliterator(savefile, position, boundary, averageRecordLength);
+		this.position = boundary;
+
+		return prefix;
+	}
+
+	/**
+	 * @see java.util.Spliterator#estimateSize()
+	 */
+	@Override
+	public long estimateSize() {
+		if (savefile == null)
+			return Long.MAX_VALUE;
+
+		return (end - position) / Math.max(averageRecordLength, PcapSavefile.RECORD_HEADER_LENGTH);
+	}
+
+	/**
+	 * @see java.util.Spliterator#characteristics()
+	 */
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Pure java reader of the classic pcap ``savefile'' format (pcap-savefile(5))
+ * over a memory segment, usually a memory mapped file. The 24 byte file header
+ * is parsed once and records, each made up of a compact 16 byte record header
+ * followed by packet data, are accessed by their byte offset within the
+ * segment. Both the microsecond and nanosecond magic numbers are recognized, in
+ * either byte order. The pcapng format is not supported.
+ *
+ * <p>
+ * Record offsets can also be recovered from an arbitrary position in the
+ * segment, see {@link #findRecord(long, long)}, which allows a large file to be
+ * split into record aligned regions and processed in parallel.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapSavefile {
+
+	/** The pcap file header length. */
+	public static final int FILE_HEADER_LENGTH = 24;
+
+	/** The pcap record header length. */
+	public static final int RECORD_HEADER_LENGTH = 16;
+
+	/** The microsecond resolution magic number. */
+	public static final int MAGIC_MICROS = 0xA1B2C3D4;
+
+	/** The nanosecond resolution magic number. */
+	public static final int MAGIC_NANOS = 0xA1B23C4D;
+
+	/**
+	 * Upper bound for record lengths when file header snaplen is not usable. This
+	 * is the largest snaplen used by libpcap for any link type.
+	 */
+	private static final int MAX_RECORD_LENGTH = 256 * 1024;
+
+	/** Number of consecutive records which must be valid to accept a boundary. */
+	private static final int BOUNDARY_CHAIN_LENGTH = 8;
+
+	/** Number of records sampled to compute average record length. */
+	private static final int AVERAGE_SAMPLE_COUNT = 64;
+
+	/**
+	 * Memory maps a classic pcap file into an automatic arena, which is released
+	 * when the returned savefile and all of its segments become unreachable.
+	 *
+	 * @param file the file to map
+	 * @return the savefile
+	 * @throws IOException Signals that an I/O exception has occurred or the file is
+	 *                     not a classic pcap file
+	 */
+	public static PcapSavefile map(Path file) throws IOException {
+		try (var ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			MemorySegment mseg = ch.map(MapMode.READ_ONLY, 0, ch.size(), Arena.ofAuto());
+
+			return of(mseg).orElseThrow(() -> new IOException("not a classic pcap file " + file));
+		}
+	}
+
+	/**
+	 * Memory maps the file if it is a classic pcap file.
+	 *
+	 * @param file the file
+	 * @return the savefile or empty if not a regular file in classic pcap format
+	 */
+	public static Optional<PcapSavefile> tryMap(Path file) {
+		if (file == null || !Files.isRegularFile(file))
+			return Optional.empty();
+
+		try {
+			return Optional.of(map(file));
+		} catch (IOException | RuntimeException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Parses the file header in the segment.
+	 *
+	 * @param mseg the segment containing the entire savefile
+	 * @return the savefile or empty if segment does not start with a classic pcap
+	 *         file header
+	 */
+	public static Optional<PcapSavefile> of(MemorySegment mseg) {
+		if (mseg.byteSize() < FILE_HEADER_LENGTH)
+			return Optional.empty();
+
+		int magic = mseg.get(JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN), 0);
+		ByteOrder order;
+		boolean nanos;
+
+		if (magic == MAGIC_MICROS || magic == MAGIC_NANOS) {
+			order = ByteOrder.BIG_ENDIAN;
+			nanos = magic == MAGIC_NANOS;
+
+		} else if (magic == Integer.reverseBytes(MAGIC_MICROS) || magic == Integer.reverseBytes(MAGIC_NANOS)) {
+			order = ByteOrder.LITTLE_ENDIAN;
+			nanos = magic == Integer.reverseBytes(MAGIC_NANOS);
+
+		} else
+			return Optional.empty();
+
+		return Optional.of(new PcapSavefile(mseg, order, nanos));
+	}
+
+	/** The entire savefile. */
+	private final MemorySegment mseg;
+
+	/** The file byte order. */
+	private final ByteOrder order;
+
+	/** Int layout in file byte order. */
+	private final ValueLayout.OfInt intLayout;
+
+	/** Short layout in file byte order. */
+	private final ValueLayout.OfShort shortLayout;
+
+	/** The record header ABI. */
+	private final PcapHeaderABI abi;
+
+	/** The nanosecond timestamp resolution. */
+	private final boolean nanos;
+
+	/** The snaplen. */
+	private final int snaplen;
+
+	/** The maximum record length accepted. */
+	private final int maxRecordLength;
+
+	/** The link type. */
+	private final int linktype;
+
+	/**
+	 * Instantiates a new pcap savefile.
+	 *
+	 * @param mseg  the mseg
+	 * @param order the order
+	 * @param nanos the nanos
+	 */
+	private PcapSavefile(MemorySegment mseg, ByteOrder order, boolean nanos) {
+		this.mseg = mseg;
+		this.order = order;
+		this.nanos = nanos;
+		this.intLayout = JAVA_INT_UNALIGNED.withOrder(order);
+		this.shortLayout = JAVA_SHORT_UNALIGNED.withOrder(order);
+		this.abi = PcapHeaderABI.compactAbi(order);
+		this.snaplen = mseg.get(intLayout, 16);
+		this.linktype = mseg.get(intLayout, 20) & 0x0FFFFFFF; // Upper bits are FCS info
+		this.maxRecordLength = (snaplen > 0 && snaplen <= MAX_RECORD_LENGTH)
+				? snaplen
+				: MAX_RECORD_LENGTH;
+	}
+
+	/**
+	 * The compact record header ABI, in file byte order.
+	 *
+	 * @return the pcap header ABI
+	 */
+	public PcapHeaderABI abi() {
+		return abi;
+	}
+
+	/**
+	 * The file byte order.
+	 *
+	 * @return the byte order
+	 */
+	public ByteOrder order() {
+		return order;
+	}
+
+	/**
+	 * Checks if timestamps have nanosecond resolution.
+	 *
+	 * @return true, if nanosecond resolution
+	 */
+	public boolean isNanoTime() {
+		return nanos;
+	}
+
+	/**
+	 * The file format major version.
+	 *
+	 * @return the major version
+	 */
+	public int majorVersion() {
+		return Short.toUnsignedInt(mseg.get(shortLayout, 4));
+	}
+
+	/**
+	 * The file format minor version.
+	 *
+	 * @return the minor version
+	 */
+	public int minorVersion() {
+		return Short.toUnsignedInt(mseg.get(shortLayout, 6));
+	}
+
+	/**
+	 * The snaplen from the file header.
+	 *
+	 * @return the snaplen
+	 */
+	public int snaplen() {
+		return snaplen;
+	}
+
+	/**
+	 * The link type from the file header.
+	 *
+	 * @return the link type
+	 */
+	public int linktype() {
+		return linktype;
+	}
+
+	/**
+	 * Largest capture length accepted for a record, the file snaplen if usable.
+	 *
+	 * @return the max record length
+	 */
+	public int maxRecordLength() {
+		return maxRecordLength;
+	}
+
+	/**
+	 * The entire savefile segment.
+	 *
+	 * @return the memory segment
+	 */
+	public MemorySegment segment() {
+		return mseg;
+	}
+
+	/**
+	 * The savefile size in bytes.
+	 *
+	 * @return the size
+	 */
+	public long byteSize() {
+		return mseg.byteSize();
+	}
+
+	/**
+	 * Offset of the first record.
+	 *
+	 * @return the offset
+	 */
+	public long firstRecord() {
+		return FILE_HEADER_LENGTH;
+	}
+
+	/**
+	 * Checks if there is a complete record at the offset.
+	 *
+	 * @param offset the record offset
+	 * @return true, if record header and data are fully contained in the file
+	 */
+	public boolean hasRecord(long offset) {
+		if (offset + RECORD_HEADER_LENGTH > mseg.byteSize())
+			return false;
+
+		int caplen = captureLength(offset);
+
+		return (caplen >= 0) && (offset + RECORD_HEADER_LENGTH + caplen <= mseg.byteSize());
+	}
+
+	/**
+	 * Offset of the record following the record at offset.
+	 *
+	 * @param offset the record offset
+	 * @return the next record offset
+	 */
+	public long nextRecord(long offset) {
+		return offset + RECORD_HEADER_LENGTH + captureLength(offset);
+	}
+
+	/**
+	 * Record capture length, unvalidated.
+	 *
+	 * @param offset the record offset
+	 * @return the capture length
+	 */
+	public int captureLength(long offset) {
+		return mseg.get(intLayout, offset + 8);
+	}
+
+	/**
+	 * Record wire length, unvalidated.
+	 *
+	 * @param offset the record offset
+	 * @return the wire length
+	 */
+	public int wireLength(long offset) {
+		return mseg.get(intLayout, offset + 12);
+	}
+
+	/**
+	 * Record timestamp seconds.
+	 *
+	 * @param offset the record offset
+	 * @return the seconds
+	 */
+	public long tvSec(long offset) {
+		return Integer.toUnsignedLong(mseg.get(intLayout, offset));
+	}
+
+	/**
+	 * Record timestamp fraction of a second, micros or nanos.
+	 *
+	 * @param offset the record offset
+	 * @return the fraction of a second
+	 */
+	public long tvUsec(long offset) {
+		return Integer.toUnsignedLong(mseg.get(intLayout, offset + 4));
+	}
+
+	/**
+	 * Record timestamp in nanoseconds since epoch.
+	 *
+	 * @param offset the record offset
+	 * @return the epoch nanos
+	 */
+	public long timestampNanos(long offset) {
+		long frac = tvUsec(offset);
+
+		return tvSec(offset) * 1_000_000_000L + (nanos ? frac : frac * 1000);
+	}
+
+	/**
+	 * Record header slice.
+	 *
+	 * @param offset the record offset
+	 * @return the header segment
+	 */
+	public MemorySegment header(long offset) {
+		return mseg.asSlice(offset, RECORD_HEADER_LENGTH);
+	}
+
+	/**
+	 * Record packet data slice.
+	 *
+	 * @param offset the record offset
+	 * @return the data segment
+	 */
+	public MemorySegment data(long offset) {
+		return mseg.asSlice(offset + RECORD_HEADER_LENGTH, captureLength(offset));
+	}
+
+	/**
+	 * Checks if the record header at offset looks like a valid pcap record header.
+	 * Lengths must be within snaplen and wire length, the timestamp fraction must
+	 * be less than one second and the record must fit within the limit.
+	 *
+	 * @param offset the offset
+	 * @param limit  the limit
+	 * @return true, if plausible
+	 */
+	private boolean isPlausibleRecord(long offset, long limit) {
+		if (offset + RECORD_HEADER_LENGTH > limit)
+			return false;
+
+		int caplen = captureLength(offset);
+		int wirelen = wireLength(offset);
+
+		if (caplen <= 0 || caplen > maxRecordLength || wirelen < caplen)
+			return false;
+
+		if (tvUsec(offset) >= (nanos ? 1_000_000_000L : 1_000_000L))
+			return false;
+
+		return offset + RECORD_HEADER_LENGTH + caplen <= limit;
+	}
+
+	/**
+	 * Finds the first record boundary at or after {@code from}. Since the file has
+	 * no sync markers, a candidate offset is only accepted if it starts a chain of
+	 * consecutive plausible records, each one continuing exactly where the
+	 * previous one ends, which either reaches the end of the file exactly or is at
+	 * least {@value #BOUNDARY_CHAIN_LENGTH} records long.
+	 *
+	 * @param from  the offset to start searching from
+	 * @param limit stop searching for a candidate at this offset
+	 * @return the record offset or -1 if not found before limit
+	 */
+	public long findRecord(long from, long limit) {
+		final long size = mseg.byteSize();
+		from = Math.max(from, FILE_HEADER_LENGTH);
+		limit = Math.min(limit, size);
+
+		for (long candidate = from; candidate < limit; candidate++) {
+			long off = candidate;
+			int chain = 0;
+
+			while (chain < BOUNDARY_CHAIN_LENGTH && isPlausibleRecord(off, size)) {
+				off = nextRecord(off);
+				chain++;
+			}
+
+			if (chain == BOUNDARY_CHAIN_LENGTH || (chain > 0 && off == size))
+				return candidate;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Estimates the average record length, including record header, by sampling
+	 * the first few records.
+	 *
+	 * @return the average record length
+	 */
+	public int averageRecordLength() {
+		long off = firstRecord();
+		int count = 0;
+
+		while (count < AVERAGE_SAMPLE_COUNT && hasRecord(off)) {
+			off = nextRecord(off);
+			count++;
+		}
+
+		if (count == 0)
+			return RECORD_HEADER_LENGTH;
+
+		return (int) ((off - firstRecord()) / count);
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapSavefile"
+				+ " [size=" + mseg.byteSize()
+				+ ", order=" + order
+				+ ", nanos=" + nanos
+				+ ", snaplen=" + snaplen
+				+ ", linktype=" + linktype
+				+ "]";
+	}
+}
@@ -87,13 +87,43 @@ public record PcapStatRecord(long recv, long drop, long ifdrop, long capt, long
 	private static final VarHandle ps_ifdrop = LAYOUT.varHandle(groupElement("ps_ifdrop"));
 
 	/** The Constant ps_capt. */
-	private static final VarHandle ps_capt = LAYOUT.varHandle(groupElement("ps_ifdrop"));
+	private static final VarHandle ps_capt = LAYOUT.varHandle(groupElement("ps_capt"));
 
 	/** The Constant ps_sent. */
-	private static final VarHandle ps_sent = LAYOUT.varHandle(groupElement("ps_ifdrop"));
+	private static final VarHandle ps_sent = LAYOUT.varHandle(groupElement("ps_sent"));
 
 	/** The Constant ps_netdrop. */
-	private static final VarHandle ps_netdrop = LAYOUT.varHandle(groupElement("ps_ifdrop"));
+	private static final VarHandle ps_netdrop = LAYOUT.varHandle(groupElement("ps_netdrop"));
+
+	/**
+	 * Reads the ps_recv field of a native pcap_stat structure.
+	 *
+	 * @param mseg the pcap_stat structure
+	 * @return the unsigned 32-bit counter value
+	 */
+	public static long readRecv(MemorySegment mseg) {
+		return toUnsignedLong((int) ps_recv.get(mseg, 0L));
+	}
+
+	/**
+	 * Reads the ps_drop field of a native pcap_stat structure.
+	 *
+	 * @param mseg the pcap_stat structure
+	 * @return the unsigned 32-bit counter value
+	 */
+	public static long readDrop(MemorySegment mseg) {
+		return toUnsignedLong((int) ps_drop.get(mseg, 0L));
+	}
+
+	/**
+	 * Reads the ps_ifdrop field of a native pcap_stat structure.
+	 *
+	 * @param mseg the pcap_stat structure
+	 * @return the unsigned 32-bit counter value
+	 */
+	public static long readIfdrop(MemorySegment mseg) {
+		return toUnsignedLong((int) ps_ifdrop.get(mseg, 0L));
+	}
 
 	/**
 	 * Of memory platform dependent.
@@ -102,7 +132,18 @@ public record PcapStatRecord(long recv, long drop, long ifdrop, long capt, long
 	 * @return the pcap stat
 	 */
 	public static PcapStat ofMemoryPlatformDependent(MemorySegment mseg) {
-		if (WinPcap.isSupported())
+		return ofMemory(mseg, WinPcap.isSupported());
+	}
+
+	/**
+	 * Of memory, for an explicit platform.
+	 *
+	 * @param mseg  the mseg
+	 * @param win32 true to also read the WinPcap/Npcap extension fields
+	 * @return the pcap stat
+	 */
+	public static PcapStat ofMemory(MemorySegment mseg, boolean win32) {
+		if (win32)
 			return ofMemoryOnWin32(mseg);
 
 		return new PcapStatRecord(
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.lang.foreign.MemorySegment;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event recorded every time capture statistics are read from a pcap
+ * handle.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@Name("org.jnetpcap.Stats")
+@Label("Pcap Statistics")
+@Category({ "jNetPcap", "Capture" })
+@Description("Capture statistics read with pcap_stats")
+@StackTrace(false)
+public final class PcapStatsEvent extends Event {
+
+	/**
+	 * Records an event for a native pcap_stat structure, if the event is enabled.
+	 *
+	 * @param pcapStat the pcap_stat structure
+	 */
+	public static void emit(MemorySegment pcapStat) {
+		var event = new PcapStatsEvent();
+		if (!event.shouldCommit())
+			return;
+
+		event.recv = PcapStatRecord.readRecv(pcapStat);
+		event.drop = PcapStatRecord.readDrop(pcapStat);
+		event.ifdrop = PcapStatRecord.readIfdrop(pcapStat);
+		event.commit();
+	}
+
+	/** The recv. */
+	@Label("Received")
+	@Description("ps_recv, packets received")
+	long recv;
+
+	/** The drop. */
+	@Label("Dropped")
+	@Description("ps_drop, packets dropped because of no room in the OS buffer")
+	long drop;
+
+	/** The ifdrop. */
+	@Label("Interface Dropped")
+	@Description("ps_ifdrop, packets dropped by the network interface or its driver")
+	long ifdrop;
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * A reusable, growable native buffer used to stage heap data before passing it
+ * to a native function.
+ * <p>
+ * The buffer is allocated on first use and replaced by a larger one, at the
+ * next power of 2, only when a request does not fit. Once warmed up, staging
+ * data performs no native allocation at all. The buffer is not thread safe,
+ * callers must synchronize on the staging buffer instance if it is shared.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class StagingBuffer implements AutoCloseable {
+
+	/** Smallest buffer allocated, enough for a jumbo frame. */
+	public static final int MIN_CAPACITY = 16 * 1024;
+
+	/** The arena owning the current buffer, null until first use. */
+	private Arena arena;
+
+	/** The current buffer. */
+	private MemorySegment segment = MemorySegment.NULL;
+
+	/**
+	 * Returns a native buffer of at least the requested size. The contents of the
+	 * previous buffer are not preserved if it has to grow, and any segment
+	 * previously returned becomes invalid.
+	 *
+	 * @param size the minimum size in bytes
+	 * @return the native buffer
+	 */
+	public MemorySegment ensureCapacity(long size) {
+		if (size <= segment.byteSize())
+			return segment;
+
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("staging size too large [%d]".formatted(size));
+
+		long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(size - 1) << 1);
+
+		close();
+
+		arena = Arena.ofShared();
+		segment = arena.allocate(capacity, 64);
+
+		return segment;
+	}
+
+	/**
+	 * Current capacity of the buffer.
+	 *
+	 * @return the capacity in bytes, 0 if not allocated yet
+	 */
+	public long capacity() {
+		return segment.byteSize();
+	}
+
+	/**
+	 * Releases the native buffer. The staging buffer may be used again afterwards,
+	 * in which case a new buffer is allocated.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		if (arena != null) {
+			arena.close();
+			arena = null;
+			segment = MemorySegment.NULL;
+		}
+	}
+}
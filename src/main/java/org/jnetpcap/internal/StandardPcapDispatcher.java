@@ -18,10 +18,17 @@ package org.jnetpcap.internal;
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.util.Objects;
 import java.util.concurrent.TimeoutException;
 
+import org.jnetpcap.Pcap.LibraryPolicy;
 import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHeaderException.OutOfRangeException;
 import org.jnetpcap.constant.PcapCode;
+import org.jnetpcap.constant.PcapConstants;
+import org.jnetpcap.constant.PcapHeaderValidation;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapMetrics;
 import org.jnetpcap.util.PcapPacketRef;
 
 import static java.lang.foreign.ValueLayout.*;
@@ -60,7 +67,8 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 
 	/**
 	 * This upcall foreign reference is a callback method that is called to java
-	 * from pcap_loop and pcap_dispatch calls.
+	 * from pcap_loop and pcap_dispatch calls. A single static stub is shared by
+	 * all dispatchers, which are routed to by the id passed as the user pointer.
 	 * 
 	 * @see {@code typedef void (*pcap_handler)(u_char *user, const struct
 	 *      pcap_pkthdr *h, const u_char *bytes);}
@@ -68,6 +76,12 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	static final ForeignUpcall<NativeCallback> pcap_handler;
 
+	/** The shared upcall stub, created once for all dispatchers. */
+	private static final MemorySegment PCAP_HANDLER_STUB;
+
+	/** Routes upcalls from the shared stub to dispatchers, by id. */
+	private static final CallbackRegistry<StandardPcapDispatcher> ROUTES = new CallbackRegistry<>();
+
 	/**
 	 * The Constant pcap_next.
 	 *
@@ -85,24 +99,55 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	private static final PcapForeignDowncall pcap_next_ex;
 
+	/**
+	 * The Constant pcap_snapshot.
+	 *
+	 * @see {@code int pcap_snapshot(pcap_t *p)}
+	 * @since libpcap 0.4
+	 */
+	private static final PcapForeignDowncall pcap_snapshot;
+
 	static {
 
 		try (var foreign = new PcapForeignInitializer(StandardPcapDispatcher.class)) {
 
 			// @formatter:off
-			pcap_handler     = foreign.upcall  ("nativeCallback(AAA)V", NativeCallback.class);
+			pcap_handler     = foreign.upcallStatic(StandardPcapDispatcher.class, "routeCallback(AAA)V");
 			pcap_geterr      = foreign.downcall("pcap_geterr(A)A"); //$NON-NLS-1$
 			pcap_dispatch    = foreign.downcall("pcap_dispatch(AIAA)I");
 			pcap_loop        = foreign.downcall("pcap_loop(AIAA)I");
 			pcap_next        = foreign.downcall("pcap_next(AA)A");
 			pcap_next_ex     = foreign.downcall("pcap_next_ex(AAA)I");
+			pcap_snapshot    = foreign.downcall("pcap_snapshot(A)I");
 		// @formatter:on
 
 		}
+
+		PCAP_HANDLER_STUB = pcap_handler.staticStubPointer(Arena.global());
+	}
+
+	/**
+	 * Routes a callback from the shared upcall stub to the dispatcher registered
+	 * under the id passed as the user pointer, restoring the user's own pointer.
+	 *
+	 * @param route  the routing id, passed as the user pointer
+	 * @param header the header
+	 * @param packet the packet
+	 */
+	static void routeCallback(MemorySegment route, MemorySegment header, MemorySegment packet) {
+		StandardPcapDispatcher dispatcher = ROUTES.get(route.address());
+		if (dispatcher != null)
+			dispatcher.nativeCallback(dispatcher.userData, header, packet);
 	}
 
-	/** The pcap callback stub. */
-	private final MemorySegment pcapCallbackStub;
+	/** The routing id of this dispatcher, passed to libpcap as the user pointer. */
+	private final int routeId;
+
+	/** The routing id as a user pointer. */
+	private final MemorySegment routeUser;
+
+	/** The user's own user pointer, for the dispatch in progress. */
+	private MemorySegment userData = MemorySegment.NULL;
 
 	/** The pcap handle. */
 	private final MemorySegment pcapHandle;
@@ -132,6 +177,24 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	/** The abi. */
 	private final PcapHeaderABI abi;
 
+	/** The header validation policy. */
+	private PcapHeaderValidation headerValidation;
+
+	/** If false, header lengths are read without range checks. */
+	private boolean checkLength;
+
+	/** The minimum capture length, inclusive, when checking lengths. */
+	private int minLength;
+
+	/** The maximum capture length, inclusive, when checking lengths. */
+	private int maxLength;
+
+	/** Hot path metrics, null while disabled. */
+	private DispatcherMetrics metrics;
+
+	/** Set once packets have been requested from the handle. */
+	private boolean read;
+
 	/**
 	 * Instantiates a new standard pcap dispatcher.
 	 *
@@ -140,11 +203,92 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 * @param breakDispatch the break dispatch
 	 */
 	public StandardPcapDispatcher(MemorySegment pcapHandle, PcapHeaderABI abi, Runnable breakDispatch) {
+		this(pcapHandle, abi, breakDispatch, PcapHeaderValidation.defaultValidation());
+	}
+
+	/**
+	 * Instantiates a new standard pcap dispatcher.
+	 *
+	 * @param pcapHandle       the pcap handle
+	 * @param abi              the abi
+	 * @param breakDispatch    the break dispatch
+	 * @param headerValidation the header validation policy
+	 */
+	public StandardPcapDispatcher(MemorySegment pcapHandle, PcapHeaderABI abi, Runnable breakDispatch,
+			PcapHeaderValidation headerValidation) {
 		this.pcapHandle = pcapHandle;
 		this.abi = abi;
 		this.breakDispatch = breakDispatch;
 		this.arena = Arena.ofShared();
-		this.pcapCallbackStub = pcap_handler.virtualStubPointer(this, this.arena);
+		this.routeId = ROUTES.register(this);
+		this.routeUser = MemorySegment.ofAddress(routeId);
+
+		setHeaderValidation(headerValidation);
+		setMetricsEnabled(Boolean.getBoolean(LibraryPolicy.SYSTEM_PROPERTY_METRICS));
+	}
+
+	/**
+	 * @see org.jnetpcap.internal.PcapDispatcher#setMetricsEnabled(boolean)
+	 */
+	@Override
+	public final void setMetricsEnabled(boolean enabled) {
+		if (enabled && metrics == null)
+			this.metrics = new DispatcherMetrics();
+
+		else if (!enabled)
+			this.metrics = null;
+	}
+
+	/**
+	 * @see org.jnetpcap.internal.PcapDispatcher#metrics()
+	 */
+	@Override
+	public final PcapMetrics metrics() {
+		DispatcherMetrics m = this.metrics;
+
+		return (m == null) ? PcapMetrics.DISABLED : m.snapshot();
+	}
+
+	/**
+	 * Resolves the header validation policy into precomputed length bounds, so
+	 * that per packet validation is at most a single range check.
+	 *
+	 * @param policy the header validation policy
+	 * @see org.jnetpcap.internal.PcapDispatcher#setHeaderValidation(org.jnetpcap.constant.PcapHeaderValidation)
+	 */
+	@Override
+	public final void setHeaderValidation(PcapHeaderValidation policy) {
+		this.headerValidation = Objects.requireNonNull(policy, "policy");
+
+		switch (policy) {
+		case STRICT -> {
+			this.checkLength = true;
+			this.minLength = PcapHeaderABI.MIN_FRAME_SIZE;
+			this.maxLength = PcapHeaderABI.MAX_FRAME_SIZE;
+		}
+
+		case SNAPLEN -> {
+			int snaplen = pcap_snapshot.invokeInt(pcapHandle); // Negative if not activated
+
+			this.checkLength = true;
+			this.minLength = 0;
+			this.maxLength = (snaplen > 0) ? snaplen : PcapConstants.MAX_SNAPLEN;
+		}
+
+		case TRUSTED -> {
+			this.checkLength = false;
+			this.minLength = 0;
+			this.maxLength = Integer.MAX_VALUE;
+		}
+		}
+	}
+
+	/**
+	 * @see org.jnetpcap.internal.PcapDispatcher#headerValidation()
+	 */
+	@Override
+	public final PcapHeaderValidation headerValidation() {
+		return headerValidation;
 	}
 
 	/**
@@ -165,7 +309,12 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public int captureLength(MemorySegment headerAddress) {
-		return abi.captureLength(headerAddress);
+		int caplen = abi.captureLengthUnchecked(headerAddress);
+
+		if (checkLength && (caplen < minLength || caplen > maxLength))
+			throw new OutOfRangeException(abi, caplen);
+
+		return caplen;
 	}
 
 	/**
@@ -175,8 +324,10 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public void close() {
-		if (arena.scope().isAlive())
+		if (arena.scope().isAlive()) {
 			arena.close();
+			ROUTES.release(routeId);
+		}
 	}
 
 	/**
@@ -186,12 +337,21 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public final int dispatchNative(int count, NativeCallback handler, MemorySegment user) {
-		this.userSink = handler;
+		NativeCallback prevSink = this.userSink;
+		MemorySegment prevUser = this.userData;
 
-		return dispatchRaw(
-				count,
-				pcapCallbackStub,
-				user);
+		this.userSink = handler;
+		this.userData = user;
+
+		try {
+			return dispatchRaw(
+					count,
+					PCAP_HANDLER_STUB,
+					routeUser);
+		} finally {
+			this.userSink = prevSink;
+			this.userData = prevUser;
+		}
 	}
 
 	/**
@@ -204,12 +364,25 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public final int dispatchRaw(int count, MemorySegment callbackFunc, MemorySegment userData) {
+		this.read = true;
+
+		var event = new PcapDispatchEvent();
+		event.begin();
+
 		int result = pcap_dispatch.invokeInt(
 				pcapHandle,
 				count,
 				callbackFunc,
 				userData);
 
+		if (event.shouldCommit()) {
+			event.end();
+			event.operation = "pcap_dispatch"; //$NON-NLS-1$
+			event.countRequested = count;
+			event.countReturned = result;
+			event.commit();
+		}
+
 		if (interrupted)
 			handleInterrupt();
 
@@ -258,6 +431,10 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	public final void interrupt() {
 		this.breakDispatch.run();
 		this.interrupted = true;
+
+		DispatcherMetrics m = this.metrics;
+		if (m != null)
+			m.interrupts.increment();
 	}
 
 	/**
@@ -267,12 +444,21 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public final int loopNative(int count, NativeCallback handler, MemorySegment user) {
-		this.userSink = handler;
+		NativeCallback prevSink = this.userSink;
+		MemorySegment prevUser = this.userData;
 
-		return loopRaw(
-				count,
-				pcapCallbackStub,
-				user);
+		this.userSink = handler;
+		this.userData = user;
+
+		try {
+			return loopRaw(
+					count,
+					PCAP_HANDLER_STUB,
+					routeUser);
+		} finally {
+			this.userSink = prevSink;
+			this.userData = prevUser;
+		}
 	}
 
 	/**
@@ -285,12 +471,25 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public final int loopRaw(int count, MemorySegment callbackFunc, MemorySegment userData) {
+		this.read = true;
+
+		var event = new PcapDispatchEvent();
+		event.begin();
+
 		int result = pcap_loop.invokeInt(
 				pcapHandle,
 				count,
 				callbackFunc,
 				userData);
 
+		if (event.shouldCommit()) {
+			event.end();
+			event.operation = "pcap_loop"; //$NON-NLS-1$
+			event.countRequested = count;
+			event.countReturned = result;
+			event.commit();
+		}
+
 		if (interrupted)
 			handleInterrupt();
 
@@ -315,10 +514,24 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 			int hdrlen = abi.headerLength();
 			header = header.reinterpret(hdrlen, arena, ForeignUtils.EMPTY_CLEANUP);
 
-			int caplen = abi.captureLength(header);
+			int caplen = captureLength(header);
 			packet = packet.reinterpret(caplen, arena, ForeignUtils.EMPTY_CLEANUP);
 
-			this.userSink.nativeCallback(user, header, packet);
+			DispatcherMetrics m = this.metrics;
+			if (m == null) {
+				this.userSink.nativeCallback(user, header, packet);
+
+			} else {
+				m.callbacks.increment();
+				m.packet(caplen);
+
+				long start = System.nanoTime();
+				try {
+					this.userSink.nativeCallback(user, header, packet);
+				} finally {
+					m.callbackLatency.recordSince(start);
+				}
+			}
 		} catch (RuntimeException e) {
 			onNativeCallbackException(e);
 		}
@@ -333,6 +546,10 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	public final void onNativeCallbackException(RuntimeException e) {
 		this.uncaughtException = e;
 
+		DispatcherMetrics m = this.metrics;
+		if (m != null)
+			m.exceptions.increment();
+
 		if (uncaughtExceptionHandler != null) {
 			var veto = VetoableExceptionHandler.wrap(uncaughtExceptionHandler);
 			if (veto.vetoableException(e)) {
@@ -397,6 +614,8 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public PcapPacketRef nextEx() throws PcapException, TimeoutException {
+		this.read = true;
+
 		int result = pcap_next_ex.invokeInt(
 				this::getErrorString,
 				pcapHandle,
@@ -412,9 +631,81 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 		MemorySegment hdr = POINTER_TO_POINTER1.get(ADDRESS, 0);
 		MemorySegment pkt = POINTER_TO_POINTER2.get(ADDRESS, 0);
 
+		DispatcherMetrics m = this.metrics;
+		if (m != null)
+			m.packet(abi.captureLengthUnchecked(hdr.reinterpret(abi.headerLength())));
+
 		return new PcapPacketRef(abi, hdr, pkt);
 	}
 
+	/**
+	 * Next ex, rebinding the supplied cursor in place. The native function is
+	 * invoked through an exact method handle invocation and the header and data
+	 * pointers are read as raw addresses, so no objects are allocated per packet.
+	 *
+	 * @param cursor the cursor to bind to the next packet
+	 * @return true if cursor was bound to a packet, or false if no more packets
+	 * @throws PcapException    the pcap exception
+	 * @throws TimeoutException the timeout exception
+	 * @see org.jnetpcap.internal.PcapDispatcher#nextEx(org.jnetpcap.util.PcapCursor)
+	 */
+	@Override
+	public boolean nextEx(PcapCursor cursor) throws PcapException, TimeoutException {
+		this.read = true;
+
+		int result;
+		long start = DowncallMetrics.start();
+		try {
+			result = (int) pcap_next_ex.handle().invokeExact(
+					pcapHandle,
+					POINTER_TO_POINTER1, // hdr_p
+					POINTER_TO_POINTER2); // pkt_p
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		} finally {
+			DowncallMetrics.stop(pcap_next_ex.symbolName(), start);
+		}
+
+		if (result == 0)
+			throw new TimeoutException();
+
+		else if (result == PcapCode.PCAP_ERROR_BREAK) {
+			cursor.unbind();
+			return false;
+
+		} else if (result < 0)
+			throw new PcapException(result, getErrorString(result));
+
+		cursor.bind(abi,
+				readRawAddress(POINTER_TO_POINTER1),
+				readRawAddress(POINTER_TO_POINTER2));
+
+		int caplen = cursor.captureLength();
+		if (checkLength && (caplen < minLength || caplen > maxLength))
+			throw new OutOfRangeException(abi, caplen);
+
+		DispatcherMetrics m = this.metrics;
+		if (m != null)
+			m.packet(caplen);
+
+		return true;
+	}
+
+	/**
+	 * Reads a native pointer value as a raw address without wrapping it in a new
+	 * memory segment.
+	 *
+	 * @param pointer the segment holding the pointer
+	 * @return the raw address
+	 */
+	private static long readRawAddress(MemorySegment pointer) {
+		return (ADDRESS.byteSize() == Long.BYTES)
+				? pointer.get(JAVA_LONG, 0)
+				: Integer.toUnsignedLong(pointer.get(JAVA_INT, 0));
+	}
+
 	/**
 	 * Next.
 	 *
@@ -424,11 +715,26 @@ public class StandardPcapDispatcher implements PcapDispatcher {
 	 */
 	@Override
 	public PcapPacketRef next() throws PcapException {
+		this.read = true;
+
 		MemorySegment hdr = PCAP_HEADER_BUFFER;
 		MemorySegment pkt = pcap_next.invokeObj(this::geterr, pcapHandle, hdr);
 
-		return (ForeignUtils.isNullAddress(pkt))
-				? null
-				: new PcapPacketRef(abi, hdr, pkt);
+		if (ForeignUtils.isNullAddress(pkt))
+			return null;
+
+		DispatcherMetrics m = this.metrics;
+		if (m != null)
+			m.packet(abi.captureLengthUnchecked(hdr));
+
+		return new PcapPacketRef(abi, hdr, pkt);
+	}
+
+	/**
+	 * @see org.jnetpcap.internal.PcapDispatcher#hasRead()
+	 */
+	@Override
+	public final boolean hasRead() {
+		return read;
 	}
-}
\ No newline at end of file
+}
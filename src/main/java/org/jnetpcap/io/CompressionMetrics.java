@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+/**
+ * A snapshot of a compressing writer's progress: how much was compressed, how
+ * well and how fast.
+ *
+ * @param blocks        blocks compressed and written
+ * @param inputBytes    uncompressed bytes written
+ * @param outputBytes   compressed bytes written, including gzip framing
+ * @param compressNanos time spent compressing, summed across all compression
+ *                      threads
+ * @param elapsedNanos  wall clock time since the writer was opened
+ * @param pendingBlocks blocks still being compressed or waiting to be written
+ * @param threads       number of compression threads
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public record CompressionMetrics(
+		long blocks,
+		long inputBytes,
+		long outputBytes,
+		long compressNanos,
+		long elapsedNanos,
+		int pendingBlocks,
+		int threads) {
+
+	/**
+	 * Compression ratio, uncompressed to compressed size.
+	 *
+	 * @return the ratio, 0 if nothing was written yet
+	 */
+	public double ratio() {
+		return (outputBytes == 0) ? 0 : (double) inputBytes / outputBytes;
+	}
+
+	/**
+	 * Uncompressed bytes accepted per second of wall clock time, the rate the
+	 * writer as a whole is sustaining.
+	 *
+	 * @return the bytes per second
+	 */
+	public double throughput() {
+		return rate(inputBytes, elapsedNanos);
+	}
+
+	/**
+	 * Uncompressed bytes compressed per second by a single thread, the rate one
+	 * core can sustain at the configured level.
+	 *
+	 * @return the bytes per second per thread
+	 */
+	public double threadThroughput() {
+		return rate(inputBytes, compressNanos);
+	}
+
+	/**
+	 * Fraction of the compression threads' time spent compressing. Close to 1
+	 * means compression is the bottleneck and more threads or a lower level are
+	 * needed.
+	 *
+	 * @return the utilization, 0 to 1
+	 */
+	public double utilization() {
+		return (elapsedNanos <= 0 || threads == 0)
+				? 0
+				: Math.min(1.0, (double) compressNanos / ((double) elapsedNanos * threads));
+	}
+
+	/**
+	 * Rate.
+	 *
+	 * @param count the count
+	 * @param nanos the nanos
+	 * @return the double
+	 */
+	private static double rate(long count, long nanos) {
+		return (nanos <= 0) ? 0 : count * 1e9 / nanos;
+	}
+
+	/**
+	 * @see java.lang.Record#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CompressionMetrics [blocks=%d, in=%d, out=%d, ratio=%.2f, throughput=%.0fB/s, per-thread=%.0fB/s, utilization=%.2f]"
+				.formatted(blocks, inputBytes, outputBytes, ratio(), throughput(), threadThroughput(),
+						utilization());
+	}
+}
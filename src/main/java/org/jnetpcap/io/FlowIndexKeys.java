@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import org.jnetpcap.dissect.PacketDissector;
+
+/**
+ * Key hashing and bloom filter bit operations shared by the flow index writer,
+ * reader and queries. Keys are 64 bit hashes, tagged by kind so that for
+ * example port 6 and protocol 6 are different keys.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+final class FlowIndexKeys {
+
+	/** Tag of IPv4 address keys. */
+	private static final long TAG_IPV4 = 1L << 60;
+
+	/** Tag of IPv6 address keys. */
+	private static final long TAG_IPV6 = 2L << 60;
+
+	/** Tag of transport port keys. */
+	private static final long TAG_PORT = 3L << 60;
+
+	/** Tag of IP protocol keys. */
+	private static final long TAG_PROTOCOL = 4L << 60;
+
+	/** Big endian int, as addresses are stored in packets. */
+	private static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Big endian long, as addresses are stored in packets. */
+	private static final ValueLayout.OfLong LONG_BE = ValueLayout.JAVA_LONG_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Little endian long, as bloom filter words are stored in the index file. */
+	private static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Finalization mix of MurmurHash3, a fast 64 bit avalanche.
+	 *
+	 * @param h the value
+	 * @return the hash
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		return h;
+	}
+
+	/**
+	 * Key of an IP address, 4 or 16 bytes in network order.
+	 *
+	 * @param address the address
+	 * @return the key
+	 */
+	static long address(byte[] address) {
+		return address(MemorySegment.ofArray(address), 0, address.length);
+	}
+
+	/**
+	 * Key of an IP address within a packet.
+	 *
+	 * @param packet the packet
+	 * @param offset the address offset
+	 * @param length 4 or 16
+	 * @return the key
+	 */
+	static long address(MemorySegment packet, long offset, int length) {
+		if (length == 4)
+			return mix(TAG_IPV4 ^ Integer.toUnsignedLong(packet.get(INT_BE, offset)));
+
+		if (length != 16)
+			throw new IllegalArgumentException("invalid address length: " + length);
+
+		return mix(mix(TAG_IPV6 ^ packet.get(LONG_BE, offset)) ^ packet.get(LONG_BE, offset + 8));
+	}
+
+	/**
+	 * Key of a transport port.
+	 *
+	 * @param port the port
+	 * @return the key
+	 */
+	static long port(int port) {
+		return mix(TAG_PORT ^ port);
+	}
+
+	/**
+	 * Key of an IP protocol.
+	 *
+	 * @param protocol the protocol
+	 * @return the key
+	 */
+	static long protocol(int protocol) {
+		return mix(TAG_PROTOCOL ^ protocol);
+	}
+
+	/**
+	 * Adds all keys of a dissected packet to a bloom filter: both addresses, both
+	 * ports and the protocol, whichever are present.
+	 *
+	 * @param bloom     the bloom filter words
+	 * @param hashCount the number of bits set per key
+	 * @param dissector the dissector, holding the packet's dissected fields
+	 * @param packet    the packet
+	 */
+	static void addPacket(long[] bloom, int hashCount, PacketDissector dissector, MemorySegment packet) {
+		int addressLength = dissector.addressLength();
+		if (addressLength == 0)
+			return;
+
+		add(bloom, hashCount, address(packet, dissector.srcAddressOffset(), addressLength));
+		add(bloom, hashCount, address(packet, dissector.dstAddressOffset(), addressLength));
+		add(bloom, hashCount, protocol(dissector.ipProtocol()));
+
+		if (dissector.srcPort() >= 0)
+			add(bloom, hashCount, port(dissector.srcPort()));
+
+		if (dissector.dstPort() >= 0)
+			add(bloom, hashCount, port(dissector.dstPort()));
+	}
+
+	/**
+	 * Sets a key's bits, using double hashing.
+	 *
+	 * @param bloom     the bloom filter words, a power of 2 in length
+	 * @param hashCount the number of bits set per key
+	 * @param key       the key
+	 */
+	static void add(long[] bloom, int hashCount, long key) {
+		long mask = (bloom.length * 64L) - 1;
+		long step = mix(key) | 1;
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = (key + i * step) & mask;
+			bloom[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Tests a key against a bloom filter stored in a segment.
+	 *
+	 * @param bloom     the bloom filter words, little endian
+	 * @param bits      the number of bits, a power of 2
+	 * @param hashCount the number of bits set per key
+	 * @param key       the key
+	 * @return false if the key was definitely never added
+	 */
+	static boolean mightContain(MemorySegment bloom, long bits, int hashCount, long key) {
+		long mask = bits - 1;
+		long step = mix(key) | 1;
+
+		for (int i = 0; i < hashCount; i++) {
+			long bit = (key + i * step) & mask;
+			if ((bloom.get(LONG_LE, (bit >>> 6) * 8) & (1L << bit)) == 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Instantiates a new flow index keys.
+	 */
+	private FlowIndexKeys() {
+	}
+}
@@ -0,0 +1,679 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.internal.PcapSavefile;
+import org.jnetpcap.internal.StagingBuffer;
+
+/**
+ * A streaming reader for gzip compressed pcap savefiles, such as
+ * {@code capture.pcap.gz}, which does not decompress to disk first.
+ * <p>
+ * Decompression runs on a background thread, which inflates directly into a
+ * small pool of large native chunks. Filled chunks are handed to the reading
+ * thread, which parses pcap records out of them in place, while the next chunk
+ * is being inflated. Decompression and record parsing are therefore pipelined
+ * across two cores. Only records which straddle two chunks are copied.
+ * </p>
+ * <p>
+ * Packets are delivered with a native {@code struct pcap_pkthdr}, the same as
+ * {@code pcap_dispatch} would, with timestamps in microseconds. Both byte
+ * orders and both timestamp resolutions of the classic pcap format are
+ * supported, as are multi-member gzip files such as those produced by
+ * concatenation or parallel compressors. The pcapng format is not.
+ * </p>
+ * <p>
+ * A reader is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class GzipPcapReader implements AutoCloseable {
+
+	/** Default size of each decompressed chunk, 4MB. */
+	public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	/** Default number of decompressed chunks in flight. */
+	public static final int DEFAULT_CHUNK_COUNT = 3;
+
+	/** Size of the compressed input buffer, 1MB. */
+	private static final int INPUT_BUFFER_SIZE = 1024 * 1024;
+
+	/** Gzip magic bytes. */
+	private static final int GZIP_MAGIC = 0x8b1f;
+
+	/** Gzip deflate compression method. */
+	private static final int CM_DEFLATE = 8;
+
+	/** Gzip header flag, header CRC present. */
+	private static final int FHCRC = 2;
+
+	/** Gzip header flag, extra field present. */
+	private static final int FEXTRA = 4;
+
+	/** Gzip header flag, file name present. */
+	private static final int FNAME = 8;
+
+	/** Gzip header flag, comment present. */
+	private static final int FCOMMENT = 16;
+
+	/** Marks the end of the decompressed stream in the filled queue. */
+	private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+	/** The compressed channel. */
+	private final ReadableByteChannel channel;
+
+	/** Owns the packet header. */
+	private final Arena arena = Arena.ofShared();
+
+	/** Compressed input, in read mode. Only used by the inflater thread. */
+	private final ByteBuffer input;
+
+	/** Chunks ready to be filled. */
+	private final BlockingQueue<ByteBuffer> free;
+
+	/** Chunks filled with decompressed data, in stream order. */
+	private final BlockingQueue<ByteBuffer> filled;
+
+	/** The inflater thread. */
+	private final Thread inflaterThread;
+
+	/** Inflater thread failure, reported by the reading thread. */
+	private volatile Throwable failure;
+
+	/** Staging for records which straddle two chunks. */
+	private final StagingBuffer spill = new StagingBuffer();
+
+	/** The native record header ABI. */
+	private final PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+
+	/** The native record header passed to handlers. */
+	private final MemorySegment header;
+
+	/** The savefile header. */
+	private final PcapSavefile savefile;
+
+	/** The file record header ABI. */
+	private final PcapHeaderABI fileAbi;
+
+	/** The current chunk, null if none. */
+	private ByteBuffer chunkBuffer;
+
+	/** The current chunk. */
+	private MemorySegment chunk = MemorySegment.NULL;
+
+	/** Read offset within the current chunk. */
+	private long position;
+
+	/** The end of stream was reached. */
+	private boolean endOfStream;
+
+	/** The current packet data. */
+	private MemorySegment packet = MemorySegment.NULL;
+
+	/** The current record's timestamp seconds. */
+	private long tvSec;
+
+	/** The current record's timestamp fraction, in the file's precision. */
+	private long tvFrac;
+
+	/** The packet count. */
+	private long packetCount;
+
+	/** Decompressed bytes consumed. */
+	private long byteCount;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Opens a gzip compressed savefile.
+	 *
+	 * @param path the path
+	 * @throws IOException if the file can not be opened, or does not contain a
+	 *                     gzip compressed pcap savefile
+	 */
+	public GzipPcapReader(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ), DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+	}
+
+	/**
+	 * Reads a gzip compressed savefile from a channel. The channel is closed when
+	 * this reader is closed.
+	 *
+	 * @param channel    the compressed channel
+	 * @param chunkSize  size of each decompressed chunk
+	 * @param chunkCount number of decompressed chunks, at least 2 for the
+	 *                   inflater to run ahead of the reader
+	 * @throws IOException if the channel does not contain a gzip compressed pcap
+	 *                     savefile
+	 */
+	public GzipPcapReader(ReadableByteChannel channel, int chunkSize, int chunkCount) throws IOException {
+		if (chunkSize < PcapSavefile.FILE_HEADER_LENGTH)
+			throw new IllegalArgumentException("chunk size too small: " + chunkSize);
+
+		if (chunkCount < 1)
+			throw new IllegalArgumentException("chunk count must be positive: " + chunkCount);
+
+		this.channel = channel;
+		this.input = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE).limit(0);
+		this.header = arena.allocate(abi.headerLength());
+		this.free = new ArrayBlockingQueue<>(chunkCount);
+		this.filled = new ArrayBlockingQueue<>(chunkCount + 1);
+
+		/* Inflater only accepts direct buffers which are not from a closeable arena */
+		for (int i = 0; i < chunkCount; i++)
+			free.add(ByteBuffer.allocateDirect(chunkSize));
+
+		this.inflaterThread = Thread.ofPlatform()
+				.name("pcap-gunzip")
+				.daemon(true)
+				.start(this::inflaterLoop);
+
+		try {
+			MemorySegment fileHeader = read(PcapSavefile.FILE_HEADER_LENGTH);
+			if (fileHeader == null)
+				throw new EOFException("empty savefile");
+
+			/* Copy out of the chunk, which is recycled */
+			var copy = MemorySegment.ofArray(new byte[PcapSavefile.FILE_HEADER_LENGTH]);
+			MemorySegment.copy(fileHeader, 0, copy, 0, PcapSavefile.FILE_HEADER_LENGTH);
+
+			this.savefile = PcapSavefile.of(copy)
+					.orElseThrow(() -> new IOException("not a classic pcap savefile"));
+			this.fileAbi = savefile.abi();
+			this.byteCount = PcapSavefile.FILE_HEADER_LENGTH;
+
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Delivers packets to a memory segment handler.
+	 *
+	 * @param <U>     the generic user type
+	 * @param count   maximum number of packets, or -1 for all remaining packets
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets delivered, 0 at the end of the file
+	 * @throws IOException if the file is truncated, corrupt or can not be read
+	 */
+	public <U> long dispatch(long count, PcapHandler.OfMemorySegment<U> handler, U user) throws IOException {
+		long n = 0;
+		for (; (count < 0 || n < count) && nextRecord(); n++)
+			handler.handleSegment(user, header, packet);
+
+		return n;
+	}
+
+	/**
+	 * Delivers packets to a native callback, with the same arguments
+	 * {@code pcap_dispatch} would pass.
+	 *
+	 * @param count   maximum number of packets, or -1 for all remaining packets
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets delivered, 0 at the end of the file
+	 * @throws IOException if the file is truncated, corrupt or can not be read
+	 */
+	public long dispatch(long count, PcapHandler.NativeCallback handler, MemorySegment user) throws IOException {
+		long n = 0;
+		for (; (count < 0 || n < count) && nextRecord(); n++)
+			handler.nativeCallback(user, header, packet);
+
+		return n;
+	}
+
+	/**
+	 * Copies packets into a buffered savefile writer, for example to decompress
+	 * or to repackage in native byte order. Timestamps are converted to the
+	 * writer's precision, nanosecond files keep their full resolution when
+	 * copied to a nanosecond writer.
+	 *
+	 * @param count  maximum number of packets, or -1 for all remaining packets
+	 * @param writer the writer
+	 * @return number of packets copied, 0 at the end of the file
+	 * @throws IOException if reading or writing fails
+	 */
+	public long dispatch(long count, PcapFileWriter writer) throws IOException {
+		boolean fromNano = savefile.isNanoTime();
+		boolean toNano = writer.isNanoTime();
+
+		long n = 0;
+		for (; (count < 0 || n < count) && nextRecord(); n++) {
+			long frac = (fromNano == toNano) ? tvFrac : fromNano ? tvFrac / 1000 : tvFrac * 1000;
+
+			writer.writePacket(packet, (int) packet.byteSize(), abi.wireLengthUnchecked(header), tvSec, frac);
+		}
+
+		return n;
+	}
+
+	/**
+	 * Parses the next record into the native header and packet segment.
+	 *
+	 * @return true if a record was read, false at the end of the file
+	 * @throws IOException if the file is truncated, corrupt or can not be read
+	 */
+	private boolean nextRecord() throws IOException {
+		if (closed)
+			throw new IOException("reader closed");
+
+		MemorySegment record = read(PcapSavefile.RECORD_HEADER_LENGTH);
+		if (record == null)
+			return false;
+
+		/* Extract all fields, the record header may be in the spill buffer */
+		tvSec = fileAbi.tvSec(record);
+		tvFrac = fileAbi.tvUsec(record);
+		int caplen = fileAbi.captureLengthUnchecked(record);
+		int wirelen = fileAbi.wireLengthUnchecked(record);
+
+		if (caplen < 0 || caplen > savefile.maxRecordLength())
+			throw new IOException("corrupt record at byte %d, capture length %d"
+					.formatted(byteCount, Integer.toUnsignedLong(caplen)));
+
+		packet = read(caplen);
+		if (packet == null)
+			throw new EOFException("truncated record at byte " + byteCount);
+
+		abi.tvSec(header, tvSec);
+		abi.tvUsec(header, savefile.isNanoTime() ? tvFrac / 1000 : tvFrac);
+		abi.captureLength(header, caplen);
+		abi.wireLength(header, wirelen);
+
+		packetCount++;
+		byteCount += PcapSavefile.RECORD_HEADER_LENGTH + caplen;
+
+		return true;
+	}
+
+	/**
+	 * Returns the next {@code length} decompressed bytes as one contiguous
+	 * segment. The segment is a slice of the current chunk if it fits, otherwise
+	 * the bytes are gathered into the spill buffer. It is valid until the next
+	 * read.
+	 *
+	 * @param length the length
+	 * @return the segment, or null if the stream ended before the first byte
+	 * @throws IOException if the stream ended part way, or decompression failed
+	 */
+	private MemorySegment read(int length) throws IOException {
+		long available = chunk.byteSize() - position;
+		if (available >= length) {
+			MemorySegment slice = chunk.asSlice(position, length);
+			position += length;
+
+			return slice;
+		}
+
+		MemorySegment staged = spill.ensureCapacity(length);
+		MemorySegment.copy(chunk, position, staged, 0, available);
+		position += available;
+
+		long copied = available;
+		while (copied < length) {
+			if (!nextChunk()) {
+				if (copied == 0)
+					return null;
+
+				throw new EOFException("truncated savefile at byte " + (byteCount + copied));
+			}
+
+			long n = Math.min(length - copied, chunk.byteSize());
+			MemorySegment.copy(chunk, 0, staged, copied, n);
+			position = n;
+			copied += n;
+		}
+
+		return staged.asSlice(0, length);
+	}
+
+	/**
+	 * Returns the current chunk to the inflater and takes the next filled one.
+	 *
+	 * @return true if there is a next chunk, false at the end of the stream
+	 * @throws IOException if decompression failed
+	 */
+	private boolean nextChunk() throws IOException {
+		if (chunkBuffer != null) {
+			free.add(chunkBuffer);
+			chunkBuffer = null;
+			chunk = MemorySegment.NULL;
+			position = 0;
+		}
+
+		if (endOfStream)
+			return false;
+
+		ByteBuffer next;
+		try {
+			next = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for decompressed data");
+		}
+
+		if (next == END_OF_STREAM) {
+			endOfStream = true;
+
+			Throwable t = failure;
+			if (t instanceof IOException e)
+				throw new IOException(e.getMessage(), e);
+			if (t != null)
+				throw new IOException("decompression failed", t);
+
+			return false;
+		}
+
+		chunkBuffer = next;
+		chunk = MemorySegment.ofBuffer(next);
+
+		return true;
+	}
+
+	/**
+	 * The inflater thread. Fills free chunks with decompressed data, across all
+	 * gzip members, and always ends with an end of stream marker unless
+	 * interrupted by close.
+	 */
+	private void inflaterLoop() {
+		var inflater = new Inflater(true);
+		var crc = new CRC32();
+
+		try {
+			ByteBuffer out = free.take();
+
+			for (int magic = readUnsignedShort(); magic != -1; magic = readUnsignedShort()) {
+				if (magic != GZIP_MAGIC)
+					throw new ZipException("not in gzip format");
+
+				readMemberHeader();
+
+				inflater.reset();
+				crc.reset();
+				long size = 0;
+
+				while (!inflater.finished()) {
+					if (!out.hasRemaining()) {
+						filled.put(out.flip());
+						out = free.take();
+					}
+
+					if (inflater.needsInput()) {
+						if (!input.hasRemaining() && fill() == -1)
+							throw new EOFException("truncated gzip stream");
+
+						inflater.setInput(input);
+					}
+
+					if (inflater.needsDictionary())
+						throw new ZipException("gzip stream requires a preset dictionary");
+
+					int start = out.position();
+					int n = inflater.inflate(out);
+					crc.update(out.slice(start, n));
+					size += n;
+				}
+
+				long expectedCrc = readTrailerInt();
+				long expectedSize = readTrailerInt();
+
+				if (expectedCrc != crc.getValue())
+					throw new ZipException("gzip CRC mismatch");
+
+				if (expectedSize != (size & 0xFFFFFFFFL))
+					throw new ZipException("gzip size mismatch");
+			}
+
+			if (out.position() > 0)
+				filled.put(out.flip());
+
+			filled.put(END_OF_STREAM);
+
+		} catch (InterruptedException e) {
+			/* Closed, the reader is gone */
+
+		} catch (IOException | DataFormatException | RuntimeException e) {
+			failure = e;
+			filled.offer(END_OF_STREAM);
+
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Reads and skips the rest of a gzip member header, after the magic bytes.
+	 *
+	 * @throws IOException if the header is truncated or not supported
+	 */
+	private void readMemberHeader() throws IOException {
+		if (readByte() != CM_DEFLATE)
+			throw new ZipException("unsupported gzip compression method");
+
+		int flags = readByte();
+		skip(6); // MTIME, XFL and OS
+
+		if ((flags & FEXTRA) != 0)
+			skip(readUnsignedShort());
+
+		if ((flags & FNAME) != 0)
+			while (readByte() != 0);
+
+		if ((flags & FCOMMENT) != 0)
+			while (readByte() != 0);
+
+		if ((flags & FHCRC) != 0)
+			skip(2);
+	}
+
+	/**
+	 * Reads a little endian 32 bit gzip trailer field.
+	 *
+	 * @return the unsigned value
+	 * @throws IOException if the trailer is truncated
+	 */
+	private long readTrailerInt() throws IOException {
+		int lo = readUnsignedShort();
+		int hi = readUnsignedShort();
+		if (lo == -1 || hi == -1)
+			throw new EOFException("truncated gzip trailer");
+
+		return ((long) hi << 16) | lo;
+	}
+
+	/**
+	 * Reads a little endian unsigned short, or -1 at a clean end of stream.
+	 *
+	 * @return the value or -1
+	 * @throws IOException if the stream ends after the first byte
+	 */
+	private int readUnsignedShort() throws IOException {
+		if (!input.hasRemaining() && fill() == -1)
+			return -1;
+
+		int lo = input.get() & 0xFF;
+
+		return (readByte() << 8) | lo;
+	}
+
+	/**
+	 * Reads a byte of compressed input.
+	 *
+	 * @return the unsigned byte
+	 * @throws IOException if the stream ended
+	 */
+	private int readByte() throws IOException {
+		if (!input.hasRemaining() && fill() == -1)
+			throw new EOFException("truncated gzip header");
+
+		return input.get() & 0xFF;
+	}
+
+	/**
+	 * Skips bytes of compressed input.
+	 *
+	 * @param count the count
+	 * @throws IOException if the stream ended
+	 */
+	private void skip(int count) throws IOException {
+		for (int i = 0; i < count; i++)
+			readByte();
+	}
+
+	/**
+	 * Compacts the input buffer and reads more compressed bytes from the channel.
+	 *
+	 * @return number of bytes read, or -1 at the end of the channel
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private int fill() throws IOException {
+		input.compact();
+		try {
+			int n;
+			while ((n = channel.read(input)) == 0);
+
+			return n;
+		} finally {
+			input.flip();
+		}
+	}
+
+	/**
+	 * The data link type from the file header.
+	 *
+	 * @return the dlt
+	 * @throws IllegalArgumentException if the link type is not known
+	 */
+	public PcapDlt dlt() throws IllegalArgumentException {
+		return PcapDlt.valueOf(savefile.linktype());
+	}
+
+	/**
+	 * The link type from the file header.
+	 *
+	 * @return the link type
+	 */
+	public int linktype() {
+		return savefile.linktype();
+	}
+
+	/**
+	 * Snaplen from the file header.
+	 *
+	 * @return the snaplen
+	 */
+	public int snaplen() {
+		return savefile.snaplen();
+	}
+
+	/**
+	 * Checks if the file stores timestamps in nanos. Packet headers are always
+	 * delivered with microsecond timestamps.
+	 *
+	 * @return true, if nano time
+	 */
+	public boolean isNanoTime() {
+		return savefile.isNanoTime();
+	}
+
+	/**
+	 * Number of packets read.
+	 *
+	 * @return the packet count
+	 */
+	public long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Number of decompressed bytes read, including the file and record headers.
+	 *
+	 * @return the byte count
+	 */
+	public long byteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Stops the inflater thread, closes the channel and releases all native
+	 * buffers. Any segment previously passed to a handler becomes invalid.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		closed = true;
+
+		try {
+			inflaterThread.interrupt();
+			channel.close();
+
+			/* The inflater thread must not outlive the reader, wait for it to exit */
+			boolean interrupted = false;
+			while (inflaterThread.isAlive()) {
+				try {
+					inflaterThread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+		} finally {
+			spill.close();
+			arena.close();
+		}
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "GzipPcapReader [packets=" + packetCount + ", bytes=" + byteCount + "]";
+	}
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapDlt;
+
+/**
+ * A channel which gzip compresses everything written to it on a small pool of
+ * threads, and writes the compressed blocks to an underlying channel in order.
+ * <p>
+ * Each block is written as an independent gzip member, which any gzip reader
+ * decompresses as one continuous stream, and which lets readers start
+ * decompressing at any member boundary. Each {@code write} call starts a new
+ * block, larger writes are split into blocks of at most the configured block
+ * size. Under a {@link PcapFileWriter}, whose bulk writes always end on a
+ * record boundary, every member starts with a pcap record only as long as the
+ * writer's buffer is no larger than the block size, otherwise a bulk write is
+ * split mid record. Records larger than the writer's buffer are written on
+ * their own and may still span members. {@link #newPcapWriter} creates a
+ * writer whose buffer matches the block size.
+ * </p>
+ *
+ * <pre>
+ * try (var gzip = new ParallelGzipChannel(FileChannel.open(path, CREATE, WRITE), 6, 4);
+ * 		var writer = gzip.newPcapWriter(PcapDlt.EN10MB, 65535, false)) {
+ * 	...
+ * }
+ * </pre>
+ * <p>
+ * A channel is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class ParallelGzipChannel implements WritableByteChannel, Flushable {
+
+	/** Default block size, 4MB. */
+	public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+	/** Member header: magic, deflate, no flags, no mtime, no xfl, unknown OS. */
+	private static final byte[] GZIP_HEADER = {
+			0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff
+	};
+
+	/** Length of the member trailer, CRC32 and ISIZE. */
+	private static final int GZIP_TRAILER_LENGTH = 8;
+
+	/**
+	 * A block of uncompressed input and its compressed member, reused once
+	 * written.
+	 */
+	private static final class Block {
+
+		/** The uncompressed input. */
+		private final byte[] input;
+
+		/** The input length. */
+		private int inputLength;
+
+		/** The compressed gzip member, grown if needed. */
+		private byte[] output;
+
+		/** The output length. */
+		private int outputLength;
+
+		/** Time spent compressing. */
+		private long nanos;
+
+		/**
+		 * Instantiates a new block.
+		 *
+		 * @param size the block size
+		 */
+		Block(int size) {
+			this.input = new byte[size];
+			this.output = new byte[size + (size >> 8) + GZIP_HEADER.length + GZIP_TRAILER_LENGTH + 64];
+		}
+	}
+
+	/** The underlying channel. */
+	private final WritableByteChannel channel;
+
+	/** The compression level. */
+	private final int level;
+
+	/** The block size. */
+	private final int blockSize;
+
+	/** The thread count. */
+	private final int threads;
+
+	/** The compression threads. */
+	private final ExecutorService pool;
+
+	/** Blocks being compressed, in write order. */
+	private final Queue<Future<Block>> pending = new ArrayDeque<>();
+
+	/** Most blocks in flight before a write waits for the oldest one. */
+	private final int maxPending;
+
+	/** Blocks available for reuse. */
+	private final Queue<Block> freeBlocks = new ConcurrentLinkedQueue<>();
+
+	/** Deflaters available for reuse, one per thread at most. */
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+	/** The open time. */
+	private final long openNanos = System.nanoTime();
+
+	/** The block count. */
+	private long blocks;
+
+	/** The input byte count. */
+	private long inputBytes;
+
+	/** The output byte count. */
+	private long outputBytes;
+
+	/** The compress nanos. */
+	private long compressNanos;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Compresses to a channel with the default block size. The channel is closed
+	 * when this channel is closed.
+	 *
+	 * @param channel the underlying channel
+	 * @param level   the {@link Deflater} compression level, 0 to 9 or -1 for
+	 *                the default level
+	 * @param threads number of compression threads
+	 */
+	public ParallelGzipChannel(WritableByteChannel channel, int level, int threads) {
+		this(channel, level, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Compresses to a channel. The channel is closed when this channel is closed.
+	 *
+	 * @param channel   the underlying channel
+	 * @param level     the {@link Deflater} compression level, 0 to 9 or -1 for
+	 *                  the default level
+	 * @param threads   number of compression threads
+	 * @param blockSize largest block compressed as one gzip member
+	 */
+	public ParallelGzipChannel(WritableByteChannel channel, int level, int threads, int blockSize) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("invalid compression level: " + level);
+
+		if (threads < 1)
+			throw new IllegalArgumentException("thread count must be positive: " + threads);
+
+		if (blockSize < 1)
+			throw new IllegalArgumentException("block size must be positive: " + blockSize);
+
+		this.channel = channel;
+		this.level = level;
+		this.threads = threads;
+		this.blockSize = blockSize;
+		this.maxPending = 2 * threads;
+		this.pool = Executors.newFixedThreadPool(threads, Thread.ofPlatform()
+				.name("pcap-gzip-", 0)
+				.daemon(true)
+				.factory());
+	}
+
+	/**
+	 * Creates a savefile writer on this channel, whose buffer is the block size
+	 * so that every gzip member starts on a record boundary. This channel is
+	 * closed when the writer is closed.
+	 *
+	 * @param dlt      the data link type
+	 * @param snaplen  the snaplen, longer packets are truncated
+	 * @param nanoTime if true, the fractional timestamp is in nanos, otherwise in
+	 *                 micros
+	 * @return the savefile writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter newPcapWriter(PcapDlt dlt, int snaplen, boolean nanoTime) throws IOException {
+		return new PcapFileWriter(this, dlt, snaplen, nanoTime, blockSize);
+	}
+
+	/**
+	 * Creates a savefile writer for a capture handle's packets on this channel,
+	 * whose buffer is the block size. Headers are converted from the handle's
+	 * timestamp precision. This channel is closed when the writer is closed.
+	 *
+	 * @param pcap     the pcap handle whose headers are written
+	 * @param nanoTime if true, the fractional timestamp is in nanos, otherwise in
+	 *                 micros
+	 * @return the savefile writer
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter newPcapWriter(Pcap pcap, boolean nanoTime) throws PcapException, IOException {
+		return new PcapFileWriter(this, pcap, nanoTime, blockSize);
+	}
+
+	/**
+	 * Queues the bytes for compression. Returns as soon as the bytes are copied,
+	 * unless too many blocks are already in flight, in which case it first waits
+	 * for the oldest one to be compressed and written.
+	 *
+	 * @param src the bytes to write
+	 * @return number of bytes written, always all remaining bytes
+	 * @throws IOException if compression or writing a previous block failed
+	 * @see java.nio.channels.WritableByteChannel#write(java.nio.ByteBuffer)
+	 */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (closed)
+			throw new ClosedChannelException();
+
+		int total = src.remaining();
+
+		while (src.hasRemaining()) {
+			Block block = freeBlocks.poll();
+			if (block == null)
+				block = new Block(blockSize);
+
+			int n = Math.min(src.remaining(), blockSize);
+			src.get(block.input, 0, n);
+			block.inputLength = n;
+
+			final Block b = block;
+			pending.add(pool.submit(() -> compress(b)));
+
+			writeCompleted(maxPending);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Compresses a block into a complete gzip member. Runs on a compression
+	 * thread.
+	 *
+	 * @param block the block
+	 * @return the block
+	 */
+	private Block compress(Block block) {
+		long start = System.nanoTime();
+
+		Deflater deflater = deflaters.poll();
+		if (deflater == null)
+			deflater = new Deflater(level, true);
+
+		try {
+			deflater.setInput(block.input, 0, block.inputLength);
+			deflater.finish();
+
+			byte[] out = block.output;
+			System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+			int len = GZIP_HEADER.length;
+
+			while (!deflater.finished()) {
+				if (len == out.length)
+					out = Arrays.copyOf(out, out.length * 2);
+
+				len += deflater.deflate(out, len, out.length - len);
+			}
+
+			if (out.length - len < GZIP_TRAILER_LENGTH)
+				out = Arrays.copyOf(out, len + GZIP_TRAILER_LENGTH);
+
+			var crc = new CRC32();
+			crc.update(block.input, 0, block.inputLength);
+
+			len = putIntLE(out, len, (int) crc.getValue());
+			len = putIntLE(out, len, block.inputLength);
+
+			block.output = out;
+			block.outputLength = len;
+			block.nanos = System.nanoTime() - start;
+
+			return block;
+
+		} finally {
+			deflater.reset();
+			deflaters.add(deflater);
+		}
+	}
+
+	/**
+	 * Writes an int in little endian order, as used by the gzip trailer.
+	 *
+	 * @param array  the array
+	 * @param offset the offset
+	 * @param value  the value
+	 * @return the offset after the int
+	 */
+	private static int putIntLE(byte[] array, int offset, int value) {
+		array[offset] = (byte) value;
+		array[offset + 1] = (byte) (value >>> 8);
+		array[offset + 2] = (byte) (value >>> 16);
+		array[offset + 3] = (byte) (value >>> 24);
+
+		return offset + 4;
+	}
+
+	/**
+	 * Writes compressed blocks to the channel, in order. Always writes the oldest
+	 * blocks that are already done, then waits for older blocks until no more than
+	 * {@code keep} remain in flight.
+	 *
+	 * @param keep number of blocks which may remain in flight
+	 * @throws IOException if compression or writing failed
+	 */
+	private void writeCompleted(int keep) throws IOException {
+		while (!pending.isEmpty() && (pending.size() > keep || pending.peek().isDone())) {
+			Block block;
+			try {
+				block = pending.peek().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for compression");
+			} catch (ExecutionException e) {
+				throw new IOException("compression failed", e.getCause());
+			}
+
+			pending.remove();
+
+			ByteBuffer member = ByteBuffer.wrap(block.output, 0, block.outputLength);
+			while (member.hasRemaining())
+				channel.write(member);
+
+			blocks++;
+			inputBytes += block.inputLength;
+			outputBytes += block.outputLength;
+			compressNanos += block.nanos;
+
+			freeBlocks.add(block);
+		}
+	}
+
+	/**
+	 * Waits for all queued blocks to be compressed and written. Does not force
+	 * the underlying channel to storage.
+	 *
+	 * @throws IOException if compression or writing failed
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed)
+			throw new ClosedChannelException();
+
+		writeCompleted(0);
+	}
+
+	/**
+	 * Snapshot of compression throughput and ratio. Only blocks already written
+	 * are counted.
+	 *
+	 * @return the compression metrics
+	 */
+	public CompressionMetrics metrics() {
+		return new CompressionMetrics(blocks, inputBytes, outputBytes, compressNanos,
+				System.nanoTime() - openNanos, pending.size(), threads);
+	}
+
+	/**
+	 * Compression level.
+	 *
+	 * @return the level
+	 */
+	public int level() {
+		return level;
+	}
+
+	/**
+	 * Block size.
+	 *
+	 * @return the block size
+	 */
+	public int blockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @see java.nio.channels.Channel#isOpen()
+	 */
+	@Override
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Writes all queued blocks, stops the compression threads and closes the
+	 * underlying channel.
+	 *
+	 * @throws IOException if compression or writing failed
+	 * @see java.nio.channels.Channel#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		try {
+			writeCompleted(0);
+		} finally {
+			closed = true;
+			pending.forEach(f -> f.cancel(false));
+			pending.clear();
+			pool.shutdown();
+
+			try {
+				channel.close();
+			} finally {
+				/* Idle workers no longer need their deflaters */
+				Deflater d;
+				while ((d = deflaters.poll()) != null)
+					d.end();
+			}
+		}
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ParallelGzipChannel [level=" + level + ", threads=" + threads + ", " + metrics() + "]";
+	}
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+/**
+ * A buffered pcap savefile writer implemented in Java.
+ * <p>
+ * Unlike {@link PcapDumper}, which makes one native call per packet into
+ * libpcap's stdio buffered writer, this writer copies each record into a large
+ * direct buffer and writes it to the channel in bulk, which keeps up with
+ * multi GB/s generators. Files are written in native byte order, in the classic
+ * pcap format with either microsecond or nanosecond timestamps, and can be read
+ * back by libpcap.
+ * </p>
+ * <p>
+ * Native headers passed to {@link #writePacket(MemorySegment, MemorySegment)}
+ * are converted from the precision of the handle which delivered them to the
+ * file's precision. Writers created from a {@link Pcap} handle take its
+ * precision, other writers are given it explicitly or take headers to be in
+ * the file's precision.
+ * </p>
+ * <p>
+ * A writer is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapFileWriter implements Flushable, AutoCloseable {
+
+	/** Savefile magic number for microsecond timestamps. */
+	public static final int MAGIC_MICROS = 0xa1b2c3d4;
+
+	/** Savefile magic number for nanosecond timestamps. */
+	public static final int MAGIC_NANOS = 0xa1b23c4d;
+
+	/** Savefile format major version. */
+	public static final int VERSION_MAJOR = 2;
+
+	/** Savefile format minor version. */
+	public static final int VERSION_MINOR = 4;
+
+	/** Length of the savefile header. */
+	public static final int FILE_HEADER_LENGTH = 24;
+
+	/** Length of each packet record header. */
+	public static final int RECORD_HEADER_LENGTH = 16;
+
+	/** Default buffer size, 4MB. */
+	public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/** Layout of record header fields. */
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+
+	/** The channel. */
+	private final WritableByteChannel channel;
+
+	/** The buffer. */
+	private final ByteBuffer buffer;
+
+	/** The buffer as a memory segment, for bulk copies. */
+	private final MemorySegment bufferSegment;
+
+	/** The snaplen. */
+	private final int snaplen;
+
+	/** The nano time. */
+	private final boolean nanoTime;
+
+	/** The timestamp precision of native headers is nanos. */
+	private final boolean headerNanoTime;
+
+	/** The packet count. */
+	private long packetCount;
+
+	/** The byte count. */
+	private long byteCount;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Creates or truncates a savefile with microsecond timestamps.
+	 *
+	 * @param path    the path
+	 * @param dlt     the data link type
+	 * @param snaplen the snaplen, longer packets are truncated
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter(Path path, PcapDlt dlt, int snaplen) throws IOException {
+		this(FileChannel.open(path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING),
+				dlt, snaplen, false, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Writes a savefile to a channel. The channel is closed when this writer is
+	 * closed.
+	 *
+	 * @param channel    the channel
+	 * @param dlt        the data link type
+	 * @param snaplen    the snaplen, longer packets are truncated
+	 * @param nanoTime   if true, the fractional timestamp is in nanos, otherwise
+	 *                   in micros
+	 * @param bufferSize the buffer size
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter(WritableByteChannel channel, PcapDlt dlt, int snaplen, boolean nanoTime, int bufferSize)
+			throws IOException {
+		this(channel, dlt, snaplen, nanoTime, bufferSize, nanoTime
+				? PcapTStampPrecision.TSTAMP_PRECISION_NANO
+				: PcapTStampPrecision.TSTAMP_PRECISION_MICRO);
+	}
+
+	/**
+	 * Writes a savefile of a capture handle's packets to a channel, with the
+	 * handle's link type and snaplen. The channel is closed when this writer is
+	 * closed.
+	 *
+	 * @param channel    the channel
+	 * @param pcap       the pcap handle whose headers are written
+	 * @param nanoTime   if true, the fractional timestamp is in nanos, otherwise
+	 *                   in micros
+	 * @param bufferSize the buffer size
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter(WritableByteChannel channel, Pcap pcap, boolean nanoTime, int bufferSize)
+			throws PcapException, IOException {
+		this(channel, pcap.datalink(), pcap.snapshot(), nanoTime, bufferSize, precisionOf(pcap));
+	}
+
+	/**
+	 * Writes a savefile to a channel. The channel is closed when this writer is
+	 * closed.
+	 *
+	 * @param channel         the channel
+	 * @param dlt             the data link type
+	 * @param snaplen         the snaplen, longer packets are truncated
+	 * @param nanoTime        if true, the fractional timestamp is in nanos,
+	 *                        otherwise in micros
+	 * @param bufferSize      the buffer size
+	 * @param headerPrecision the timestamp precision of native headers passed to
+	 *                        {@link #writePacket(MemorySegment, MemorySegment)}
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapFileWriter(WritableByteChannel channel, PcapDlt dlt, int snaplen, boolean nanoTime, int bufferSize,
+			PcapTStampPrecision headerPrecision) throws IOException {
+		if (snaplen <= 0)
+			throw new IllegalArgumentException("snaplen must be positive: " + snaplen);
+
+		if (bufferSize < FILE_HEADER_LENGTH + RECORD_HEADER_LENGTH)
+			throw new IllegalArgumentException("buffer too small: " + bufferSize);
+
+		this.channel = channel;
+		this.snaplen = snaplen;
+		this.nanoTime = nanoTime;
+		this.headerNanoTime = (headerPrecision == PcapTStampPrecision.TSTAMP_PRECISION_NANO);
+		this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+		this.bufferSegment = MemorySegment.ofBuffer(buffer);
+
+		buffer.putInt(nanoTime ? MAGIC_NANOS : MAGIC_MICROS);
+		buffer.putShort((short) VERSION_MAJOR);
+		buffer.putShort((short) VERSION_MINOR);
+		buffer.putInt(0); // thiszone
+		buffer.putInt(0); // sigfigs
+		buffer.putInt(snaplen);
+		buffer.putInt(dlt.getAsInt());
+
+		byteCount = FILE_HEADER_LENGTH;
+	}
+
+	/**
+	 * Writes a packet.
+	 *
+	 * @param packet        the packet data
+	 * @param captureLength number of bytes of packet data to write, truncated to
+	 *                      the snaplen
+	 * @param wireLength    the original length of the packet
+	 * @param tvSec         timestamp seconds
+	 * @param tvFrac        timestamp fraction of a second, in micros or nanos as
+	 *                      configured
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writePacket(MemorySegment packet, int captureLength, int wireLength, long tvSec, long tvFrac)
+			throws IOException {
+		if (closed)
+			throw new IOException("writer closed");
+
+		int caplen = Math.min(captureLength, snaplen);
+		int recordLength = RECORD_HEADER_LENGTH + caplen;
+
+		if (buffer.remaining() < recordLength) {
+			drain();
+
+			if (buffer.remaining() < recordLength) {
+				writeLarge(packet, caplen, wireLength, tvSec, tvFrac);
+				return;
+			}
+		}
+
+		int pos = buffer.position();
+		bufferSegment.set(INT, pos, (int) tvSec);
+		bufferSegment.set(INT, pos + 4, (int) tvFrac);
+		bufferSegment.set(INT, pos + 8, caplen);
+		bufferSegment.set(INT, pos + 12, wireLength);
+		MemorySegment.copy(packet, 0, bufferSegment, pos + RECORD_HEADER_LENGTH, caplen);
+		buffer.position(pos + recordLength);
+
+		packetCount++;
+		byteCount += recordLength;
+	}
+
+	/**
+	 * Writes a packet given a native {@code struct pcap_pkthdr}, as delivered to
+	 * a native callback. A drop in replacement for
+	 * {@link PcapDumper#dump(MemorySegment, MemorySegment)}. The timestamp is
+	 * converted from the header precision this writer was created with.
+	 *
+	 * @param header the native pcap header
+	 * @param packet the packet data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writePacket(MemorySegment header, MemorySegment packet) throws IOException {
+		PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+		MemorySegment hdr = header.reinterpret(abi.headerLength());
+
+		int caplen = abi.captureLengthUnchecked(hdr);
+		long tvFrac = abi.tvUsec(hdr);
+
+		if (headerNanoTime != nanoTime)
+			tvFrac = headerNanoTime ? tvFrac / 1000 : tvFrac * 1000;
+
+		writePacket(packet.reinterpret(caplen), caplen, abi.wireLengthUnchecked(hdr), abi.tvSec(hdr), tvFrac);
+	}
+
+	/**
+	 * Timestamp precision of the headers a capture handle delivers.
+	 *
+	 * @param pcap the pcap handle
+	 * @return the timestamp precision, micros before libpcap 1.5
+	 * @throws PcapException the pcap exception
+	 */
+	static PcapTStampPrecision precisionOf(Pcap pcap) throws PcapException {
+		try {
+			return pcap.getTstampPrecision();
+		} catch (UnsupportedOperationException e) {
+			return PcapTStampPrecision.TSTAMP_PRECISION_MICRO; // libpcap < 1.5
+		}
+	}
+
+	/**
+	 * Writes a record that does not fit in the buffer, which is known to be
+	 * empty.
+	 *
+	 * @param packet     the packet
+	 * @param caplen     the caplen
+	 * @param wireLength the wire length
+	 * @param tvSec      the tv sec
+	 * @param tvFrac     the tv frac
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeLarge(MemorySegment packet, int caplen, int wireLength, long tvSec, long tvFrac)
+			throws IOException {
+		buffer.putInt((int) tvSec);
+		buffer.putInt((int) tvFrac);
+		buffer.putInt(caplen);
+		buffer.putInt(wireLength);
+		drain();
+
+		ByteBuffer data = packet.asSlice(0, caplen).asByteBuffer();
+		while (data.hasRemaining())
+			channel.write(data);
+
+		packetCount++;
+		byteCount += RECORD_HEADER_LENGTH + caplen;
+	}
+
+	/**
+	 * Writes all buffered bytes to the channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	/**
+	 * Writes all buffered records to the channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed)
+			throw new IOException("writer closed");
+
+		drain();
+	}
+
+	/**
+	 * Flushes and closes the writer and its channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		try {
+			drain();
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Number of packets written.
+	 *
+	 * @return the packet count
+	 */
+	public long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Number of bytes written, including the file and record headers.
+	 *
+	 * @return the byte count
+	 */
+	public long byteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Snaplen.
+	 *
+	 * @return the snaplen
+	 */
+	public int snaplen() {
+		return snaplen;
+	}
+
+	/**
+	 * Checks if timestamps are in nanos.
+	 *
+	 * @return true, if nano time
+	 */
+	public boolean isNanoTime() {
+		return nanoTime;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapFileWriter [packets=" + packetCount + ", bytes=" + byteCount + "]";
+	}
+}
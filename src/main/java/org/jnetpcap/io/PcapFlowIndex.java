@@ -0,0 +1,515 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.InetAddress;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+import org.jnetpcap.BpFilter;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.dissect.PacketDissector;
+import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.internal.PcapSavefile;
+
+/**
+ * A pcap savefile with its flow index, for retrieving the packets of a host,
+ * port or protocol while skipping every chunk of the file which can not
+ * contain them.
+ * <p>
+ * The index, written by {@link PcapFlowIndexWriter} alongside the savefile or
+ * built afterwards with {@link #build}, holds one bloom filter per chunk of
+ * packets. Both files are memory mapped, a query probes a few bits of each
+ * chunk's filter, and only candidate chunks are read. Matching packets within
+ * candidate chunks are then selected either by an exact match on the query
+ * itself, or by a compiled {@link BpFilter}.
+ * </p>
+ *
+ * <pre>
+ * var index = PcapFlowIndex.open(Path.of("capture.pcap"));
+ * var query = new PcapFlowIndex.Query()
+ * 		.host(InetAddress.getByName("10.1.2.3"))
+ * 		.port(443);
+ *
+ * index.dispatch(query, handler, user);
+ * </pre>
+ * <p>
+ * An index is immutable and thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapFlowIndex {
+
+	/**
+	 * A conjunction of hosts, ports and IP protocols. A packet matches if, for
+	 * every term, either its source or destination has the host or port, and its
+	 * IP protocol is the protocol. The same as the BPF expression
+	 * {@code host A and port P and ip proto N}, restricted to IP packets.
+	 */
+	public static final class Query {
+
+		/** Addresses, 4 or 16 bytes in network order. */
+		private final List<byte[]> hosts = new ArrayList<>();
+
+		/** The ports. */
+		private final List<Integer> ports = new ArrayList<>();
+
+		/** The protocols. */
+		private final List<Integer> protocols = new ArrayList<>();
+
+		/** Bloom keys of all terms. */
+		private long[] keys = new long[0];
+
+		/**
+		 * Requires a host, as the source or destination address.
+		 *
+		 * @param address the address
+		 * @return this query
+		 */
+		public Query host(InetAddress address) {
+			byte[] bytes = address.getAddress();
+			hosts.add(bytes);
+
+			return addKey(FlowIndexKeys.address(bytes));
+		}
+
+		/**
+		 * Requires a TCP, UDP or SCTP port, as the source or destination port.
+		 *
+		 * @param port the port
+		 * @return this query
+		 */
+		public Query port(int port) {
+			if (port < 0 || port > 0xFFFF)
+				throw new IllegalArgumentException("invalid port: " + port);
+
+			ports.add(port);
+
+			return addKey(FlowIndexKeys.port(port));
+		}
+
+		/**
+		 * Requires an IP protocol.
+		 *
+		 * @param protocol the protocol, such as {@link PacketDissector#IPPROTO_TCP}
+		 * @return this query
+		 */
+		public Query protocol(int protocol) {
+			if (protocol < 0 || protocol > 0xFF)
+				throw new IllegalArgumentException("invalid protocol: " + protocol);
+
+			protocols.add(protocol);
+
+			return addKey(FlowIndexKeys.protocol(protocol));
+		}
+
+		/**
+		 * Adds a bloom key.
+		 *
+		 * @param key the key
+		 * @return this query
+		 */
+		private Query addKey(long key) {
+			keys = Arrays.copyOf(keys, keys.length + 1);
+			keys[keys.length - 1] = key;
+
+			return this;
+		}
+
+		/**
+		 * Exact match of a dissected packet.
+		 *
+		 * @param dissector the dissector, holding the packet's dissected fields
+		 * @param packet    the packet
+		 * @return true, if matched
+		 */
+		boolean matches(PacketDissector dissector, MemorySegment packet) {
+			int length = dissector.addressLength();
+			if (length == 0)
+				return false;
+
+			for (byte[] host : hosts) {
+				if (host.length != length)
+					return false;
+
+				var address = MemorySegment.ofArray(host);
+				if (MemorySegment.mismatch(packet, dissector.srcAddressOffset(),
+						dissector.srcAddressOffset() + length, address, 0, length) != -1
+						&& MemorySegment.mismatch(packet, dissector.dstAddressOffset(),
+								dissector.dstAddressOffset() + length, address, 0, length) != -1)
+					return false;
+			}
+
+			for (int port : ports)
+				if (dissector.srcPort() != port && dissector.dstPort() != port)
+					return false;
+
+			for (int protocol : protocols)
+				if (dissector.ipProtocol() != protocol)
+					return false;
+
+			return true;
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Query [hosts=" + hosts.size() + ", ports=" + ports + ", protocols=" + protocols + "]";
+		}
+	}
+
+	/** File name suffix of an index sidecar. */
+	public static final String SUFFIX = ".fidx";
+
+	/** Little endian long, as stored in the index file. */
+	private static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	/** Little endian int, as stored in the index file. */
+	private static final ValueLayout.OfInt INT_LE = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * The index sidecar path for a savefile, the savefile path with
+	 * {@value #SUFFIX} appended.
+	 *
+	 * @param savefile the savefile
+	 * @return the index path
+	 */
+	public static Path sidecarOf(Path savefile) {
+		return savefile.resolveSibling(savefile.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Opens a savefile with its index sidecar.
+	 *
+	 * @param savefile the savefile
+	 * @return the indexed savefile
+	 * @throws IOException if either file can not be read, or is not in the
+	 *                     expected format
+	 */
+	public static PcapFlowIndex open(Path savefile) throws IOException {
+		return open(savefile, sidecarOf(savefile));
+	}
+
+	/**
+	 * Opens a savefile with an index file.
+	 *
+	 * @param savefile  the savefile
+	 * @param indexFile the index file
+	 * @return the indexed savefile
+	 * @throws IOException if either file can not be read, or is not in the
+	 *                     expected format
+	 */
+	public static PcapFlowIndex open(Path savefile, Path indexFile) throws IOException {
+		MemorySegment index;
+		try (var ch = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			index = ch.map(MapMode.READ_ONLY, 0, ch.size(), Arena.ofAuto());
+		}
+
+		if (index.byteSize() < PcapFlowIndexWriter.HEADER_LENGTH
+				|| index.get(INT_LE, 0) != PcapFlowIndexWriter.MAGIC)
+			throw new IOException("not a pcap flow index " + indexFile);
+
+		int version = index.get(ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN), 4);
+		if (version != PcapFlowIndexWriter.VERSION)
+			throw new IOException("unsupported pcap flow index version " + version);
+
+		int bloomBits = index.get(INT_LE, 12);
+		int hashCount = index.get(INT_LE, 16);
+		if (bloomBits < 64 || Integer.bitCount(bloomBits) != 1 || hashCount < 1 || hashCount > 16)
+			throw new IOException("corrupt pcap flow index header " + indexFile);
+
+		return new PcapFlowIndex(PcapSavefile.map(savefile), index);
+	}
+
+	/**
+	 * Indexes an existing savefile with the default chunk and bloom filter sizes,
+	 * writes its index sidecar and opens it.
+	 *
+	 * @param savefile the savefile
+	 * @return the indexed savefile
+	 * @throws IOException if the savefile can not be read or the index written
+	 */
+	public static PcapFlowIndex build(Path savefile) throws IOException {
+		return build(savefile, PcapFlowIndexWriter.DEFAULT_CHUNK_PACKETS, PcapFlowIndexWriter.DEFAULT_BLOOM_BITS);
+	}
+
+	/**
+	 * Indexes an existing savefile, writes its index sidecar and opens it.
+	 *
+	 * @param savefile     the savefile
+	 * @param chunkPackets number of packets per chunk
+	 * @param bloomBits    bloom filter size in bits, a power of 2
+	 * @return the indexed savefile
+	 * @throws IOException if the savefile can not be read or the index written
+	 */
+	public static PcapFlowIndex build(Path savefile, int chunkPackets, int bloomBits) throws IOException {
+		PcapSavefile file = PcapSavefile.map(savefile);
+		Path indexFile = sidecarOf(savefile);
+
+		PcapTStampPrecision precision = file.isNanoTime()
+				? PcapTStampPrecision.TSTAMP_PRECISION_NANO
+				: PcapTStampPrecision.TSTAMP_PRECISION_MICRO;
+
+		try (var writer = new PcapFlowIndexWriter(indexFile, file.linktype(), precision, file.firstRecord(),
+				chunkPackets, bloomBits, PcapFlowIndexWriter.DEFAULT_HASH_COUNT)) {
+
+			for (long off = file.firstRecord(); file.hasRecord(off); off = file.nextRecord(off))
+				writer.record(file.timestampNanos(off), file.data(off), file.captureLength(off));
+		}
+
+		return open(savefile, indexFile);
+	}
+
+	/** The savefile. */
+	private final PcapSavefile savefile;
+
+	/** The mapped index file. */
+	private final MemorySegment index;
+
+	/** The data link type. */
+	private final int dlt;
+
+	/** The bloom bits. */
+	private final int bloomBits;
+
+	/** The hash count. */
+	private final int hashCount;
+
+	/** Length of each chunk in the index file. */
+	private final long chunkLength;
+
+	/** The chunk count. */
+	private final int chunkCount;
+
+	/**
+	 * Instantiates a new pcap flow index.
+	 *
+	 * @param savefile the savefile
+	 * @param index    the index
+	 */
+	private PcapFlowIndex(PcapSavefile savefile, MemorySegment index) {
+		this.savefile = savefile;
+		this.index = index;
+		this.dlt = index.get(INT_LE, 8);
+		this.bloomBits = index.get(INT_LE, 12);
+		this.hashCount = index.get(INT_LE, 16);
+		this.chunkLength = PcapFlowIndexWriter.CHUNK_HEADER_LENGTH + bloomBits / 8;
+
+		/* A trailing partial chunk is from an interrupted capture */
+		this.chunkCount = (int) ((index.byteSize() - PcapFlowIndexWriter.HEADER_LENGTH) / chunkLength);
+	}
+
+	/**
+	 * Offset of a chunk in the index file.
+	 *
+	 * @param chunk the chunk
+	 * @return the index file offset
+	 */
+	private long chunkBase(int chunk) {
+		return PcapFlowIndexWriter.HEADER_LENGTH + chunk * chunkLength;
+	}
+
+	/**
+	 * Checks if a chunk may contain packets matching the query.
+	 *
+	 * @param chunk the chunk
+	 * @param query the query
+	 * @return false if the chunk definitely has no matching packets
+	 */
+	public boolean isCandidate(int chunk, Query query) {
+		MemorySegment bloom = index.asSlice(chunkBase(chunk) + PcapFlowIndexWriter.CHUNK_HEADER_LENGTH,
+				bloomBits / 8);
+
+		for (long key : query.keys)
+			if (!FlowIndexKeys.mightContain(bloom, bloomBits, hashCount, key))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Number of chunks which may contain packets matching the query.
+	 *
+	 * @param query the query
+	 * @return the candidate count
+	 */
+	public int candidateCount(Query query) {
+		int count = 0;
+		for (int i = 0; i < chunkCount; i++)
+			if (isCandidate(i, query))
+				count++;
+
+		return count;
+	}
+
+	/**
+	 * Delivers the packets exactly matching the query to a memory segment
+	 * handler, with a native {@code struct pcap_pkthdr} in microseconds.
+	 *
+	 * @param <U>     the generic user type
+	 * @param query   the query
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets delivered
+	 */
+	public <U> long dispatch(Query query, PcapHandler.OfMemorySegment<U> handler, U user) {
+		var dissector = new PacketDissector(dlt);
+
+		return dispatch(query, (header, packet) -> dissector.dissect(packet) && query.matches(dissector, packet),
+				handler, user);
+	}
+
+	/**
+	 * Delivers the packets of candidate chunks which match a compiled filter to a
+	 * memory segment handler. The query only selects chunks, and must be implied
+	 * by the filter, for example {@code host 10.1.2.3 and port 443} for the query
+	 * {@code host(10.1.2.3).port(443)}, otherwise packets matching the filter may
+	 * be missed.
+	 *
+	 * @param <U>     the generic user type
+	 * @param query   the query selecting candidate chunks
+	 * @param filter  the filter selecting packets, compiled for the savefile's
+	 *                link type
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets delivered
+	 */
+	public <U> long dispatch(Query query, BpFilter filter, PcapHandler.OfMemorySegment<U> handler, U user) {
+		return dispatch(query, (header, packet) -> Pcap.offlineFilter(filter, header, packet), handler, user);
+	}
+
+	/**
+	 * Delivers the packets of candidate chunks which pass a predicate.
+	 *
+	 * @param <U>       the generic user type
+	 * @param query     the query
+	 * @param predicate the predicate, over the native header and packet data
+	 * @param handler   the handler
+	 * @param user      the user
+	 * @return number of packets delivered
+	 */
+	private <U> long dispatch(Query query, BiPredicate<MemorySegment, MemorySegment> predicate,
+			PcapHandler.OfMemorySegment<U> handler, U user) {
+		PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+		long count = 0;
+
+		try (var arena = Arena.ofConfined()) {
+			MemorySegment header = arena.allocate(abi.headerLength());
+
+			for (int i = 0; i < chunkCount; i++) {
+				if (!isCandidate(i, query))
+					continue;
+
+				long base = chunkBase(i);
+				long end = index.get(LONG_LE, base + 8);
+
+				for (long off = index.get(LONG_LE, base); off < end && savefile.hasRecord(off);
+						off = savefile.nextRecord(off)) {
+
+					long ts = savefile.timestampNanos(off);
+					MemorySegment packet = savefile.data(off);
+
+					abi.tvSec(header, ts / 1_000_000_000L);
+					abi.tvUsec(header, (ts % 1_000_000_000L) / 1000);
+					abi.captureLength(header, (int) packet.byteSize());
+					abi.wireLength(header, savefile.wireLength(off));
+
+					if (predicate.test(header, packet)) {
+						handler.handleSegment(user, header, packet);
+						count++;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Number of indexed chunks.
+	 *
+	 * @return the chunk count
+	 */
+	public int chunkCount() {
+		return chunkCount;
+	}
+
+	/**
+	 * Number of packets in a chunk.
+	 *
+	 * @param chunk the chunk
+	 * @return the packet count
+	 */
+	public int packetCount(int chunk) {
+		return index.get(INT_LE, chunkBase(chunk) + 32);
+	}
+
+	/**
+	 * Timestamp of the first packet in a chunk.
+	 *
+	 * @param chunk the chunk
+	 * @return the timestamp in epoch nanos
+	 */
+	public long firstTimestampNanos(int chunk) {
+		return index.get(LONG_LE, chunkBase(chunk) + 16);
+	}
+
+	/**
+	 * Timestamp of the last packet in a chunk.
+	 *
+	 * @param chunk the chunk
+	 * @return the timestamp in epoch nanos
+	 */
+	public long lastTimestampNanos(int chunk) {
+		return index.get(LONG_LE, chunkBase(chunk) + 24);
+	}
+
+	/**
+	 * The data link type of the savefile.
+	 *
+	 * @return the dlt
+	 */
+	public int dlt() {
+		return dlt;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapFlowIndex [chunks=" + chunkCount + ", bloomBits=" + bloomBits + "]";
+	}
+}
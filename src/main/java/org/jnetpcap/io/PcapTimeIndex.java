@@ -0,0 +1,290 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.internal.PcapSavefile;
+
+/**
+ * A pcap savefile with its sparse time index, for streaming only the packets
+ * within a time window without scanning from the start of the file.
+ * <p>
+ * The index, written by {@link PcapTimeIndexWriter} alongside the savefile or
+ * built afterwards with {@link #build}, is loaded into two primitive arrays
+ * and binary searched. The savefile is memory mapped, so a seek costs nothing
+ * and only the pages within the window are ever read.
+ * </p>
+ *
+ * <pre>
+ * var index = PcapTimeIndex.open(Path.of("capture.pcap"));
+ * index.dispatch(from, from.plusSeconds(5), handler, user);
+ * </pre>
+ * <p>
+ * Savefiles are expected to be in timestamp order, as written by libpcap, and
+ * in the classic pcap format. An index is immutable and thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapTimeIndex {
+
+	/** File name suffix of an index sidecar. */
+	public static final String SUFFIX = ".tidx";
+
+	/**
+	 * The index sidecar path for a savefile, the savefile path with
+	 * {@value #SUFFIX} appended.
+	 *
+	 * @param savefile the savefile
+	 * @return the index path
+	 */
+	public static Path sidecarOf(Path savefile) {
+		return savefile.resolveSibling(savefile.getFileName() + SUFFIX);
+	}
+
+	/**
+	 * Opens a savefile with its index sidecar.
+	 *
+	 * @param savefile the savefile
+	 * @return the indexed savefile
+	 * @throws IOException if either file can not be read, or is not in the
+	 *                     expected format
+	 */
+	public static PcapTimeIndex open(Path savefile) throws IOException {
+		return open(savefile, sidecarOf(savefile));
+	}
+
+	/**
+	 * Opens a savefile with an index file.
+	 *
+	 * @param savefile  the savefile
+	 * @param indexFile the index file
+	 * @return the indexed savefile
+	 * @throws IOException if either file can not be read, or is not in the
+	 *                     expected format
+	 */
+	public static PcapTimeIndex open(Path savefile, Path indexFile) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(indexFile)).order(ByteOrder.LITTLE_ENDIAN);
+
+		if (buf.remaining() < PcapTimeIndexWriter.HEADER_LENGTH
+				|| buf.getInt(0) != PcapTimeIndexWriter.MAGIC)
+			throw new IOException("not a pcap time index " + indexFile);
+
+		if (buf.getShort(4) != PcapTimeIndexWriter.VERSION)
+			throw new IOException("unsupported pcap time index version " + buf.getShort(4));
+
+		/* A trailing partial entry is from an interrupted capture */
+		int count = (buf.remaining() - PcapTimeIndexWriter.HEADER_LENGTH) / PcapTimeIndexWriter.ENTRY_LENGTH;
+		long[] timestamps = new long[count];
+		long[] offsets = new long[count];
+
+		buf.position(PcapTimeIndexWriter.HEADER_LENGTH);
+		for (int i = 0; i < count; i++) {
+			timestamps[i] = buf.getLong();
+			offsets[i] = buf.getLong();
+		}
+
+		return new PcapTimeIndex(PcapSavefile.map(savefile), timestamps, offsets);
+	}
+
+	/**
+	 * Indexes an existing savefile, writes its index sidecar and opens it.
+	 *
+	 * @param savefile       the savefile
+	 * @param packetInterval most packets between index entries
+	 * @param timeInterval   most capture time between index entries
+	 * @return the indexed savefile
+	 * @throws IOException if the savefile can not be read or the index written
+	 */
+	public static PcapTimeIndex build(Path savefile, int packetInterval, Duration timeInterval) throws IOException {
+		PcapSavefile file = PcapSavefile.map(savefile);
+		Path indexFile = sidecarOf(savefile);
+
+		PcapTStampPrecision precision = file.isNanoTime()
+				? PcapTStampPrecision.TSTAMP_PRECISION_NANO
+				: PcapTStampPrecision.TSTAMP_PRECISION_MICRO;
+
+		try (var writer = new PcapTimeIndexWriter(indexFile, precision, file.firstRecord(), packetInterval,
+				timeInterval)) {
+			for (long off = file.firstRecord(); file.hasRecord(off); off = file.nextRecord(off))
+				writer.record(file.timestampNanos(off), file.captureLength(off));
+		}
+
+		return open(savefile, indexFile);
+	}
+
+	/** The savefile. */
+	private final PcapSavefile savefile;
+
+	/** Entry timestamps in epoch nanos, non decreasing. */
+	private final long[] timestamps;
+
+	/** Entry savefile offsets. */
+	private final long[] offsets;
+
+	/**
+	 * Instantiates a new pcap time index.
+	 *
+	 * @param savefile   the savefile
+	 * @param timestamps the timestamps
+	 * @param offsets    the offsets
+	 */
+	private PcapTimeIndex(PcapSavefile savefile, long[] timestamps, long[] offsets) {
+		this.savefile = savefile;
+		this.timestamps = timestamps;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Savefile offset to start reading from to see every packet at or after the
+	 * given time. This is the offset of the last indexed packet before that time,
+	 * or the first record if there is none.
+	 *
+	 * @param timestampNanos the time in epoch nanos
+	 * @return the savefile offset
+	 */
+	public long seek(long timestampNanos) {
+		int low = 0;
+		int high = timestamps.length - 1;
+
+		/* Find the last entry strictly before the time */
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+
+			if (timestamps[mid] < timestampNanos)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+
+		return (high < 0) ? savefile.firstRecord() : offsets[high];
+	}
+
+	/**
+	 * Delivers the packets within a time window to a memory segment handler.
+	 *
+	 * @param <U>     the generic user type
+	 * @param from    start of the window, inclusive
+	 * @param to      end of the window, exclusive
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets delivered
+	 */
+	public <U> long dispatch(Instant from, Instant to, PcapHandler.OfMemorySegment<U> handler, U user) {
+		return dispatch(toNanos(from), toNanos(to), handler, user);
+	}
+
+	/**
+	 * Delivers the packets within a time window to a memory segment handler, with
+	 * a native {@code struct pcap_pkthdr} in microseconds.
+	 *
+	 * @param <U>      the generic user type
+	 * @param fromNanos start of the window in epoch nanos, inclusive
+	 * @param toNanos   end of the window in epoch nanos, exclusive
+	 * @param handler   the handler
+	 * @param user      the user
+	 * @return number of packets delivered
+	 */
+	public <U> long dispatch(long fromNanos, long toNanos, PcapHandler.OfMemorySegment<U> handler, U user) {
+		PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+		long count = 0;
+
+		try (var arena = Arena.ofConfined()) {
+			MemorySegment header = arena.allocate(abi.headerLength());
+
+			for (long off = seek(fromNanos); savefile.hasRecord(off); off = savefile.nextRecord(off)) {
+				long ts = savefile.timestampNanos(off);
+				if (ts >= toNanos)
+					break;
+
+				if (ts < fromNanos)
+					continue;
+
+				int caplen = savefile.captureLength(off);
+				abi.tvSec(header, ts / 1_000_000_000L);
+				abi.tvUsec(header, (ts % 1_000_000_000L) / 1000);
+				abi.captureLength(header, caplen);
+				abi.wireLength(header, savefile.wireLength(off));
+
+				handler.handleSegment(user, header, savefile.data(off));
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Epoch nanos of an instant.
+	 *
+	 * @param instant the instant
+	 * @return the epoch nanos
+	 */
+	private static long toNanos(Instant instant) {
+		return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+	}
+
+	/**
+	 * Number of index entries.
+	 *
+	 * @return the entry count
+	 */
+	public int size() {
+		return timestamps.length;
+	}
+
+	/**
+	 * Timestamp of an index entry.
+	 *
+	 * @param entry the entry
+	 * @return the timestamp in epoch nanos
+	 */
+	public long timestampNanos(int entry) {
+		return timestamps[entry];
+	}
+
+	/**
+	 * Savefile offset of an index entry.
+	 *
+	 * @param entry the entry
+	 * @return the offset
+	 */
+	public long offset(int entry) {
+		return offsets[entry];
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapTimeIndex [entries=" + timestamps.length + ", bytes=" + savefile.byteSize() + "]";
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+/**
+ * Writes a sparse time index sidecar for a pcap savefile, while the savefile is
+ * being written.
+ * <p>
+ * Every packet written to the savefile is also recorded here, in the same
+ * order. The writer tracks each record's file offset and appends a
+ * {@code (timestamp, offset)} entry whenever the configured number of packets
+ * or amount of capture time has passed since the previous entry. Entries are
+ * 16 bytes each, so even a multi terabyte capture has an index of a few MB,
+ * which is read back by {@link PcapTimeIndex} to seek directly to a time
+ * window.
+ * </p>
+ *
+ * <pre>
+ * try (var dumper = pcap.dumpOpen("capture.pcap");
+ * 		var index = new PcapTimeIndexWriter(PcapTimeIndex.sidecarOf(Path.of("capture.pcap")), pcap)) {
+ * 	pcap.loop(-1, (PcapHandler.NativeCallback) (user, header, packet) -> {
+ * 		try {
+ * 			dumper.dump(header, packet);
+ * 			index.record(header);
+ * 		} catch (IOException e) {
+ * 			throw new UncheckedIOException(e);
+ * 		}
+ * 	}, MemorySegment.NULL);
+ * }
+ * </pre>
+ * <p>
+ * The file is a 24 byte header followed by 16 byte entries, all little endian,
+ * and is written append only, so an index is usable up to its last complete
+ * entry even if the capture is interrupted. Entry timestamps never decrease, a
+ * packet older than a previous one is indexed with the newest timestamp seen
+ * so far. A writer is not thread safe.
+ * </p>
+ * <p>
+ * The timestamp precision of recorded native headers is fixed when the writer
+ * is created, either explicitly or as that of the capture handle which
+ * delivers them.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapTimeIndexWriter implements Flushable, AutoCloseable {
+
+	/** Index file magic number, "TIDX" in little endian. */
+	public static final int MAGIC = 0x58444954;
+
+	/** Index file format version. */
+	public static final int VERSION = 1;
+
+	/** Length of the index file header. */
+	public static final int HEADER_LENGTH = 24;
+
+	/** Length of each index entry. */
+	public static final int ENTRY_LENGTH = 16;
+
+	/** Default number of packets between entries. */
+	public static final int DEFAULT_PACKET_INTERVAL = 10_000;
+
+	/** Default capture time between entries. */
+	public static final Duration DEFAULT_TIME_INTERVAL = Duration.ofMillis(100);
+
+	/** Entries buffered before a write. */
+	private static final int BUFFERED_ENTRIES = 4096;
+
+	/** The channel. */
+	private final FileChannel channel;
+
+	/** The buffer. */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_ENTRIES * ENTRY_LENGTH)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+	/** The native header ABI. */
+	private final PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+
+	/** Native header timestamp fractions are in nanos. */
+	private final boolean nanoTime;
+
+	/** The packet interval. */
+	private final int packetInterval;
+
+	/** The time interval in nanos. */
+	private final long intervalNanos;
+
+	/** Offset of the next record in the savefile. */
+	private long offset;
+
+	/** The newest timestamp seen. */
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	/** Timestamp of the last entry. */
+	private long lastEntryTimestamp;
+
+	/** Packets recorded since the last entry. */
+	private int packetsSinceEntry;
+
+	/** The packet count. */
+	private long packetCount;
+
+	/** The entry count. */
+	private long entryCount;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Creates or truncates an index for a new savefile of packets captured by a
+	 * handle, with the default intervals.
+	 *
+	 * @param indexFile the index file
+	 * @param pcap      the pcap handle whose headers are recorded
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	public PcapTimeIndexWriter(Path indexFile, Pcap pcap) throws PcapException, IOException {
+		this(indexFile, PcapFileWriter.precisionOf(pcap));
+	}
+
+	/**
+	 * Creates or truncates an index for a new savefile, with the default
+	 * intervals.
+	 *
+	 * @param indexFile the index file
+	 * @param precision the timestamp precision of recorded native headers
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapTimeIndexWriter(Path indexFile, PcapTStampPrecision precision) throws IOException {
+		this(indexFile, precision, PcapFileWriter.FILE_HEADER_LENGTH, DEFAULT_PACKET_INTERVAL,
+				DEFAULT_TIME_INTERVAL);
+	}
+
+	/**
+	 * Creates or truncates an index.
+	 *
+	 * @param indexFile      the index file
+	 * @param precision      the timestamp precision of recorded native headers
+	 * @param firstOffset    savefile offset of the first recorded packet, the
+	 *                       savefile header length for a new file
+	 * @param packetInterval most packets between index entries
+	 * @param timeInterval   most capture time between index entries
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapTimeIndexWriter(Path indexFile, PcapTStampPrecision precision, long firstOffset, int packetInterval,
+			Duration timeInterval) throws IOException {
+		if (packetInterval < 1)
+			throw new IllegalArgumentException("packet interval must be positive: " + packetInterval);
+
+		if (timeInterval.isNegative() || timeInterval.isZero())
+			throw new IllegalArgumentException("time interval must be positive: " + timeInterval);
+
+		this.nanoTime = (precision == PcapTStampPrecision.TSTAMP_PRECISION_NANO);
+		this.packetInterval = packetInterval;
+		this.intervalNanos = timeInterval.toNanos();
+		this.offset = firstOffset;
+		this.channel = FileChannel.open(indexFile,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		buffer.putInt(MAGIC);
+		buffer.putShort((short) VERSION);
+		buffer.putShort((short) 0); // flags
+		buffer.putInt(packetInterval);
+		buffer.putInt(0); // reserved
+		buffer.putLong(intervalNanos);
+	}
+
+	/**
+	 * Records a packet given its native {@code struct pcap_pkthdr}, as passed to
+	 * {@link PcapDumper#dump(MemorySegment, MemorySegment)}, in the timestamp
+	 * precision this writer was created with.
+	 *
+	 * @param header the native pcap header
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void record(MemorySegment header) throws IOException {
+		MemorySegment hdr = header.reinterpret(abi.headerLength());
+		long tvFrac = abi.tvUsec(hdr);
+
+		record(abi.tvSec(hdr) * 1_000_000_000L + (nanoTime ? tvFrac : tvFrac * 1000),
+				abi.captureLengthUnchecked(hdr));
+	}
+
+	/**
+	 * Records a packet.
+	 *
+	 * @param timestampNanos the packet timestamp in epoch nanos
+	 * @param captureLength  the capture length as written to the savefile, after
+	 *                       any snaplen truncation
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void record(long timestampNanos, int captureLength) throws IOException {
+		if (closed)
+			throw new IOException("index writer closed");
+
+		if (timestampNanos > maxTimestamp)
+			maxTimestamp = timestampNanos;
+
+		if (packetCount == 0
+				|| packetsSinceEntry >= packetInterval
+				|| maxTimestamp - lastEntryTimestamp >= intervalNanos) {
+
+			if (buffer.remaining() < ENTRY_LENGTH)
+				drain();
+
+			buffer.putLong(maxTimestamp);
+			buffer.putLong(offset);
+
+			lastEntryTimestamp = maxTimestamp;
+			packetsSinceEntry = 0;
+			entryCount++;
+		}
+
+		offset += PcapFileWriter.RECORD_HEADER_LENGTH + captureLength;
+		packetsSinceEntry++;
+		packetCount++;
+	}
+
+	/**
+	 * Writes all buffered bytes to the channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	/**
+	 * Writes all buffered entries to the index file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed)
+			throw new IOException("index writer closed");
+
+		drain();
+	}
+
+	/**
+	 * Flushes and closes the index file.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+
+		try {
+			drain();
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Number of packets recorded.
+	 *
+	 * @return the packet count
+	 */
+	public long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Number of index entries written.
+	 *
+	 * @return the entry count
+	 */
+	public long entryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Savefile offset of the next packet to be recorded.
+	 *
+	 * @return the offset
+	 */
+	public long offset() {
+		return offset;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapTimeIndexWriter [packets=" + packetCount + ", entries=" + entryCount + "]";
+	}
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.constant.PcapDirection;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+/**
+ * A buffered pcapng savefile writer implemented in Java.
+ * <p>
+ * Where {@link PcapDumper} and {@link PcapFileWriter} write the classic pcap
+ * format with a single link type and timestamp resolution, this writer merges
+ * packets from any number of interfaces into one section. Each interface,
+ * typically one per capture handle, gets its own Interface Description Block
+ * with its link type, snaplen, name and timestamp resolution, so micro and
+ * nanosecond handles can be mixed. Packets are written as Enhanced Packet
+ * Blocks, with optional direction flags and comments.
+ * </p>
+ *
+ * <pre>
+ * try (var writer = new PcapngFileWriter(Path.of("merged.pcapng"))) {
+ * 	int eth0 = writer.addInterface(pcap0);
+ * 	int eth1 = writer.addInterface(pcap1);
+ *
+ * 	pcap0.loop(-1, writer.handler(eth0), MemorySegment.NULL);
+ * }
+ * </pre>
+ * <p>
+ * Blocks are copied into a large direct buffer and written to the channel in
+ * bulk, in native byte order. A writer is thread safe, so capture threads of
+ * several handles can share one writer, each write being a short critical
+ * section.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapngFileWriter implements Flushable, AutoCloseable {
+
+	/** Section Header Block type. */
+	public static final int BLOCK_SHB = 0x0A0D0D0A;
+
+	/** Interface Description Block type. */
+	public static final int BLOCK_IDB = 1;
+
+	/** Enhanced Packet Block type. */
+	public static final int BLOCK_EPB = 6;
+
+	/** Section Header Block byte order magic. */
+	public static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+	/** Option, end of options. */
+	public static final int OPT_ENDOFOPT = 0;
+
+	/** Option, comment on any block. */
+	public static final int OPT_COMMENT = 1;
+
+	/** Section header option, the writing application. */
+	public static final int SHB_USERAPPL = 4;
+
+	/** Interface option, name. */
+	public static final int IF_NAME = 2;
+
+	/** Interface option, description. */
+	public static final int IF_DESCRIPTION = 3;
+
+	/** Interface option, timestamp resolution as a negative power of 10. */
+	public static final int IF_TSRESOL = 9;
+
+	/** Enhanced packet option, flags word with the direction in bits 0-1. */
+	public static final int EPB_FLAGS = 2;
+
+	/** Default buffer size, 4MB. */
+	public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	/** Smallest buffer size, which fits header blocks with the longest options. */
+	public static final int MIN_BUFFER_SIZE = 256 * 1024;
+
+	/** Fixed part of an Enhanced Packet Block, including the trailing length. */
+	private static final int EPB_FIXED_LENGTH = 32;
+
+	/** Application name written to the section header. */
+	private static final String USER_APPLICATION = "jNetPcap";
+
+	/**
+	 * A described interface.
+	 *
+	 * @param snaplen  the snaplen, 0 for unlimited
+	 * @param nanoTime true if timestamps are in nanos, otherwise micros
+	 */
+	private record Interface(int snaplen, boolean nanoTime) {}
+
+	/** The channel. */
+	private final WritableByteChannel channel;
+
+	/** The buffer. */
+	private final ByteBuffer buffer;
+
+	/** The buffer as a memory segment, for bulk copies. */
+	private final MemorySegment bufferSegment;
+
+	/** The interfaces, indexed by interface id. */
+	private final List<Interface> interfaces = new ArrayList<>();
+
+	/** The native header ABI. */
+	private final PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+
+	/** The packet count. */
+	private long packetCount;
+
+	/** The byte count. */
+	private long byteCount;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Creates or truncates a pcapng savefile.
+	 *
+	 * @param path the path
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapngFileWriter(Path path) throws IOException {
+		this(FileChannel.open(path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING),
+				DEFAULT_BUFFER_SIZE, null);
+	}
+
+	/**
+	 * Writes a pcapng savefile to a channel. The channel is closed when this
+	 * writer is closed.
+	 *
+	 * @param channel    the channel
+	 * @param bufferSize the buffer size, at least {@value #MIN_BUFFER_SIZE}
+	 * @param comment    optional section comment, or null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public PcapngFileWriter(WritableByteChannel channel, int bufferSize, String comment) throws IOException {
+		if (bufferSize < MIN_BUFFER_SIZE)
+			throw new IllegalArgumentException("buffer too small: " + bufferSize);
+
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+		this.bufferSegment = MemorySegment.ofBuffer(buffer);
+
+		byte[] userAppl = USER_APPLICATION.getBytes(StandardCharsets.UTF_8);
+		byte[] text = utf8(comment);
+		int length = 28 + optionLength(userAppl) + optionLength(text) + 4;
+
+		int start = buffer.position();
+		buffer.putInt(BLOCK_SHB);
+		buffer.putInt(length);
+		buffer.putInt(BYTE_ORDER_MAGIC);
+		buffer.putShort((short) 1); // major version
+		buffer.putShort((short) 0); // minor version
+		buffer.putLong(-1); // section length not specified
+		putOption(SHB_USERAPPL, userAppl);
+		putOption(OPT_COMMENT, text);
+		buffer.putInt(OPT_ENDOFOPT);
+		buffer.putInt(length);
+
+		byteCount = buffer.position() - start;
+	}
+
+	/**
+	 * Adds an interface, described by a capture handle's link type, snaplen,
+	 * name and timestamp precision.
+	 *
+	 * @param pcap the pcap handle
+	 * @return the interface id to write its packets with
+	 * @throws PcapException the pcap exception
+	 * @throws IOException   Signals that an I/O exception has occurred.
+	 */
+	public int addInterface(Pcap pcap) throws PcapException, IOException {
+		return addInterface(pcap.datalink(), pcap.snapshot(), PcapFileWriter.precisionOf(pcap), pcap.getName(),
+				null);
+	}
+
+	/**
+	 * Adds an interface.
+	 *
+	 * @param dlt         the data link type
+	 * @param snaplen     the snaplen, longer packets are truncated, 0 for
+	 *                    unlimited
+	 * @param precision   the timestamp precision of its packets
+	 * @param name        optional interface name, or null
+	 * @param description optional interface description, or null
+	 * @return the interface id to write its packets with
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized int addInterface(PcapDlt dlt, int snaplen, PcapTStampPrecision precision, String name,
+			String description) throws IOException {
+		ensureOpen();
+
+		if (snaplen < 0)
+			throw new IllegalArgumentException("snaplen must not be negative: " + snaplen);
+
+		boolean nanoTime = (precision == PcapTStampPrecision.TSTAMP_PRECISION_NANO);
+		byte[] nameBytes = utf8(name);
+		byte[] descBytes = utf8(description);
+		int length = 20 + optionLength(nameBytes) + optionLength(descBytes) + 8 + 4;
+
+		reserve(length);
+
+		buffer.putInt(BLOCK_IDB);
+		buffer.putInt(length);
+		buffer.putShort((short) dlt.getAsInt());
+		buffer.putShort((short) 0); // reserved
+		buffer.putInt(snaplen);
+		putOption(IF_NAME, nameBytes);
+		putOption(IF_DESCRIPTION, descBytes);
+		buffer.putShort((short) IF_TSRESOL);
+		buffer.putShort((short) 1);
+		buffer.put((byte) (nanoTime ? 9 : 6));
+		putPadding(3);
+		buffer.putInt(OPT_ENDOFOPT);
+		buffer.putInt(length);
+
+		byteCount += length;
+		interfaces.add(new Interface(snaplen, nanoTime));
+
+		return interfaces.size() - 1;
+	}
+
+	/**
+	 * A native callback which writes each packet it receives to an interface,
+	 * for use with {@code Pcap.loop} and {@code Pcap.dispatch}. Write errors are
+	 * rethrown as {@link UncheckedIOException}.
+	 *
+	 * @param interfaceId the interface id
+	 * @return the native callback
+	 */
+	public PcapHandler.NativeCallback handler(int interfaceId) {
+		return (user, header, packet) -> {
+			try {
+				writePacket(interfaceId, header, packet);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Writes a packet given a native {@code struct pcap_pkthdr}, as delivered to
+	 * a native callback. The timestamp fraction is in the interface's precision.
+	 *
+	 * @param interfaceId the interface id
+	 * @param header      the native pcap header
+	 * @param packet      the packet data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writePacket(int interfaceId, MemorySegment header, MemorySegment packet) throws IOException {
+		MemorySegment hdr = header.reinterpret(abi.headerLength());
+
+		int caplen = abi.captureLengthUnchecked(hdr);
+		writePacket(interfaceId, packet.reinterpret(caplen), caplen, abi.wireLengthUnchecked(hdr),
+				abi.tvSec(hdr), abi.tvUsec(hdr), PcapDirection.DIRECTION_INOUT, null);
+	}
+
+	/**
+	 * Writes a packet given a pcap header. The timestamp fraction is in the
+	 * interface's precision.
+	 *
+	 * @param interfaceId the interface id
+	 * @param header      the pcap header
+	 * @param packet      the packet data
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void writePacket(int interfaceId, PcapHeader header, MemorySegment packet) throws IOException {
+		int caplen = header.captureLength();
+		writePacket(interfaceId, packet, caplen, header.wireLength(), header.tvSec(), header.tvUsec(),
+				PcapDirection.DIRECTION_INOUT, null);
+	}
+
+	/**
+	 * Writes a packet as an Enhanced Packet Block.
+	 *
+	 * @param interfaceId   the interface id
+	 * @param packet        the packet data
+	 * @param captureLength number of bytes of packet data to write, truncated to
+	 *                      the interface snaplen
+	 * @param wireLength    the original length of the packet
+	 * @param tvSec         timestamp seconds
+	 * @param tvFrac        timestamp fraction of a second, in the interface's
+	 *                      precision
+	 * @param direction     the packet direction, {@code DIRECTION_INOUT} if not
+	 *                      known
+	 * @param comment       optional packet comment, or null
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public synchronized void writePacket(int interfaceId, MemorySegment packet, int captureLength, int wireLength,
+			long tvSec, long tvFrac, PcapDirection direction, String comment) throws IOException {
+		ensureOpen();
+
+		if (interfaceId < 0 || interfaceId >= interfaces.size())
+			throw new IllegalArgumentException("unknown interface id: " + interfaceId);
+
+		Interface iface = interfaces.get(interfaceId);
+		int caplen = (iface.snaplen() > 0) ? Math.min(captureLength, iface.snaplen()) : captureLength;
+		long timestamp = tvSec * (iface.nanoTime() ? 1_000_000_000L : 1_000_000L) + tvFrac;
+
+		byte[] text = utf8(comment);
+		boolean flags = (direction != PcapDirection.DIRECTION_INOUT);
+		int options = (flags ? 8 : 0) + optionLength(text);
+		if (options > 0)
+			options += 4; // end of options
+
+		int dataLength = padded(caplen);
+		int length = EPB_FIXED_LENGTH + dataLength + options;
+
+		if (length > buffer.capacity()) {
+			writeLarge(interfaceId, packet, caplen, wireLength, timestamp, direction, text, length);
+			return;
+		}
+
+		reserve(length);
+
+		int pos = buffer.position();
+		buffer.putInt(BLOCK_EPB);
+		buffer.putInt(length);
+		buffer.putInt(interfaceId);
+		buffer.putInt((int) (timestamp >>> 32));
+		buffer.putInt((int) timestamp);
+		buffer.putInt(caplen);
+		buffer.putInt(wireLength);
+		MemorySegment.copy(packet, 0, bufferSegment, pos + 28, caplen);
+		buffer.position(pos + 28 + caplen);
+		putPadding(dataLength - caplen);
+		putPacketOptions(flags, direction, text);
+		buffer.putInt(length);
+
+		packetCount++;
+		byteCount += length;
+	}
+
+	/**
+	 * Writes an Enhanced Packet Block that does not fit in the buffer, with the
+	 * packet data written directly to the channel.
+	 *
+	 * @param interfaceId the interface id
+	 * @param packet      the packet
+	 * @param caplen      the caplen
+	 * @param wireLength  the wire length
+	 * @param timestamp   the timestamp in interface units
+	 * @param direction   the direction
+	 * @param text        the comment bytes or null
+	 * @param length      the block length
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeLarge(int interfaceId, MemorySegment packet, int caplen, int wireLength, long timestamp,
+			PcapDirection direction, byte[] text, int length) throws IOException {
+		drain();
+
+		buffer.putInt(BLOCK_EPB);
+		buffer.putInt(length);
+		buffer.putInt(interfaceId);
+		buffer.putInt((int) (timestamp >>> 32));
+		buffer.putInt((int) timestamp);
+		buffer.putInt(caplen);
+		buffer.putInt(wireLength);
+		drain();
+
+		ByteBuffer data = packet.asSlice(0, caplen).asByteBuffer();
+		while (data.hasRemaining())
+			channel.write(data);
+
+		putPadding(padded(caplen) - caplen);
+		putPacketOptions(direction != PcapDirection.DIRECTION_INOUT, direction, text);
+		buffer.putInt(length);
+
+		packetCount++;
+		byteCount += length;
+	}
+
+	/**
+	 * Puts the Enhanced Packet Block options.
+	 *
+	 * @param flags     true to write the flags option
+	 * @param direction the direction
+	 * @param text      the comment bytes or null
+	 */
+	private void putPacketOptions(boolean flags, PcapDirection direction, byte[] text) {
+		if (flags) {
+			buffer.putShort((short) EPB_FLAGS);
+			buffer.putShort((short) 4);
+			buffer.putInt(direction == PcapDirection.DIRECTION_IN ? 1 : 2);
+		}
+
+		putOption(OPT_COMMENT, text);
+
+		if (flags || text != null)
+			buffer.putInt(OPT_ENDOFOPT);
+	}
+
+	/**
+	 * Puts a variable length option, if present.
+	 *
+	 * @param code  the option code
+	 * @param value the value or null
+	 */
+	private void putOption(int code, byte[] value) {
+		if (value == null)
+			return;
+
+		buffer.putShort((short) code);
+		buffer.putShort((short) value.length);
+		buffer.put(value);
+		putPadding(padded(value.length) - value.length);
+	}
+
+	/**
+	 * Puts zero padding.
+	 *
+	 * @param count the count
+	 */
+	private void putPadding(int count) {
+		for (int i = 0; i < count; i++)
+			buffer.put((byte) 0);
+	}
+
+	/**
+	 * Length of an option, including its header and padding.
+	 *
+	 * @param value the value or null
+	 * @return the length, 0 if not present
+	 */
+	private static int optionLength(byte[] value) {
+		return (value == null) ? 0 : 4 + padded(value.length);
+	}
+
+	/**
+	 * Rounds a length up to a 32 bit boundary.
+	 *
+	 * @param length the length
+	 * @return the padded length
+	 */
+	private static int padded(int length) {
+		return (length + 3) & ~3;
+	}
+
+	/**
+	 * UTF-8 bytes of an optional string.
+	 *
+	 * @param s the string or null
+	 * @return the bytes, or null if the string is null or empty
+	 */
+	private static byte[] utf8(String s) {
+		if (s == null || s.isEmpty())
+			return null;
+
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF)
+			throw new IllegalArgumentException("option too long: " + bytes.length);
+
+		return bytes;
+	}
+
+	/**
+	 * Drains the buffer if fewer than length bytes remain.
+	 *
+	 * @param length the length
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void reserve(int length) throws IOException {
+		if (buffer.remaining() < length)
+			drain();
+	}
+
+	/**
+	 * Writes all buffered bytes to the channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	/**
+	 * Ensure open.
+	 *
+	 * @throws IOException if closed
+	 */
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("writer closed");
+	}
+
+	/**
+	 * Writes all buffered blocks to the channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.io.Flushable#flush()
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		ensureOpen();
+		drain();
+	}
+
+	/**
+	 * Flushes and closes the writer and its channel.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+
+		try {
+			drain();
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+	/**
+	 * Number of interfaces added.
+	 *
+	 * @return the interface count
+	 */
+	public synchronized int interfaceCount() {
+		return interfaces.size();
+	}
+
+	/**
+	 * Number of packets written.
+	 *
+	 * @return the packet count
+	 */
+	public synchronized long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Number of bytes written, including all blocks.
+	 *
+	 * @return the byte count
+	 */
+	public synchronized long byteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapngFileWriter [interfaces=" + interfaceCount() + ", packets=" + packetCount() + ", bytes="
+				+ byteCount() + "]";
+	}
+}
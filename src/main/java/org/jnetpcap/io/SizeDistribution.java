@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * A distribution of frame sizes for synthetic traffic. Sizes are Ethernet
+ * frame lengths, without the FCS.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@FunctionalInterface
+public interface SizeDistribution {
+
+	/**
+	 * The classic simple IMIX, 7:4:1 mix of 64, 594 and 1518 byte frames (60, 590
+	 * and 1514 without the FCS).
+	 */
+	SizeDistribution IMIX = weighted(new int[] { 60, 590, 1514 }, new int[] { 7, 4, 1 });
+
+	/**
+	 * Every frame has the same size.
+	 *
+	 * @param size the frame size
+	 * @return the size distribution
+	 */
+	static SizeDistribution fixed(int size) {
+		return random -> size;
+	}
+
+	/**
+	 * Frame sizes uniformly distributed between two bounds.
+	 *
+	 * @param min the smallest size, inclusive
+	 * @param max the largest size, inclusive
+	 * @return the size distribution
+	 */
+	static SizeDistribution uniform(int min, int max) {
+		if (min > max)
+			throw new IllegalArgumentException("min %d > max %d".formatted(min, max));
+
+		return random -> random.nextInt(min, max + 1);
+	}
+
+	/**
+	 * Frame sizes picked from a fixed set, in proportion to their weights.
+	 *
+	 * @param sizes   the frame sizes
+	 * @param weights the relative weight of each size
+	 * @return the size distribution
+	 */
+	static SizeDistribution weighted(int[] sizes, int[] weights) {
+		if (sizes.length == 0 || sizes.length != weights.length)
+			throw new IllegalArgumentException("sizes and weights must be non-empty and of equal length");
+
+		int[] sz = new int[sizes.length];
+		int[] cumulative = new int[sizes.length];
+		int count = 0;
+		int total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] < 0)
+				throw new IllegalArgumentException("negative weight " + weights[i]);
+
+			if (weights[i] == 0)
+				continue; // Keep cumulative weights strictly increasing for the search
+
+			total += weights[i];
+			sz[count] = sizes[i];
+			cumulative[count++] = total;
+		}
+
+		if (total == 0)
+			throw new IllegalArgumentException("all weights are zero");
+
+		final int[] bounds = Arrays.copyOf(cumulative, count);
+		final int sum = total;
+		return random -> {
+			int i = Arrays.binarySearch(bounds, random.nextInt(sum) + 1);
+
+			return sz[(i < 0) ? -i - 1 : i];
+		};
+	}
+
+	/**
+	 * Picks the next frame size.
+	 *
+	 * @param random the random generator
+	 * @return the frame size
+	 */
+	int nextSize(RandomGenerator random);
+}
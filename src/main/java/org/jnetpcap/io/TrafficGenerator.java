@@ -0,0 +1,463 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.io;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.PcapDumper;
+import org.jnetpcap.PcapHandler;
+import org.jnetpcap.constant.PcapConstants;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.flow.FlowHash;
+import org.jnetpcap.internal.PcapHeaderABI;
+
+/**
+ * A synthetic Ethernet/IPv4/TCP/UDP traffic generator for load testing.
+ * <p>
+ * Packets are built one at a time into a reusable off-heap buffer, with a
+ * matching native {@code struct pcap_pkthdr}, so generation allocates nothing
+ * per packet. Each packet belongs to one of {@link #setFlowCount(int) flowCount}
+ * flows, picked at random; a flow's addresses, ports and protocol are fixed,
+ * with the share of TCP flows set by {@link #setTcpRatio(double)}. Frame sizes
+ * are drawn from a {@link SizeDistribution} and timestamps increase
+ * monotonically at {@link #setPacketsPerSecond(long) packetsPerSecond}, so
+ * generated captures have a predictable duration. IPv4 header checksums are
+ * valid, TCP and UDP checksums are left 0 and payload bytes are unspecified.
+ * </p>
+ * <p>
+ * Packets can be written to a {@link PcapDumper}, to a much faster
+ * {@link PcapFileWriter}, or fed directly to packet handlers to benchmark
+ * processing with no disk involved. Generation is deterministic for a given
+ * seed and configuration. A generator is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class TrafficGenerator implements AutoCloseable {
+
+	/** Data link type of generated packets. */
+	public static final PcapDlt DLT = PcapDlt.EN10MB;
+
+	/** Smallest generated frame, the Ethernet minimum without FCS. */
+	public static final int MIN_FRAME_SIZE = 60;
+
+	/** Largest generated frame. */
+	public static final int MAX_FRAME_SIZE = PcapConstants.MAX_SNAPLEN;
+
+	/** Header lengths. */
+	private static final int ETH_LEN = 14, IP_LEN = 20, TCP_LEN = 20, UDP_LEN = 8;
+
+	/** IP protocol numbers. */
+	private static final int PROTO_TCP = 6, PROTO_UDP = 17;
+
+	/** Network byte order fields. */
+	private static final ValueLayout.OfShort SHORT_BE = ValueLayout.JAVA_SHORT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The Constant INT_BE. */
+	private static final ValueLayout.OfInt INT_BE = ValueLayout.JAVA_INT_UNALIGNED
+			.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Well known destination ports, picked per flow. */
+	private static final int[] DST_PORTS = { 80, 443, 53, 8080, 22, 123, 5060, 9000 };
+
+	/** The arena. */
+	private final Arena arena = Arena.ofShared();
+
+	/** The packet buffer. */
+	private final MemorySegment packet = arena.allocate(MAX_FRAME_SIZE);
+
+	/** The native pcap header. */
+	private final MemorySegment header;
+
+	/** The abi. */
+	private final PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+
+	/** The random. */
+	private final SplittableRandom random;
+
+	/** The size distribution. */
+	private SizeDistribution sizes = SizeDistribution.IMIX;
+
+	/** The flow count. */
+	private int flowCount = 1;
+
+	/** TCP sequence number of each flow. */
+	private int[] flowSeq = new int[1];
+
+	/** Flows with a hash below this threshold are TCP. */
+	private long tcpThreshold = 1L << 31;
+
+	/** The packets per second. */
+	private long packetsPerSecond = 1_000_000;
+
+	/** Current timestamp, in nanos since epoch. */
+	private long timeNanos;
+
+	/** Sub-nanosecond timestamp remainder, in units of 1/packetsPerSecond nanos. */
+	private long timeRemainder;
+
+	/** The ip identification. */
+	private int ipId;
+
+	/** The generated packet count. */
+	private long packetCount;
+
+	/** The generated byte count. */
+	private long byteCount;
+
+	/** Length of the current packet. */
+	private int length;
+
+	/** Flow of the current packet. */
+	private int flow = -1;
+
+	/**
+	 * Instantiates a new traffic generator with timestamps starting now.
+	 *
+	 * @param seed the random seed
+	 */
+	public TrafficGenerator(long seed) {
+		this.random = new SplittableRandom(seed);
+		this.header = arena.allocate(abi.headerLength());
+		this.timeNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+	}
+
+	/**
+	 * Sets the number of concurrent flows.
+	 *
+	 * @param flowCount the flow count
+	 * @return this generator
+	 */
+	public TrafficGenerator setFlowCount(int flowCount) {
+		if (flowCount <= 0)
+			throw new IllegalArgumentException("flowCount must be positive: " + flowCount);
+
+		this.flowCount = flowCount;
+		this.flowSeq = new int[flowCount];
+
+		return this;
+	}
+
+	/**
+	 * Sets the share of flows that are TCP, the rest are UDP.
+	 *
+	 * @param tcpRatio the tcp ratio, 0.0 to 1.0
+	 * @return this generator
+	 */
+	public TrafficGenerator setTcpRatio(double tcpRatio) {
+		if (!(tcpRatio >= 0.0 && tcpRatio <= 1.0))
+			throw new IllegalArgumentException("tcpRatio must be between 0 and 1: " + tcpRatio);
+
+		this.tcpThreshold = (long) (tcpRatio * (1L << 32));
+
+		return this;
+	}
+
+	/**
+	 * Sets the frame size distribution. Sizes are clamped to
+	 * {@value #MIN_FRAME_SIZE} - {@value #MAX_FRAME_SIZE} bytes.
+	 *
+	 * @param sizes the size distribution
+	 * @return this generator
+	 */
+	public TrafficGenerator setSizeDistribution(SizeDistribution sizes) {
+		this.sizes = sizes;
+
+		return this;
+	}
+
+	/**
+	 * Sets the timestamp rate.
+	 *
+	 * @param packetsPerSecond the packets per second
+	 * @return this generator
+	 */
+	public TrafficGenerator setPacketsPerSecond(long packetsPerSecond) {
+		if (packetsPerSecond <= 0)
+			throw new IllegalArgumentException("packetsPerSecond must be positive: " + packetsPerSecond);
+
+		this.packetsPerSecond = packetsPerSecond;
+		this.timeRemainder = 0;
+
+		return this;
+	}
+
+	/**
+	 * Sets the timestamp of the next packet.
+	 *
+	 * @param start the start time
+	 * @return this generator
+	 */
+	public TrafficGenerator setStartTime(Instant start) {
+		this.timeNanos = TimeUnit.SECONDS.toNanos(start.getEpochSecond()) + start.getNano();
+		this.timeRemainder = 0;
+
+		return this;
+	}
+
+	/**
+	 * Generates the next packet into the packet buffer and native header.
+	 *
+	 * @return the packet length
+	 */
+	public int next() {
+		if (packetCount > 0)
+			advanceTime();
+
+		int f = random.nextInt(flowCount);
+		int h = FlowHash.mix(f);
+		boolean tcp = Integer.toUnsignedLong(h) < tcpThreshold;
+
+		int len = Math.max(sizes.nextSize(random), MIN_FRAME_SIZE);
+		len = Math.min(len, MAX_FRAME_SIZE);
+
+		int l4 = ETH_LEN + IP_LEN;
+		int ipLength = len - ETH_LEN;
+
+		/* Ethernet */
+		packet.set(INT_BE, 0, 0x02000000);
+		packet.set(SHORT_BE, 4, (short) 0x0002);
+		packet.set(INT_BE, 6, 0x02000000);
+		packet.set(SHORT_BE, 10, (short) 0x0001);
+		packet.set(SHORT_BE, 12, (short) 0x0800);
+
+		/* IPv4 */
+		packet.set(SHORT_BE, 14, (short) 0x4500);
+		packet.set(SHORT_BE, 16, (short) ipLength);
+		packet.set(SHORT_BE, 18, (short) ipId++);
+		packet.set(SHORT_BE, 20, (short) 0x4000); // DF
+		packet.set(SHORT_BE, 22, (short) ((64 << 8) | (tcp ? PROTO_TCP : PROTO_UDP)));
+		packet.set(SHORT_BE, 24, (short) 0);
+		packet.set(INT_BE, 26, 0x0A000000 + 1 + f); // 10.0.0.0/8
+		packet.set(INT_BE, 30, 0xC0A80000 | (h >>> 16)); // 192.168.0.0/16
+		packet.set(SHORT_BE, 24, (short) ipChecksum());
+
+		/* TCP or UDP */
+		int srcPort = 1024 + (int) (Integer.toUnsignedLong(f * 0x9E3779B9) % (65536 - 1024));
+		packet.set(SHORT_BE, l4, (short) srcPort);
+		packet.set(SHORT_BE, l4 + 2, (short) DST_PORTS[h & (DST_PORTS.length - 1)]);
+
+		if (tcp) {
+			int payload = ipLength - IP_LEN - TCP_LEN;
+			int seq = flowSeq[f];
+			flowSeq[f] = seq + payload;
+
+			packet.set(INT_BE, l4 + 4, seq);
+			packet.set(INT_BE, l4 + 8, 0);
+			packet.set(SHORT_BE, l4 + 12, (short) 0x5018); // 5 words, PSH|ACK
+			packet.set(SHORT_BE, l4 + 14, (short) 0xFFFF);
+			packet.set(INT_BE, l4 + 16, 0);
+		} else {
+			packet.set(SHORT_BE, l4 + 4, (short) (ipLength - IP_LEN));
+			packet.set(SHORT_BE, l4 + 6, (short) 0);
+		}
+
+		abi.tvSec(header, timeNanos / 1_000_000_000L);
+		abi.tvUsec(header, (timeNanos % 1_000_000_000L) / 1000);
+		abi.captureLength(header, len);
+		abi.wireLength(header, len);
+
+		this.length = len;
+		this.flow = f;
+		this.packetCount++;
+		this.byteCount += len;
+
+		return len;
+	}
+
+	/**
+	 * Advances the timestamp by one packet interval, carrying the sub-nanosecond
+	 * remainder so long runs keep the exact rate.
+	 */
+	private void advanceTime() {
+		timeRemainder += 1_000_000_000L;
+		timeNanos += timeRemainder / packetsPerSecond;
+		timeRemainder %= packetsPerSecond;
+	}
+
+	/**
+	 * Computes the IPv4 header checksum, with the checksum field zeroed.
+	 *
+	 * @return the checksum
+	 */
+	private int ipChecksum() {
+		int sum = 0;
+		for (int i = 0; i < IP_LEN; i += 2)
+			sum += Short.toUnsignedInt(packet.get(SHORT_BE, ETH_LEN + i));
+
+		sum = (sum & 0xFFFF) + (sum >>> 16);
+		sum += (sum >>> 16);
+
+		return ~sum & 0xFFFF;
+	}
+
+	/**
+	 * Generates packets into a libpcap savefile.
+	 *
+	 * @param count  number of packets
+	 * @param dumper the dumper
+	 * @return number of packets generated
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public long dispatch(long count, PcapDumper dumper) throws IOException {
+		for (long i = 0; i < count; i++) {
+			next();
+			dumper.dump(header, packet);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generates packets into a buffered savefile writer.
+	 *
+	 * @param count  number of packets
+	 * @param writer the writer
+	 * @return number of packets generated
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public long dispatch(long count, PcapFileWriter writer) throws IOException {
+		long fracDivisor = writer.isNanoTime() ? 1 : 1000;
+
+		for (long i = 0; i < count; i++) {
+			int len = next();
+			writer.writePacket(packet, len, len,
+					timeNanos / 1_000_000_000L,
+					(timeNanos % 1_000_000_000L) / fracDivisor);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Feeds packets directly to a native callback, with the same arguments
+	 * {@code pcap_loop} would pass.
+	 *
+	 * @param count   number of packets
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets generated
+	 */
+	public long dispatch(long count, PcapHandler.NativeCallback handler, MemorySegment user) {
+		for (long i = 0; i < count; i++) {
+			next();
+			handler.nativeCallback(user, header, packet);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Feeds packets directly to a memory segment handler.
+	 *
+	 * @param <U>     the generic user type
+	 * @param count   number of packets
+	 * @param handler the handler
+	 * @param user    the user
+	 * @return number of packets generated
+	 */
+	public <U> long dispatch(long count, PcapHandler.OfMemorySegment<U> handler, U user) {
+		for (long i = 0; i < count; i++) {
+			next();
+			handler.handleSegment(user, header, packet);
+		}
+
+		return count;
+	}
+
+	/**
+	 * The native {@code struct pcap_pkthdr} of the current packet.
+	 *
+	 * @return the header
+	 */
+	public MemorySegment header() {
+		return header;
+	}
+
+	/**
+	 * The packet buffer. Only the first {@link #length()} bytes belong to the
+	 * current packet.
+	 *
+	 * @return the packet buffer
+	 */
+	public MemorySegment packet() {
+		return packet;
+	}
+
+	/**
+	 * Length of the current packet.
+	 *
+	 * @return the length
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Flow number of the current packet.
+	 *
+	 * @return the flow, or -1 before the first packet
+	 */
+	public int flow() {
+		return flow;
+	}
+
+	/**
+	 * Timestamp of the current packet, in nanos since epoch.
+	 *
+	 * @return the time in nanos
+	 */
+	public long timeNanos() {
+		return timeNanos;
+	}
+
+	/**
+	 * Number of packets generated.
+	 *
+	 * @return the packet count
+	 */
+	public long packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Number of frame bytes generated.
+	 *
+	 * @return the byte count
+	 */
+	public long byteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Releases the packet buffer.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		arena.close();
+	}
+}
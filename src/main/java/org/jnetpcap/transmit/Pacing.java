@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.transmit;
+
+/**
+ * Replay pacing: when each packet is due, relative to the start of a replay.
+ * <p>
+ * Deadlines are absolute offsets from the start, never relative to the
+ * previous packet, so timer overshoot on one packet is absorbed by the
+ * following ones and does not accumulate as drift.
+ * </p>
+ *
+ * @param mode  the pacing mode
+ * @param value the mode's parameter, a speed multiplier, packets per second or
+ *              bits per second
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public record Pacing(Mode mode, double value) {
+
+	/**
+	 * Pacing modes.
+	 */
+	public enum Mode {
+
+		/** Send as fast as possible. */
+		UNLIMITED,
+
+		/** Follow the original inter-packet gaps, divided by a speed multiplier. */
+		ORIGINAL,
+
+		/** Fixed packet rate. */
+		PACKETS_PER_SECOND,
+
+		/** Fixed bit rate, counting captured bytes. */
+		BITS_PER_SECOND,
+	}
+
+	/** Send as fast as possible. */
+	public static final Pacing UNLIMITED = new Pacing(Mode.UNLIMITED, 0);
+
+	/**
+	 * Validates arguments.
+	 *
+	 * @param mode  the mode
+	 * @param value the value
+	 */
+	public Pacing {
+		if (mode != Mode.UNLIMITED && !(value > 0 && Double.isFinite(value)))
+			throw new IllegalArgumentException("%s pacing requires a positive value: %s"
+					.formatted(mode, value));
+	}
+
+	/**
+	 * Follow the original inter-packet gaps at their recorded speed.
+	 *
+	 * @return the pacing
+	 */
+	public static Pacing original() {
+		return original(1.0);
+	}
+
+	/**
+	 * Follow the original inter-packet gaps, scaled by a speed multiplier.
+	 *
+	 * @param multiplier speed multiplier, 2.0 replays twice as fast
+	 * @return the pacing
+	 */
+	public static Pacing original(double multiplier) {
+		return new Pacing(Mode.ORIGINAL, multiplier);
+	}
+
+	/**
+	 * Send at a fixed packet rate.
+	 *
+	 * @param pps the packets per second
+	 * @return the pacing
+	 */
+	public static Pacing packetsPerSecond(double pps) {
+		return new Pacing(Mode.PACKETS_PER_SECOND, pps);
+	}
+
+	/**
+	 * Send at a fixed bit rate.
+	 *
+	 * @param mbps the megabits (10^6 bits) per second
+	 * @return the pacing
+	 */
+	public static Pacing megabitsPerSecond(double mbps) {
+		return new Pacing(Mode.BITS_PER_SECOND, mbps * 1_000_000);
+	}
+
+	/**
+	 * Deadline of a packet, in nanos since the start of the replay.
+	 *
+	 * @param captureOffsetNanos packet's original timestamp minus the first
+	 *                           packet's timestamp
+	 * @param packetIndex        zero based index of the packet
+	 * @param bitsBefore         bits sent before this packet
+	 * @return the deadline
+	 */
+	long deadlineNanos(long captureOffsetNanos, long packetIndex, long bitsBefore) {
+		return switch (mode) {
+		case UNLIMITED -> 0;
+		case ORIGINAL -> (long) (captureOffsetNanos / value);
+		case PACKETS_PER_SECOND -> (long) (packetIndex * 1e9 / value);
+		case BITS_PER_SECOND -> (long) (bitsBefore * 1e9 / value);
+		};
+	}
+}
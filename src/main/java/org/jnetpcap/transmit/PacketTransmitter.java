@@ -0,0 +1,81 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.transmit;
+
+import java.lang.foreign.MemorySegment;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+
+/**
+ * Sends a single raw packet, including its link-layer header. The usual
+ * implementation is {@code pcap::inject} of an open {@link Pcap} handle.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@FunctionalInterface
+public interface PacketTransmitter {
+
+	/**
+	 * A transmitter injecting packets through an open handle. Packets sent from
+	 * an offset within a native buffer use
+	 * {@link Pcap#inject(MemorySegment, long, int)}, which does not allocate.
+	 *
+	 * @param pcap the pcap handle
+	 * @return the packet transmitter
+	 */
+	static PacketTransmitter of(Pcap pcap) {
+		return new PacketTransmitter() {
+
+			@Override
+			public int transmit(MemorySegment packet, int length) throws PcapException {
+				return pcap.inject(packet, length);
+			}
+
+			@Override
+			public int transmit(MemorySegment buffer, long offset, int length) throws PcapException {
+				return pcap.inject(buffer, offset, length);
+			}
+		};
+	}
+
+	/**
+	 * Transmits a packet.
+	 *
+	 * @param packet the packet data
+	 * @param length number of bytes to send
+	 * @return number of bytes sent
+	 * @throws PcapException if the packet could not be sent
+	 * @see Pcap#inject(MemorySegment, int)
+	 */
+	int transmit(MemorySegment packet, int length) throws PcapException;
+
+	/**
+	 * Transmits a packet stored at an offset within a larger buffer. The default
+	 * implementation slices the buffer, implementations should override it to
+	 * avoid the allocation.
+	 *
+	 * @param buffer the buffer
+	 * @param offset byte offset of the packet within the buffer
+	 * @param length number of bytes to send
+	 * @return number of bytes sent
+	 * @throws PcapException if the packet could not be sent
+	 */
+	default int transmit(MemorySegment buffer, long offset, int length) throws PcapException {
+		return transmit(buffer.asSlice(offset, length), length);
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.transmit;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.internal.PcapSavefile;
+import org.jnetpcap.util.LatencyHistogram;
+import org.jnetpcap.util.PcapCursor;
+
+/**
+ * Rate accurate replay of capture files.
+ * <p>
+ * Packets are read from an offline {@link Pcap} handle or a memory mapped
+ * savefile and sent through a {@link PacketTransmitter}, usually
+ * {@code pcap::inject} of a live handle. Each packet is given an absolute
+ * deadline by the {@link Pacing}, following the original inter-packet gaps
+ * scaled by a multiplier, or a fixed packet or bit rate.
+ * </p>
+ * <p>
+ * Waiting is a hybrid: the replay thread parks with
+ * {@link LockSupport#parkNanos(long)} until it is within the spin threshold of
+ * a deadline, then busy-spins the rest of the way. Packets whose deadlines have
+ * already passed are sent back to back as a batch, reading the clock once per
+ * batch rather than once per packet, so a replay that falls behind catches up
+ * at full speed.
+ * </p>
+ * <p>
+ * A replay runs on the calling thread and can be stopped from any other thread
+ * with {@link #stop()}.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapReplay {
+
+	/**
+	 * A source of packets to replay.
+	 */
+	private interface Source {
+
+		/**
+		 * Advances to the next packet.
+		 *
+		 * @return true, if a packet is available
+		 * @throws PcapException the pcap exception
+		 */
+		boolean next() throws PcapException;
+
+		/**
+		 * Timestamp of the current packet.
+		 *
+		 * @return the epoch nanos
+		 */
+		long timeNanos();
+
+		/**
+		 * Data of the current packet.
+		 *
+		 * @return the data
+		 */
+		MemorySegment data();
+
+		/**
+		 * Capture length of the current packet.
+		 *
+		 * @return the length
+		 */
+		int length();
+	}
+
+	/** Default number of overdue packets sent between clock reads. */
+	public static final int DEFAULT_BATCH_SIZE = 32;
+
+	/** Default distance from a deadline at which parking switches to spinning. */
+	public static final Duration DEFAULT_SPIN_THRESHOLD = Duration.ofNanos(50_000);
+
+	/** The transmitter. */
+	private final PacketTransmitter transmitter;
+
+	/** The pacing. */
+	private Pacing pacing = Pacing.original();
+
+	/** The batch size. */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/** The spin threshold nanos. */
+	private long spinThresholdNanos = DEFAULT_SPIN_THRESHOLD.toNanos();
+
+	/** The stop on error. */
+	private boolean stopOnError;
+
+	/** The stop request. */
+	private volatile boolean stopRequested;
+
+	/**
+	 * Replays packets through an open handle's {@code inject}.
+	 *
+	 * @param output the output handle
+	 */
+	public PcapReplay(Pcap output) {
+		this(PacketTransmitter.of(output));
+	}
+
+	/**
+	 * Replays packets through a transmitter.
+	 *
+	 * @param transmitter the transmitter
+	 */
+	public PcapReplay(PacketTransmitter transmitter) {
+		this.transmitter = transmitter;
+	}
+
+	/**
+	 * Sets the pacing, by default the original timing.
+	 *
+	 * @param pacing the pacing
+	 * @return this replay
+	 */
+	public PcapReplay setPacing(Pacing pacing) {
+		this.pacing = pacing;
+
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of overdue packets sent between clock reads.
+	 *
+	 * @param batchSize the batch size
+	 * @return this replay
+	 */
+	public PcapReplay setBatchSize(int batchSize) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+
+		this.batchSize = batchSize;
+
+		return this;
+	}
+
+	/**
+	 * Sets how close to a deadline the replay thread stops parking and starts
+	 * spinning. Larger values cost CPU but reduce jitter on systems with coarse
+	 * timers. Zero disables spinning.
+	 *
+	 * @param spinThreshold the spin threshold
+	 * @return this replay
+	 */
+	public PcapReplay setSpinThreshold(Duration spinThreshold) {
+		this.spinThresholdNanos = spinThreshold.toNanos();
+
+		return this;
+	}
+
+	/**
+	 * If set, the first send error is thrown, otherwise errors are counted and
+	 * replay continues.
+	 *
+	 * @param stopOnError true to stop on the first error
+	 * @return this replay
+	 */
+	public PcapReplay setStopOnError(boolean stopOnError) {
+		this.stopOnError = stopOnError;
+
+		return this;
+	}
+
+	/**
+	 * Requests a running replay to stop after the current packet.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Replays all remaining packets of an offline handle. The handle's
+	 * timestamp precision, micro or nanoseconds, is used to pace its packets.
+	 *
+	 * @param source the offline source handle
+	 * @return the report
+	 * @throws PcapException the pcap exception
+	 */
+	public ReplayReport replay(Pcap source) throws PcapException {
+		var cursor = new PcapCursor();
+		long fractionNanos = isNanoTime(source) ? 1 : 1000;
+
+		return run(new Source() {
+
+			@Override
+			public boolean next() throws PcapException {
+				try {
+					return source.nextEx(cursor);
+				} catch (TimeoutException e) {
+					return false; // Not possible with offline handles
+				}
+			}
+
+			@Override
+			public long timeNanos() {
+				return cursor.tvSec() * 1_000_000_000L + cursor.tvUsec() * fractionNanos;
+			}
+
+			@Override
+			public MemorySegment data() {
+				return cursor.data();
+			}
+
+			@Override
+			public int length() {
+				return cursor.captureLength();
+			}
+		});
+	}
+
+	/**
+	 * Checks if a handle delivers nanosecond timestamps. Handles of libpcap
+	 * versions before 1.5 always deliver microseconds.
+	 *
+	 * @param source the source handle
+	 * @return true, if nanosecond precision
+	 * @throws PcapException the pcap exception
+	 */
+	private static boolean isNanoTime(Pcap source) throws PcapException {
+		try {
+			return source.getTstampPrecision() == PcapTStampPrecision.TSTAMP_PRECISION_NANO;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Replays a classic pcap file, memory mapped rather than read through
+	 * libpcap.
+	 *
+	 * @param file the file
+	 * @return the report
+	 * @throws IOException   if the file is not a classic pcap file
+	 * @throws PcapException the pcap exception
+	 */
+	public ReplayReport replay(Path file) throws IOException, PcapException {
+		var savefile = PcapSavefile.map(file);
+
+		return run(new Source() {
+			long offset = -1;
+
+			@Override
+			public boolean next() {
+				offset = (offset < 0) ? savefile.firstRecord() : savefile.nextRecord(offset);
+
+				return savefile.hasRecord(offset);
+			}
+
+			@Override
+			public long timeNanos() {
+				return savefile.timestampNanos(offset);
+			}
+
+			@Override
+			public MemorySegment data() {
+				return savefile.data(offset);
+			}
+
+			@Override
+			public int length() {
+				return savefile.captureLength(offset);
+			}
+		});
+	}
+
+	/**
+	 * Runs the replay loop.
+	 *
+	 * @param source the source
+	 * @return the report
+	 * @throws PcapException the pcap exception
+	 */
+	private ReplayReport run(Source source) throws PcapException {
+		stopRequested = false;
+
+		var lateness = new LatencyHistogram();
+		boolean paced = pacing.mode() != Pacing.Mode.UNLIMITED;
+		long packets = 0, bytes = 0, errors = 0;
+		long firstTime = 0, captureOffset = 0;
+		long now = 0;
+		int batch = 0;
+
+		long start = System.nanoTime();
+
+		while (!stopRequested && source.next()) {
+			long time = source.timeNanos();
+			if (packets == 0)
+				firstTime = time;
+
+			captureOffset = Math.max(time - firstTime, captureOffset); // Never schedule backwards
+			long deadline = start + pacing.deadlineNanos(captureOffset, packets, bytes * 8);
+
+			if (batch == 0 || batch >= batchSize || deadline > now) {
+				now = awaitDeadline(deadline);
+				batch = 0;
+			}
+			batch++;
+
+			if (paced)
+				lateness.record(now - deadline);
+
+			int length = source.length();
+			try {
+				transmitter.transmit(source.data(), length);
+				bytes += length;
+			} catch (PcapException e) {
+				if (stopOnError)
+					throw e;
+
+				errors++;
+			}
+
+			packets++;
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long target = pacing.deadlineNanos(captureOffset, packets, bytes * 8);
+
+		return new ReplayReport(packets - errors, bytes, errors, elapsed, target, lateness.snapshot());
+	}
+
+	/**
+	 * Waits until the deadline, parking while far from it and spinning when
+	 * close.
+	 *
+	 * @param deadline the deadline in {@link System#nanoTime()} time
+	 * @return the current time, at or after the deadline
+	 */
+	private long awaitDeadline(long deadline) {
+		long now;
+		while ((now = System.nanoTime()) < deadline) {
+			long remaining = deadline - now;
+
+			if (remaining > spinThresholdNanos)
+				LockSupport.parkNanos(remaining - spinThresholdNanos);
+			else
+				Thread.onSpinWait();
+
+			if (stopRequested)
+				break;
+		}
+
+		return now;
+	}
+}
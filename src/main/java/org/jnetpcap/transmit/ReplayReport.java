@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.transmit;
+
+import org.jnetpcap.util.LatencyHistogram;
+
+/**
+ * Outcome of a replay: achieved against target rates, and how closely packets
+ * kept to their scheduled send times.
+ *
+ * @param packets      packets sent
+ * @param bytes        bytes sent
+ * @param errors       packets that failed to send
+ * @param elapsedNanos actual duration of the replay
+ * @param targetNanos  scheduled duration, the deadline of the last packet
+ * @param lateness     distribution of how late each packet was sent relative to
+ *                     its deadline, in nanos, empty for unlimited pacing
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public record ReplayReport(
+		long packets,
+		long bytes,
+		long errors,
+		long elapsedNanos,
+		long targetNanos,
+		LatencyHistogram.Snapshot lateness) {
+
+	/**
+	 * Achieved packet rate.
+	 *
+	 * @return the packets per second
+	 */
+	public double packetsPerSecond() {
+		return rate(packets, elapsedNanos);
+	}
+
+	/**
+	 * Achieved bit rate.
+	 *
+	 * @return the bits per second
+	 */
+	public double bitsPerSecond() {
+		return rate(bytes * 8, elapsedNanos);
+	}
+
+	/**
+	 * Packet rate the pacing asked for, infinite for unlimited pacing.
+	 *
+	 * @return the target packets per second
+	 */
+	public double targetPacketsPerSecond() {
+		return rate(packets, targetNanos);
+	}
+
+	/**
+	 * Bit rate the pacing asked for, infinite for unlimited pacing.
+	 *
+	 * @return the target bits per second
+	 */
+	public double targetBitsPerSecond() {
+		return rate(bytes * 8, targetNanos);
+	}
+
+	/**
+	 * Mean lateness of packets relative to their deadlines.
+	 *
+	 * @return the jitter in nanos
+	 */
+	public double meanJitterNanos() {
+		return lateness.mean();
+	}
+
+	/**
+	 * Rate.
+	 *
+	 * @param count the count
+	 * @param nanos the nanos
+	 * @return the double
+	 */
+	private static double rate(long count, long nanos) {
+		return (nanos <= 0) ? Double.POSITIVE_INFINITY : count * 1e9 / nanos;
+	}
+
+	/**
+	 * @see java.lang.Record#toString()
+	 */
+	@Override
+	public String toString() {
+		return "ReplayReport [packets=%d, errors=%d, pps=%.0f/%.0f, bps=%.0f/%.0f, jitter p50=%dns p99=%dns max=%dns]"
+				.formatted(packets, errors,
+						packetsPerSecond(), targetPacketsPerSecond(),
+						bitsPerSecond(), targetBitsPerSecond(),
+						lateness.percentile(50), lateness.percentile(99), lateness.max());
+	}
+}
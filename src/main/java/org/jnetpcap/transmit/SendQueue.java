@@ -0,0 +1,341 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.transmit;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.windows.PcapSendQueue;
+
+/**
+ * A portable queue of raw packets transmitted as a batch, with the same
+ * semantics as Npcap's {@link PcapSendQueue} but available on every platform.
+ * <p>
+ * Packets are packed into one contiguous off-heap buffer using the
+ * {@code pcap_sendqueue} layout: each record is a native
+ * {@code struct pcap_pkthdr} immediately followed by the packet's captured
+ * bytes. {@link #transmit(Pcap, boolean)} walks the buffer and sends every
+ * packet with {@code pcap_inject} in a tight loop, passing raw addresses into
+ * the buffer so no objects are allocated per packet. In synchronized mode
+ * packets are sent respecting the gaps between their timestamps.
+ * </p>
+ * <p>
+ * The buffer can be transmitted any number of times and reused after
+ * {@link #clear()}. Alternative transmit backends can read the records
+ * directly through {@link #segment()}. A send queue is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class SendQueue implements AutoCloseable {
+
+	/** Layout of native header fields. */
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+
+	/** Layout of the 64-bit timestamp fields of padded native headers. */
+	private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+	/** The arena. */
+	private final Arena arena;
+
+	/** The buffer. */
+	private final MemorySegment buffer;
+
+	/** The abi. */
+	private final PcapHeaderABI abi = PcapHeaderABI.nativeAbi();
+
+	/** Length of a record header. */
+	private final int headerLength = abi.headerLength();
+
+	/** Current size of the queue, in bytes. */
+	private int len;
+
+	/** Number of packets queued. */
+	private int packetCount;
+
+	/** Distance from a deadline at which synchronized transmit starts spinning. */
+	private long spinThresholdNanos = PcapReplay.DEFAULT_SPIN_THRESHOLD.toNanos();
+
+	/**
+	 * Instantiates a new send queue.
+	 *
+	 * @param capacity Maximum size of the queue, in bytes, including record
+	 *                 headers
+	 */
+	public SendQueue(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+		this.arena = Arena.ofShared();
+		this.buffer = arena.allocate(capacity, Long.BYTES);
+	}
+
+	/**
+	 * Add a packet to the queue, given a native {@code struct pcap_pkthdr}.
+	 *
+	 * @param header the native pcap header
+	 * @param packet the packet
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
+	 * @see PcapSendQueue#queue(MemorySegment, MemorySegment)
+	 */
+	public int queue(MemorySegment header, MemorySegment packet) {
+		MemorySegment hdr = header.reinterpret(headerLength);
+
+		return queue(packet, 0,
+				abi.captureLengthUnchecked(hdr),
+				abi.wireLengthUnchecked(hdr),
+				abi.tvSec(hdr),
+				abi.tvUsec(hdr));
+	}
+
+	/**
+	 * Add a packet to the queue, copying it straight from a byte array.
+	 *
+	 * @param header the header, whose capture length is the number of bytes
+	 *               queued
+	 * @param packet the packet
+	 * @param offset the offset of the packet within the array
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
+	 * @see PcapSendQueue#queue(PcapHeader, byte[], int)
+	 */
+	public int queue(PcapHeader header, byte[] packet, int offset) {
+		return queue(MemorySegment.ofArray(packet), offset,
+				header.captureLength(),
+				header.wireLength(),
+				header.tvSec(),
+				header.tvUsec());
+	}
+
+	/**
+	 * Add a packet to the queue.
+	 *
+	 * @param packet        the packet data, native or heap
+	 * @param offset        the offset of the packet within the segment
+	 * @param captureLength number of bytes to queue
+	 * @param wireLength    the original length of the packet
+	 * @param tvSec         timestamp seconds
+	 * @param tvUsec        timestamp micro seconds
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
+	 */
+	public int queue(MemorySegment packet, long offset, int captureLength, int wireLength, long tvSec,
+			long tvUsec) {
+		if (captureLength < 0)
+			throw new IllegalArgumentException("negative capture length " + captureLength);
+
+		long recordLength = headerLength + (long) captureLength;
+		if (len + recordLength > buffer.byteSize())
+			return -1;
+
+		MemorySegment hdr = buffer.asSlice(len, headerLength);
+		hdr.fill((byte) 0); // Clear padding left by earlier records
+
+		abi.tvSec(hdr, tvSec);
+		abi.tvUsec(hdr, tvUsec);
+		abi.captureLength(hdr, captureLength);
+		abi.wireLength(hdr, wireLength);
+		MemorySegment.copy(packet, offset, buffer, len + headerLength, captureLength);
+
+		len += (int) recordLength;
+		packetCount++;
+
+		return 0;
+	}
+
+	/**
+	 * Transmit all packets in the queue through an open handle.
+	 *
+	 * @param pcap the pcap handle to transmit on
+	 * @param sync if true, the packets are sent respecting their timestamps,
+	 *             otherwise as fast as possible
+	 * @return number of bytes of packet data sent, smaller than the queued data if
+	 *         an error occurred
+	 * @see PcapSendQueue
+	 */
+	public int transmit(Pcap pcap, boolean sync) {
+		return transmit(PacketTransmitter.of(pcap), sync);
+	}
+
+	/**
+	 * Transmit all packets in the queue. Transmission stops at the first packet
+	 * that fails to send.
+	 *
+	 * @param transmitter the transmitter
+	 * @param sync        if true, the packets are sent respecting their
+	 *                    timestamps, otherwise as fast as possible
+	 * @return number of bytes of packet data sent, smaller than the queued data if
+	 *         an error occurred
+	 */
+	public int transmit(PacketTransmitter transmitter, boolean sync) {
+		int sent = 0;
+		long start = System.nanoTime();
+		long firstTime = 0;
+
+		for (int off = 0; off < len;) {
+			int caplen = buffer.get(INT, off + abi.captureLengthOffset());
+
+			if (sync) {
+				long time = timestampNanos(off);
+				if (off == 0)
+					firstTime = time;
+
+				awaitDeadline(start + Math.max(0, time - firstTime));
+			}
+
+			try {
+				transmitter.transmit(buffer, off + headerLength, caplen);
+			} catch (PcapException e) {
+				break;
+			}
+
+			sent += caplen;
+			off += headerLength + caplen;
+		}
+
+		return sent;
+	}
+
+	/**
+	 * Timestamp of a record in nanos.
+	 *
+	 * @param off the record offset
+	 * @return the epoch nanos
+	 */
+	private long timestampNanos(int off) {
+		long sec, usec;
+
+		if (headerLength == 24) {
+			sec = buffer.get(LONG, off + abi.tvSecOffset());
+			usec = buffer.get(LONG, off + abi.tvUsecOffset());
+		} else {
+			sec = Integer.toUnsignedLong(buffer.get(INT, off + abi.tvSecOffset()));
+			usec = Integer.toUnsignedLong(buffer.get(INT, off + abi.tvUsecOffset()));
+		}
+
+		return sec * 1_000_000_000L + usec * 1000;
+	}
+
+	/**
+	 * Waits until the deadline, parking while far from it and spinning when
+	 * close.
+	 *
+	 * @param deadline the deadline in {@link System#nanoTime()} time
+	 */
+	private void awaitDeadline(long deadline) {
+		long now;
+		while ((now = System.nanoTime()) < deadline) {
+			long remaining = deadline - now;
+
+			if (remaining > spinThresholdNanos)
+				LockSupport.parkNanos(remaining - spinThresholdNanos);
+			else
+				Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Sets how close to a timestamp synchronized transmit stops parking and starts
+	 * spinning.
+	 *
+	 * @param spinThresholdNanos the spin threshold in nanos
+	 * @return this send queue
+	 */
+	public SendQueue setSpinThreshold(long spinThresholdNanos) {
+		this.spinThresholdNanos = spinThresholdNanos;
+
+		return this;
+	}
+
+	/**
+	 * Removes all packets from the queue.
+	 */
+	public void clear() {
+		len = 0;
+		packetCount = 0;
+	}
+
+	/**
+	 * The queued records, in {@code pcap_sendqueue} buffer layout.
+	 *
+	 * @return the segment of length {@link #len()}
+	 */
+	public MemorySegment segment() {
+		return buffer.asSlice(0, len);
+	}
+
+	/**
+	 * Header layout of the queued records.
+	 *
+	 * @return the abi
+	 */
+	public PcapHeaderABI abi() {
+		return abi;
+	}
+
+	/**
+	 * Maximum size of the queue.
+	 *
+	 * @return the maxlen or capacity, in bytes, of this send queue
+	 */
+	public int maxlen() {
+		return (int) buffer.byteSize();
+	}
+
+	/**
+	 * Current size of the queue.
+	 *
+	 * @return the length or current size, in bytes, of this send queue
+	 */
+	public int len() {
+		return len;
+	}
+
+	/**
+	 * Number of packets queued.
+	 *
+	 * @return the packet count
+	 */
+	public int packetCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Close and free the send queue.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() {
+		if (!arena.scope().isAlive())
+			throw new IllegalStateException("already closed");
+
+		arena.close();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SendQueue [len=" + len + ", maxlen=" + maxlen() + ", packets=" + packetCount + "]";
+	}
+}
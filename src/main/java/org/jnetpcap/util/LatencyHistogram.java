@@ -0,0 +1,267 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent log-linear histogram of nanosecond latencies.
+ * <p>
+ * Every power of 2 range of values is divided into {@value #SUB_BUCKETS}
+ * linear sub-buckets, so recorded values are resolved to within 12.5% over the
+ * entire range of {@code long} without any configuration. Recording is a few
+ * shifts and one atomic increment, with no allocation and no locks.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class LatencyHistogram {
+
+	/**
+	 * An immutable copy of a histogram's buckets.
+	 */
+	public static final class Snapshot {
+
+		/** The counts. */
+		private final long[] counts;
+
+		/** The total count. */
+		private final long count;
+
+		/** The sum. */
+		private final long sum;
+
+		/** The max. */
+		private final long max;
+
+		/**
+		 * Instantiates a new snapshot.
+		 *
+		 * @param counts the counts
+		 * @param sum    the sum
+		 * @param max    the max
+		 */
+		private Snapshot(long[] counts, long sum, long max) {
+			this.counts = counts;
+			this.sum = sum;
+			this.max = max;
+
+			long total = 0;
+			for (long c : counts)
+				total += c;
+
+			this.count = total;
+		}
+
+		/**
+		 * Number of recorded values.
+		 *
+		 * @return the count
+		 */
+		public long count() {
+			return count;
+		}
+
+		/**
+		 * Sum of all recorded values.
+		 *
+		 * @return the sum in nanos
+		 */
+		public long sum() {
+			return sum;
+		}
+
+		/**
+		 * Largest recorded value.
+		 *
+		 * @return the max in nanos
+		 */
+		public long max() {
+			return max;
+		}
+
+		/**
+		 * Mean of all recorded values.
+		 *
+		 * @return the mean in nanos
+		 */
+		public double mean() {
+			return (count == 0) ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * Value at the given percentile, reported as the upper bound of the bucket
+		 * in which it falls.
+		 *
+		 * @param percentile the percentile, 0.0 to 100.0
+		 * @return the value in nanos
+		 */
+		public long percentile(double percentile) {
+			if (count == 0)
+				return 0;
+
+			long rank = (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+			rank = Math.max(rank, 1);
+
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank)
+					return Math.min(bucketUpperBound(i), max);
+			}
+
+			return max;
+		}
+
+		/**
+		 * Number of buckets.
+		 *
+		 * @return the bucket count
+		 */
+		public int bucketCount() {
+			return counts.length;
+		}
+
+		/**
+		 * Number of values recorded in a bucket.
+		 *
+		 * @param index the bucket index
+		 * @return the count
+		 */
+		public long bucketValue(int index) {
+			return counts[index];
+		}
+
+		/**
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "Snapshot [count=%d, mean=%.0f, p50=%d, p99=%d, p999=%d, max=%d]"
+					.formatted(count, mean(), percentile(50), percentile(99), percentile(99.9), max);
+		}
+	}
+
+	/** Bits of linear resolution within each power of 2. */
+	private static final int SUB_BITS = 3;
+
+	/** Number of linear sub-buckets within each power of 2. */
+	public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	/** Number of buckets needed to cover all non-negative long values. */
+	public static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+	/**
+	 * Bucket index of a value.
+	 *
+	 * @param value the value, negative values are counted as 0
+	 * @return the index
+	 */
+	public static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) Math.max(value, 0);
+
+		int high = 63 - Long.numberOfLeadingZeros(value);
+		int shift = high - SUB_BITS;
+
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Smallest value counted in a bucket.
+	 *
+	 * @param index the index
+	 * @return the lower bound, inclusive
+	 */
+	public static long bucketLowerBound(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+
+		int shift = (index >>> SUB_BITS) - 1;
+		long sub = index & (SUB_BUCKETS - 1);
+
+		return (SUB_BUCKETS + sub) << shift;
+	}
+
+	/**
+	 * Largest value counted in a bucket.
+	 *
+	 * @param index the index
+	 * @return the upper bound, inclusive
+	 */
+	public static long bucketUpperBound(int index) {
+		return (index + 1 >= BUCKET_COUNT)
+				? Long.MAX_VALUE
+				: bucketLowerBound(index + 1) - 1;
+	}
+
+	/** The counts. */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/** The sum. */
+	private final LongAdder sum = new LongAdder();
+
+	/** The max. */
+	private volatile long max;
+
+	/**
+	 * Records a value.
+	 *
+	 * @param nanos the value in nanos
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(bucketIndex(nanos));
+		sum.add(nanos);
+
+		if (nanos > max)
+			max = nanos; // Racy but monotonic enough for reporting
+	}
+
+	/**
+	 * Records the time elapsed since a {@link System#nanoTime()} start time.
+	 *
+	 * @param startNanos the start time
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Takes a snapshot. Values recorded concurrently may or may not be included.
+	 *
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		for (int i = 0; i < copy.length; i++)
+			copy[i] = counts.get(i);
+
+		return new Snapshot(copy, sum.sum(), max);
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++)
+			counts.set(i, 0);
+
+		sum.reset();
+		max = 0;
+	}
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.util;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+import org.jnetpcap.internal.PcapHeaderABI;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A mutable and reusable reference to a native pcap header and packet data.
+ * <p>
+ * Unlike {@link PcapPacketRef}, which is an immutable record allocated for
+ * every packet, a cursor is allocated once and rebound in place on every call
+ * to {@code Pcap.nextEx(PcapCursor)}. The capture length, wire length and
+ * timestamp fields are read once from the native header when the cursor is
+ * bound and cached as primitives. Correctly sized header and data memory
+ * segments are only created when requested through {@link #header()} or
+ * {@link #data()}, and are then reused for the remainder of the current
+ * packet. Pull-style consumers which only use the primitive accessors,
+ * {@link #copyTo(byte[], int)} or {@link #getByte(long)} style accessors do not
+ * allocate any objects per packet.
+ * </p>
+ * <p>
+ * The scope of the bound addresses is libpcap packet scope, that is the native
+ * memory is only valid until the next call to {@code nextEx}, {@code next},
+ * {@code loop} or {@code dispatch} on the same pcap handle. Using a cursor or
+ * any segment obtained from it after that point can cause VM crashes. A cursor
+ * is not thread safe.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapCursor {
+
+	/** Unbounded segment used to read native memory at raw addresses. */
+	private static final MemorySegment EVERYTHING = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+	/** Network byte order unsigned short layout. */
+	private static final ValueLayout.OfShort NETWORK_SHORT = JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** Network byte order int layout. */
+	private static final ValueLayout.OfInt NETWORK_INT = JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+	/** The header ABI of the last bound packet. */
+	private PcapHeaderABI abi;
+
+	/** The int layout in the byte order of the current ABI. */
+	private ValueLayout.OfInt intLayout;
+
+	/** The long layout of padded headers, in the byte order of the current ABI. */
+	private ValueLayout.OfLong longLayout;
+
+	/** The native header address. */
+	private long headerAddress;
+
+	/** The native packet data address. */
+	private long dataAddress;
+
+	/** The cached capture length. */
+	private int captureLength;
+
+	/** The cached wire length. */
+	private int wireLength;
+
+	/** The cached timestamp seconds. */
+	private long tvSec;
+
+	/** The cached timestamp fraction of a second. */
+	private long tvUsec;
+
+	/** Lazily created header segment, reset on every bind. */
+	private MemorySegment header;
+
+	/** Lazily created data segment, reset on every bind. */
+	private MemorySegment data;
+
+	/**
+	 * Instantiates a new, unbound, cursor.
+	 */
+	public PcapCursor() {
+	}
+
+	/**
+	 * Binds this cursor to a new native pcap header and packet data address. The
+	 * header fields are read immediately and cached.
+	 *
+	 * @param abi           the header ABI used to decode the native header
+	 * @param headerAddress the native pcap header address
+	 * @param dataAddress   the native packet data address
+	 * @return this cursor
+	 */
+	public PcapCursor bind(PcapHeaderABI abi, long headerAddress, long dataAddress) {
+		if (this.abi != abi) {
+			this.abi = abi;
+			this.intLayout = JAVA_INT.withOrder(abi.order());
+			this.longLayout = JAVA_LONG_UNALIGNED.withOrder(abi.order());
+		}
+
+		this.headerAddress = headerAddress;
+		this.dataAddress = dataAddress;
+		this.header = null;
+		this.data = null;
+
+		ValueLayout.OfInt layout = this.intLayout;
+		this.captureLength = EVERYTHING.get(layout, headerAddress + abi.captureLengthOffset());
+		this.wireLength = EVERYTHING.get(layout, headerAddress + abi.wireLengthOffset());
+
+		/* Padded headers hold 64-bit time_t and suseconds_t fields */
+		if (abi.headerLength() == 24) {
+			this.tvSec = EVERYTHING.get(longLayout, headerAddress + abi.tvSecOffset());
+			this.tvUsec = EVERYTHING.get(longLayout, headerAddress + abi.tvUsecOffset());
+		} else {
+			this.tvSec = Integer.toUnsignedLong(EVERYTHING.get(layout, headerAddress + abi.tvSecOffset()));
+			this.tvUsec = Integer.toUnsignedLong(EVERYTHING.get(layout, headerAddress + abi.tvUsecOffset()));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Checks if this cursor is currently bound to a packet.
+	 *
+	 * @return true, if bound
+	 */
+	public boolean isBound() {
+		return abi != null;
+	}
+
+	/**
+	 * Unbinds this cursor from native memory. Any subsequent accessor calls will
+	 * throw an {@link IllegalStateException}.
+	 */
+	public void unbind() {
+		this.abi = null;
+		this.intLayout = null;
+		this.longLayout = null;
+		this.headerAddress = 0;
+		this.dataAddress = 0;
+		this.captureLength = 0;
+		this.wireLength = 0;
+		this.tvSec = 0;
+		this.tvUsec = 0;
+		this.header = null;
+		this.data = null;
+	}
+
+	/**
+	 * The header ABI of the currently bound packet.
+	 *
+	 * @return the ABI
+	 */
+	public PcapHeaderABI abi() {
+		checkBound();
+
+		return abi;
+	}
+
+	/**
+	 * Capture length of the packet.
+	 *
+	 * @return the capture length pcap header field value
+	 */
+	public int captureLength() {
+		return captureLength;
+	}
+
+	/**
+	 * Wire length of the packet.
+	 *
+	 * @return the wire length pcap header field value
+	 */
+	public int wireLength() {
+		return wireLength;
+	}
+
+	/**
+	 * The timestamp in seconds in epoch time.
+	 *
+	 * @return the epoch seconds since Jan 1st, 1970.
+	 */
+	public long tvSec() {
+		return tvSec;
+	}
+
+	/**
+	 * The timestamp fraction of a second.
+	 *
+	 * @return fraction of a second in micros or nanos.
+	 */
+	public long tvUsec() {
+		return tvUsec;
+	}
+
+	/**
+	 * The native address of the pcap header.
+	 *
+	 * @return the header address
+	 */
+	public long headerAddress() {
+		return headerAddress;
+	}
+
+	/**
+	 * The native address of the packet data.
+	 *
+	 * @return the data address
+	 */
+	public long dataAddress() {
+		return dataAddress;
+	}
+
+	/**
+	 * Memory segment sized to the pcap header of the current packet. The segment is
+	 * created on first access and reused until the cursor is rebound.
+	 *
+	 * @return the header segment
+	 */
+	public MemorySegment header() {
+		checkBound();
+
+		if (header == null)
+			header = EVERYTHING.asSlice(headerAddress, abi.headerLength());
+
+		return header;
+	}
+
+	/**
+	 * Memory segment sized to the capture length of the current packet. The
+	 * segment is created on first access and reused until the cursor is rebound.
+	 *
+	 * @return the packet data segment
+	 */
+	public MemorySegment data() {
+		checkBound();
+
+		if (data == null)
+			data = EVERYTHING.asSlice(dataAddress, captureLength);
+
+		return data;
+	}
+
+	/**
+	 * Reads a byte from the packet data.
+	 *
+	 * @param offset the offset into the packet
+	 * @return the byte value
+	 * @throws IndexOutOfBoundsException if offset is outside the captured data
+	 */
+	public byte getByte(long offset) {
+		checkIndex(offset, 1);
+
+		return EVERYTHING.get(JAVA_BYTE, dataAddress + offset);
+	}
+
+	/**
+	 * Reads a 16-bit value, in network byte order, from the packet data.
+	 *
+	 * @param offset the offset into the packet
+	 * @return the unsigned short value
+	 * @throws IndexOutOfBoundsException if offset is outside the captured data
+	 */
+	public int getUnsignedShort(long offset) {
+		checkIndex(offset, 2);
+
+		return Short.toUnsignedInt(EVERYTHING.get(NETWORK_SHORT, dataAddress + offset));
+	}
+
+	/**
+	 * Reads a 32-bit value, in network byte order, from the packet data.
+	 *
+	 * @param offset the offset into the packet
+	 * @return the int value
+	 * @throws IndexOutOfBoundsException if offset is outside the captured data
+	 */
+	public int getInt(long offset) {
+		checkIndex(offset, 4);
+
+		return EVERYTHING.get(NETWORK_INT, dataAddress + offset);
+	}
+
+	/**
+	 * Copies the captured packet bytes into the destination array without
+	 * allocating.
+	 *
+	 * @param dst    the destination array
+	 * @param offset the offset into the destination array
+	 * @return number of bytes copied, which is the smaller of the capture length
+	 *         and the remaining space in the array
+	 */
+	public int copyTo(byte[] dst, int offset) {
+		checkBound();
+
+		int len = Math.min(captureLength, dst.length - offset);
+		MemorySegment.copy(EVERYTHING, JAVA_BYTE, dataAddress, dst, offset, len);
+
+		return len;
+	}
+
+	/**
+	 * Returns byte[] representation of the entire packet.
+	 *
+	 * @return the byte[] containing packet bytes
+	 */
+	public byte[] toArray() {
+		byte[] array = new byte[captureLength];
+		copyTo(array, 0);
+
+		return array;
+	}
+
+	/**
+	 * Creates an immutable packet reference to the currently bound native memory.
+	 * The returned reference has the same, libpcap packet, scope as this cursor.
+	 *
+	 * @return the pcap packet ref
+	 */
+	public PcapPacketRef toPacketRef() {
+		return new PcapPacketRef(abi(), header(), data());
+	}
+
+	/**
+	 * Check bound.
+	 */
+	private void checkBound() {
+		if (abi == null)
+			throw new IllegalStateException("cursor not bound to a packet");
+	}
+
+	/**
+	 * Check index.
+	 *
+	 * @param offset the offset
+	 * @param length the length
+	 */
+	private void checkIndex(long offset, int length) {
+		checkBound();
+
+		if (offset < 0 || offset + length > captureLength)
+			throw new IndexOutOfBoundsException("offset %d, length %d, caplen %d"
+					.formatted(offset, length, captureLength));
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PcapCursor"
+				+ " [caplen=" + captureLength
+				+ ", wirelen=" + wireLength
+				+ ", tvSec=" + tvSec
+				+ ", tvUsec=" + tvUsec
+				+ "]";
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.util;
+
+import java.util.Map;
+
+import org.jnetpcap.internal.DowncallMetrics;
+
+/**
+ * A snapshot of a pcap handle's hot path metrics.
+ * <p>
+ * Metrics are opt-in and disabled by default, either per handle with
+ * {@code Pcap.setMetricsEnabled} or for all new handles with the
+ * {@value org.jnetpcap.Pcap.LibraryPolicy#SYSTEM_PROPERTY_METRICS} system
+ * property. While disabled, the capture path performs a single null check per
+ * packet and nothing else.
+ * </p>
+ * <p>
+ * Native downcall timings are collected per libpcap function, across all
+ * handles, and are enabled separately with
+ * {@link #setDowncallMetricsEnabled(boolean)}.
+ * </p>
+ *
+ * @param enabled         true if metrics were enabled when the snapshot was
+ *                        taken
+ * @param packets         packets delivered to the application, through any
+ *                        dispatch, loop or next call
+ * @param bytes           captured bytes delivered to the application
+ * @param callbacks       native callbacks received from pcap_loop and
+ *                        pcap_dispatch
+ * @param exceptions      exceptions thrown by user callbacks
+ * @param interrupts      times the dispatcher was interrupted
+ * @param callbackLatency duration of user callbacks, in nanos
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public record PcapMetrics(
+		boolean enabled,
+		long packets,
+		long bytes,
+		long callbacks,
+		long exceptions,
+		long interrupts,
+		LatencyHistogram.Snapshot callbackLatency) {
+
+	/** Snapshot of a handle with metrics disabled. */
+	public static final PcapMetrics DISABLED = new PcapMetrics(false, 0, 0, 0, 0, 0,
+			new LatencyHistogram().snapshot());
+
+	/**
+	 * Enables or disables timing of native libpcap downcalls. Downcall metrics
+	 * are global, not per handle.
+	 *
+	 * @param enabled true to enable
+	 */
+	public static void setDowncallMetricsEnabled(boolean enabled) {
+		DowncallMetrics.setEnabled(enabled);
+	}
+
+	/**
+	 * Checks if timing of native libpcap downcalls is enabled.
+	 *
+	 * @return true, if enabled
+	 */
+	public static boolean isDowncallMetricsEnabled() {
+		return DowncallMetrics.isEnabled();
+	}
+
+	/**
+	 * Snapshot of native downcall durations, keyed by libpcap function name.
+	 * Only functions called while downcall metrics were enabled are included.
+	 *
+	 * @return the downcall latency snapshots
+	 */
+	public static Map<String, LatencyHistogram.Snapshot> downcallLatencies() {
+		return DowncallMetrics.snapshot();
+	}
+}
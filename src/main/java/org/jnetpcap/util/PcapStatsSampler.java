@@ -0,0 +1,462 @@
+/*
+ * Copyright 2023 Sly Technologies Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.util;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapException;
+import org.jnetpcap.constant.PcapConstants;
+import org.jnetpcap.internal.PcapStatRecord;
+
+/**
+ * Periodically samples {@link Pcap#stats(MemorySegment)} and keeps a history of
+ * per interval packet and drop deltas and rates.
+ * <p>
+ * The native pcap_stat structure is allocated once and reused, and the history
+ * is kept in preallocated primitive ring buffers, so sampling allocates nothing
+ * and costs one {@code pcap_stats} call per interval. Deltas are computed
+ * modulo 2<sup>32</sup>, since libpcap counters are unsigned 32-bit values
+ * which wrap around on busy interfaces. Rates are computed using the monotonic
+ * {@link System#nanoTime()} clock at which each sample was taken, not the
+ * nominal interval, so scheduling jitter does not distort them.
+ * </p>
+ * <p>
+ * Samples are identified by a sequence number starting at 1. The last
+ * {@link #historySize()} samples are retained. The first sample only
+ * establishes a baseline and is not recorded.
+ * </p>
+ * <p>
+ * Sampling is driven either by calling {@link #sample()}, for example from the
+ * capture thread between {@code dispatch} calls, or by a background daemon
+ * thread started with {@link #start()}. Since libpcap does not guarantee that
+ * {@code pcap_stats} may be called concurrently with a capture loop on every
+ * platform, the first is the conservative choice.
+ * </p>
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+public final class PcapStatsSampler implements AutoCloseable {
+
+	/**
+	 * Notified when a sample exceeds the configured drop thresholds.
+	 */
+	@FunctionalInterface
+	public interface DropListener {
+
+		/**
+		 * Called on the sampling thread when a sample's drop ratio or interface
+		 * drops exceed their thresholds.
+		 *
+		 * @param sampler  the sampler
+		 * @param sequence the sample's sequence number
+		 */
+		void onDrops(PcapStatsSampler sampler, long sequence);
+	}
+
+	/** 32-bit counter mask. */
+	private static final long COUNTER_MASK = 0xFFFF_FFFFL;
+
+	/** The pcap handle. */
+	private final Pcap pcap;
+
+	/** The interval in nanos. */
+	private final long intervalNanos;
+
+	/** The arena. */
+	private final Arena arena;
+
+	/** The reusable pcap_stat structure. */
+	private final MemorySegment pcapStat;
+
+	/** Ring buffer mask. */
+	private final int mask;
+
+	/* History ring buffers, indexed by sequence & mask */
+	private final long[] timeNanos;
+	private final long[] recvDelta;
+	private final long[] dropDelta;
+	private final long[] ifdropDelta;
+	private final long[] elapsedNanos;
+
+	/* Previous raw counters */
+	private boolean primed;
+	private long prevNanos;
+	private long prevRecv;
+	private long prevDrop;
+	private long prevIfdrop;
+
+	/* Cumulative totals, immune to counter wrap around */
+	private long totalRecv;
+	private long totalDrop;
+	private long totalIfdrop;
+
+	/** Sequence of latest published sample, 0 if none. */
+	private volatile long sequence;
+
+	/** The drop listener. */
+	private DropListener dropListener;
+
+	/** The drop ratio threshold. */
+	private double dropRatioThreshold = Double.MAX_VALUE;
+
+	/** The ifdrop threshold. */
+	private long ifdropThreshold = Long.MAX_VALUE;
+
+	/** The sampling thread. */
+	private Thread thread;
+
+	/** The running. */
+	private volatile boolean running;
+
+	/** The exception which stopped the sampling thread. */
+	private volatile PcapException samplingException;
+
+	/**
+	 * Instantiates a new stats sampler.
+	 *
+	 * @param pcap        an activated live pcap handle
+	 * @param interval    the sampling interval used by {@link #start()}
+	 * @param historySize the number of samples to retain, rounded up to a power
+	 *                    of 2
+	 */
+	public PcapStatsSampler(Pcap pcap, Duration interval, int historySize) {
+		if (historySize < 1)
+			throw new IllegalArgumentException("historySize must be at least 1");
+
+		this.pcap = Objects.requireNonNull(pcap, "pcap");
+		this.intervalNanos = Math.max(1, interval.toNanos());
+
+		int size = Integer.highestOneBit(Math.max(historySize, 2) - 1) << 1;
+		this.mask = size - 1;
+		this.timeNanos = new long[size];
+		this.recvDelta = new long[size];
+		this.dropDelta = new long[size];
+		this.ifdropDelta = new long[size];
+		this.elapsedNanos = new long[size];
+
+		this.arena = Arena.ofShared();
+		this.pcapStat = arena.allocate(PcapConstants.PCAP_STAT_SIZE);
+	}
+
+	/**
+	 * Registers a listener called when a sample's drop ratio reaches
+	 * {@code dropRatioThreshold} or its interface drops reach
+	 * {@code ifdropThreshold}.
+	 *
+	 * @param dropRatioThreshold the drop ratio threshold, 0.0 to 1.0
+	 * @param ifdropThreshold    the interface drops per interval threshold
+	 * @param listener           the listener
+	 * @return this sampler
+	 */
+	public PcapStatsSampler onDrops(double dropRatioThreshold, long ifdropThreshold, DropListener listener) {
+		this.dropRatioThreshold = dropRatioThreshold;
+		this.ifdropThreshold = ifdropThreshold;
+		this.dropListener = Objects.requireNonNull(listener, "listener");
+
+		return this;
+	}
+
+	/**
+	 * Takes a sample now. Must not be called concurrently with itself or with a
+	 * running sampling thread.
+	 *
+	 * @return the new sample's sequence number, or 0 if this was the baseline
+	 *         sample
+	 * @throws PcapException the pcap exception
+	 */
+	public long sample() throws PcapException {
+		pcap.stats(pcapStat);
+		long now = System.nanoTime();
+
+		long recv = PcapStatRecord.readRecv(pcapStat);
+		long drop = PcapStatRecord.readDrop(pcapStat);
+		long ifdrop = PcapStatRecord.readIfdrop(pcapStat);
+
+		if (!primed) {
+			primed = true;
+			prevNanos = now;
+			prevRecv = recv;
+			prevDrop = drop;
+			prevIfdrop = ifdrop;
+
+			return 0;
+		}
+
+		long seq = sequence + 1;
+		int index = (int) (seq & mask);
+
+		timeNanos[index] = now;
+		elapsedNanos[index] = now - prevNanos;
+		recvDelta[index] = (recv - prevRecv) & COUNTER_MASK;
+		dropDelta[index] = (drop - prevDrop) & COUNTER_MASK;
+		ifdropDelta[index] = (ifdrop - prevIfdrop) & COUNTER_MASK;
+
+		totalRecv += recvDelta[index];
+		totalDrop += dropDelta[index];
+		totalIfdrop += ifdropDelta[index];
+
+		prevNanos = now;
+		prevRecv = recv;
+		prevDrop = drop;
+		prevIfdrop = ifdrop;
+
+		sequence = seq;
+
+		if (dropListener != null
+				&& (dropRatio(seq) >= dropRatioThreshold || ifdropDelta[index] >= ifdropThreshold))
+			dropListener.onDrops(this, seq);
+
+		return seq;
+	}
+
+	/**
+	 * Starts a daemon thread sampling at the configured interval. The thread stops
+	 * on {@link #close()} or on the first sampling error, which is then available
+	 * from {@link #getSamplingException()}.
+	 *
+	 * @return this sampler
+	 */
+	public synchronized PcapStatsSampler start() {
+		if (running)
+			return this;
+
+		running = true;
+		thread = Thread.ofPlatform()
+				.name("pcap-stats-sampler")
+				.daemon(true)
+				.start(this::samplingLoop);
+
+		return this;
+	}
+
+	/**
+	 * Samples at fixed rate until stopped.
+	 */
+	private void samplingLoop() {
+		long deadline = System.nanoTime();
+
+		try {
+			while (running) {
+				sample();
+
+				deadline += intervalNanos;
+				long now;
+				while (running && (now = System.nanoTime()) < deadline)
+					LockSupport.parkNanos(this, deadline - now);
+			}
+		} catch (PcapException e) {
+			samplingException = e;
+			running = false;
+		}
+	}
+
+	/**
+	 * The exception which stopped the sampling thread, if any.
+	 *
+	 * @return the exception or null
+	 */
+	public PcapException getSamplingException() {
+		return samplingException;
+	}
+
+	/**
+	 * Sequence number of the latest sample.
+	 *
+	 * @return the sequence or 0 if no samples have been recorded yet
+	 */
+	public long latest() {
+		return sequence;
+	}
+
+	/**
+	 * Number of samples retained.
+	 *
+	 * @return the history size
+	 */
+	public int historySize() {
+		return mask + 1;
+	}
+
+	/**
+	 * Checks if a sample is still retained in the history.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return true, if available
+	 */
+	public boolean isAvailable(long sequence) {
+		long latest = this.sequence;
+
+		return sequence > 0 && sequence <= latest && latest - sequence <= mask;
+	}
+
+	/**
+	 * Index of a sample in the ring buffers.
+	 *
+	 * @param sequence the sequence
+	 * @return the index
+	 */
+	private int index(long sequence) {
+		if (!isAvailable(sequence))
+			throw new IllegalArgumentException("sample %d not available".formatted(sequence));
+
+		return (int) (sequence & mask);
+	}
+
+	/**
+	 * The {@link System#nanoTime()} at which a sample was taken.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the nano time
+	 */
+	public long timeNanos(long sequence) {
+		return timeNanos[index(sequence)];
+	}
+
+	/**
+	 * Time elapsed since the previous sample.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the elapsed nanos
+	 */
+	public long elapsedNanos(long sequence) {
+		return elapsedNanos[index(sequence)];
+	}
+
+	/**
+	 * Packets received during a sample's interval, from ps_recv.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the packet count
+	 */
+	public long recvDelta(long sequence) {
+		return recvDelta[index(sequence)];
+	}
+
+	/**
+	 * Packets dropped by the kernel during a sample's interval, from ps_drop.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the drop count
+	 */
+	public long dropDelta(long sequence) {
+		return dropDelta[index(sequence)];
+	}
+
+	/**
+	 * Packets dropped by the interface during a sample's interval, from
+	 * ps_ifdrop.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the drop count
+	 */
+	public long ifdropDelta(long sequence) {
+		return ifdropDelta[index(sequence)];
+	}
+
+	/**
+	 * Packets received per second during a sample's interval.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the packet rate
+	 */
+	public double packetsPerSecond(long sequence) {
+		int index = index(sequence);
+		long elapsed = elapsedNanos[index];
+
+		return (elapsed == 0) ? 0 : recvDelta[index] * 1e9 / elapsed;
+	}
+
+	/**
+	 * Ratio of dropped to seen packets during a sample's interval. Whether ps_recv
+	 * includes dropped packets differs between platforms, the larger of
+	 * {@code recv} and {@code drop} is used as the number of packets seen.
+	 *
+	 * @param sequence the sample's sequence number
+	 * @return the drop ratio, 0.0 to 1.0
+	 */
+	public double dropRatio(long sequence) {
+		int index = index(sequence);
+		long drop = dropDelta[index];
+		long seen = Math.max(recvDelta[index], drop);
+
+		return (seen == 0) ? 0 : (double) drop / seen;
+	}
+
+	/**
+	 * Total packets received across all recorded samples.
+	 *
+	 * @return the total
+	 */
+	public long totalRecv() {
+		return totalRecv;
+	}
+
+	/**
+	 * Total packets dropped by the kernel across all recorded samples.
+	 *
+	 * @return the total
+	 */
+	public long totalDrop() {
+		return totalDrop;
+	}
+
+	/**
+	 * Total packets dropped by the interface across all recorded samples.
+	 *
+	 * @return the total
+	 */
+	public long totalIfdrop() {
+		return totalIfdrop;
+	}
+
+	/**
+	 * Stops the sampling thread, if started, and releases the native pcap_stat
+	 * structure.
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+
+		if (thread != null) {
+			LockSupport.unpark(thread);
+
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+
+			thread = null;
+
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		if (arena.scope().isAlive())
+			arena.close();
+	}
+}
@@ -26,6 +26,7 @@ import org.jnetpcap.Pcap.Linux;
 import org.jnetpcap.PcapHeader;
 import org.jnetpcap.internal.PcapForeignDowncall;
 import org.jnetpcap.internal.PcapForeignInitializer;
+import org.jnetpcap.internal.PcapHeaderABI;
 
 /**
  * A queue of raw packets that will be sent to the network with {@code transmit}
@@ -65,6 +66,9 @@ public class PcapSendQueue implements AutoCloseable {
 
 		/** The Constant LEN. */
 		private static final VarHandle LEN = LAYOUT.varHandle(PathElement.groupElement("len"));
+
+		/** The Constant BUFFER. */
+		private static final VarHandle BUFFER = LAYOUT.varHandle(PathElement.groupElement("buffer"));
 	}
 
 	/**
@@ -83,15 +87,6 @@ public class PcapSendQueue implements AutoCloseable {
 	 */
 	private static final PcapForeignDowncall pcap_sendqueue_destroy;
 
-	/**
-	 * The Constant pcap_sendqueue_queue.
-	 *
-	 * @see {@code int pcap_sendqueue_queue(pcap_send_queue* queue, const struct
-	 *      pcap_pkthdr *pkt_header, const u_char *pkt_data)}
-	 * @since WinPcap 1.0
-	 */
-	private static final PcapForeignDowncall pcap_sendqueue_queue;
-
 	/**
 	 * The Constant pcap_sendqueue_transmit.
 	 *
@@ -106,7 +101,6 @@ public class PcapSendQueue implements AutoCloseable {
 			// @formatter:off
 			pcap_sendqueue_alloc    = foreign.downcall("pcap_sendqueue_alloc(I)A");
 			pcap_sendqueue_destroy  = foreign.downcall("pcap_sendqueue_destroy(A)V");
-			pcap_sendqueue_queue    = foreign.downcall("pcap_sendqueue_queue(AAA)I");
 			pcap_sendqueue_transmit = foreign.downcall("pcap_sendqueue_transmit(AAI)I");
 			// @formatter:on
 
@@ -135,9 +129,33 @@ public class PcapSendQueue implements AutoCloseable {
 		return pcap_sendqueue_alloc.invokeObj(capacity);
 	}
 
+	/**
+	 * Wraps an existing {@code pcap_send_queue} structure, for example one
+	 * allocated by other native code. The structure and its buffer are not freed
+	 * when the returned queue is closed.
+	 *
+	 * @param struct the {@code pcap_send_queue} structure
+	 * @return the pcap send queue
+	 */
+	public static PcapSendQueue ofMemory(MemorySegment struct) {
+		return new PcapSendQueue(struct, false);
+	}
+
 	/** The queue ptr. */
 	private final MemorySegment queue_ptr;
 
+	/** The queue structure, sized to its layout. */
+	private final MemorySegment struct;
+
+	/** The packet buffer pointed to by the structure, sized to maxlen. */
+	private final MemorySegment buffer;
+
+	/** Length of each record's pcap header. */
+	private final int headerLength = PcapHeaderABI.nativeAbi().headerLength();
+
+	/** True if the queue was allocated by this object and must be destroyed. */
+	private final boolean owned;
+
 	/** The arena. */
 	private final Arena arena;
 
@@ -147,8 +165,23 @@ public class PcapSendQueue implements AutoCloseable {
 	 * @param capacity Maximum size of the queue, in bytes
 	 */
 	public PcapSendQueue(int capacity) {
+		this(alloc(capacity), true);
+	}
+
+	/**
+	 * Instantiates a new pcap send queue.
+	 *
+	 * @param queue_ptr the queue ptr
+	 * @param owned     the owned
+	 */
+	private PcapSendQueue(MemorySegment queue_ptr, boolean owned) {
 		this.arena = Arena.ofShared();
-		this.queue_ptr = alloc(capacity);
+		this.queue_ptr = queue_ptr;
+		this.owned = owned;
+		this.struct = queue_ptr.reinterpret(Struct.LAYOUT.byteSize());
+
+		MemorySegment buf = (MemorySegment) Struct.BUFFER.get(struct, 0L);
+		this.buffer = buf.reinterpret(Integer.toUnsignedLong(maxlen()));
 	}
 
 	/**
@@ -173,7 +206,8 @@ public class PcapSendQueue implements AutoCloseable {
 			throw new IllegalStateException("already closed");
 
 		try {
-			pcap_sendqueue_destroy.invokeVoid(queue_ptr);
+			if (owned)
+				pcap_sendqueue_destroy.invokeVoid(queue_ptr);
 		} finally {
 			arena.close();
 		}
@@ -196,13 +230,21 @@ public class PcapSendQueue implements AutoCloseable {
 	 * of the packets needs not to be calculated, because it will be transparently
 	 * added by the network interface.
 	 * </p>
+	 * <p>
+	 * The record is written directly into the queue's buffer, with the same layout
+	 * and capacity check as pcap_sendqueue_queue(), so queuing is a single copy of
+	 * the header and packet.
+	 * </p>
 	 *
 	 * @param header the header
 	 * @param packet the packet
-	 * @return the int
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
 	 */
 	public int queue(MemorySegment header, MemorySegment packet) {
-		return pcap_sendqueue_queue.invokeInt(queue_ptr, header, packet);
+		MemorySegment hdr = header.reinterpret(headerLength);
+		int caplen = PcapHeaderABI.nativeAbi().captureLengthUnchecked(hdr);
+
+		return append(hdr, packet, 0, caplen);
 	}
 
 	/**
@@ -226,23 +268,76 @@ public class PcapSendQueue implements AutoCloseable {
 	 * @param header the header
 	 * @param packet the packet
 	 * @param offset the offset
-	 * @return the int
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
 	 */
 	public int queue(PcapHeader header, byte[] packet, int offset) {
 		if (offset < 0 || offset >= packet.length)
 			throw new IllegalArgumentException("offset out of bounds");
 
-		try (var arena = WinPcap.newArena()) {
+		return append(header.asMemorySegment(), MemorySegment.ofArray(packet), offset, header.captureLength());
+	}
 
-			MemorySegment byteArray = MemorySegment.ofArray(packet)
-					.asSlice(offset);
+	/**
+	 * Add many packets to the send queue. Packets are added in order until all
+	 * are queued or the queue is full.
+	 *
+	 * @param headers the headers
+	 * @param packets the packets, each starting at offset 0
+	 * @return number of packets added
+	 */
+	public int queueAll(PcapHeader[] headers, byte[][] packets) {
+		if (headers.length != packets.length)
+			throw new IllegalArgumentException("headers and packets differ in length");
 
-			MemorySegment pkt = arena.allocate(byteArray.byteSize())
-					.copyFrom(byteArray);
-			MemorySegment hdr = header.asMemoryReference();
+		for (int i = 0; i < headers.length; i++) {
+			PcapHeader header = headers[i];
 
-			return queue(hdr, pkt);
+			if (append(header.asMemorySegment(), MemorySegment.ofArray(packets[i]), 0, header.captureLength()) != 0)
+				return i;
 		}
+
+		return headers.length;
+	}
+
+	/**
+	 * Add records already in send queue buffer layout, each a native
+	 * {@code struct pcap_pkthdr} followed by its packet data, with a single copy.
+	 * The records are not validated.
+	 *
+	 * @param records the records
+	 * @return 0 on success, or -1 if the queue does not have room for all records
+	 */
+	public int queueAll(MemorySegment records) {
+		int len = len();
+		if (len + records.byteSize() > Integer.toUnsignedLong(maxlen()))
+			return -1;
+
+		MemorySegment.copy(records, 0, buffer, len, records.byteSize());
+		Struct.LEN.set(struct, 0L, len + (int) records.byteSize());
+
+		return 0;
+	}
+
+	/**
+	 * Writes a record straight into the queue's buffer at its current length, the
+	 * same way pcap_sendqueue_queue() does, and updates the length.
+	 *
+	 * @param header the native pcap header
+	 * @param packet the packet
+	 * @param offset the offset of the packet data
+	 * @param caplen number of packet bytes
+	 * @return 0 on success, or -1 if the queue does not have room for the packet
+	 */
+	private int append(MemorySegment header, MemorySegment packet, long offset, int caplen) {
+		int len = len();
+		if (len + (long) headerLength + caplen > Integer.toUnsignedLong(maxlen()))
+			return -1;
+
+		MemorySegment.copy(header, 0, buffer, len, headerLength);
+		MemorySegment.copy(packet, offset, buffer, len + headerLength, caplen);
+		Struct.LEN.set(struct, 0L, len + headerLength + caplen);
+
+		return 0;
 	}
 
 	/**
@@ -287,7 +382,7 @@ public class PcapSendQueue implements AutoCloseable {
 	 * @return the maxlen or capacity, in bytes, of this send queue
 	 */
 	public int maxlen() {
-		return (int) Struct.MAXLEN.get(queue_ptr, 0L);
+		return (int) Struct.MAXLEN.get(struct, 0L);
 	}
 
 	/**
@@ -296,6 +391,6 @@ public class PcapSendQueue implements AutoCloseable {
 	 * @return the length or current size, in bytes, of this send queue
 	 */
 	public int len() {
-		return (int) Struct.LEN.get(queue_ptr, 0L);
+		return (int) Struct.LEN.get(struct, 0L);
 	}
 }
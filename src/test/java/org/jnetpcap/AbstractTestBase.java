@@ -22,8 +22,12 @@ import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -41,6 +45,8 @@ import org.jnetpcap.constant.PcapConstants;
 import org.jnetpcap.constant.PcapDlt;
 import org.jnetpcap.internal.PcapHeaderABI;
 import org.jnetpcap.internal.UnsafePcapHandle;
+import org.jnetpcap.io.PcapFileWriter;
+import org.jnetpcap.io.TrafficGenerator;
 import org.jnetpcap.util.PcapPacketRef;
 import org.jnetpcap.util.PcapUtils;
 import org.junit.jupiter.api.AfterEach;
@@ -82,6 +88,14 @@ abstract class AbstractTestBase {
 		void execute() throws Throwable;
 	}
 
+	/**
+	 * Receives each generated packet with its native header.
+	 */
+	public interface HeaderSink {
+
+		void accept(MemorySegment header, MemorySegment packet) throws IOException;
+	}
+
 	/**
 	 * A private packet container using in unit testing with 2 simple fields, header
 	 * and data.
@@ -484,4 +498,74 @@ abstract class AbstractTestBase {
 		return tempFile(info, SUFFIX);
 	}
 
+	/**
+	 * Writes a generated savefile, with timestamps in micros or nanos.
+	 *
+	 * @param file     the file
+	 * @param count    number of packets
+	 * @param nanoTime if true, the file has nanosecond timestamps
+	 * @return the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected static Path generateSavefile(Path file, int count, boolean nanoTime) throws IOException {
+		try (var gen = new TrafficGenerator(13).setStartTime(Instant.ofEpochSecond(1000, 123_456_789));
+				var writer = new PcapFileWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), PcapDlt.EN10MB, 1514,
+						nanoTime, PcapFileWriter.DEFAULT_BUFFER_SIZE)) {
+			gen.dispatch(count, writer);
+		}
+
+		return file;
+	}
+
+	/**
+	 * Writes a generated nanosecond savefile from native headers, as delivered by
+	 * a handle opened with nanosecond precision, and passes every header and
+	 * packet written to a sink.
+	 *
+	 * @param file  the file
+	 * @param count number of packets
+	 * @param sink  the sink
+	 * @return the file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected static Path generateNanoHeaders(Path file, int count, HeaderSink sink) throws IOException {
+		var abi = PcapHeaderABI.nativeAbi();
+
+		try (var arena = Arena.ofConfined();
+				var gen = new TrafficGenerator(13).setStartTime(Instant.ofEpochSecond(1000, 123_456_789));
+				var writer = new PcapFileWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), PcapDlt.EN10MB, 1514,
+						true, PcapFileWriter.DEFAULT_BUFFER_SIZE)) {
+			MemorySegment header = arena.allocate(abi.headerLength());
+
+			for (int i = 0; i < count; i++) {
+				int len = gen.next();
+				long nanos = gen.timeNanos();
+
+				abi.tvSec(header, nanos / 1_000_000_000L);
+				abi.tvUsec(header, nanos % 1_000_000_000L);
+				abi.captureLength(header, len);
+				abi.wireLength(header, len);
+
+				writer.writePacket(header, gen.packet());
+				sink.accept(header, gen.packet());
+			}
+		}
+
+		return file;
+	}
+
+	/**
+	 * Summarizes a packet's header fields and contents, to compare packets read
+	 * in different ways.
+	 *
+	 * @param packet the packet
+	 * @return the summary
+	 */
+	protected static String summarize(PcapPacketRef packet) {
+		return "%d.%09d %d/%d %08x".formatted(packet.tvSec(), packet.tvUsec(), packet.captureLength(),
+				packet.wireLength(), Arrays.hashCode(packet.toArray()));
+	}
+
 }
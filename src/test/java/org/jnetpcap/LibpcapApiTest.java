@@ -23,12 +23,18 @@ import static org.jnetpcap.AbstractTestBase.TestPacket.*;
 import static org.jnetpcap.constant.PcapConstants.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -41,11 +47,15 @@ import org.jnetpcap.constant.PcapCode;
 import org.jnetpcap.constant.PcapConstants;
 import org.jnetpcap.constant.PcapDirection;
 import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapHeaderValidation;
 import org.jnetpcap.constant.PcapTStampPrecision;
 import org.jnetpcap.constant.PcapTstampType;
 import org.jnetpcap.internal.PcapHeaderABI;
 import org.jnetpcap.util.NetIp4Address;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapMetrics;
 import org.jnetpcap.util.PcapPacketRef;
+import org.jnetpcap.util.PcapStatsSampler;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Disabled;
@@ -944,6 +954,30 @@ class LibpcapApiTest extends AbstractTestBase {
 		assertEquals(LOOP_OK_STATUS, pcap.loop(PACKET_COUNT, HANDLER, USER));
 	}
 
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.Pcap#setHeaderValidation(org.jnetpcap.constant.PcapHeaderValidation)}.
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testSetHeaderValidation_OfflineHandle() throws PcapException {
+		var pcap = pcapOpenOfflineTestHandle();
+
+		final int PACKET_COUNT = 5;
+		final int LOOP_OK_STATUS = 0;
+		final PcapHandler.OfArray<String> HANDLER = (user, header, packet) -> {
+			assertEquals(header.captureLength(), packet.length);
+		};
+
+		for (PcapHeaderValidation policy : PcapHeaderValidation.values()) {
+			pcap.setHeaderValidation(policy);
+
+			assertEquals(policy, pcap.getHeaderValidation());
+			assertEquals(LOOP_OK_STATUS, pcap.loop(PACKET_COUNT, HANDLER, ""));
+		}
+	}
+
 	/**
 	 * Test method for
 	 * {@link org.jnetpcap.Pcap#loopRaw(int, org.jnetpcap.PcapHandler.OfRawPacket, MemorySegment)}.
@@ -1047,6 +1081,188 @@ class LibpcapApiTest extends AbstractTestBase {
 		assertNotEquals(MemorySegment.NULL, ref.data());
 	}
 
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.Pcap#nextEx(org.jnetpcap.util.PcapCursor)}.
+	 * 
+	 * @throws PcapException
+	 * @throws TimeoutException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testNextExCursor_OfflineHandle() throws PcapException, TimeoutException {
+		var pcap = pcapOpenOfflineTestHandle();
+		var cursor = new PcapCursor();
+
+		int count = 0;
+		while (pcap.nextEx(cursor)) {
+			assertEquals(cursor.captureLength(), cursor.data().byteSize());
+			assertArrayEquals(cursor.toArray(), cursor.toPacketRef().toArray());
+			count++;
+		}
+
+		assertTrue(count > 0);
+		assertFalse(cursor.isBound());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#stream()}.
+	 * 
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testStream_OfflineHandle() throws PcapException {
+		var stats = pcapOpenOfflineTestHandle().stream()
+				.mapToInt(PcapPacketRef::captureLength)
+				.summaryStatistics();
+
+		var list = pcapOpenOfflineTestHandle().stream()
+				.parallel()
+				.map(PcapPacketRef::toArray)
+				.toList();
+
+		assertTrue(stats.getCount() > 0);
+		assertEquals(stats.getCount(), list.size());
+		assertEquals(stats.getSum(), list.stream().mapToLong(a -> a.length).sum());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#stream()} after packets were
+	 * already read from the handle.
+	 *
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testStream_ContinuesFromCurrentPacket() throws PcapException {
+		long total = pcapOpenOfflineTestHandle().stream().count();
+
+		Pcap pcap = pcapOpenOfflineTestHandle();
+		assertNotNull(pcap.next());
+
+		assertEquals(total - 1, pcap.stream().parallel().count());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#stream()} on savefiles large
+	 * enough to be split. A parallel stream must return the same packets and
+	 * timestamps as a sequential one, with and without a filter, and for files of
+	 * either timestamp precision.
+	 *
+	 * @throws PcapException
+	 * @throws IOException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testStream_ParallelMatchesSequential(TestInfo info) throws PcapException, IOException {
+		for (boolean nano : new boolean[] { false, true }) {
+			Path file = generateSavefile(tempFile(info, nano ? "ns.pcap" : "pcap").toPath(), 20_000, nano);
+			assertTrue(Files.size(file) > 4 * 1024 * 1024);
+
+			List<String> all = streamSummaries(file, null, false);
+			assertEquals(20_000, all.size());
+			assertEquals(all, streamSummaries(file, null, true));
+
+			List<String> tcp = streamSummaries(file, "tcp", false);
+			assertTrue(tcp.size() > 0 && tcp.size() < all.size(), "tcp " + tcp.size());
+			assertEquals(tcp, streamSummaries(file, "tcp", true));
+
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Summarizes every packet of a stream over an offline handle.
+	 *
+	 * @param file     the savefile
+	 * @param filter   optional filter expression or null
+	 * @param parallel if true, a parallel stream is used
+	 * @return the packet summaries, in order
+	 * @throws PcapException
+	 */
+	private List<String> streamSummaries(Path file, String filter, boolean parallel) throws PcapException {
+		try (Pcap pcap = Pcap.openOffline(file.toString())) {
+			if (filter != null)
+				pcap.setFilter(pcap.compile(filter, true));
+
+			Stream<PcapPacketRef> stream = pcap.stream();
+			if (parallel)
+				stream = stream.parallel();
+
+			return stream.map(AbstractTestBase::summarize).toList();
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.Pcap#dispatch(int, PcapHandler.NativeCallback, MemorySegment)}
+	 * called from within a handler of the same handle. The nested dispatch must
+	 * restore the outer handler and user pointer when it returns.
+	 *
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testDispatch_NestedRestoresOuterHandlerAndUser() throws PcapException {
+		Pcap pcap = pcapOpenOfflineTestHandle();
+		MemorySegment outerUser = MemorySegment.ofAddress(0x1111);
+		MemorySegment innerUser = MemorySegment.ofAddress(0x2222);
+		var calls = new ArrayList<String>();
+
+		int count = pcap.dispatch(2, (PcapHandler.NativeCallback) (user, header, packet) -> {
+			calls.add("outer:%x".formatted(user.address()));
+
+			if (calls.size() == 1)
+				pcap.dispatch(1, (PcapHandler.NativeCallback) (u, h, p) -> {
+					calls.add("inner:%x".formatted(u.address()));
+				}, innerUser);
+		}, outerUser);
+
+		assertEquals(2, count);
+		assertEquals(List.of("outer:1111", "inner:2222", "outer:1111"), calls);
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#setMetricsEnabled(boolean)} and
+	 * {@link org.jnetpcap.Pcap#metrics()}.
+	 * 
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testMetrics_OfflineHandle() throws PcapException {
+		var pcap = pcapOpenOfflineTestHandle();
+		assertFalse(pcap.metrics().enabled());
+
+		pcap.setMetricsEnabled(true);
+
+		final long[] bytes = new long[1];
+		final PcapHandler.OfArray<String> HANDLER = (user, header, packet) -> {
+			bytes[0] += packet.length;
+		};
+
+		int count = pcap.loop(-1, HANDLER, "");
+
+		PcapMetrics metrics = pcap.metrics();
+		assertTrue(metrics.enabled());
+		assertTrue(metrics.packets() > 0);
+		assertEquals(bytes[0], metrics.bytes());
+		assertEquals(metrics.packets(), metrics.callbacks());
+		assertEquals(metrics.callbacks(), metrics.callbackLatency().count());
+		assertEquals(0, metrics.exceptions());
+		assertTrue(count >= 0);
+
+		pcap.setMetricsEnabled(false);
+		assertSame(PcapMetrics.DISABLED, pcap.metrics());
+	}
+
 	/**
 	 * Test method for
 	 * {@link org.jnetpcap.Pcap#offlineFilter(org.jnetpcap.BpFilter, java.lang.foreign.MemorySegment, java.lang.foreign.MemorySegment)}.
@@ -1118,6 +1334,44 @@ class LibpcapApiTest extends AbstractTestBase {
 		}
 	}
 
+	/**
+	 * Test method for the {@code injectBatch} overloads, on a dead handle where
+	 * every {@code pcap_inject} call fails. Each failure must be recorded in its
+	 * result slot without aborting the rest of the batch.
+	 *
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testInjectBatch_DeadHandleRecordsEveryError() throws PcapException {
+		try (Pcap pcap = Pcap.openDead(PcapDlt.EN10MB, MAX_SNAPLEN)) {
+			int[] results = new int[3];
+
+			assertEquals(0, pcap.injectBatch(new byte[][] { new byte[60], new byte[100], new byte[1514] }, results));
+			assertTrue(Arrays.stream(results).allMatch(r -> r < 0), Arrays.toString(results));
+
+			Arrays.fill(results, 1);
+			ByteBuffer direct = ByteBuffer.allocateDirect(200).position(20).limit(120);
+			ByteBuffer heap = ByteBuffer.wrap(new byte[80], 10, 64);
+			assertEquals(0, pcap.injectBatch(new ByteBuffer[] { direct, heap, ByteBuffer.allocate(60) }, results));
+			assertTrue(Arrays.stream(results).allMatch(r -> r < 0), Arrays.toString(results));
+			assertEquals(20, direct.position(), "buffer positions not modified");
+
+			/*
+			 * Packets far into the array, out of order. Without rebasing on the
+			 * smallest offset, the staged offsets would fall outside the staging
+			 * buffer.
+			 */
+			Arrays.fill(results, 1);
+			byte[] buffer = new byte[128 * 1024];
+			int[] offsets = { 100_000, 70_000, 70_030 };
+			int[] lengths = { 60, 64, 60 };
+			assertEquals(0, pcap.injectBatch(buffer, offsets, lengths, 3, results));
+			assertTrue(Arrays.stream(results).allMatch(r -> r < 0), Arrays.toString(results));
+		}
+	}
+
 	/**
 	 * Test method for
 	 * {@link org.jnetpcap.Pcap#openLive(java.lang.String, int, boolean, long, java.util.concurrent.TimeUnit)}.
@@ -1155,6 +1409,36 @@ class LibpcapApiTest extends AbstractTestBase {
 		}
 	}
 
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#openOffline(MemorySegment)} and
+	 * {@link org.jnetpcap.Pcap#openOffline(java.io.InputStream)}.
+	 * 
+	 * @throws PcapException
+	 * @throws IOException
+	 */
+	@Test
+	@Tag("offline-capture")
+	@Tag("user-permission")
+	void testOpenOffline_FromMemory() throws PcapException, IOException {
+		final PcapHandler.OfArray<String> HANDLER = (user, header, packet) -> {/* discard */};
+
+		int expected;
+		try (Pcap pcap = Pcap.openOffline(OFFLINE_FILE)) {
+			expected = pcap.loop(-1, HANDLER, "");
+		}
+
+		byte[] savefile = Files.readAllBytes(Path.of(OFFLINE_FILE));
+
+		try (Pcap pcap = Pcap.openOffline(MemorySegment.ofArray(savefile))) {
+			assertEquals(expected, pcap.loop(-1, HANDLER, ""));
+		}
+
+		try (Pcap pcap = Pcap.openOffline(new ByteArrayInputStream(savefile))) {
+			assertEquals(PcapDlt.EN10MB, pcap.datalink());
+			assertEquals(expected, pcap.loop(-1, HANDLER, ""));
+		}
+	}
+
 	/**
 	 * Test method for {@link org.jnetpcap.Pcap#order()}.
 	 * 
@@ -1794,6 +2078,31 @@ class LibpcapApiTest extends AbstractTestBase {
 		);
 	}
 
+	/**
+	 * Test method for {@link org.jnetpcap.Pcap#stats(MemorySegment)} and
+	 * {@link org.jnetpcap.util.PcapStatsSampler}.
+	 * 
+	 * @throws PcapException
+	 */
+	@Test
+	@Tag("live-capture")
+	@Tag("sudo-permission")
+	void testStatsSampler_LiveHandle() throws PcapException {
+		var pcap = super.pcapCreateTestHandle();
+		pcap.activate();
+
+		try (var sampler = new PcapStatsSampler(pcap, Duration.ofSeconds(1), 8)) {
+			assertEquals(0, sampler.sample());
+			assertEquals(1, sampler.sample());
+			assertEquals(2, sampler.sample());
+
+			assertTrue(sampler.isAvailable(2));
+			assertFalse(sampler.isAvailable(3));
+			assertTrue(sampler.elapsedNanos(2) > 0);
+			assertTrue(sampler.dropRatio(2) >= 0 && sampler.dropRatio(2) <= 1);
+		}
+	}
+
 	/**
 	 * Test method for
 	 * {@link org.jnetpcap.Pcap#statusToStr(org.jnetpcap.constant.PcapCode)}.
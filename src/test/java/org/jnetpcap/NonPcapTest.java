@@ -19,13 +19,83 @@ package org.jnetpcap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
+import org.jnetpcap.AbstractTestBase.TestPacket.PacketTemplates;
 import org.jnetpcap.Pcap.LibraryPolicy;
+import org.jnetpcap.constant.PcapDirection;
+import org.jnetpcap.constant.PcapDlt;
+import org.jnetpcap.constant.PcapTStampPrecision;
+import org.jnetpcap.dissect.PacketDissector;
+import org.jnetpcap.flow.FlowAffinityDispatcher;
+import org.jnetpcap.flow.FlowHash;
+import org.jnetpcap.flow.FlowTable;
+import org.jnetpcap.internal.PcapHeaderABI;
+import org.jnetpcap.io.CompressionMetrics;
+import org.jnetpcap.io.GzipPcapReader;
+import org.jnetpcap.io.ParallelGzipChannel;
+import org.jnetpcap.io.PcapFileWriter;
+import org.jnetpcap.io.PcapngFileWriter;
+import org.jnetpcap.io.PcapFlowIndex;
+import org.jnetpcap.io.PcapFlowIndexWriter;
+import org.jnetpcap.io.PcapTimeIndex;
+import org.jnetpcap.io.PcapTimeIndexWriter;
+import org.jnetpcap.io.TrafficGenerator;
+import org.jnetpcap.transmit.PacketTransmitter;
+import org.jnetpcap.transmit.Pacing;
+import org.jnetpcap.transmit.PcapReplay;
+import org.jnetpcap.transmit.ReplayReport;
+import org.jnetpcap.transmit.SendQueue;
+import org.jnetpcap.internal.ForeignInitializer;
+import org.jnetpcap.internal.PcapForeignDowncall;
+import org.jnetpcap.internal.PcapPacketSpliterator;
+import org.jnetpcap.internal.PcapSavefile;
+import org.jnetpcap.internal.PcapStatRecord;
+import org.jnetpcap.internal.PcapStatsEvent;
+import org.jnetpcap.internal.StagingBuffer;
+import org.jnetpcap.util.LatencyHistogram;
+import org.jnetpcap.util.PcapCursor;
+import org.jnetpcap.util.PcapPacketRef;
+import org.jnetpcap.util.PcapUtils;
 import org.jnetpcap.util.PcapVersionException;
+import org.jnetpcap.windows.PcapSendQueue;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
 /**
  * @author Sly Technologies Inc
  * @author repos@slytechs.com
@@ -111,4 +181,1061 @@ class NonPcapTest extends AbstractTestBase {
 		}
 	}
 
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.util.PcapCursor#bind(PcapHeaderABI, long, long)}, which
+	 * must decode headers of every ABI the same as {@link PcapHeaderABI}.
+	 */
+	@Test
+	void testPcapCursor_BindsEveryAbi() {
+		var cursor = new PcapCursor();
+
+		try (var arena = Arena.ofConfined()) {
+			MemorySegment header = arena.allocate(24);
+			MemorySegment data = arena.allocate(64);
+
+			for (PcapHeaderABI abi : PcapHeaderABI.values()) {
+				long tvSec = (abi.headerLength() == 24) ? (1L << 33) + 5 : 0xF0000005L;
+
+				header.fill((byte) 0);
+				abi.tvSec(header, tvSec);
+				abi.tvUsec(header, 999_999);
+				abi.captureLength(header, 60);
+				abi.wireLength(header, 1514);
+
+				cursor.bind(abi, header.address(), data.address());
+
+				assertEquals(tvSec, cursor.tvSec(), abi.name());
+				assertEquals(999_999, cursor.tvUsec(), abi.name());
+				assertEquals(60, cursor.captureLength(), abi.name());
+				assertEquals(1514, cursor.wireLength(), abi.name());
+				assertEquals(abi.tvSec(header), cursor.tvSec(), abi.name());
+				assertEquals(abi.tvUsec(header), cursor.tvUsec(), abi.name());
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.dissect.PacketDissector#dissect(java.lang.foreign.MemorySegment)}.
+	 */
+	@Test
+	void testPacketDissector_VlanIpv4Tcp() {
+		var dissector = new PacketDissector(PcapDlt.EN10MB);
+		byte[] tcp = new PacketTemplates().tcpArray();
+
+		assertTrue(dissector.dissect(MemorySegment.ofArray(tcp)));
+		assertEquals(PacketDissector.ETHERTYPE_IPV4, dissector.etherType());
+		assertEquals(14, dissector.l3Offset());
+		assertEquals(34, dissector.l4Offset());
+		assertEquals(PacketDissector.IPPROTO_TCP, dissector.ipProtocol());
+		assertEquals(57678, dissector.srcPort());
+		assertEquals(80, dissector.dstPort());
+		assertEquals(0, dissector.payloadLength());
+
+		/* Insert an 802.1Q tag with VLAN id 100 after the MAC addresses */
+		byte[] vlan = new byte[tcp.length + 4];
+		System.arraycopy(tcp, 0, vlan, 0, 12);
+		System.arraycopy(PcapUtils.parseHexString("81000064"), 0, vlan, 12, 4);
+		System.arraycopy(tcp, 12, vlan, 16, tcp.length - 12);
+
+		assertTrue(dissector.dissect(MemorySegment.ofArray(vlan)));
+		assertEquals(1, dissector.vlanCount());
+		assertEquals(100, dissector.outerVlanId());
+		assertEquals(18, dissector.l3Offset());
+		assertEquals(80, dissector.dstPort());
+
+		/* Truncated by snaplen within the TCP header */
+		assertTrue(dissector.dissect(MemorySegment.ofArray(tcp).asSlice(0, 40)));
+		assertEquals(-1, dissector.l4Offset());
+		assertEquals(-1, dissector.srcPort());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.flow.FlowHash} and
+	 * {@link org.jnetpcap.flow.FlowAffinityDispatcher}.
+	 */
+	@Test
+	void testFlowAffinityDispatcher_BothDirectionsSameWorker() {
+		byte[] forward = new PacketTemplates().tcpArray();
+
+		/* Swap IPv4 addresses and TCP ports for the reverse direction */
+		byte[] reverse = forward.clone();
+		System.arraycopy(forward, 26, reverse, 30, 4);
+		System.arraycopy(forward, 30, reverse, 26, 4);
+		System.arraycopy(forward, 34, reverse, 36, 2);
+		System.arraycopy(forward, 36, reverse, 34, 2);
+
+		var dissector = new PacketDissector(PcapDlt.EN10MB);
+		for (FlowHash hash : new FlowHash[] { FlowHash.SYMMETRIC, FlowHash.TOEPLITZ_SYMMETRIC }) {
+			assertTrue(dissector.dissect(MemorySegment.ofArray(forward)));
+			int h1 = hash.hash(MemorySegment.ofArray(forward), dissector);
+
+			assertTrue(dissector.dissect(MemorySegment.ofArray(reverse)));
+			int h2 = hash.hash(MemorySegment.ofArray(reverse), dissector);
+
+			assertEquals(h1, h2);
+		}
+
+		var abi = PcapHeaderABI.compactAbi();
+		var workers = ConcurrentHashMap.<Integer>newKeySet();
+		var count = new AtomicInteger();
+
+		try (var arena = Arena.ofConfined()) {
+			MemorySegment header = arena.allocate(abi.headerLength());
+			abi.captureLength(header, forward.length);
+			abi.wireLength(header, forward.length);
+
+			MemorySegment fwd = arena.allocate(forward.length);
+			MemorySegment rev = arena.allocate(reverse.length);
+			fwd.copyFrom(MemorySegment.ofArray(forward));
+			rev.copyFrom(MemorySegment.ofArray(reverse));
+
+			try (var fanout = new FlowAffinityDispatcher(abi, PcapDlt.EN10MB.getAsInt(), 4,
+					FlowAffinityDispatcher.DEFAULT_RING_SIZE, FlowHash.SYMMETRIC, false,
+					(worker, hash, tvSec, tvUsec, wireLength, packet) -> {
+						workers.add(worker);
+						count.incrementAndGet();
+					})) {
+
+				fanout.start();
+
+				for (int i = 0; i < 1000; i++)
+					fanout.nativeCallback(MemorySegment.NULL, header, (i & 1) == 0 ? fwd : rev);
+			}
+		}
+
+		assertEquals(1000, count.get());
+		assertEquals(1, workers.size());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.flow.FlowTable}.
+	 */
+	@Test
+	void testFlowTable_IdleAndActiveTimeouts() {
+		byte[] forward = new PacketTemplates().tcpArray();
+		byte[] reverse = forward.clone();
+		System.arraycopy(forward, 26, reverse, 30, 4);
+		System.arraycopy(forward, 30, reverse, 26, 4);
+		System.arraycopy(forward, 34, reverse, 36, 2);
+		System.arraycopy(forward, 36, reverse, 34, 2);
+
+		var dissector = new PacketDissector(PcapDlt.EN10MB);
+		var expired = new ArrayList<String>();
+
+		try (var table = new FlowTable(1000, Duration.ofSeconds(10), Duration.ofSeconds(60),
+				(t, slot, reason) -> expired.add(reason + ":" + t.srcPort(slot) + ":" + t.packets(slot)))) {
+
+			MemorySegment fwd = MemorySegment.ofArray(forward);
+			MemorySegment rev = MemorySegment.ofArray(reverse);
+
+			dissector.dissect(fwd);
+			int slot = table.update(fwd, dissector, 100, 0, forward.length);
+			assertEquals(slot, table.update(fwd, dissector, 101, 0, forward.length));
+
+			dissector.dissect(rev);
+			table.update(rev, dissector, 101, 0, reverse.length);
+
+			assertEquals(2, table.size());
+			assertEquals(2, table.packets(slot));
+			assertEquals(2L * forward.length, table.bytes(slot));
+			assertEquals(57678, table.srcPort(slot));
+			assertArrayEquals(new byte[] { forward[26], forward[27], forward[28], forward[29] },
+					table.srcAddress(slot));
+
+			table.advanceTime(110);
+			assertEquals(0, expired.size());
+
+			table.advanceTime(112);
+			assertEquals(2, table.size() + expired.size());
+			assertTrue(expired.contains("IDLE:57678:2"));
+			assertTrue(expired.contains("IDLE:80:1"));
+			assertEquals(0, table.size());
+
+			/* Keep a flow busy past the active timeout */
+			expired.clear();
+			dissector.dissect(fwd);
+			for (long t = 200; t <= 270; t += 5)
+				table.update(fwd, dissector, t, 0, forward.length);
+
+			assertEquals(1, expired.size());
+			assertEquals("ACTIVE:57678:12", expired.get(0));
+
+			table.flush();
+			assertEquals("FLUSH:57678:3", expired.get(1));
+			assertEquals(0, table.size());
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.internal.PcapStatRecord#ofMemory(MemorySegment, boolean)}.
+	 */
+	@Test
+	void testPcapStatRecord_ReadsEachField() {
+		int[] fields = { 1, 2, 3, 4, 5, -1 };
+		MemorySegment mseg = MemorySegment.ofArray(new int[fields.length]);
+		for (int i = 0; i < fields.length; i++)
+			mseg.setAtIndex(ValueLayout.JAVA_INT, i, fields[i]);
+
+		var stat = PcapStatRecord.ofMemory(mseg, true);
+
+		assertEquals(1, stat.recv());
+		assertEquals(2, stat.drop());
+		assertEquals(3, stat.ifdrop());
+		assertEquals(4, stat.capt());
+		assertEquals(5, stat.sent());
+		assertEquals(0xFFFF_FFFFL, stat.netdrop());
+		assertEquals(2, PcapStatRecord.readDrop(mseg));
+
+		var unix = PcapStatRecord.ofMemory(mseg, false);
+
+		assertEquals(3, unix.ifdrop());
+		assertEquals(0, unix.capt());
+		assertEquals(0, unix.netdrop());
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.internal.PcapStatsEvent#emit(MemorySegment)}.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapStatsEvent_RecordedByJfr() throws IOException {
+		MemorySegment mseg = MemorySegment.ofArray(new int[] { 10, 2, 1 });
+		Path file = Files.createTempFile("jnetpcap-stats", ".jfr");
+
+		try (var recording = new Recording()) {
+			recording.enable("org.jnetpcap.Stats");
+			recording.start();
+			PcapStatsEvent.emit(mseg);
+			recording.stop();
+			recording.dump(file);
+
+			var events = RecordingFile.readAllEvents(file);
+			assertEquals(1, events.size());
+			assertEquals(10, events.get(0).getLong("recv"));
+			assertEquals(2, events.get(0).getLong("drop"));
+			assertEquals(1, events.get(0).getLong("ifdrop"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.TrafficGenerator} and
+	 * {@link org.jnetpcap.io.PcapFileWriter}.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testTrafficGenerator_WritesMonotonicSavefile() throws IOException {
+		var out = new ByteArrayOutputStream();
+		int count = 1000;
+
+		try (var gen = new TrafficGenerator(42)
+				.setFlowCount(100)
+				.setTcpRatio(0.5)
+				.setPacketsPerSecond(3)
+				.setStartTime(Instant.ofEpochSecond(1000));
+				var writer = new PcapFileWriter(Channels.newChannel(out), PcapDlt.EN10MB, 1024, false, 4096)) {
+
+			assertEquals(count, gen.dispatch(count, writer));
+			assertEquals(count, writer.packetCount());
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.nativeOrder());
+		assertEquals(PcapFileWriter.MAGIC_MICROS, buf.getInt(0));
+		assertEquals(1024, buf.getInt(16));
+		assertEquals(PcapDlt.EN10MB.getAsInt(), buf.getInt(20));
+
+		long lastMicros = 0;
+		int records = 0;
+		for (int pos = PcapFileWriter.FILE_HEADER_LENGTH; pos < buf.limit(); records++) {
+			long micros = buf.getInt(pos) * 1_000_000L + buf.getInt(pos + 4);
+			int caplen = buf.getInt(pos + 8);
+			int wirelen = buf.getInt(pos + 12);
+
+			assertTrue(micros >= lastMicros, "timestamps must not go backwards");
+			assertEquals(Math.min(wirelen, 1024), caplen);
+			assertTrue(wirelen >= TrafficGenerator.MIN_FRAME_SIZE && wirelen <= 1514);
+
+			int ip = pos + PcapFileWriter.RECORD_HEADER_LENGTH + 14;
+			int sum = 0;
+			for (int i = 0; i < 20; i += 2)
+				sum += ((buf.get(ip + i) & 0xFF) << 8) | (buf.get(ip + i + 1) & 0xFF);
+			sum = (sum & 0xFFFF) + (sum >>> 16);
+			assertEquals(0xFFFF, sum, "IPv4 header checksum");
+
+			lastMicros = micros;
+			pos += PcapFileWriter.RECORD_HEADER_LENGTH + caplen;
+		}
+
+		assertEquals(count, records);
+		assertEquals(1000_000_000L + (count - 1) * 1_000_000L / 3, lastMicros, 1);
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.io.PcapFileWriter#writePacket(MemorySegment, MemorySegment)},
+	 * converting native headers of either precision to the file's precision.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapFileWriter_ConvertsHeaderPrecision() throws IOException {
+		var abi = PcapHeaderABI.nativeAbi();
+
+		for (var headerPrecision : PcapTStampPrecision.values()) {
+			boolean headerNano = (headerPrecision == PcapTStampPrecision.TSTAMP_PRECISION_NANO);
+
+			for (boolean fileNano : new boolean[] { false, true }) {
+				var out = new ByteArrayOutputStream();
+
+				try (var arena = Arena.ofConfined();
+						var writer = new PcapFileWriter(Channels.newChannel(out), PcapDlt.EN10MB, 1514, fileNano,
+								4096, headerPrecision)) {
+					MemorySegment header = arena.allocate(abi.headerLength());
+					MemorySegment packet = arena.allocate(64);
+					abi.tvSec(header, 1000);
+					abi.tvUsec(header, headerNano ? 123_456_789 : 123_456);
+					abi.captureLength(header, 64);
+					abi.wireLength(header, 64);
+
+					writer.writePacket(header, packet);
+				}
+
+				var file = PcapSavefile.of(MemorySegment.ofArray(out.toByteArray())).orElseThrow();
+				long expected = fileNano ? (headerNano ? 123_456_789 : 123_456_000) : 123_456;
+
+				assertEquals(1000, file.tvSec(file.firstRecord()), headerPrecision + " to nano " + fileNano);
+				assertEquals(expected, file.tvUsec(file.firstRecord()), headerPrecision + " to nano " + fileNano);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.internal.PcapPacketSpliterator}, which
+	 * in a parallel stream must split a savefile larger than its split size and
+	 * still produce every record in order.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapPacketSpliterator_SplitsMappedSavefile() throws IOException {
+		Path file = generateSavefile(Files.createTempFile("jnetpcap-stream-", ".pcap"), 20_000, false);
+
+		try {
+			assertTrue(Files.size(file) > 4 * 1024 * 1024, "file too small to split: " + Files.size(file));
+
+			var savefile = PcapSavefile.map(file);
+			var expected = new ArrayList<String>();
+			for (long off = savefile.firstRecord(); savefile.hasRecord(off); off = savefile.nextRecord(off))
+				expected.add(summarize(new PcapPacketRef(savefile.abi(), savefile.header(off), savefile.data(off))));
+
+			/* No pcap handle, every element must come from the mapped file */
+			var spliterator = new PcapPacketSpliterator(null, file, false);
+			assertNotNull(spliterator.trySplit());
+			assertTrue(spliterator.estimateSize() < expected.size());
+
+			var parallel = StreamSupport.stream(new PcapPacketSpliterator(null, file, false), true)
+					.map(AbstractTestBase::summarize)
+					.toList();
+			assertEquals(expected, parallel);
+
+			/* A handle in another precision, or without a file, is never mapped */
+			assertNull(new PcapPacketSpliterator(null, file, true).trySplit());
+			assertNull(new PcapPacketSpliterator(null, null, false).trySplit());
+
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.GzipPcapReader}, reading a two member
+	 * gzip stream through chunks small enough for records to straddle them.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testGzipPcapReader_MatchesUncompressedRecords() throws IOException {
+		var out = new ByteArrayOutputStream();
+		int count = 500;
+
+		try (var gen = new TrafficGenerator(7).setStartTime(Instant.ofEpochSecond(1000));
+				var writer = new PcapFileWriter(Channels.newChannel(out), PcapDlt.EN10MB, 1514, true, 4096)) {
+			gen.dispatch(count, writer);
+		}
+
+		byte[] raw = out.toByteArray();
+		var gz = new ByteArrayOutputStream();
+		for (int half = 0; half < 2; half++) {
+			try (var member = new GZIPOutputStream(gz) {
+				@Override
+				public void close() throws IOException {
+					finish();
+				}
+			}) {
+				int from = half * (raw.length / 2);
+				member.write(raw, from, (half == 0) ? raw.length / 2 : raw.length - from);
+			}
+		}
+
+		PcapSavefile expected = PcapSavefile.of(MemorySegment.ofArray(raw)).orElseThrow();
+		long[] offset = { expected.firstRecord() };
+		var abi = PcapHeaderABI.nativeAbi();
+
+		try (var reader = new GzipPcapReader(Channels.newChannel(new ByteArrayInputStream(gz.toByteArray())), 4096, 2)) {
+			assertEquals(PcapDlt.EN10MB, reader.dlt());
+			assertTrue(reader.isNanoTime());
+
+			long n = reader.dispatch(-1, (PcapHandler.OfMemorySegment<PcapSavefile>) (file, header, packet) -> {
+				long off = offset[0];
+				int caplen = abi.captureLength(header);
+
+				assertEquals(file.captureLength(off), caplen);
+				assertEquals(file.wireLength(off), abi.wireLength(header));
+				assertEquals(file.tvUsec(off) / 1000, abi.tvUsec(header));
+				assertEquals(-1, MemorySegment.mismatch(file.data(off), 0, caplen, packet, 0, caplen));
+
+				offset[0] = file.nextRecord(off);
+			}, expected);
+
+			assertEquals(count, n);
+			assertEquals(raw.length, reader.byteCount());
+			assertEquals(0, reader.dispatch(-1, (PcapHandler.OfMemorySegment<Object>) (u, h, p) -> fail(), null));
+		}
+
+		byte[] truncated = Arrays.copyOf(gz.toByteArray(), gz.size() - 100);
+		try (var reader = new GzipPcapReader(Channels.newChannel(new ByteArrayInputStream(truncated)), 4096, 2)) {
+			assertThrows(IOException.class, () -> reader.dispatch(-1,
+					(PcapHandler.OfMemorySegment<Object>) (u, h, p) -> {}, null));
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.io.GzipPcapReader#dispatch(long, PcapFileWriter)},
+	 * copying a nanosecond file into writers of both precisions.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testGzipPcapReader_DispatchToWriterKeepsPrecision() throws IOException {
+		var out = new ByteArrayOutputStream();
+		int count = 100;
+
+		try (var gen = new TrafficGenerator(5).setStartTime(Instant.ofEpochSecond(1000, 123_456_789));
+				var writer = new PcapFileWriter(Channels.newChannel(out), PcapDlt.EN10MB, 1514, true, 4096)) {
+			gen.dispatch(count, writer);
+		}
+
+		byte[] raw = out.toByteArray();
+		var gz = new ByteArrayOutputStream();
+		try (var gzip = new GZIPOutputStream(gz)) {
+			gzip.write(raw);
+		}
+
+		PcapSavefile source = PcapSavefile.of(MemorySegment.ofArray(raw)).orElseThrow();
+
+		for (boolean nano : new boolean[] { true, false }) {
+			var copy = new ByteArrayOutputStream();
+
+			try (var reader = new GzipPcapReader(Channels.newChannel(new ByteArrayInputStream(gz.toByteArray())),
+					4096, 2);
+					var writer = new PcapFileWriter(Channels.newChannel(copy), PcapDlt.EN10MB, 1514, nano, 4096)) {
+				assertEquals(count, reader.dispatch(-1, writer));
+			}
+
+			PcapSavefile copied = PcapSavefile.of(MemorySegment.ofArray(copy.toByteArray())).orElseThrow();
+			assertEquals(nano, copied.isNanoTime());
+
+			long from = source.firstRecord(), to = copied.firstRecord();
+			for (int i = 0; i < count; i++) {
+				assertEquals(source.tvSec(from), copied.tvSec(to));
+				assertEquals(nano ? source.tvUsec(from) : source.tvUsec(from) / 1000, copied.tvUsec(to));
+				assertEquals(source.captureLength(from), copied.captureLength(to));
+				assertEquals(source.wireLength(from), copied.wireLength(to));
+
+				from = source.nextRecord(from);
+				to = copied.nextRecord(to);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.ParallelGzipChannel}, which must
+	 * produce a stream identical to the uncompressed writer once decompressed.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testParallelGzipChannel_WritesMembersInOrder() throws IOException {
+		int count = 2000;
+
+		var raw = new ByteArrayOutputStream();
+		try (var gen = new TrafficGenerator(11).setStartTime(Instant.ofEpochSecond(1000));
+				var writer = new PcapFileWriter(Channels.newChannel(raw), PcapDlt.EN10MB, 1514, false, 16384)) {
+			gen.dispatch(count, writer);
+		}
+
+		var gz = new ByteArrayOutputStream();
+		var channel = new ParallelGzipChannel(Channels.newChannel(gz), 6, 3, 8192);
+		try (var gen = new TrafficGenerator(11).setStartTime(Instant.ofEpochSecond(1000));
+				var writer = channel.newPcapWriter(PcapDlt.EN10MB, 1514, false)) {
+			gen.dispatch(count, writer);
+		}
+
+		CompressionMetrics metrics = channel.metrics();
+		assertFalse(channel.isOpen());
+		assertEquals(raw.size(), metrics.inputBytes());
+		assertEquals(gz.size(), metrics.outputBytes());
+		assertTrue(metrics.blocks() >= raw.size() / 8192, metrics.toString());
+		assertEquals(0, metrics.pendingBlocks());
+
+		try (var in = new GZIPInputStream(new ByteArrayInputStream(gz.toByteArray()))) {
+			assertArrayEquals(raw.toByteArray(), in.readAllBytes());
+		}
+
+		/* Every member after the first must start on a record boundary */
+		PcapSavefile savefile = PcapSavefile.of(MemorySegment.ofArray(raw.toByteArray())).orElseThrow();
+		Set<Long> records = new HashSet<>();
+		for (long off = savefile.firstRecord(); savefile.hasRecord(off); off = savefile.nextRecord(off))
+			records.add(off);
+
+		byte[] compressed = gz.toByteArray();
+		byte[] scratch = new byte[8192];
+		long memberStart = 0;
+		int members = 0;
+		for (int pos = 0; pos < compressed.length; members++) {
+			if (members > 0)
+				assertTrue(records.contains(memberStart), "member %d starts mid record at %d"
+						.formatted(members, memberStart));
+
+			var inflater = new Inflater(true);
+			inflater.setInput(compressed, pos + 10, compressed.length - pos - 10);
+			try {
+				while (!inflater.finished())
+					memberStart += inflater.inflate(scratch);
+			} catch (DataFormatException e) {
+				fail(e);
+			}
+
+			pos = compressed.length - inflater.getRemaining() + 8;
+			inflater.end();
+		}
+
+		assertEquals(metrics.blocks(), members);
+
+		try (var reader = new GzipPcapReader(Channels.newChannel(new ByteArrayInputStream(gz.toByteArray())),
+				4096, 2)) {
+			assertEquals(count, reader.dispatch(-1, (PcapHandler.OfMemorySegment<Object>) (u, h, p) -> {}, null));
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.PcapTimeIndex}, written alongside a
+	 * savefile and rebuilt from it afterwards.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapTimeIndex_DispatchesOnlyWindow() throws IOException {
+		Path file = Files.createTempFile("jnetpcap-index-", ".pcap");
+		Path sidecar = PcapTimeIndex.sidecarOf(file);
+		long start = 1_000_000_000_000L;
+
+		try (var gen = new TrafficGenerator(3)
+				.setPacketsPerSecond(1000)
+				.setStartTime(Instant.ofEpochSecond(1000));
+				var writer = new PcapFileWriter(file, PcapDlt.EN10MB, 1514);
+				var index = new PcapTimeIndexWriter(sidecar, PcapTStampPrecision.TSTAMP_PRECISION_MICRO,
+						PcapFileWriter.FILE_HEADER_LENGTH, 256, Duration.ofMillis(50))) {
+
+			for (int i = 0; i < 5000; i++) {
+				int len = gen.next();
+				long micros = gen.timeNanos() / 1000;
+
+				writer.writePacket(gen.packet(), len, len, micros / 1_000_000, micros % 1_000_000);
+				index.record(micros * 1000, Math.min(len, 1514));
+			}
+
+			assertEquals(writer.byteCount(), index.offset());
+		}
+
+		try {
+			var index = PcapTimeIndex.open(file);
+			assertTrue(index.size() >= 5000 / 50, index.toString());
+			assertEquals(PcapFileWriter.FILE_HEADER_LENGTH, index.seek(0));
+
+			var rebuilt = PcapTimeIndex.build(file, 256, Duration.ofMillis(50));
+			assertEquals(index.size(), rebuilt.size());
+			for (int i = 0; i < index.size(); i++) {
+				assertEquals(index.timestampNanos(i), rebuilt.timestampNanos(i));
+				assertEquals(index.offset(i), rebuilt.offset(i));
+			}
+
+			long from = start + 2_000_000_000L;
+			long to = start + 3_000_000_000L;
+			assertTrue(index.seek(from) > PcapFileWriter.FILE_HEADER_LENGTH);
+
+			var abi = PcapHeaderABI.nativeAbi();
+			long[] bounds = { Long.MAX_VALUE, Long.MIN_VALUE };
+			long n = index.dispatch(Instant.ofEpochSecond(1002), Instant.ofEpochSecond(1003),
+					(PcapHandler.OfMemorySegment<long[]>) (b, header, packet) -> {
+						long ts = abi.tvSec(header) * 1_000_000_000L + abi.tvUsec(header) * 1000;
+						b[0] = Math.min(b[0], ts);
+						b[1] = Math.max(b[1], ts);
+					}, bounds);
+
+			assertEquals(1000, n, 1);
+			assertTrue(bounds[0] >= from && bounds[0] < from + 2_000_000L);
+			assertTrue(bounds[1] < to && bounds[1] >= to - 2_000_000L);
+
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(sidecar);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.io.PcapTimeIndexWriter#record(MemorySegment)},
+	 * recording native headers of a nanosecond handle.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapTimeIndexWriter_RecordsNanoHeaders() throws IOException {
+		Path file = Files.createTempFile("jnetpcap-index-", ".pcap");
+		Path sidecar = PcapTimeIndex.sidecarOf(file);
+
+		try (var index = new PcapTimeIndexWriter(sidecar, PcapTStampPrecision.TSTAMP_PRECISION_NANO,
+				PcapFileWriter.FILE_HEADER_LENGTH, 1, Duration.ofMillis(50))) {
+			generateNanoHeaders(file, 100, (header, packet) -> index.record(header));
+		}
+
+		try {
+			var index = PcapTimeIndex.open(file);
+			var rebuilt = PcapTimeIndex.build(file, 1, Duration.ofMillis(50));
+
+			assertEquals(100, index.size());
+			assertEquals(1000_123_456_789L, index.timestampNanos(0));
+			for (int i = 0; i < index.size(); i++) {
+				assertEquals(rebuilt.timestampNanos(i), index.timestampNanos(i));
+				assertEquals(rebuilt.offset(i), index.offset(i));
+			}
+
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(sidecar);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.PcapFlowIndex}, which must skip
+	 * chunks without the queried flow and find every packet of it.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapFlowIndex_SkipsChunksWithoutMatches() throws IOException {
+		Path file = Files.createTempFile("jnetpcap-flow-", ".pcap");
+		Path sidecar = PcapFlowIndex.sidecarOf(file);
+		int dlt = PcapDlt.EN10MB.getAsInt();
+
+		try (var gen = new TrafficGenerator(5).setFlowCount(2000);
+				var writer = new PcapFileWriter(file, PcapDlt.EN10MB, 1514);
+				var index = new PcapFlowIndexWriter(sidecar, dlt, PcapTStampPrecision.TSTAMP_PRECISION_MICRO,
+						PcapFileWriter.FILE_HEADER_LENGTH, 256, 8192, 4)) {
+
+			for (int i = 0; i < 20_000; i++) {
+				gen.next();
+				writer.writePacket(gen.header(), gen.packet());
+				index.record(gen.header(), gen.packet());
+			}
+
+			assertEquals(writer.byteCount(), index.offset());
+		}
+
+		try {
+			var index = PcapFlowIndex.open(file);
+			assertEquals((20_000 + 255) / 256, index.chunkCount());
+
+			assertEquals(dlt, index.dlt());
+
+			var query = new PcapFlowIndex.Query()
+					.host(InetAddress.getByAddress(new byte[] { 10, 0, 0, 43 }));
+
+			var savefile = PcapSavefile.map(file);
+			var dissector = new PacketDissector(dlt);
+			long expected = 0;
+			for (long off = savefile.firstRecord(); savefile.hasRecord(off); off = savefile.nextRecord(off))
+				if (dissector.dissect(savefile.data(off))
+						&& savefile.data(off).get(ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN),
+								dissector.srcAddressOffset()) == 0x0A00002B)
+					expected++;
+
+			int candidates = index.candidateCount(query);
+			assertTrue(candidates < index.chunkCount() / 2, "candidates " + candidates);
+
+			long found = index.dispatch(query, (PcapHandler.OfMemorySegment<Object>) (u, h, p) -> {}, null);
+			assertTrue(expected > 0);
+			assertEquals(expected, found);
+
+			var rebuilt = PcapFlowIndex.build(file, 256, 8192);
+			assertEquals(candidates, rebuilt.candidateCount(query));
+
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(sidecar);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.io.PcapFlowIndexWriter#record(MemorySegment, MemorySegment)},
+	 * recording native headers of a nanosecond handle.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapFlowIndexWriter_RecordsNanoHeaders() throws IOException {
+		Path file = Files.createTempFile("jnetpcap-flow-", ".pcap");
+		Path sidecar = PcapFlowIndex.sidecarOf(file);
+
+		try (var index = new PcapFlowIndexWriter(sidecar, PcapDlt.EN10MB.getAsInt(),
+				PcapTStampPrecision.TSTAMP_PRECISION_NANO, PcapFileWriter.FILE_HEADER_LENGTH, 16, 1024, 3)) {
+			generateNanoHeaders(file, 100, index::record);
+		}
+
+		try {
+			var index = PcapFlowIndex.open(file);
+			var rebuilt = PcapFlowIndex.build(file, 16, 1024);
+
+			assertEquals(rebuilt.chunkCount(), index.chunkCount());
+			assertEquals(1000_123_456_789L, index.firstTimestampNanos(0));
+			for (int i = 0; i < index.chunkCount(); i++) {
+				assertEquals(rebuilt.firstTimestampNanos(i), index.firstTimestampNanos(i));
+				assertEquals(rebuilt.lastTimestampNanos(i), index.lastTimestampNanos(i));
+			}
+
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(sidecar);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.io.PcapngFileWriter}, merging a micro
+	 * and a nanosecond interface into one section.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Test
+	void testPcapngFileWriter_WritesInterfaceAndPacketBlocks() throws IOException {
+		var out = new ByteArrayOutputStream();
+		MemorySegment packet = MemorySegment.ofArray(new byte[64]);
+
+		try (var writer = new PcapngFileWriter(Channels.newChannel(out), PcapngFileWriter.MIN_BUFFER_SIZE,
+				"merged")) {
+			assertEquals(0, writer.addInterface(PcapDlt.EN10MB, 1514, PcapTStampPrecision.TSTAMP_PRECISION_MICRO,
+					"eth0", null));
+			assertEquals(1, writer.addInterface(PcapDlt.EN10MB, 32, PcapTStampPrecision.TSTAMP_PRECISION_NANO,
+					"eth1", "truncating"));
+
+			writer.writePacket(0, packet, 64, 64, 1000, 123_456, PcapDirection.DIRECTION_IN, null);
+			writer.writePacket(1, packet, 64, 64, 1000, 123_456_789, PcapDirection.DIRECTION_OUT, "late");
+			writer.writePacket(0, new PcapHeader(1001, 7, 64, 64), packet);
+
+			assertEquals(3, writer.packetCount());
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.nativeOrder());
+		assertEquals(PcapngFileWriter.BLOCK_SHB, buf.getInt(0));
+		assertEquals(PcapngFileWriter.BYTE_ORDER_MAGIC, buf.getInt(8));
+
+		List<Integer> types = new ArrayList<>();
+		List<Integer> tsresol = new ArrayList<>();
+		List<Long> timestamps = new ArrayList<>();
+		List<Integer> caplens = new ArrayList<>();
+		List<Integer> flags = new ArrayList<>();
+
+		for (int pos = 0; pos < buf.limit();) {
+			int type = buf.getInt(pos);
+			int length = buf.getInt(pos + 4);
+			assertEquals(0, length % 4);
+			assertEquals(length, buf.getInt(pos + length - 4), "trailing block length");
+			types.add(type);
+
+			int options = switch (type) {
+			case PcapngFileWriter.BLOCK_IDB -> pos + 16;
+			case PcapngFileWriter.BLOCK_EPB -> {
+				timestamps.add(((long) buf.getInt(pos + 12) << 32) | Integer.toUnsignedLong(buf.getInt(pos + 16)));
+				caplens.add(buf.getInt(pos + 20));
+				flags.add(0);
+				yield pos + 28 + ((buf.getInt(pos + 20) + 3) & ~3);
+			}
+			default -> pos + length - 4;
+			};
+
+			for (int opt = options; opt < pos + length - 4;) {
+				int code = buf.getShort(opt);
+				int len = buf.getShort(opt + 2);
+				if (type == PcapngFileWriter.BLOCK_IDB && code == PcapngFileWriter.IF_TSRESOL)
+					tsresol.add((int) buf.get(opt + 4));
+				if (type == PcapngFileWriter.BLOCK_EPB && code == PcapngFileWriter.EPB_FLAGS)
+					flags.set(flags.size() - 1, buf.getInt(opt + 4));
+				opt += 4 + ((len + 3) & ~3);
+			}
+
+			pos += length;
+		}
+
+		assertEquals(List.of(PcapngFileWriter.BLOCK_SHB, PcapngFileWriter.BLOCK_IDB, PcapngFileWriter.BLOCK_IDB,
+				PcapngFileWriter.BLOCK_EPB, PcapngFileWriter.BLOCK_EPB, PcapngFileWriter.BLOCK_EPB), types);
+		assertEquals(List.of(6, 9), tsresol);
+		assertEquals(List.of(1000_123_456L, 1000_123_456_789L, 1001_000_007L), timestamps);
+		assertEquals(List.of(64, 32, 64), caplens);
+		assertEquals(List.of(1, 2, 0), flags);
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.transmit.PcapReplay#replay(Path)}.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Test
+	void testPcapReplay_OriginalTimingWithMultiplier() throws Exception {
+		Path file = Files.createTempFile("jnetpcap-replay", ".pcap");
+		int count = 1000;
+
+		try (var gen = new TrafficGenerator(7).setPacketsPerSecond(100_000);
+				var writer = new PcapFileWriter(file, PcapDlt.EN10MB, 2048)) {
+			gen.dispatch(count, writer);
+		}
+
+		try {
+			var sent = new AtomicInteger();
+			var replay = new PcapReplay((packet, length) -> {
+				sent.incrementAndGet();
+				return length;
+			}).setPacing(Pacing.original(2.0));
+
+			ReplayReport report = replay.replay(file);
+
+			assertEquals(count, sent.get());
+			assertEquals(count, report.packets());
+			assertEquals(0, report.errors());
+			assertEquals(TimeUnit.MICROSECONDS.toNanos(9990) / 2, report.targetNanos(), 1000);
+			assertTrue(report.elapsedNanos() >= report.targetNanos(),
+					"last packet sent before its deadline " + report);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.transmit.SendQueue}.
+	 */
+	@Test
+	void testSendQueue_PacksRecordsAndTransmits() {
+		var abi = PcapHeaderABI.nativeAbi();
+		int hdrlen = abi.headerLength();
+
+		try (var queue = new SendQueue(2 * hdrlen + 100)) {
+			byte[] first = new byte[24];
+			first[6] = 3;
+			assertEquals(0, queue.queue(new PcapHeader(10, 500, 20, 60), first, 4));
+			assertEquals(0, queue.queue(MemorySegment.ofArray(new byte[50]), 0, 50, 50, 10, 700));
+			assertEquals(-1, queue.queue(MemorySegment.ofArray(new byte[50]), 0, 50, 50, 11, 0), "queue full");
+
+			assertEquals(2, queue.packetCount());
+			assertEquals(2 * hdrlen + 70, queue.len());
+
+			MemorySegment records = queue.segment();
+			assertEquals(20, abi.captureLength(records));
+			assertEquals(60, abi.wireLength(records));
+			assertEquals(500, abi.tvUsec(records));
+			assertEquals(3, records.get(ValueLayout.JAVA_BYTE, hdrlen + 2));
+
+			var offsets = new ArrayList<Long>();
+			PacketTransmitter recorder = new PacketTransmitter() {
+
+				@Override
+				public int transmit(MemorySegment packet, int length) {
+					throw new AssertionError("sliced transmit used");
+				}
+
+				@Override
+				public int transmit(MemorySegment buffer, long offset, int length) throws PcapException {
+					if (offsets.size() == 3)
+						throw new PcapException(-1, "fail");
+
+					offsets.add(offset);
+					return length;
+				}
+			};
+
+			assertEquals(70, queue.transmit(recorder, true));
+			assertEquals(List.of((long) hdrlen, 2L * hdrlen + 20), offsets);
+
+			assertEquals(20, queue.transmit(recorder, false), "stops at first error");
+
+			queue.clear();
+			assertEquals(0, queue.len());
+
+			long tvSec = (hdrlen == 24) ? 1L << 33 : 0xFFFF_FFF0L; // Past 2106 only with a 64-bit time_t
+			assertEquals(0, queue.queue(MemorySegment.ofArray(new byte[50]), 0, 50, 50, tvSec, 999_999));
+			assertEquals(tvSec, abi.tvSec(queue.segment()));
+			assertEquals(999_999, abi.tvUsec(queue.segment()));
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link org.jnetpcap.windows.PcapSendQueue#queue(PcapHeader, byte[], int)}
+	 * writing directly into a {@code pcap_send_queue} structure.
+	 */
+	@Test
+	void testPcapSendQueue_WritesStructBuffer() {
+		int hdrlen = PcapHeaderABI.nativeAbi().headerLength();
+
+		try (var arena = Arena.ofConfined()) {
+			MemorySegment buffer = arena.allocate(2 * hdrlen + 40);
+			MemorySegment struct = arena.allocate(16, 8);
+			struct.set(ValueLayout.JAVA_INT, 0, (int) buffer.byteSize()); // maxlen
+			struct.set(ValueLayout.JAVA_INT, 4, 0); // len
+			struct.set(ValueLayout.ADDRESS, 8, buffer); // buffer
+
+			try (var queue = PcapSendQueue.ofMemory(struct)) {
+				byte[] packet = new byte[20];
+				packet[0] = 7;
+
+				assertEquals(0, queue.queue(new PcapHeader(1, 2, 20, 20), packet, 0));
+				assertEquals(hdrlen + 20, struct.get(ValueLayout.JAVA_INT, 4));
+				assertEquals(20, PcapHeaderABI.nativeAbi().captureLength(buffer));
+				assertEquals(7, buffer.get(ValueLayout.JAVA_BYTE, hdrlen));
+
+				var headers = new PcapHeader[] { new PcapHeader(1, 3, 20, 20), new PcapHeader(1, 4, 20, 20) };
+				assertEquals(1, queue.queueAll(headers, new byte[][] { packet, packet }), "room for one more");
+				assertEquals(2 * hdrlen + 40, queue.len());
+				assertEquals(-1, queue.queueAll(buffer.asSlice(0, hdrlen + 20)));
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.internal.ForeignInitializer}, parsing
+	 * signatures from many threads at once.
+	 */
+	@Test
+	void testForeignInitializer_ParsesSignaturesConcurrently() throws Exception {
+		int threads = 8;
+		int perThread = 500;
+
+		try (var executor = Executors.newFixedThreadPool(threads)) {
+			List<Future<List<String>>> results = new ArrayList<>();
+
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				results.add(executor.submit(() -> {
+					List<String> missing = new ArrayList<>();
+
+					try (var foreign = new ForeignInitializer<>("thread" + thread)) {
+						foreign.setMissingSymbolsPolicy((name, down, up) -> missing.addAll(down));
+
+						for (int i = 0; i < perThread; i++)
+							foreign.downcall("no_such_symbol_%d_%d(AI%s)I".formatted(thread, i, "J".repeat(i % 4)));
+					}
+
+					return missing;
+				}));
+			}
+
+			for (int t = 0; t < threads; t++) {
+				List<String> missing = results.get(t).get();
+
+				assertEquals(perThread, missing.size());
+				for (int i = 0; i < perThread; i++)
+					assertEquals("no_such_symbol_%d_%d".formatted(t, i), missing.get(i));
+			}
+		}
+
+		var foreign = new ForeignInitializer<>("invalid");
+		assertThrows(IllegalArgumentException.class, () -> foreign.downcall("1abc()I"));
+		assertThrows(IllegalArgumentException.class, () -> foreign.downcall("abc(AV)I"));
+		assertThrows(IllegalArgumentException.class, () -> foreign.downcall("abc(A"));
+		assertThrows(IllegalArgumentException.class, () -> foreign.downcall("abc(A)"));
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.internal.ForeignDowncall}, which links
+	 * its handle only on first use.
+	 */
+	@Test
+	void testForeignDowncall_LinksOnFirstUse() {
+		MemorySegment getpid = Linker.nativeLinker().defaultLookup().find("getpid").orElseThrow();
+		var downcall = new PcapForeignDowncall("getpid", getpid, FunctionDescriptor.of(ValueLayout.JAVA_INT));
+
+		assertTrue(downcall.isNativeSymbolResolved());
+		assertFalse(downcall.isLinked());
+
+		assertEquals(ProcessHandle.current().pid(), downcall.invokeInt());
+		assertTrue(downcall.isLinked());
+		assertSame(downcall.handle(), downcall.handle());
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.internal.StagingBuffer}, which is reused
+	 * until a request does not fit.
+	 */
+	@Test
+	void testStagingBuffer_GrowsOnlyWhenNeeded() {
+		try (var staging = new StagingBuffer()) {
+			assertEquals(0, staging.capacity());
+
+			MemorySegment first = staging.ensureCapacity(100);
+			assertEquals(StagingBuffer.MIN_CAPACITY, first.byteSize());
+			assertTrue(first.isNative());
+			assertSame(first, staging.ensureCapacity(StagingBuffer.MIN_CAPACITY));
+
+			MemorySegment second = staging.ensureCapacity(StagingBuffer.MIN_CAPACITY + 1);
+			assertEquals(2 * StagingBuffer.MIN_CAPACITY, second.byteSize());
+			assertFalse(first.scope().isAlive());
+
+			staging.close();
+			assertFalse(second.scope().isAlive());
+			assertEquals(0, staging.capacity());
+		}
+	}
+
+	/**
+	 * Test method for {@link org.jnetpcap.util.LatencyHistogram}.
+	 */
+	@Test
+	void testLatencyHistogram_LogLinearBuckets() {
+		for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+			long low = LatencyHistogram.bucketLowerBound(i);
+
+			assertEquals(i, LatencyHistogram.bucketIndex(low));
+			assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i)));
+		}
+
+		var histogram = new LatencyHistogram();
+		for (long v = 1; v <= 1000; v++)
+			histogram.record(v * 1000);
+
+		var snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.count());
+		assertEquals(1_000_000, snapshot.max());
+
+		long p50 = snapshot.percentile(50);
+		assertTrue(p50 >= 500_000 && p50 <= 500_000 * 1.125, "p50=" + p50);
+		assertEquals(1_000_000, snapshot.percentile(100));
+	}
 }
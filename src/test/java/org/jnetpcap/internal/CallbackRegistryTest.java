@@ -0,0 +1,92 @@
+/*
+ * Apache License, Version 2.0
+ *
+ * Copyright 2013-2022 Sly Technologies Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jnetpcap.internal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the package private {@link CallbackRegistry}, which routes the
+ * shared upcall stub to dispatchers.
+ *
+ * @author Sly Technologies Inc
+ * @author repos@slytechs.com
+ */
+@Tag("non-libpcap-api")
+@Tag("user-permission")
+class CallbackRegistryTest {
+
+	/**
+	 * Test method for {@link CallbackRegistry#register(Object)}, growing the
+	 * table past its initial capacity.
+	 */
+	@Test
+	void testRegister_GrowsPastInitialCapacity() {
+		var registry = new CallbackRegistry<String>();
+		int[] ids = new int[200];
+		Set<Integer> unique = new HashSet<>();
+
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = registry.register("target-" + i);
+			assertTrue(ids[i] > 0, "id 0 is never assigned");
+			assertTrue(unique.add(ids[i]), "duplicate id " + ids[i]);
+		}
+
+		for (int i = 0; i < ids.length; i++)
+			assertEquals("target-" + i, registry.get(ids[i]));
+	}
+
+	/**
+	 * Test method for {@link CallbackRegistry#release(int)} and
+	 * {@link CallbackRegistry#get(long)}.
+	 */
+	@Test
+	void testRelease_ReusesIdsAndNeverRoutesZero() {
+		var registry = new CallbackRegistry<String>();
+
+		assertNull(registry.get(0));
+
+		int a = registry.register("a");
+		int b = registry.register("b");
+		int c = registry.register("c");
+
+		registry.release(b);
+		assertNull(registry.get(b));
+		assertEquals("a", registry.get(a));
+		assertEquals("c", registry.get(c));
+
+		assertEquals(b, registry.register("d"), "released id reused");
+		assertEquals("d", registry.get(b));
+
+		registry.release(b);
+		registry.release(b); // Double release must not put the id on the free stack twice
+		int e = registry.register("e");
+		int f = registry.register("f");
+		assertNotEquals(e, f);
+
+		registry.release(0);
+		assertNull(registry.get(0));
+		assertNull(registry.get(-1));
+		assertNull(registry.get(Long.MAX_VALUE));
+	}
+}